@@ -30,6 +30,12 @@ import org.apache.pig.impl.PigContext;
 /**
  * extends the hadoop JobControl to remove the hardcoded sleep(5000)
  * as most of this is private we have to use reflection
+ *
+ * The jobs are checked again after a time which grows with the time since
+ * a job last changed state, from {@link #MIN_TIME_TO_SLEEP} up to timeToSleep,
+ * so that short jobs are seen finishing quickly without polling long jobs
+ * often. Threads waiting on this object are notified whenever a job changes
+ * state.
  * 
  * See {@link https://svn.apache.org/repos/asf/hadoop/common/branches/branch-0.20/src/mapred/org/apache/hadoop/mapred/jobcontrol/JobControl.java}
  *
@@ -71,8 +77,13 @@ public class PigJobControl extends JobControl {
   private static final int STOPPING = 3;
   private static final int READY = 4;
 
+  /** The shortest time between two checks of the jobs, in ms */
+  public static final int MIN_TIME_TO_SLEEP = 100;
+
   private int timeToSleep;
 
+  private long lastChange;
+
   /**
    * Construct a job control for a group of jobs.
    * @param groupName a name identifying this group
@@ -122,6 +133,7 @@ public class PigJobControl extends JobControl {
       return;
     }
     setRunnerState(PigJobControl.RUNNING);
+    lastChange = System.currentTimeMillis();
     while (true) {
       while (getRunnerState() == PigJobControl.SUSPENDED) {
         try {
@@ -136,21 +148,45 @@ public class PigJobControl extends JobControl {
           getRunnerState() != PigJobControl.SUSPENDED) {
         break;
       }
-      try {
-        Thread.sleep(timeToSleep);
-      }
-      catch (Exception e) {
-
-      }
+      waitForChange();
       if (getRunnerState() != PigJobControl.RUNNING &&
           getRunnerState() != PigJobControl.SUSPENDED) {
         break;
       }
     }
     setRunnerState(PigJobControl.STOPPED);
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  private synchronized void waitForChange() {
+    long sinceChange = System.currentTimeMillis() - lastChange;
+    long sleep = Math.min(timeToSleep, Math.max(MIN_TIME_TO_SLEEP, sinceChange / 10));
+    try {
+      wait(sleep);
+    }
+    catch (Exception e) {
+
+    }
+  }
+
+  // every change of state moves a job forward in this order, so the sum grows
+  private int getJobProgress() {
+    return getReadyJobs().size() + 2 * getRunningJobs().size()
+        + 3 * (getSuccessfulJobs().size() + getFailedJobs().size());
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    synchronized (this) {
+      notifyAll();
+    }
   }
 
   private void mainLoopAction() {
+    int progressBefore = getJobProgress();
     try {
       checkRunningJobs.invoke(this);
       checkWaitingJobs.invoke(this);
@@ -158,6 +194,12 @@ public class PigJobControl extends JobControl {
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
+    if (getJobProgress() != progressBefore) {
+      synchronized (this) {
+        lastChange = System.currentTimeMillis();
+        notifyAll();
+      }
+    }
   }
 
 }
@@ -32,6 +32,12 @@ import org.apache.hadoop.mapreduce.lib.jobcontrol.ControlledJob.State;
  * extends the hadoop JobControl to remove the hardcoded sleep(5000)
  * as most of this is private we have to use reflection
  *
+ * The jobs are checked again after a time which grows with the time since
+ * a job last changed state, from {@link #MIN_TIME_TO_SLEEP} up to timeToSleep,
+ * so that short jobs are seen finishing quickly without polling long jobs
+ * often. Threads waiting on this object are notified whenever a job changes
+ * state.
+ *
  * See {@link https://svn.apache.org/repos/asf/hadoop/common/branches/branch-0.23.1/hadoop-mapreduce-project/hadoop-mapreduce-client/hadoop-mapreduce-client-core/src/main/java/org/apache/hadoop/mapreduce/lib/jobcontrol/JobControl.java }
  *
  */
@@ -77,8 +83,13 @@ public class PigJobControl extends JobControl {
     }
   }
 
+  /** The shortest time between two checks of the jobs, in ms */
+  public static final int MIN_TIME_TO_SLEEP = 100;
+
   private int timeToSleep;
 
+  private long lastChange;
+
   /**
    * Construct a job control for a group of jobs.
    * @param groupName a name identifying this group
@@ -162,6 +173,7 @@ public class PigJobControl extends JobControl {
     }
     try {
       setRunnerState(ThreadState.RUNNING);
+      lastChange = System.currentTimeMillis();
       while (true) {
         while (getRunnerState() == ThreadState.SUSPENDED) {
           try {
@@ -173,6 +185,7 @@ public class PigJobControl extends JobControl {
         }
 
         synchronized(this) {
+          boolean changed = false;
           Iterator<ControlledJob> it = getJobs(jobsInProgress).iterator();
           while(it.hasNext()) {
             ControlledJob j = it.next();
@@ -181,14 +194,17 @@ public class PigJobControl extends JobControl {
             case SUCCESS:
               getJobs(successfulJobs).add(j);
               it.remove();
+              changed = true;
               break;
             case FAILED:
             case DEPENDENT_FAILED:
               getJobs(failedJobs).add(j);
               it.remove();
+              changed = true;
               break;
             case READY:
               submit(j);
+              changed = true;
               break;
             case RUNNING:
             case WAITING:
@@ -196,18 +212,17 @@ public class PigJobControl extends JobControl {
               break;
             }
           }
+          if (changed) {
+            lastChange = System.currentTimeMillis();
+            notifyAll();
+          }
         }
 
         if (getRunnerState() != ThreadState.RUNNING &&
             getRunnerState() != ThreadState.SUSPENDED) {
           break;
         }
-        try {
-          Thread.sleep(timeToSleep);
-        }
-        catch (Exception e) {
-          //TODO the thread was interrupted, do something!!!
-        }
+        waitForChange();
         if (getRunnerState() != ThreadState.RUNNING &&
             getRunnerState() != ThreadState.SUSPENDED) {
           break;
@@ -219,6 +234,28 @@ public class PigJobControl extends JobControl {
       failAllJobs(t);
     }
     setRunnerState(ThreadState.STOPPED);
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  private synchronized void waitForChange() {
+    long sinceChange = System.currentTimeMillis() - lastChange;
+    long sleep = Math.min(timeToSleep, Math.max(MIN_TIME_TO_SLEEP, sinceChange / 10));
+    try {
+      wait(sleep);
+    }
+    catch (Exception e) {
+      //TODO the thread was interrupted, do something!!!
+    }
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    synchronized (this) {
+      notifyAll();
+    }
   }
 
 
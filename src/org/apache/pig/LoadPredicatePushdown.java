@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * This interface defines how a loader can accept filter conditions on
+ * ordinary (non partition) columns.  Unlike
+ * {@link LoadMetadata#setPartitionFilter(Expression)}, the loader is free to
+ * use the predicate only as a hint, for example to skip row groups, blocks
+ * or key ranges whose statistics show that no record can match.
+ * <p>
+ * Pig splits the condition of a FILTER that directly follows the load into
+ * the conjuncts that only use the columns returned by
+ * {@link #getPredicateFields(String, Job)} and the operators returned by
+ * {@link #getSupportedExpressionTypes()}, and the rest.  The former are
+ * passed to {@link #setPushdownPredicate(Expression)}.  The rest are always
+ * evaluated by Pig.  The pushed part is removed from the FILTER only if the
+ * loader reports that it applies it exactly.
+ * <p>
+ * Pig calls {@link #setPushdownPredicate(Expression)} on the front end only.
+ * The loader is responsible for passing the predicate to the back end, for
+ * example through {@link org.apache.pig.impl.util.UDFContext}.
+ * @since Pig 0.13
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface LoadPredicatePushdown {
+
+    /**
+     * Find the fields on which the loader can evaluate predicates.  Names
+     * are the ones reported by {@link LoadMetadata#getSchema(String, Job)}
+     * or, if the loader does not implement {@link LoadMetadata}, the ones
+     * in the schema given in the load statement.
+     * @param location Location as returned by
+     * {@link LoadFunc#relativeToAbsolutePath(String, org.apache.hadoop.fs.Path)}
+     * @param job The {@link Job} object - this should be used only to obtain
+     * cluster properties through {@link Job#getConfiguration()} and not to set/query
+     * any runtime job information.
+     * @return list of field names that can be used in a predicate, or null
+     * if none
+     * @throws IOException if an exception occurs while retrieving the fields
+     */
+    List<String> getPredicateFields(String location, Job job) throws IOException;
+
+    /**
+     * Find the operators the loader can evaluate.  {@link OpType#TERM_COL}
+     * and {@link OpType#TERM_CONST} are always assumed to be supported.
+     * If {@link OpType#OP_AND} is not supported, at most one comparison
+     * is pushed down.
+     * @return list of supported operators
+     */
+    List<OpType> getSupportedExpressionTypes();
+
+    /**
+     * Set the predicate to evaluate while loading.  The predicate follows
+     * Pig semantics: a comparison involving a null value is not true, so
+     * records for which it evaluates to null must not be returned when the
+     * predicate is applied exactly.
+     * @param predicate predicate over the fields returned by
+     * {@link #getPredicateFields(String, Job)}
+     * @return true if every record returned by the loader satisfies the
+     * predicate, in which case Pig does not evaluate it again; false if the
+     * loader only uses it to skip data that cannot match
+     * @throws IOException if the loader cannot use the predicate
+     */
+    boolean setPushdownPredicate(Expression predicate) throws IOException;
+}
@@ -47,6 +47,14 @@ public class PigConfiguration {
      */
     public static final String PARTAGG_MINREDUCTION = "pig.exec.mapPartAgg.minReduction";
 
+    /**
+     * Controls whether in-mapper Partial Aggregation keeps running aggregate
+     * states in a primitive hash table when the group key is an int, long or
+     * chararray and all aggregates are builtin SUM, COUNT, MIN, MAX or AVG.
+     * Default is true.
+     */
+    public static final String PARTAGG_PRIMITIVE_TABLE = "pig.exec.mapPartAgg.primitive";
+
     /**
      * Controls whether execution time of Pig UDFs should be tracked.
      * This feature uses counters; use judiciously.
@@ -100,6 +108,35 @@ public class PigConfiguration {
      */
     public static final String PIG_OUTPUT_COMMITTER_RECOVERY = "pig.output.committer.recovery.support";
 
+    /**
+     * Number of rows physical operators exchange per call when the pipeline
+     * is run in batch mode. Batch mode is currently used by fetch tasks only.
+     * Default is 0, which keeps the tuple at a time pipeline.
+     */
+    public static final String PIG_EXEC_BATCH_SIZE = "pig.exec.batch.size";
+
+    /**
+     * Turns on the compilation of filter and foreach expression plans into
+     * Java classes at task setup. Plans that cannot be compiled, or tasks
+     * running without a Java compiler, fall back to interpretation.
+     * Default is false.
+     */
+    public static final String PIG_EXEC_COMPILE_EXPRESSIONS = "pig.exec.compile.expressions";
+
+    /**
+     * Number of threads map tasks run the head of their plan on, up to the
+     * last filter or foreach calling a UDF. Each thread runs its own copy of
+     * the plan, and the order of the records within a split is not kept.
+     * Plans that depend on that order run on one thread. Default is 1.
+     */
+    public static final String PIG_EXEC_MAP_THREADS = "pig.exec.map.threads";
+
+    /**
+     * Number of records handed to and from the threads of
+     * pig.exec.map.threads at a time. Default is 100.
+     */
+    public static final String PIG_EXEC_MAP_THREADS_BATCH_SIZE = "pig.exec.map.threads.batch.size";
+
     /**
      * This key is used to turn off the inclusion of settings in the jobs.
      */
@@ -118,7 +155,9 @@ public class PigConfiguration {
     /**
      * This key is used to set the storage type used by intermediate file storage
      * If pig.tmpfilecompression, default storage used is TFileStorage.
-     * This can be overriden to use SequenceFileInterStorage by setting following property to "seqfile".
+     * This can be overriden to use SequenceFileInterStorage by setting following property to "seqfile",
+     * or to use ColumnarInterStorage by setting it to "columnar". ColumnarInterStorage lets the jobs
+     * reading intermediate data skip the columns they don't use.
      */
     public static final String PIG_TEMP_FILE_COMPRESSION_STORAGE = "pig.tmpfilecompression.storage";
 
@@ -128,6 +167,12 @@ public class PigConfiguration {
      */
     public static final String PIG_TEMP_FILE_COMPRESSION_CODEC = "pig.tmpfilecompression.codec";
 
+    /**
+     * Size in bytes of the uncompressed column chunks ColumnarInterStorage buffers before
+     * writing a row group. Default is 4MB.
+     */
+    public static final String PIG_TEMP_FILE_COLUMNAR_ROW_GROUP_SIZE = "pig.tmpfilecompression.columnar.rowgroup.size";
+
     /**
      * This key is used to define whether to delete intermediate files of Hadoop jobs.
      */
@@ -138,7 +183,135 @@ public class PigConfiguration {
      * the distributed cache when doing fragment-replicated join
      */
     public static final String PIG_JOIN_REPLICATED_MAX_BYTES = "pig.join.replicated.max.bytes";
- 
+
+    /**
+     * Joins with no strategy given are made replicated when all their
+     * inputs but the largest are together at most this number of bytes. 0
+     * turns it off. Default is 25000000 (about 25MB).
+     */
+    public static final String PIG_JOIN_AUTO_REPLICATED_MAX_BYTES = "pig.join.auto.replicated.max.bytes";
+
+    /**
+     * This key is used to hold the replicated inputs of fragment-replicated
+     * joins serialized in direct memory rather than as tuples on the heap.
+     * The tables count against -XX:MaxDirectMemorySize. Default is false.
+     */
+    public static final String PIG_JOIN_REPLICATED_OFFHEAP = "pig.join.replicated.offheap";
+
+    /**
+     * This key is used to build the off heap table of a replicated input
+     * once per node: the first task writes it to a local file, which every
+     * task of the job on the node then memory maps. Implies
+     * pig.join.replicated.offheap. Default is false.
+     */
+    public static final String PIG_JOIN_REPLICATED_MMAP = "pig.join.replicated.mmap";
+
+    /**
+     * Local directory for the files of pig.join.replicated.mmap. Defaults to
+     * the job local directory of the task, which is removed at the end of
+     * the job. Without either, as in local mode, each task builds its own
+     * table in memory.
+     */
+    public static final String PIG_JOIN_REPLICATED_MMAP_DIR = "pig.join.replicated.mmap.dir";
+
+    /**
+     * Controls whether SpillableMemoryManager frees extra memory on a low
+     * memory notification to cover what the task is predicted to allocate,
+     * from its recent allocation rate, while the spill is in progress.
+     * Default is true.
+     */
+    public static final String PIG_SPILL_PREDICT_ALLOCATION = "pig.spill.predict.allocation";
+
+    /**
+     * Codec compressing the files bags spill to: gzip, snappy, or the class
+     * name of a Hadoop CompressionCodec. Spill files are not compressed by
+     * default.
+     */
+    public static final String PIG_SPILL_COMPRESSION_CODEC = "pig.spill.compression.codec";
+
+    /**
+     * Controls whether spill files are read one buffer ahead of the bag
+     * iterators on background threads. Default is true.
+     */
+    public static final String PIG_SPILL_READAHEAD = "pig.spill.readahead";
+
+    /**
+     * Number of background threads sorted bags use to merge their spill
+     * files: they deserialize the tuples of each file ahead of the final
+     * merge and run the intermediate merges of bags with many spill files in
+     * parallel. 0 merges on the thread reading the bag. Default is 2.
+     */
+    public static final String PIG_SPILL_MERGE_THREADS = "pig.spill.merge.threads";
+
+    /**
+     * Controls whether tasks pool the chararray values decoded by loaders
+     * using Utf8StorageConverter, so that repeated values share one instance,
+     * and write repeated chararrays in spill files as small integer codes.
+     * Meant for low-cardinality columns. Default is false.
+     */
+    public static final String PIG_CHARARRAY_DICTIONARY = "pig.chararray.dictionary";
+
+    /**
+     * Maximum number of distinct values pooled by each task when
+     * pig.chararray.dictionary is set. Default is 4096.
+     */
+    public static final String PIG_CHARARRAY_DICTIONARY_SIZE = "pig.chararray.dictionary.size";
+
+    /**
+     * Controls whether PigStorage returns tuples that keep the line read and
+     * only build, and cast, each field when it is first accessed.
+     * Default is true.
+     */
+    public static final String PIG_LOAD_LAZY_TUPLES = "pig.load.lazy.tuples";
+
+    /**
+     * Controls whether the input splits whose statistics show that no
+     * record can pass the filter following the load are skipped. Only used
+     * with loaders implementing {@link SplitStatisticsLoadFunc}.
+     * Default is true.
+     */
+    public static final String PIG_SPLIT_STATISTICS_PRUNING = "pig.split.statistics.pruning";
+
+    /**
+     * Controls whether the map output keys of an order by on more than one
+     * column carry a prefix of their leading fields, which the sort compares
+     * as bytes before comparing the fields. Default is true.
+     */
+    public static final String PIG_SORT_KEY_PREFIX = "pig.sort.keyprefix";
+
+    /**
+     * Controls whether a regular inner join of a filtered input with one that
+     * is much larger first builds a bloom filter of the join keys of the
+     * filtered input, and drops the records of the larger input whose key is
+     * not in it before the shuffle. Default is true.
+     */
+    public static final String PIG_BLOOM_JOIN = "pig.bloomjoin";
+
+    /**
+     * How many times larger than the filtered input of a join the other input
+     * has to be for {@link #PIG_BLOOM_JOIN} to be used. Default is 10.
+     */
+    public static final String PIG_BLOOM_JOIN_SIZE_RATIO = "pig.bloomjoin.size.ratio";
+
+    /**
+     * The number of bits of the bloom filters built for
+     * {@link #PIG_BLOOM_JOIN}. Default is 8388608 (1MB).
+     */
+    public static final String PIG_BLOOM_JOIN_VECTOR_SIZE = "pig.bloomjoin.vectorsize";
+
+    /**
+     * Turns on the counting of the most frequent keys in the map tasks of
+     * groups and joins without a combiner, and the warning about the keys
+     * which overload a reducer. Default is true.
+     */
+    public static final String PIG_SKEW_DETECTION = "pig.skew.detection";
+
+    /**
+     * The fraction of the records of a map task a key must have to be
+     * reported by {@link #PIG_SKEW_DETECTION}. Default is 0.1.
+     */
+    public static final String PIG_SKEW_DETECTION_THRESHOLD = "pig.skew.detection.threshold";
+
     /**
      * This key used to control the sample size of RandomeSampleLoader for
      * order-by. The default value is 100 rows per task.
@@ -91,6 +91,12 @@ public class ResourceStatistics implements Cloneable {
          */
         private Object[] valueHistogram = new Object[0];
 
+        /**
+         * smallest and largest non null value of the field, null if unknown
+         */
+        private Object minValue;
+        private Object maxValue;
+
         
         public int getVersion() {
             return version;
@@ -142,6 +148,24 @@ public class ResourceStatistics implements Cloneable {
             return this;
         }
 
+        public Object getMinValue() {
+            return minValue;
+        }
+
+        public ResourceFieldStatistics setMinValue(Object minValue) {
+            this.minValue = minValue;
+            return this;
+        }
+
+        public Object getMaxValue() {
+            return maxValue;
+        }
+
+        public ResourceFieldStatistics setMaxValue(Object maxValue) {
+            this.maxValue = maxValue;
+            return this;
+        }
+
         
         /*
          * equals() and hashCode() overridden mostly for ease of testing
@@ -158,7 +182,9 @@ public class ResourceStatistics implements Cloneable {
                     Arrays.equals(mostCommonValuesFreq, other.mostCommonValuesFreq) &&
                     Arrays.equals(valueHistogram, other.valueHistogram) &&
                     this.numDistinctValues.equals(other.numDistinctValues) &&
-                    this.version == other.version
+                    this.version == other.version &&
+                    (minValue == null ? other.minValue == null : minValue.equals(other.minValue)) &&
+                    (maxValue == null ? other.maxValue == null : maxValue.equals(other.maxValue))
                     );
         }
         
@@ -189,6 +215,9 @@ public class ResourceStatistics implements Cloneable {
             sb.append("valHistogram: \n");
             for (Object o : valueHistogram) sb.append('['+o.toString()+']');
             sb.append("\n");
+            if (minValue != null || maxValue != null) {
+                sb.append("range: [" + minValue + ", " + maxValue + "]\n");
+            }
             return sb.toString();
         }
     }
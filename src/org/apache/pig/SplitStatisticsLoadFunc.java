@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig;
+
+import java.io.IOException;
+
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * Implementing this interface indicates to Pig that a given loader can
+ * describe the data in each of its splits.  When a FILTER directly follows
+ * the load, Pig compares the comparisons on its columns against the
+ * minimum and maximum values in
+ * {@link ResourceStatistics.ResourceFieldStatistics} and does not read the
+ * splits that cannot contain a matching record.  The FILTER is still
+ * evaluated on the splits that are read.
+ * @since Pig 0.13
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface SplitStatisticsLoadFunc {
+
+    /**
+     * Get statistics for the data of a split.  A loader that only keeps
+     * statistics per file can return the ones of the file the split is from.
+     * The field statistics are in the order of the fields in the schema
+     * of the loaded data.  Fields without statistics, or without a minimum
+     * and maximum value, are not used to skip the split.
+     * @param split An InputSplit from the InputFormat underlying this loader.
+     * @return statistics for the split, or null if none are available
+     * @throws IOException
+     */
+    public ResourceStatistics getSplitStatistics(InputSplit split)
+    throws IOException;
+
+}
@@ -22,6 +22,7 @@ import java.io.PrintStream;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
@@ -153,6 +154,17 @@ public class FetchLauncher {
         pigHadoopLogger.setReporter(pigStatusReporter);
         pigHadoopLogger.setAggregate(aggregateWarning);
         PhysicalOperator.setPigLogger(pigHadoopLogger);
+
+        // Only the operators of the plan itself read their input in batches.
+        // The relational operators nested in a foreach read a bag through
+        // an overloaded project, which has no batch mode, and are reset for
+        // every input tuple, which would throw away a half read batch.
+        int batchSize = conf.getInt(PigConfiguration.PIG_EXEC_BATCH_SIZE, 0);
+        if (batchSize > 0) {
+            for (PhysicalOperator op : pp) {
+                op.setBatchSize(batchSize);
+            }
+        }
     }
 
     private void runPipeline(POStore posStore) throws IOException {
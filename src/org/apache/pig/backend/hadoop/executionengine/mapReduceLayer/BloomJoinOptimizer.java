@@ -0,0 +1,443 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POUnion;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.Packager;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.builtin.Bloom;
+import org.apache.pig.builtin.BuildBloom;
+import org.apache.pig.builtin.Nondeterministic;
+import org.apache.pig.builtin.PigStorage;
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.FileLocalizer;
+import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.NodeIdGenerator;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * Puts a bloom filter in front of the shuffle of a regular inner join of two
+ * inputs, when one of them is filtered and the other is at least
+ * {@link PigConfiguration#PIG_BLOOM_JOIN_SIZE_RATIO} times larger. A job is
+ * added before the join which runs the map plan of the filtered input and
+ * builds a bloom filter of its join keys with {@link BuildBloom}. The map
+ * plan of the larger input then drops the records whose key is not in the
+ * filter with {@link Bloom}, so that they aren't shuffled.
+ * <p>
+ * The sizes are only known for inputs that are loaded from files which
+ * exist when the plan is compiled, so both inputs have to be loaded by the
+ * join job, and only go through filters and foreachs before the join. The
+ * keys have to be of a type whose bytes are equal when the keys are, and
+ * the filtered input can't use nondeterministic functions, as it is read
+ * twice.
+ */
+class BloomJoinOptimizer extends MROpPlanVisitor {
+
+    private static final Log log = LogFactory.getLog(BloomJoinOptimizer.class);
+
+    private static final String HASH_TYPE = "murmur";
+
+    private static final String NUM_HASH = "3";
+
+    private PigContext pigContext;
+
+    private NodeIdGenerator nig = NodeIdGenerator.getGenerator();
+
+    private List<MapReduceOper> joins = new ArrayList<MapReduceOper>();
+
+    BloomJoinOptimizer(MROperPlan plan, PigContext pigContext) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+        this.pigContext = pigContext;
+    }
+
+    @Override
+    public void visit() throws VisitorException {
+        super.visit();
+        // the jobs are added after the walk, which doesn't expect the plan
+        // to change
+        for (MapReduceOper join : joins) {
+            optimize(join);
+        }
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        if (mr.isRegularJoin() && !mr.mapPlan.isEmpty() && mr.combinePlan.isEmpty()) {
+            joins.add(mr);
+        }
+    }
+
+    private void optimize(MapReduceOper mr) throws VisitorException {
+        List<PhysicalOperator> reduceRoots = mr.reducePlan.getRoots();
+        if (reduceRoots.size() != 1 || !(reduceRoots.get(0) instanceof POPackage)) {
+            return;
+        }
+        POPackage pkg = (POPackage) reduceRoots.get(0);
+        boolean[] inner = pkg.getPkgr().getInner();
+        if (pkg.getNumInps() != 2 || inner == null || !inner[0] || !inner[1]) {
+            return;
+        }
+
+        POLocalRearrange[] lrs = new POLocalRearrange[2];
+        List<PhysicalOperator> leaves = new ArrayList<PhysicalOperator>();
+        for (PhysicalOperator leaf : mr.mapPlan.getLeaves()) {
+            if (leaf instanceof POUnion) {
+                leaves.addAll(mr.mapPlan.getPredecessors(leaf));
+            } else {
+                leaves.add(leaf);
+            }
+        }
+        for (PhysicalOperator leaf : leaves) {
+            if (!(leaf instanceof POLocalRearrange)) {
+                return;
+            }
+            int index = ((POLocalRearrange) leaf).getIndex();
+            if (index < 0 || index > 1 || lrs[index] != null) {
+                return;
+            }
+            lrs[index] = (POLocalRearrange) leaf;
+        }
+        if (lrs[0] == null || lrs[1] == null
+                || !hasHashableKeys(lrs[0]) || !hasHashableKeys(lrs[1])) {
+            return;
+        }
+
+        long[] sizes = new long[2];
+        boolean[] filtered = new boolean[2];
+        List<List<PhysicalOperator>> chains = new ArrayList<List<PhysicalOperator>>();
+        for (int i = 0; i < 2; i++) {
+            List<PhysicalOperator> chain = getInputChain(mr.mapPlan, lrs[i]);
+            if (chain == null) {
+                return;
+            }
+            chains.add(chain);
+            for (PhysicalOperator op : chain) {
+                filtered[i] |= op instanceof POFilter && !isConstant(((POFilter) op).getPlan());
+            }
+            sizes[i] = getInputSize((POLoad) chain.get(0));
+            if (sizes[i] <= 0) {
+                return;
+            }
+        }
+
+        long ratio = Long.parseLong(pigContext.getProperties().getProperty(
+                PigConfiguration.PIG_BLOOM_JOIN_SIZE_RATIO, "10"));
+        int build = -1;
+        for (int i = 0; i < 2; i++) {
+            if (filtered[i] && sizes[1 - i] >= ratio * sizes[i]
+                    && isDeterministic(chains.get(i), lrs[i])
+                    && (build == -1 || sizes[i] < sizes[build])) {
+                build = i;
+            }
+        }
+        if (build == -1) {
+            return;
+        }
+        int probe = 1 - build;
+
+        try {
+            FileSpec bloomFile = new FileSpec(
+                    FileLocalizer.getTemporaryPath(pigContext).toString(),
+                    new FuncSpec(PigStorage.class.getName()));
+            MapReduceOper bloomJob = getBloomJob(mr, chains.get(build), lrs[build], bloomFile);
+            addBloomFilter(mr, lrs[probe], bloomFile);
+
+            mPlan.add(bloomJob);
+            List<MapReduceOper> preds = mPlan.getPredecessors(mr);
+            if (preds != null) {
+                // the scalars the input may use
+                for (MapReduceOper pred : new ArrayList<MapReduceOper>(preds)) {
+                    mPlan.connect(pred, bloomJob);
+                }
+            }
+            mPlan.connect(bloomJob, mr);
+        } catch (Exception e) {
+            int errCode = 2034;
+            String msg = "Error adding a bloom filter to join " + pkg.getAlias();
+            throw new MRCompilerException(msg, errCode, PigException.BUG, e);
+        }
+        log.info("Filtering the input " + probe + " of join " + pkg.getAlias()
+                + " with a bloom filter of the keys of input " + build);
+    }
+
+    /**
+     * @return the operators from the load to the local rearrange, without
+     * it, or null if there are other operators than filters and foreachs,
+     * or the load is not of a file
+     */
+    private List<PhysicalOperator> getInputChain(PhysicalPlan mapPlan, POLocalRearrange lr) {
+        List<PhysicalOperator> chain = new ArrayList<PhysicalOperator>();
+        PhysicalOperator op = lr;
+        while (true) {
+            List<PhysicalOperator> preds = mapPlan.getPredecessors(op);
+            if (preds == null) {
+                break;
+            }
+            if (preds.size() != 1) {
+                return null;
+            }
+            op = preds.get(0);
+            List<PhysicalOperator> succs = mapPlan.getSuccessors(op);
+            if (succs.size() != 1) {
+                return null;
+            }
+            chain.add(op);
+        }
+        Collections.reverse(chain);
+        if (chain.isEmpty() || !(chain.get(0) instanceof POLoad)
+                || ((POLoad) chain.get(0)).isTmpLoad()) {
+            return null;
+        }
+        for (PhysicalOperator chained : chain.subList(1, chain.size())) {
+            if (!(chained instanceof POFilter) && !(chained instanceof POForEach)) {
+                return null;
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * Bloom and BuildBloom hash the keys as {@link DataType#toBytes}, which
+     * only matches the join equality for some types. Keys of other types,
+     * like datetimes in different time zones or big decimals of different
+     * scales, may be equal with different bytes.
+     */
+    private boolean hasHashableKeys(POLocalRearrange lr) {
+        for (PhysicalPlan keyPlan : lr.getPlans()) {
+            for (PhysicalOperator leaf : keyPlan.getLeaves()) {
+                switch (leaf.getResultType()) {
+                case DataType.BYTEARRAY:
+                case DataType.CHARARRAY:
+                case DataType.INTEGER:
+                case DataType.LONG:
+                    break;
+                default:
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The bloom job runs the operators of the input a second time, so they
+     * have to produce the same records and keys as in the join job.
+     */
+    private boolean isDeterministic(List<PhysicalOperator> chain, POLocalRearrange lr)
+            throws VisitorException {
+        List<PhysicalPlan> plans = new ArrayList<PhysicalPlan>(lr.getPlans());
+        for (PhysicalOperator op : chain) {
+            if (op instanceof POFilter) {
+                plans.add(((POFilter) op).getPlan());
+            } else if (op instanceof POForEach) {
+                plans.addAll(((POForEach) op).getInputPlans());
+            }
+        }
+        for (PhysicalPlan plan : plans) {
+            for (POUserFunc func : PlanHelper.getPhysicalOperators(plan, POUserFunc.class)) {
+                if (func.getFunc().getClass().getAnnotation(Nondeterministic.class) != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isConstant(PhysicalPlan plan) {
+        return plan.size() == 1 && plan.getRoots().get(0) instanceof ConstantExpression;
+    }
+
+    private long getInputSize(POLoad load) {
+        try {
+            Configuration conf = ConfigurationUtil.toConfiguration(pigContext.getProperties());
+            return InputSizeReducerEstimator.getTotalInputFileSize(conf,
+                    Collections.singletonList(load), new Job(conf));
+        } catch (IOException e) {
+            log.warn("Unable to get the size of " + load.getLFile().getFileName()
+                    + ", " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private OperatorKey newKey(MapReduceOper mr) {
+        String scope = mr.getOperatorKey().getScope();
+        return new OperatorKey(scope, nig.getNextNodeId(scope));
+    }
+
+    /**
+     * Creates the job which runs a copy of the operators of the input, and
+     * stores a bloom filter of the keys of the local rearrange.
+     */
+    private MapReduceOper getBloomJob(MapReduceOper mr, List<PhysicalOperator> chain,
+            POLocalRearrange lr, FileSpec bloomFile) throws Exception {
+        MapReduceOper mro = new MapReduceOper(newKey(mr));
+
+        POLoad load = (POLoad) chain.get(0);
+        POLoad ld = new POLoad(newKey(mr), load.getLFile());
+        ld.setPc(load.getPc());
+        ld.setSignature(load.getSignature());
+        ld.setLimit(load.getLimit());
+        ld.setStatisticsFilter(load.getStatisticsFilter());
+        ld.setResultType(load.getResultType());
+        ld.addOriginalLocation(load.getAlias(), load.getOriginalLocations());
+        mro.mapPlan.add(ld);
+        for (PhysicalOperator op : chain.subList(1, chain.size())) {
+            PhysicalOperator copy;
+            if (op instanceof POFilter) {
+                POFilter filter = new POFilter(newKey(mr));
+                filter.setPlan(((POFilter) op).getPlan().clone());
+                filter.setResultType(op.getResultType());
+                filter.addOriginalLocation(op.getAlias(), op.getOriginalLocations());
+                copy = filter;
+            } else {
+                copy = ((POForEach) op).clone();
+            }
+            mro.mapPlan.addAsLeaf(copy);
+        }
+
+        // Only keep the keys
+        List<PhysicalPlan> keyPlans = new ArrayList<PhysicalPlan>();
+        List<Boolean> flat = new ArrayList<Boolean>();
+        for (PhysicalPlan keyPlan : lr.getPlans()) {
+            keyPlans.add(keyPlan.clone());
+            flat.add(false);
+        }
+        mro.mapPlan.addAsLeaf(new POForEach(newKey(mr), -1, keyPlans, flat));
+
+        // and group them all
+        PhysicalPlan allPlan = new PhysicalPlan();
+        ConstantExpression ce = new ConstantExpression(newKey(mr));
+        ce.setValue("all");
+        ce.setResultType(DataType.CHARARRAY);
+        allPlan.add(ce);
+        List<PhysicalPlan> allPlans = new ArrayList<PhysicalPlan>();
+        allPlans.add(allPlan);
+        POLocalRearrange allLr = new POLocalRearrange(newKey(mr));
+        allLr.setIndex(0);
+        allLr.setKeyType(DataType.CHARARRAY);
+        allLr.setPlans(allPlans);
+        allLr.setResultType(DataType.TUPLE);
+        allLr.addOriginalLocation(lr.getAlias(), lr.getOriginalLocations());
+        mro.mapPlan.addAsLeaf(allLr);
+        mro.setMapDone(true);
+
+        POPackage pkg = new POPackage(newKey(mr));
+        Packager pkgr = new Packager();
+        pkg.setPkgr(pkgr);
+        pkgr.setKeyType(DataType.CHARARRAY);
+        pkg.setNumInps(1);
+        pkgr.setInner(new boolean[] { false });
+        mro.reducePlan.add(pkg);
+
+        PhysicalPlan buildPlan = new PhysicalPlan();
+        POProject keys = new POProject(newKey(mr));
+        keys.setColumn(1);
+        keys.setResultType(DataType.BAG);
+        buildPlan.add(keys);
+        List<PhysicalOperator> buildInputs = new ArrayList<PhysicalOperator>();
+        buildInputs.add(keys);
+        String vectorSize = pigContext.getProperties().getProperty(
+                PigConfiguration.PIG_BLOOM_JOIN_VECTOR_SIZE, "8388608");
+        POUserFunc buildBloom = new POUserFunc(newKey(mr), -1, buildInputs,
+                new FuncSpec(BuildBloom.class.getName(),
+                        new String[] { HASH_TYPE, "fixed", vectorSize, NUM_HASH }));
+        buildBloom.setResultType(DataType.BYTEARRAY);
+        buildPlan.add(buildBloom);
+        buildPlan.connect(keys, buildBloom);
+        List<PhysicalPlan> buildPlans = new ArrayList<PhysicalPlan>();
+        buildPlans.add(buildPlan);
+        List<Boolean> buildFlat = new ArrayList<Boolean>();
+        buildFlat.add(false);
+        mro.reducePlan.addAsLeaf(new POForEach(newKey(mr), -1, buildPlans, buildFlat));
+
+        POStore st = new POStore(newKey(mr));
+        st.setIsTmpStore(true);
+        st.setSFile(bloomFile);
+        mro.reducePlan.addAsLeaf(st);
+        mro.setReduceDone(true);
+        // Bloom reads the output of the single reducer
+        mro.requestedParallelism = 1;
+
+        mro.UDFs.addAll(mr.UDFs);
+        mro.UDFs.add(BuildBloom.class.getName());
+        return mro;
+    }
+
+    /**
+     * Drops the records whose key is not in the bloom filter before the
+     * local rearrange.
+     */
+    private void addBloomFilter(MapReduceOper mr, POLocalRearrange lr, FileSpec bloomFile)
+            throws Exception {
+        PhysicalPlan filterPlan = new PhysicalPlan();
+        List<PhysicalOperator> keys = new ArrayList<PhysicalOperator>();
+        for (PhysicalPlan keyPlan : lr.getPlans()) {
+            PhysicalPlan copy = keyPlan.clone();
+            keys.add(copy.getLeaves().get(0));
+            filterPlan.merge(copy);
+        }
+        POUserFunc bloom = new POUserFunc(newKey(mr), -1, keys,
+                new FuncSpec(Bloom.class.getName(), bloomFile.getFileName()));
+        bloom.setResultType(DataType.BOOLEAN);
+        filterPlan.add(bloom);
+        for (PhysicalOperator key : keys) {
+            filterPlan.connect(key, bloom);
+        }
+
+        POFilter filter = new POFilter(newKey(mr));
+        filter.setPlan(filterPlan);
+        filter.setResultType(DataType.BAG);
+        filter.addOriginalLocation(lr.getAlias(), lr.getOriginalLocations());
+
+        PhysicalOperator pred = mr.mapPlan.getPredecessors(lr).get(0);
+        mr.mapPlan.add(filter);
+        mr.mapPlan.disconnect(pred, lr);
+        mr.mapPlan.connect(pred, filter);
+        mr.mapPlan.connect(filter, lr);
+        mr.UDFs.add(Bloom.class.getName());
+    }
+}
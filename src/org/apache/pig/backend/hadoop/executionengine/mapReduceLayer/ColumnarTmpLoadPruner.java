@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSplit;
+import org.apache.pig.impl.io.ColumnarInterStorage;
+import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * Temporary files don't have a schema, so the logical column pruner can't
+ * push projections into their loads. When they are stored with
+ * {@link ColumnarInterStorage}, this optimizer looks at the map plans that
+ * start with loading a temporary file and go through filters, and splits,
+ * into foreachs, and makes the load only read the columns those operators
+ * project. The projections are renumbered to match the narrower tuples.
+ */
+class ColumnarTmpLoadPruner extends MROpPlanVisitor {
+
+    private Log log = LogFactory.getLog(getClass());
+
+    ColumnarTmpLoadPruner(MROperPlan plan) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        for (PhysicalOperator root : mr.mapPlan.getRoots()) {
+            if (root instanceof POLoad) {
+                POLoad load = (POLoad) root;
+                FuncSpec funcSpec = load.getLFile().getFuncSpec();
+                if (load.isTmpLoad()
+                        && ColumnarInterStorage.class.getName().equals(funcSpec.getClassName())
+                        && funcSpec.getCtorArgs() == null) {
+                    prune(mr.mapPlan, load);
+                }
+            }
+        }
+    }
+
+    private void prune(PhysicalPlan mapPlan, POLoad load) {
+        List<PhysicalPlan> exprPlans = new ArrayList<PhysicalPlan>();
+        if (!collectInputPlans(mapPlan, mapPlan.getSuccessors(load), exprPlans)) {
+            return;
+        }
+
+        // the projections of the input tuple are the roots of the plans
+        List<POProject> projects = new ArrayList<POProject>();
+        TreeSet<Integer> columns = new TreeSet<Integer>();
+        for (PhysicalPlan exprPlan : exprPlans) {
+            for (PhysicalOperator root : exprPlan.getRoots()) {
+                if (root instanceof POProject) {
+                    POProject project = (POProject) root;
+                    if (project.isStar() || project.isProjectToEnd()) {
+                        return;
+                    }
+                    projects.add(project);
+                    columns.addAll(project.getColumns());
+                } else if (!(root instanceof ConstantExpression)) {
+                    return;
+                }
+            }
+        }
+
+        List<Integer> required = new ArrayList<Integer>(columns);
+        for (POProject project : projects) {
+            ArrayList<Integer> renumbered = new ArrayList<Integer>();
+            for (Integer column : project.getColumns()) {
+                renumbered.add(required.indexOf(column));
+            }
+            project.setColumns(renumbered);
+        }
+        FileSpec lFile = load.getLFile();
+        // the store of the previous job shares the FileSpec, so it is replaced
+        // rather than changed
+        load.setLFile(new FileSpec(lFile.getFileName(), new FuncSpec(
+                ColumnarInterStorage.class.getName(),
+                new String[] { ColumnarInterStorage.toColumnsArg(required) })));
+        log.info("Only loading columns " + required + " of " + lFile.getFileName());
+    }
+
+    /**
+     * Collects the expression plans of the filters, and of the foreachs that
+     * end them, the loaded tuples go through. Splits are followed into each
+     * of their plans.
+     * @return false if the tuples reach another operator
+     */
+    private boolean collectInputPlans(PhysicalPlan plan, List<PhysicalOperator> consumers,
+            List<PhysicalPlan> exprPlans) {
+        if (consumers == null || consumers.isEmpty()) {
+            return false;
+        }
+        for (PhysicalOperator op : consumers) {
+            if (op instanceof POForEach) {
+                exprPlans.addAll(((POForEach) op).getInputPlans());
+            } else if (op instanceof POFilter) {
+                exprPlans.add(((POFilter) op).getPlan());
+                if (!collectInputPlans(plan, plan.getSuccessors(op), exprPlans)) {
+                    return false;
+                }
+            } else if (op instanceof POSplit) {
+                for (PhysicalPlan subPlan : ((POSplit) op).getPlans()) {
+                    if (!collectInputPlans(subPlan, subPlan.getRoots(), exprPlans)) {
+                        return false;
+                    }
+                }
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+}
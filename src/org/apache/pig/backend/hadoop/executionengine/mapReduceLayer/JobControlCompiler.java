@@ -18,7 +18,7 @@
 package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -36,6 +36,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -106,6 +108,7 @@ import org.apache.pig.impl.io.NullableFloatWritable;
 import org.apache.pig.impl.io.NullableIntWritable;
 import org.apache.pig.impl.io.NullableLongWritable;
 import org.apache.pig.impl.io.NullablePartitionWritable;
+import org.apache.pig.impl.io.NullableSortKeyTuple;
 import org.apache.pig.impl.io.NullableText;
 import org.apache.pig.impl.io.NullableTuple;
 import org.apache.pig.impl.io.PigNullableWritable;
@@ -115,6 +118,7 @@ import org.apache.pig.impl.plan.VisitorException;
 import org.apache.pig.impl.util.JarManager;
 import org.apache.pig.impl.util.ObjectSerializer;
 import org.apache.pig.impl.util.Pair;
+import org.apache.pig.impl.util.StatisticsFilter;
 import org.apache.pig.impl.util.UDFContext;
 import org.apache.pig.impl.util.Utils;
 import org.apache.pig.tools.pigstats.mapreduce.MRPigStatsUtil;
@@ -498,6 +502,7 @@ public class JobControlCompiler{
         ArrayList<List<OperatorKey>> inpTargets = new ArrayList<List<OperatorKey>>();
         ArrayList<String> inpSignatureLists = new ArrayList<String>();
         ArrayList<Long> inpLimits = new ArrayList<Long>();
+        ArrayList<StatisticsFilter> inpStatisticsFilters = new ArrayList<StatisticsFilter>();
         ArrayList<POStore> storeLocations = new ArrayList<POStore>();
         Path tmpLocation = null;
 
@@ -565,6 +570,7 @@ public class JobControlCompiler{
                     inpTargets.add(ldSucKeys);
                     inpSignatureLists.add(ld.getSignature());
                     inpLimits.add(ld.getLimit());
+                    inpStatisticsFilters.add(ld.getStatisticsFilter());
                     //Remove the POLoad from the plan
                     if (!pigContext.inIllustrator)
                         mro.mapPlan.remove(ld);
@@ -610,16 +616,21 @@ public class JobControlCompiler{
                         putJarOnClassPathThroughDistributedCache(pigContext, conf, new File(scriptJar).toURI().toURL());
                     }
 
-                    //Create the jar of all functions and classes required
-                    File submitJarFile = File.createTempFile("Job", ".jar");
-                    log.info("creating jar file "+submitJarFile.getName());
-                    // ensure the job jar is deleted on exit
-                    submitJarFile.deleteOnExit();
-                    FileOutputStream fos = new FileOutputStream(submitJarFile);
-                    JarManager.createJar(fos, mro.UDFs, pigContext);
-                    log.info("jar file "+submitJarFile.getName()+" created");
-                    //Start setting the JobConf properties
-                    conf.set("mapred.jar", submitJarFile.getPath());
+                    //Create the jar of all functions and classes required, or
+                    //reuse the one of an earlier job with the same contents
+                    String jarKey = JarManager.getJobJarKey(mro.UDFs, pigContext);
+                    Path cachedJar = null;
+                    if (conf.getBoolean(PigConfiguration.PIG_USER_CACHE_ENABLED, false)
+                            && !JarManager.usesJobDirectory(mro.UDFs, pigContext)) {
+                        cachedJar = getJobJarFromCache(pigContext, conf, jarKey, mro.UDFs);
+                    }
+                    if (cachedJar != null) {
+                        DistributedCache.addFileToClassPath(cachedJar, conf);
+                    } else {
+                        File submitJarFile = JarManager.getJobJar(jarKey, mro.UDFs, pigContext);
+                        //Start setting the JobConf properties
+                        conf.set("mapred.jar", submitJarFile.getPath());
+                    }
                 }
             }
 
@@ -630,6 +641,7 @@ public class JobControlCompiler{
             conf.set("pig.inpTargets", ObjectSerializer.serialize(inpTargets));
             conf.set("pig.inpSignatures", ObjectSerializer.serialize(inpSignatureLists));
             conf.set("pig.inpLimits", ObjectSerializer.serialize(inpLimits));
+            conf.set(PigInputFormat.PIG_INPUT_STATISTICS_FILTERS, ObjectSerializer.serialize(inpStatisticsFilters));
             conf.set("pig.pigContext", ObjectSerializer.serialize(pigContext));
             conf.set("udf.import.list", ObjectSerializer.serialize(PigContext.getPackageImportList()));
             // this is for unit tests since some don't create PigServer
@@ -809,8 +821,10 @@ public class JobControlCompiler{
                 if (mro.customPartitioner != null)
                     nwJob.setPartitionerClass(PigContext.resolveClassName(mro.customPartitioner));
 
-                if(!pigContext.inIllustrator)
+                if(!pigContext.inIllustrator) {
+                    SkewedKeyDetector.enable(mro, conf, pigContext);
                     conf.set("pig.mapPlan", ObjectSerializer.serialize(mro.mapPlan));
+                }
                 if(mro.isEndOfAllInputSetInMap()) {
                     // this is used in Map.close() to decide whether the
                     // pipeline needs to be rerun one more time in the close()
@@ -883,6 +897,11 @@ public class JobControlCompiler{
                 } else {
                     conf.set("pig.sortOrder",
                             ObjectSerializer.serialize(mro.getSortOrder()));
+                    if (useSortKeyPrefix(mro, pack, conf)) {
+                        // PigTupleSortComparator compares the prefixes first
+                        nwJob.setMapperClass(PigMapReduce.MapWithSortKeyPrefix.class);
+                        nwJob.setMapOutputKeyClass(NullableSortKeyTuple.class);
+                    }
                 }
             }
 
@@ -1286,6 +1305,23 @@ public class JobControlCompiler{
         }
     }
 
+    /**
+     * Keys are written with a sort prefix for order by on more than one
+     * column, if nothing but the plain map writes them and nothing reads them
+     * back before the sort.
+     */
+    private boolean useSortKeyPrefix(MapReduceOper mro, POPackage pack, Configuration conf) {
+        return conf.getBoolean(PigConfiguration.PIG_SORT_KEY_PREFIX, true)
+                && !pigContext.inIllustrator
+                && pack != null
+                && pack.getPkgr().getKeyType() == DataType.TUPLE
+                && mro.getSortOrder() != null && mro.getSortOrder().length > 1
+                && !mro.getUseSecondaryKey()
+                && mro.combinePlan.isEmpty() && !mro.needsDistinctCombiner()
+                && !mro.isSkewedJoin()
+                && !mro.isCounterOperation();
+    }
+
     private void selectComparator(
             MapReduceOper mro,
             byte keyType,
@@ -1665,6 +1701,63 @@ public class JobControlCompiler{
         }
     }
 
+    /**
+     * Look up the job jar with the given key in the user's jar cache, and
+     * put it there if it is missing. The jar is written under a temporary
+     * name and then renamed, so that concurrent scripts never see a partial
+     * jar.
+     * @param pigContext the pig context
+     * @param conf the job conf
+     * @param jarKey the key of the job jar contents
+     * @param funcs the functions used in the job
+     * @return the path of the job jar in the cache, or null if the cache
+     * could not be used
+     */
+    private static Path getJobJarFromCache(PigContext pigContext,
+            Configuration conf,
+            String jarKey,
+            Set<String> funcs) {
+        try {
+            Path stagingDir = getCacheStagingDir(conf);
+            FileSystem fs = FileSystem.get(conf);
+            Path cacheDir = new Path(stagingDir, jarKey);
+            Path cacheFile = new Path(cacheDir, "job.jar");
+            if (fs.exists(cacheFile)) {
+                log.info("Found job jar " + jarKey + " in jar cache at " + stagingDir);
+                fs.setTimes(cacheFile, -1, System.currentTimeMillis());
+                return cacheFile;
+            }
+            log.info("Job jar " + jarKey + " was not found in jarcache at " + stagingDir);
+            File jobJar = JarManager.getJobJar(jarKey, funcs, pigContext);
+            fs.mkdirs(cacheDir, FileLocalizer.OWNER_ONLY_PERMS);
+            Path tmpFile = new Path(cacheDir, "job.jar." + UUID.randomUUID());
+            OutputStream os = null;
+            InputStream is = null;
+            try {
+                os = FileSystem.create(fs, tmpFile, FileLocalizer.OWNER_ONLY_PERMS);
+                is = new FileInputStream(jobJar);
+                IOUtils.copyBytes(is, os, 4096, true);
+            } finally {
+                org.apache.commons.io.IOUtils.closeQuietly(is);
+                // IOUtils should not close stream to HDFS quietly
+                if (os != null) {
+                    os.close();
+                }
+            }
+            if (!fs.rename(tmpFile, cacheFile)) {
+                // another script put the same jar in the cache meanwhile
+                fs.delete(tmpFile, false);
+                if (!fs.exists(cacheFile)) {
+                    return null;
+                }
+            }
+            return cacheFile;
+        } catch (Exception e) {
+            log.info("Unable to use the jar cache for the job jar ", e);
+            return null;
+        }
+    }
+
     /**
      * copy the file to hdfs in a temporary path
      * @param pigContext the pig context
@@ -94,6 +94,12 @@ public class MapReduceLauncher extends Launcher{
 
     private static final Log log = LogFactory.getLog(MapReduceLauncher.class);
 
+    // The launcher wakes up as soon as a job changes state. In between, it
+    // asks for the progress of the running jobs less and less often, from
+    // MIN_PROGRESS_INTERVAL to MAX_PROGRESS_INTERVAL ms.
+    private static final long MIN_PROGRESS_INTERVAL = 500;
+    private static final long MAX_PROGRESS_INTERVAL = 5000;
+
     private boolean aggregateWarning = false;
 
     @Override
@@ -151,7 +157,6 @@ public class MapReduceLauncher extends Launcher{
             ExecException,
             JobCreationException,
             Exception {
-        long sleepTime = 500;
         aggregateWarning = "true".equalsIgnoreCase(pc.getProperties().getProperty("aggregate.warning"));
         MROperPlan mrp = compile(php, pc);
 
@@ -302,11 +307,14 @@ public class MapReduceLauncher extends Launcher{
                 // a flag whether to warn failure during the loop below, so users can notice failure earlier.
                 boolean warn_failure = true;
 
+                long progressInterval = MIN_PROGRESS_INTERVAL;
+                long nextProgressCheck = System.currentTimeMillis() + progressInterval;
+                int numJobsDone = 0;
+
                 // Now wait, till we are finished.
                 while(!jc.allFinished()){
 
-                    try { jcThread.join(sleepTime); }
-                    catch (InterruptedException e) {}
+                    waitForJobControl(nextProgressCheck - System.currentTimeMillis());
 
                     List<Job> jobsAssignedIdInThisRun = new ArrayList<Job>();
 
@@ -342,6 +350,19 @@ public class MapReduceLauncher extends Launcher{
                     }
                     jobsWithoutIds.removeAll(jobsAssignedIdInThisRun);
 
+                    // a job changing state restarts the progress checks at
+                    // the shortest interval
+                    int jobsDone = jc.getSuccessfulJobs().size() + jc.getFailedJobs().size();
+                    if (!jobsAssignedIdInThisRun.isEmpty() || jobsDone != numJobsDone) {
+                        numJobsDone = jobsDone;
+                        progressInterval = MIN_PROGRESS_INTERVAL;
+                    } else if (System.currentTimeMillis() < nextProgressCheck) {
+                        continue;
+                    } else {
+                        progressInterval = Math.min(MAX_PROGRESS_INTERVAL, progressInterval * 2);
+                    }
+                    nextProgressCheck = System.currentTimeMillis() + progressInterval;
+
                     double prog = (numMRJobsCompl+calculateProgress(jc, statsJobClient))/totalMRJobs;
                     if (notifyProgress(prog, lastProg)) {
                         List<Job> runnJobs = jc.getRunningJobs();
@@ -495,6 +516,7 @@ public class MapReduceLauncher extends Launcher{
                 }
 
                 getStats(job, statsJobClient, false, pc);
+                warnSkewedKeys(job);
                 if (aggregateWarning) {
                     computeWarningAggregate(job, statsJobClient, warningAggMap);
                 }
@@ -547,6 +569,27 @@ public class MapReduceLauncher extends Launcher{
         return pigStats;
     }
 
+    /**
+     * Wait until a job of the job control changes state, or for at most the
+     * given time. The job control notifies waiting threads when it has
+     * submitted or seen the end of a job.
+     * @param maxWait the longest time to wait, in ms
+     */
+    private void waitForJobControl(long maxWait) {
+        if (maxWait <= 0) {
+            return;
+        }
+        synchronized (jc) {
+            if (jc.allFinished()) {
+                return;
+            }
+            try {
+                jc.wait(maxWait);
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+
     /**
      * If stop_on_failure is enabled and any job has failed, an ExecException is thrown.
      * @param stop_on_failure whether it's enabled.
@@ -638,6 +681,14 @@ public class MapReduceLauncher extends Launcher{
         //display the warning message(s) from the MRCompiler
         comp.getMessageCollector().logMessages(MessageType.Warning, aggregateWarning, log);
 
+        // Filter the larger input of joins with a bloom filter of the keys
+        // of the smaller one. This adds jobs, which the combiner may be used in.
+        if (!pc.inIllustrator && Boolean.valueOf(pc.getProperties().getProperty(
+                PigConfiguration.PIG_BLOOM_JOIN, "true"))) {
+            BloomJoinOptimizer bjo = new BloomJoinOptimizer(plan, pc);
+            bjo.visit();
+        }
+
         String lastInputChunkSize =
             pc.getProperties().getProperty(
                 "last.input.chunksize", JoinPackager.DEFAULT_CHUNK_SIZE);
@@ -706,6 +757,13 @@ public class MapReduceLauncher extends Launcher{
         NoopStoreRemover sRem = new NoopStoreRemover(plan);
         sRem.visit();
 
+        // only read the columns of columnar temporary files that are used.
+        // This has to run after the loads and stores between jobs are final.
+        if (!pc.inIllustrator) {
+            ColumnarTmpLoadPruner tmpPruner = new ColumnarTmpLoadPruner(plan);
+            tmpPruner.visit();
+        }
+
         // check whether stream operator is present
         // after MultiQueryOptimizer because it can shift streams from
         // map to reduce, etc.
@@ -745,6 +803,14 @@ public class MapReduceLauncher extends Launcher{
         }
     }
 
+    private void warnSkewedKeys(Job job) {
+        try {
+            SkewedKeyDetector.warn(job.getJobConf(), job.getJobConf().getNumReduceTasks());
+        } catch (IOException ioe) {
+            log.debug("Unable to read the reports of skewed keys.", ioe);
+        }
+    }
+
     @SuppressWarnings("deprecation")
     void computeWarningAggregate(Job job, JobClient jobClient, Map<Enum, Long> aggMap) {
         JobID mapRedJobID = job.getAssignedJobID();
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCollectedGroup;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCounter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeCogroup;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PORank;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.backend.hadoop.executionengine.util.MapRedUtil;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.plan.DependencyOrderWalker;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.util.ObjectSerializer;
+
+/**
+ * Runs the head of a map plan on several threads. The plan is cut after the
+ * last filter or foreach calling a UDF in the chain of filters and foreachs
+ * starting at the root. Every worker thread runs its own copy of the plan
+ * up to the cut, taking batches of input tuples from a bounded queue and
+ * handing batches of results back to the map thread, which runs the rest
+ * of the plan. The order of the tuples within the split is not preserved.
+ */
+class ParallelMapPipeline {
+    private static final Log log = LogFactory.getLog(ParallelMapPipeline.class);
+
+    private static final long POLL_MS = 10L;
+
+    // marks the end of the input of a worker, and of its output
+    private static final List<Tuple> END = Collections.emptyList();
+
+    /**
+     * Receives the output of the head of the plan on the map thread.
+     */
+    interface OutputHandler {
+        void process(Tuple t) throws IOException, InterruptedException;
+    }
+
+    private final Configuration conf;
+    private final OperatorKey rootKey;
+    private final OperatorKey cutKey;
+    private final int numThreads;
+    private final int batchSize;
+    private final OutputHandler handler;
+
+    private final BlockingQueue<List<Tuple>> inputQueue;
+    private final BlockingQueue<List<Tuple>> outputQueue;
+    private final ExecutorService workers;
+    private volatile Throwable failure = null;
+    private List<Tuple> batch;
+    private int finishedWorkers = 0;
+
+    ParallelMapPipeline(Configuration conf, OperatorKey rootKey, OperatorKey cutKey,
+            int numThreads, int batchSize, OutputHandler handler) {
+        this.conf = conf;
+        this.rootKey = rootKey;
+        this.cutKey = cutKey;
+        this.numThreads = numThreads;
+        this.batchSize = batchSize;
+        this.handler = handler;
+        inputQueue = new ArrayBlockingQueue<List<Tuple>>(2 * numThreads);
+        outputQueue = new ArrayBlockingQueue<List<Tuple>>(2 * numThreads);
+        batch = new ArrayList<Tuple>(batchSize);
+        workers = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "PigMapWorker-" + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        for (int i = 0; i < numThreads; i++) {
+            workers.execute(new Worker());
+        }
+        log.info("Running the map plan up to " + cutKey + " on " + numThreads + " threads");
+    }
+
+    /**
+     * Finds where to cut the map plan for running its head on several
+     * threads.
+     * @param mp map plan
+     * @param roots roots the input of the split is attached to
+     * @return the last operator of the head of the plan, or null if the
+     *         plan cannot be run on several threads
+     */
+    static PhysicalOperator getCutOperator(PhysicalPlan mp, PhysicalOperator[] roots)
+            throws VisitorException {
+        if (roots == null || roots.length != 1 || roots[0] == null) {
+            return null;
+        }
+        // these need the input of the split in order
+        if (PlanHelper.containsPhysicalOperator(mp, POMergeJoin.class)
+                || PlanHelper.containsPhysicalOperator(mp, POMergeCogroup.class)
+                || PlanHelper.containsPhysicalOperator(mp, POCollectedGroup.class)
+                || PlanHelper.containsPhysicalOperator(mp, PORank.class)
+                || PlanHelper.containsPhysicalOperator(mp, POCounter.class)) {
+            return null;
+        }
+        PhysicalOperator cut = null;
+        PhysicalOperator op = roots[0];
+        while (op instanceof POFilter || op instanceof POForEach) {
+            if (callsUDF(op)) {
+                cut = op;
+            }
+            List<PhysicalOperator> succs = mp.getSuccessors(op);
+            if (succs == null || succs.size() != 1
+                    || mp.getPredecessors(succs.get(0)).size() != 1) {
+                break;
+            }
+            op = succs.get(0);
+        }
+        return cut;
+    }
+
+    private static boolean callsUDF(PhysicalOperator op) throws VisitorException {
+        List<PhysicalPlan> plans;
+        if (op instanceof POFilter) {
+            plans = Collections.singletonList(((POFilter) op).getPlan());
+        } else {
+            plans = ((POForEach) op).getInputPlans();
+        }
+        for (PhysicalPlan plan : plans) {
+            if (PlanHelper.containsPhysicalOperator(plan, POUserFunc.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queues a tuple of the split, and processes the results ready.
+     */
+    void add(Tuple t) throws IOException, InterruptedException {
+        batch.add(t);
+        if (batch.size() >= batchSize) {
+            submit(batch);
+            batch = new ArrayList<Tuple>(batchSize);
+        }
+    }
+
+    /**
+     * Processes the tuples still queued, and stops the workers.
+     */
+    void finish() throws IOException, InterruptedException {
+        try {
+            if (!batch.isEmpty()) {
+                submit(batch);
+                batch = new ArrayList<Tuple>(batchSize);
+            }
+            for (int i = 0; i < numThreads; i++) {
+                submit(END);
+            }
+            while (finishedWorkers < numThreads) {
+                List<Tuple> out = outputQueue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (out != null) {
+                    process(out);
+                }
+                checkFailure();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Stops the workers without processing the tuples still queued.
+     */
+    void abort() {
+        workers.shutdownNow();
+    }
+
+    private void submit(List<Tuple> tuples) throws IOException, InterruptedException {
+        while (!inputQueue.offer(tuples, POLL_MS, TimeUnit.MILLISECONDS)) {
+            drain();
+        }
+        drain();
+    }
+
+    private void drain() throws IOException, InterruptedException {
+        List<Tuple> out;
+        while ((out = outputQueue.poll()) != null) {
+            process(out);
+        }
+        checkFailure();
+    }
+
+    private void process(List<Tuple> out) throws IOException, InterruptedException {
+        if (out == END) {
+            finishedWorkers++;
+            return;
+        }
+        for (Tuple t : out) {
+            handler.process(t);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t == null) {
+            return;
+        }
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        int errCode = 2055;
+        String msg = "Received Error while processing the map plan.";
+        throw new ExecException(msg, errCode, PigException.BUG, t);
+    }
+
+    private class Worker implements Runnable {
+        private PhysicalPlan plan;
+        private PhysicalOperator root;
+        private PhysicalOperator cut;
+
+        @Override
+        public void run() {
+            try {
+                setUp();
+                while (true) {
+                    List<Tuple> in = inputQueue.take();
+                    if (in == END) {
+                        break;
+                    }
+                    List<Tuple> out = new ArrayList<Tuple>(in.size());
+                    for (Tuple t : in) {
+                        runPipeline(t, out);
+                    }
+                    if (!out.isEmpty()) {
+                        outputQueue.put(out);
+                    }
+                }
+                UDFFinishVisitor finisher = new UDFFinishVisitor(plan,
+                        new DependencyOrderWalker<PhysicalOperator, PhysicalPlan>(plan));
+                finisher.visit();
+                outputQueue.put(END);
+            } catch (InterruptedException e) {
+                // the map thread gave up
+            } catch (Throwable t) {
+                if (failure == null) {
+                    failure = t;
+                }
+            }
+        }
+
+        private void setUp() throws IOException {
+            // the job conf and UDF context are per thread
+            PigMapReduce.sJobConfInternal.set(conf);
+            MapRedUtil.setupUDFContext(conf);
+            plan = (PhysicalPlan) ObjectSerializer.deserialize(conf.get("pig.mapPlan"));
+            root = plan.getOperator(rootKey);
+            cut = plan.getOperator(cutKey);
+        }
+
+        private void runPipeline(Tuple t, List<Tuple> out) throws ExecException {
+            root.attachInput(t);
+            while (true) {
+                Result res = cut.getNextTuple();
+                if (res.returnStatus == POStatus.STATUS_OK) {
+                    out.add((Tuple) res.result);
+                } else if (res.returnStatus == POStatus.STATUS_EOP) {
+                    return;
+                } else if (res.returnStatus == POStatus.STATUS_ERR) {
+                    String errMsg;
+                    if (res.result != null) {
+                        errMsg = "Received Error while " +
+                        "processing the map plan: " + res.result;
+                    } else {
+                        errMsg = "Received Error while " +
+                        "processing the map plan.";
+                    }
+                    int errCode = 2055;
+                    throw new ExecException(errMsg, errCode, PigException.BUG);
+                }
+            }
+        }
+    }
+}
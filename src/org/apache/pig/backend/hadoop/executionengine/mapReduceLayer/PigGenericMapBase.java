@@ -21,6 +21,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 
 import org.joda.time.DateTimeZone;
 
@@ -32,6 +33,7 @@ import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.log4j.PropertyConfigurator;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
@@ -44,10 +46,13 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelp
 import org.apache.pig.backend.hadoop.executionengine.util.MapRedUtil;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.SchemaTupleBackend;
+import org.apache.pig.data.SpillMerger;
+import org.apache.pig.data.StringDictionary;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.io.PigNullableWritable;
+import org.apache.pig.impl.io.SpillFiles;
 import org.apache.pig.impl.plan.DependencyOrderWalker;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
@@ -92,6 +97,9 @@ public abstract class PigGenericMapBase extends Mapper<Text, Tuple, PigNullableW
     PigContext pigContext = null;
     private volatile boolean initialized = false;
 
+    // runs the head of the map plan on several threads, if enabled
+    private ParallelMapPipeline parallelPipeline = null;
+
     /**
      * for local map/reduce simulation
      * @param plan the map plan
@@ -109,9 +117,22 @@ public abstract class PigGenericMapBase extends Mapper<Text, Tuple, PigNullableW
         super.cleanup(context);
         if(errorInMap) {
             //error in map - returning
+            if (parallelPipeline != null) {
+                parallelPipeline.abort();
+            }
             return;
         }
 
+        if (parallelPipeline != null) {
+            try {
+                parallelPipeline.finish();
+            } catch (IOException e) {
+                errorInMap = true;
+                throw e;
+            }
+            parallelPipeline = null;
+        }
+
         if(PigMapReduce.sJobConfInternal.get().get(JobControlCompiler.END_OF_INP_IN_MAP, "false").equals("true")) {
             // If there is a stream in the pipeline or if this map job belongs to merge-join we could
             // potentially have more to process - so lets
@@ -145,6 +166,10 @@ public abstract class PigGenericMapBase extends Mapper<Text, Tuple, PigNullableW
             throw new VisitorException(msg, errCode, PigException.BUG, e);
         }
 
+        if (!inIllustrator) {
+            SkewedKeyDetector.report(mp, PigMapReduce.sJobConfInternal.get());
+        }
+
         mp = null;
 
         PhysicalOperator.setReporter(null);
@@ -161,7 +186,11 @@ public abstract class PigGenericMapBase extends Mapper<Text, Tuple, PigNullableW
         super.setup(context);
 
         Configuration job = context.getConfiguration();
-        SpillableMemoryManager.configure(ConfigurationUtil.toProperties(job));
+        Properties jobProperties = ConfigurationUtil.toProperties(job);
+        SpillableMemoryManager.configure(jobProperties);
+        SpillFiles.configure(jobProperties);
+        SpillMerger.configure(jobProperties);
+        StringDictionary.configure(jobProperties);
         PigMapReduce.sJobContext = context;
         PigMapReduce.sJobConfInternal.set(context.getConfiguration());
         PigMapReduce.sJobConf = context.getConfiguration();
@@ -207,6 +236,11 @@ public abstract class PigGenericMapBase extends Mapper<Text, Tuple, PigNullableW
             }
             roots = targetOpsAsList.toArray(new PhysicalOperator[1]);
             leaf = mp.getLeaves().get(0);
+
+            int threads = job.getInt(PigConfiguration.PIG_EXEC_MAP_THREADS, 1);
+            if (threads > 1 && !inIllustrator) {
+                setUpParallelPipeline(job, threads);
+            }
         }
 
         PigStatusReporter pigStatusReporter = PigStatusReporter.getInstance();
@@ -221,6 +255,45 @@ public abstract class PigGenericMapBase extends Mapper<Text, Tuple, PigNullableW
         }
     }
 
+    /**
+     * Runs the head of the map plan, up to the last filter or foreach
+     * calling a UDF, on several threads when the plan allows it.
+     */
+    private void setUpParallelPipeline(Configuration job, int threads) throws IOException {
+        if (job.get(JobControlCompiler.END_OF_INP_IN_MAP, "false").equals("true")
+                || job.get("pig.mapPlan") == null) {
+            return;
+        }
+        final PhysicalOperator cut = ParallelMapPipeline.getCutOperator(mp, roots);
+        if (cut == null) {
+            log.info("Map plan can not be run on multiple threads");
+            return;
+        }
+        ParallelMapPipeline.OutputHandler handler;
+        if (cut == leaf) {
+            handler = new ParallelMapPipeline.OutputHandler() {
+                @Override
+                public void process(Tuple t) throws IOException, InterruptedException {
+                    collect(outputCollector, t);
+                }
+            };
+        } else {
+            // the rest of the plan takes the results of the workers as input
+            final PhysicalOperator next = mp.getSuccessors(cut).get(0);
+            next.setInputs(null);
+            handler = new ParallelMapPipeline.OutputHandler() {
+                @Override
+                public void process(Tuple t) throws IOException, InterruptedException {
+                    next.attachInput(t);
+                    runPipeline(leaf);
+                }
+            };
+        }
+        int batchSize = job.getInt(PigConfiguration.PIG_EXEC_MAP_THREADS_BATCH_SIZE, 100);
+        parallelPipeline = new ParallelMapPipeline(job, roots[0].getOperatorKey(),
+                cut.getOperatorKey(), threads, batchSize, handler);
+    }
+
     /**
      * The map function that attaches the inpTuple appropriately
      * and executes the map plan if its not empty. Collects the
@@ -264,6 +337,16 @@ public abstract class PigGenericMapBase extends Mapper<Text, Tuple, PigNullableW
             return;
         }
 
+        if (parallelPipeline != null) {
+            try {
+                parallelPipeline.add(tf.newTupleNoCopy(inpTuple.getAll()));
+            } catch (IOException e) {
+                errorInMap = true;
+                throw e;
+            }
+            return;
+        }
+
         for (PhysicalOperator root : roots) {
             if (inIllustrator) {
                 if (root != null) {
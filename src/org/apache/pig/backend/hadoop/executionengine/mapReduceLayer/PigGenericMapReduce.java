@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Properties;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -46,11 +47,15 @@ import org.apache.pig.backend.hadoop.executionengine.util.MapRedUtil;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.SchemaTupleBackend;
+import org.apache.pig.data.SpillMerger;
+import org.apache.pig.data.StringDictionary;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.io.NullablePartitionWritable;
+import org.apache.pig.impl.io.NullableSortKeyTuple;
 import org.apache.pig.impl.io.NullableTuple;
 import org.apache.pig.impl.io.PigNullableWritable;
+import org.apache.pig.impl.io.SpillFiles;
 import org.apache.pig.impl.plan.DependencyOrderWalker;
 import org.apache.pig.impl.plan.VisitorException;
 import org.apache.pig.impl.util.ObjectSerializer;
@@ -252,6 +257,44 @@ public class PigGenericMapReduce {
         }
     }
 
+    /**
+     * Used by order by on multiple columns. The keys are written with a
+     * prefix of their leading fields so that PigTupleSortComparator can
+     * compare most of them without looking at the fields.
+     */
+    public static class MapWithSortKeyPrefix extends Map {
+
+        private boolean[] sortOrder;
+
+        @Override
+        public void setup(Context context) throws IOException, InterruptedException {
+            super.setup(context);
+            sortOrder = (boolean[]) ObjectSerializer.deserialize(
+                    context.getConfiguration().get("pig.sortOrder"));
+        }
+
+        @Override
+        public void collect(Context oc, Tuple tuple)
+                throws InterruptedException, IOException {
+
+            Byte index = (Byte)tuple.get(0);
+            Tuple keyTuple = (Tuple)tuple.get(1);
+            NullableSortKeyTuple key;
+            if (keyTuple == null) {
+                key = new NullableSortKeyTuple();
+                key.setNull(true);
+            } else {
+                key = new NullableSortKeyTuple(keyTuple, sortOrder);
+            }
+            NullableTuple val = new NullableTuple((Tuple)tuple.get(2));
+
+            key.setIndex(index);
+            val.setIndex(index);
+
+            oc.write(key, val);
+        }
+    }
+
     abstract public static class Reduce
             extends Reducer <PigNullableWritable, NullableTuple, PigNullableWritable, Writable> {
 
@@ -305,7 +348,11 @@ public class PigGenericMapReduce {
             if (inIllustrator)
                 pack = getPack(context);
             Configuration jConf = context.getConfiguration();
-            SpillableMemoryManager.configure(ConfigurationUtil.toProperties(jConf));
+            Properties jobProperties = ConfigurationUtil.toProperties(jConf);
+            SpillableMemoryManager.configure(jobProperties);
+            SpillFiles.configure(jobProperties);
+            SpillMerger.configure(jobProperties);
+            StringDictionary.configure(jobProperties);
             sJobContext = context;
             sJobConfInternal.set(context.getConfiguration());
             sJobConf = context.getConfiguration();
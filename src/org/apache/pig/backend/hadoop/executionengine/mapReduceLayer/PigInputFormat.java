@@ -37,7 +37,9 @@ import org.apache.pig.FuncSpec;
 import org.apache.pig.IndexableLoadFunc;
 import org.apache.pig.LoadFunc;
 import org.apache.pig.OrderedLoadFunc;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
+import org.apache.pig.SplitStatisticsLoadFunc;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
 import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
@@ -47,6 +49,7 @@ import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.io.FileSpec;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.util.ObjectSerializer;
+import org.apache.pig.impl.util.StatisticsFilter;
 import org.apache.pig.impl.util.UDFContext;
 import org.apache.pig.impl.util.Utils;
 
@@ -57,6 +60,8 @@ public class PigInputFormat extends InputFormat<Text, Tuple> {
 
     public static final String PIG_INPUTS = "pig.inputs";
 
+    public static final String PIG_INPUT_STATISTICS_FILTERS = "pig.inpStatisticsFilters";
+
     /**
      * @deprecated Use {@link UDFContext} instead in the following way to get 
      * the job's {@link Configuration}:
@@ -190,12 +195,17 @@ public class PigInputFormat extends InputFormat<Text, Tuple> {
 
         ArrayList<FileSpec> inputs;
         ArrayList<ArrayList<OperatorKey>> inpTargets;
+        ArrayList<StatisticsFilter> inpStatisticsFilters = null;
         PigContext pigContext;
         try {
             inputs = (ArrayList<FileSpec>) ObjectSerializer
                     .deserialize(conf.get("pig.inputs"));
             inpTargets = (ArrayList<ArrayList<OperatorKey>>) ObjectSerializer
                     .deserialize(conf.get("pig.inpTargets"));
+            if (conf.getBoolean(PigConfiguration.PIG_SPLIT_STATISTICS_PRUNING, true)) {
+                inpStatisticsFilters = (ArrayList<StatisticsFilter>) ObjectSerializer
+                        .deserialize(conf.get(PIG_INPUT_STATISTICS_FILTERS));
+            }
             pigContext = (PigContext) ObjectSerializer.deserialize(conf
                     .get("pig.pigContext"));
             PigContext.setPackageImportList((ArrayList<String>)ObjectSerializer.deserialize(conf.get("udf.import.list")));
@@ -261,6 +271,11 @@ public class PigInputFormat extends InputFormat<Text, Tuple> {
                 List<InputSplit> oneInputSplits = inpFormat.getSplits(
                         HadoopShims.createJobContext(inputSpecificJob.getConfiguration(), 
                                 jobcontext.getJobID()));
+                if (inpStatisticsFilters != null && inpStatisticsFilters.get(i) != null
+                        && loadFunc instanceof SplitStatisticsLoadFunc) {
+                    oneInputSplits = pruneSplits(oneInputSplits, (SplitStatisticsLoadFunc) loadFunc,
+                            inpStatisticsFilters.get(i), inputs.get(i).getFileName());
+                }
                 List<InputSplit> oneInputPigSplits = getPigSplits(
                         oneInputSplits, i, inpTargets.get(i),
                         HadoopShims.getDefaultBlockSize(fs, isFsPath? path: fs.getWorkingDirectory()),
@@ -301,6 +316,26 @@ public class PigInputFormat extends InputFormat<Text, Tuple> {
         return splits;
     }
 
+    /**
+     * Drop the splits whose statistics show that they can't contain a record
+     * passing the filter following the load
+     */
+    private static List<InputSplit> pruneSplits(List<InputSplit> splits,
+            SplitStatisticsLoadFunc loadFunc, StatisticsFilter filter, String location)
+                    throws IOException {
+        List<InputSplit> kept = new ArrayList<InputSplit>(splits.size());
+        for (InputSplit split : splits) {
+            if (filter.canMatch(loadFunc.getSplitStatistics(split))) {
+                kept.add(split);
+            }
+        }
+        if (kept.size() < splits.size()) {
+            log.info("Skipping " + (splits.size() - kept.size()) + " of " + splits.size()
+                    + " input splits for " + location + " which can't match " + filter);
+        }
+        return kept;
+    }
+
     protected List<InputSplit> getPigSplits(List<InputSplit> oneInputSplits, 
             int inputIndex, ArrayList<OperatorKey> targetOps, long blockSize, boolean combinable, Configuration conf)
                     throws IOException, InterruptedException {
@@ -31,6 +31,7 @@ import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.data.TupleRawComparator;
+import org.apache.pig.impl.io.NullableSortKeyTuple;
 import org.apache.pig.impl.io.NullableTuple;
 import org.apache.pig.impl.util.ObjectSerializer;
 
@@ -39,6 +40,7 @@ public class PigTupleSortComparator extends WritableComparator implements Config
     private final Log mLog = LogFactory.getLog(getClass());
     private boolean[] mAsc;
     private boolean mWholeTuple;
+    private boolean mHasPrefix;
     private TupleRawComparator mComparator=null;
 
     public PigTupleSortComparator() {
@@ -65,6 +67,8 @@ public class PigTupleSortComparator extends WritableComparator implements Config
         // If there's only one entry in mAsc, it means it's for the whole
         // tuple. So we can't be looking for each column.
         mWholeTuple = (mAsc.length == 1);
+        // keys written by MapWithSortKeyPrefix start with a sort prefix
+        mHasPrefix = NullableSortKeyTuple.class.equals(jconf.getMapOutputKeyClass());
         try {
             Class<? extends TupleRawComparator> mComparatorClass = TupleFactory.getInstance().tupleRawComparatorClass();
             if (mComparatorClass!=null)
@@ -101,8 +105,19 @@ public class PigTupleSortComparator extends WritableComparator implements Config
     public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
         int rc = 0;
         if (b1[s1] == 0 && b2[s2] == 0) {
-            // skip mNull and mIndex
-            rc = mComparator.compare(b1, s1 + 1, l1 - 2, b2, s2 + 1, l2 - 2);
+            if (mHasPrefix) {
+                rc = compareBytes(b1, s1 + 1, NullableSortKeyTuple.PREFIX_LENGTH,
+                        b2, s2 + 1, NullableSortKeyTuple.PREFIX_LENGTH);
+                if (rc == 0) {
+                    // skip mNull, the prefix and mIndex
+                    int skip = 2 + NullableSortKeyTuple.PREFIX_LENGTH;
+                    rc = mComparator.compare(b1, s1 + 1 + NullableSortKeyTuple.PREFIX_LENGTH, l1 - skip,
+                            b2, s2 + 1 + NullableSortKeyTuple.PREFIX_LENGTH, l2 - skip);
+                }
+            } else {
+                // skip mNull and mIndex
+                rc = mComparator.compare(b1, s1 + 1, l1 - 2, b2, s2 + 1, l2 - 2);
+            }
         } else {
             // for sorting purposes two nulls are equal, null sorts first
             if (b1[s1] != 0 && b2[s2] != 0)
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSplit;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.FileLocalizer;
+import org.apache.pig.impl.util.HeavyHitters;
+
+/**
+ * Finds the keys of groups and joins which have so many records that the
+ * reducer they go to runs much longer than the others. The local
+ * rearranges of the map tasks count their most frequent keys, and report
+ * those which are at least {@link PigConfiguration#PIG_SKEW_DETECTION_THRESHOLD}
+ * of their records in a file of the {@link #REPORT_DIR} directory. When the
+ * job is done, a warning is logged for each key with more records than the
+ * even share of a reducer, and the directory is removed.
+ * <p>
+ * The keys are not reported in counters, as each map task may find other
+ * keys and Hadoop fails the job when it has too many counters.
+ * <p>
+ * Jobs with a combiner are left out, as it already reduces the records of
+ * frequent keys in the map tasks.
+ */
+class SkewedKeyDetector {
+
+    private static final Log log = LogFactory.getLog(SkewedKeyDetector.class);
+
+    /**
+     * The directory the map tasks write the frequent keys they found in,
+     * one file per task.
+     */
+    static final String REPORT_DIR = "pig.skew.detection.dir";
+
+    /**
+     * The number of keys counted by each local rearrange. Every key which is
+     * more than 1% of the records is found.
+     */
+    static final int SKETCH_CAPACITY = 100;
+
+    private static final int MAX_KEY_LENGTH = 40;
+
+    private static final String DEFAULT_THRESHOLD = "0.1";
+
+    private SkewedKeyDetector() {
+    }
+
+    /**
+     * Makes the local rearranges of the map plan count their keys, if the
+     * job is a group or a join without a combiner.
+     */
+    static void enable(MapReduceOper mro, Configuration conf, PigContext pigContext)
+            throws IOException {
+        if (!conf.getBoolean(PigConfiguration.PIG_SKEW_DETECTION, true)
+                || !(mro.isGroupBy() || mro.isCogroup() || mro.isRegularJoin())
+                || mro.customPartitioner != null || !mro.combinePlan.isEmpty()
+                || mro.needsDistinctCombiner()) {
+            return;
+        }
+        for (PhysicalOperator leaf : mro.mapPlan.getLeaves()) {
+            enable(mro.mapPlan, leaf);
+        }
+        conf.set(REPORT_DIR, FileLocalizer.getTemporaryPath(pigContext).toString());
+    }
+
+    private static void enable(PhysicalPlan plan, PhysicalOperator op) {
+        if (op instanceof POLocalRearrange) {
+            ((POLocalRearrange) op).setKeySketchCapacity(SKETCH_CAPACITY);
+        } else if (op instanceof POSplit) {
+            for (PhysicalPlan subPlan : ((POSplit) op).getPlans()) {
+                for (PhysicalOperator leaf : subPlan.getLeaves()) {
+                    enable(subPlan, leaf);
+                }
+            }
+        } else {
+            // the leaf of a map plan with one input is a union
+            List<PhysicalOperator> preds = plan.getPredecessors(op);
+            if (preds != null) {
+                for (PhysicalOperator pred : preds) {
+                    if (pred instanceof POLocalRearrange) {
+                        enable(plan, pred);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the frequent keys the local rearranges of the map plan have
+     * seen, at the end of a map task. Each line of the report is the alias
+     * of a local rearrange and its number of records, followed by a key
+     * for the frequent keys.
+     */
+    static void report(PhysicalPlan mapPlan, Configuration conf) throws IOException {
+        String dir = conf.get(REPORT_DIR);
+        String taskId = conf.get("mapred.task.id");
+        if (dir == null || taskId == null) {
+            return;
+        }
+        double threshold = Double.parseDouble(conf.get(
+                PigConfiguration.PIG_SKEW_DETECTION_THRESHOLD, DEFAULT_THRESHOLD));
+        List<String> lines = new ArrayList<String>();
+        for (POLocalRearrange lr : PlanHelper.getPhysicalOperators(mapPlan,
+                POLocalRearrange.class)) {
+            HeavyHitters<Object> sketch = lr.getKeySketch();
+            String alias = lr.getAlias();
+            if (sketch == null || alias == null) {
+                continue;
+            }
+            lines.add(alias + "\t" + sketch.size());
+            for (Map.Entry<Object, Long> e : sketch.getHeavyHitters(threshold).entrySet()) {
+                lines.add(alias + "\t" + e.getValue() + "\t" + toString(e.getKey()));
+            }
+        }
+        if (lines.isEmpty()) {
+            return;
+        }
+        // named after the task, so that the attempts of a task overwrite
+        // each other's report
+        Path path = new Path(dir, TaskAttemptID.forName(taskId).getTaskID().toString());
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                path.getFileSystem(conf).create(path, true), "UTF-8"));
+        try {
+            for (String line : lines) {
+                out.println(line);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String toString(Object key) {
+        String s = String.valueOf(key).replace('\n', ' ').replace('\r', ' ');
+        return s.length() > MAX_KEY_LENGTH ? s.substring(0, MAX_KEY_LENGTH) + "..." : s;
+    }
+
+    /**
+     * Logs a warning for each reported key which has more records than the
+     * even share of a reducer, and removes the reports.
+     */
+    static void warn(Configuration conf, int numReducers) throws IOException {
+        String dir = conf.get(REPORT_DIR);
+        if (dir == null) {
+            return;
+        }
+        Path path = new Path(dir);
+        FileSystem fs = path.getFileSystem(conf);
+        try {
+            if (numReducers >= 2 && fs.exists(path)) {
+                warn(fs, fs.listStatus(path), numReducers);
+            }
+        } finally {
+            fs.delete(path, true);
+        }
+    }
+
+    private static void warn(FileSystem fs, FileStatus[] reports, int numReducers)
+            throws IOException {
+        Map<String, Long> totals = new HashMap<String, Long>();
+        Map<String, Map<String, Long>> keys = new HashMap<String, Map<String, Long>>();
+        for (FileStatus report : reports) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    fs.open(report.getPath()), "UTF-8"));
+            try {
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    String[] fields = line.split("\t", 3);
+                    String alias = fields[0];
+                    long count = Long.parseLong(fields[1]);
+                    if (fields.length == 2) {
+                        add(totals, alias, count);
+                    } else {
+                        Map<String, Long> aliasKeys = keys.get(alias);
+                        if (aliasKeys == null) {
+                            aliasKeys = new HashMap<String, Long>();
+                            keys.put(alias, aliasKeys);
+                        }
+                        add(aliasKeys, fields[2], count);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        }
+        for (Map.Entry<String, Map<String, Long>> aliasKeys : keys.entrySet()) {
+            String alias = aliasKeys.getKey();
+            Long total = totals.get(alias);
+            for (Map.Entry<String, Long> key : aliasKeys.getValue().entrySet()) {
+                if (total != null && key.getValue() * numReducers > total) {
+                    log.warn("Key " + key.getKey() + " of " + alias + " has "
+                            + key.getValue() + " of its " + total + " records, which all go to"
+                            + " the same of the " + numReducers + " reducers. If " + alias
+                            + " is a join, consider using 'skewed'");
+                }
+            }
+        }
+    }
+
+    private static void add(Map<String, Long> counts, String key, long count) {
+        Long old = counts.get(key);
+        counts.put(key, old == null ? count : old + count);
+    }
+}
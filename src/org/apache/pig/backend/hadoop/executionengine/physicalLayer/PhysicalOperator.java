@@ -118,6 +118,14 @@ public abstract class PhysicalOperator extends Operator<PhyPlanVisitor> implemen
 
     private List<OriginalLocation> originalLocations =  new ArrayList<OriginalLocation>();
 
+    // Number of rows requested per call when pulling from a batch capable
+    // input. 0 means the input is always read a tuple at a time.
+    protected transient int batchSize = 0;
+
+    // Batch read from the input that processInput() is handing out row by row
+    private transient TupleBatch inputBatch;
+    private transient int inputBatchPos;
+
     public PhysicalOperator(OperatorKey k) {
         this(k, -1, null);
     }
@@ -278,6 +286,9 @@ public abstract class PhysicalOperator extends Operator<PhyPlanVisitor> implemen
             }
 
             if (!isInputAttached()) {
+                if (batchSize > 0 && inputs.get(0).supportsBatch()) {
+                    return processInputFromBatch();
+                }
                 return inputs.get(0).getNextTuple();
             } else {
                 res.result = input;
@@ -291,6 +302,105 @@ public abstract class PhysicalOperator extends Operator<PhyPlanVisitor> implemen
         }
     }
 
+    /**
+     * Hands out the rows of batches read from the input one at a time, so
+     * that operators without a batch implementation can sit on top of
+     * operators that have one.
+     */
+    private Result processInputFromBatch() throws ExecException {
+        while (inputBatch == null || inputBatchPos >= inputBatch.size()) {
+            if (inputBatch != null && inputBatch.isLast()) {
+                Result res = new Result(inputBatch.returnStatus, inputBatch.result);
+                inputBatch = null;
+                return res;
+            }
+            inputBatch = inputs.get(0).getNextBatch(batchSize);
+            inputBatchPos = 0;
+        }
+        return new Result(POStatus.STATUS_OK, inputBatch.get(inputBatchPos++));
+    }
+
+    /**
+     * Batch counterpart of {@link #processInput()}. Returns the attached
+     * input as a batch of one row, or the next batch of the predecessor.
+     *
+     * @param maxRows maximum number of rows to read
+     * @return the batch read
+     * @throws ExecException
+     */
+    protected TupleBatch processInputBatch(int maxRows) throws ExecException {
+        if (isInputAttached() || inputs == null || inputs.size() == 0) {
+            Result inp = processInput();
+            if (inp.returnStatus == POStatus.STATUS_ERR) {
+                return TupleBatch.error(inp.result);
+            }
+            TupleBatch batch = new TupleBatch(1);
+            if (inp.returnStatus == POStatus.STATUS_OK) {
+                batch.add((Tuple) inp.result);
+            } else if (inp.returnStatus == POStatus.STATUS_EOP) {
+                batch.returnStatus = POStatus.STATUS_EOP;
+            }
+            return batch;
+        }
+        if (getReporter() != null) {
+            getReporter().progress();
+        }
+        return inputs.get(0).getNextBatch(maxRows);
+    }
+
+    /**
+     * Operators that override {@link #getNextBatch(int)} with a real batch
+     * implementation should return true here. Consumers only switch to batch
+     * mode on inputs that support it.
+     *
+     * @return true if this operator can process a batch of rows per call
+     */
+    public boolean supportsBatch() {
+        return false;
+    }
+
+    /**
+     * Returns up to maxRows output tuples in one call. The default
+     * implementation falls back to row mode and drains getNextTuple(), so
+     * every operator can be pulled in batches, but only those for which
+     * {@link #supportsBatch()} is true save any per-row overhead.
+     *
+     * @param maxRows maximum number of rows to return
+     * @return the next batch. It may hold rows together with STATUS_EOP,
+     *         see {@link TupleBatch}
+     * @throws ExecException
+     */
+    public TupleBatch getNextBatch(int maxRows) throws ExecException {
+        TupleBatch batch = new TupleBatch(maxRows);
+        while (batch.size() < maxRows) {
+            Result res = getNextTuple();
+            if (res.returnStatus == POStatus.STATUS_OK) {
+                batch.add((Tuple) res.result);
+            } else if (res.returnStatus == POStatus.STATUS_EOP) {
+                batch.returnStatus = POStatus.STATUS_EOP;
+                break;
+            } else if (res.returnStatus == POStatus.STATUS_ERR) {
+                return TupleBatch.error(res.result);
+            }
+        }
+        return batch;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Enables batch mode for reading the input of this operator.
+     *
+     * @param batchSize rows to pull per call from a batch capable input, 0
+     *        to read a tuple at a time
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        inputBatch = null;
+    }
+
     @Override
     public abstract void visit(PhyPlanVisitor v) throws VisitorException;
 
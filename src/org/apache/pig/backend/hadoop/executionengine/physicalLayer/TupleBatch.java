@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer;
+
+import org.apache.pig.data.Tuple;
+
+/**
+ * A batch of tuples handed between physical operators when running in
+ * batch mode (see {@link PhysicalOperator#getNextBatch(int)}).
+ *
+ * The status follows the conventions of {@link Result}, with one difference:
+ * a batch marked STATUS_EOP may still carry the last rows of the input, so
+ * consumers must process the rows before acting on the status. A batch
+ * marked STATUS_ERR carries no rows, and result holds the error detail.
+ */
+public class TupleBatch {
+
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    public byte returnStatus = POStatus.STATUS_OK;
+
+    public Object result;
+
+    private Tuple[] tuples;
+
+    private int size = 0;
+
+    public TupleBatch() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    public TupleBatch(int capacity) {
+        tuples = new Tuple[Math.max(capacity, 1)];
+    }
+
+    public static TupleBatch eop() {
+        TupleBatch batch = new TupleBatch(1);
+        batch.returnStatus = POStatus.STATUS_EOP;
+        return batch;
+    }
+
+    public static TupleBatch error(Object result) {
+        TupleBatch batch = new TupleBatch(1);
+        batch.returnStatus = POStatus.STATUS_ERR;
+        batch.result = result;
+        return batch;
+    }
+
+    public void add(Tuple t) {
+        if (size == tuples.length) {
+            Tuple[] grown = new Tuple[tuples.length * 2];
+            System.arraycopy(tuples, 0, grown, 0, size);
+            tuples = grown;
+        }
+        tuples[size++] = t;
+    }
+
+    public Tuple get(int i) {
+        return tuples[i];
+    }
+
+    public void set(int i, Tuple t) {
+        tuples[i] = t;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return true if the producer of this batch has no more rows to give
+     */
+    public boolean isLast() {
+        return returnStatus != POStatus.STATUS_OK;
+    }
+
+    /**
+     * Keep only the rows whose entry in keep is true, preserving their order.
+     * @param keep one flag per row of the batch
+     */
+    public void retain(boolean[] keep) {
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                tuples[j++] = tuples[i];
+            }
+        }
+        for (int i = j; i < size; i++) {
+            tuples[i] = null;
+        }
+        size = j;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            tuples[i] = null;
+        }
+        size = 0;
+        returnStatus = POStatus.STATUS_OK;
+        result = null;
+    }
+}
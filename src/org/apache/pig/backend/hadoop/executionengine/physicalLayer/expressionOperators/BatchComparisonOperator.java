@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators;
+
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.plan.OperatorKey;
+
+/**
+ * Base class of the comparison operators which compare their operands with
+ * compareTo, and can therefore be evaluated in batch mode.
+ */
+public abstract class BatchComparisonOperator extends BinaryComparisonOperator {
+    private static final long serialVersionUID = 1L;
+
+    public BatchComparisonOperator(OperatorKey k) {
+        this(k, -1);
+    }
+
+    public BatchComparisonOperator(OperatorKey k, int rp) {
+        super(k, rp);
+    }
+
+    /**
+     * @param equality true for equality comparisons, which are also defined
+     *        on booleans
+     * @return true if values of the operand type can be compared in batch
+     *         mode
+     */
+    protected boolean supportsBatchComparison(boolean equality) {
+        switch (operandType) {
+        case DataType.BOOLEAN:
+            return equality && operandsSupportBatch();
+        case DataType.BYTEARRAY:
+        case DataType.DOUBLE:
+        case DataType.FLOAT:
+        case DataType.INTEGER:
+        case DataType.LONG:
+        case DataType.BIGINTEGER:
+        case DataType.BIGDECIMAL:
+        case DataType.DATETIME:
+        case DataType.CHARARRAY:
+            return operandsSupportBatch();
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Maps the result of compareTo on the operands to the value of the
+     * predicate.
+     */
+    protected abstract boolean satisfies(int cmp);
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object[] evaluateBatch(TupleBatch batch) throws ExecException {
+        try {
+            Object[] left = lhs.evaluateBatch(batch);
+            Object[] right = rhs.evaluateBatch(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                // if either operand is null, the result should be null
+                if (left[i] == null || right[i] == null) {
+                    left[i] = null;
+                } else {
+                    left[i] = Boolean.valueOf(satisfies(((Comparable) left[i]).compareTo(right[i])));
+                }
+            }
+            return left;
+        } catch (RuntimeException e) {
+            throw new ExecException("exception while executing " + this.toString() + ": " + e.toString(), 2067, PigException.BUG, e);
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOp
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.util.IdentityHashSet;
@@ -79,6 +80,31 @@ public abstract class BinaryExpressionOperator extends ExpressionOperator {
         this.rhs = rhs;
     }
 
+    /**
+     * @return true if both operands can be evaluated in batch mode
+     */
+    protected boolean operandsSupportBatch() {
+        return canRunBatch() && lhs.supportsBatch() && rhs.supportsBatch();
+    }
+
+    /**
+     * @return true if arithmetic on values of the given type can run in
+     *         batch mode
+     */
+    protected static boolean isBatchNumericType(byte dataType) {
+        switch (dataType) {
+        case DataType.INTEGER:
+        case DataType.LONG:
+        case DataType.FLOAT:
+        case DataType.DOUBLE:
+        case DataType.BIGINTEGER:
+        case DataType.BIGDECIMAL:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     protected void cloneHelper(BinaryExpressionOperator op) {
         // Don't clone these, as they are just references to things already in
         // the plan.
@@ -17,12 +17,14 @@
  */
 package org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators;
 
+import java.util.Arrays;
 import java.util.List;
 
 
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
@@ -174,6 +176,18 @@ public class ConstantExpression extends ExpressionOperator {
         return genericGetNext(DataType.BIGDECIMAL);
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return canRunBatch();
+    }
+
+    @Override
+    public Object[] evaluateBatch(TupleBatch batch) throws ExecException {
+        Object[] values = new Object[batch.size()];
+        Arrays.fill(values, value);
+        return values;
+    }
+
     @Override
     public ConstantExpression clone() throws CloneNotSupportedException {
         ConstantExpression clone =
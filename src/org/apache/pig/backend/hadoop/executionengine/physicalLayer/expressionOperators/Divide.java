@@ -24,6 +24,7 @@ import org.apache.pig.PigWarning;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.data.DataType;
 import org.apache.pig.impl.plan.NodeIdGenerator;
@@ -166,6 +167,30 @@ public class Divide extends BinaryExpressionOperator {
         return genericGetNext(DataType.BIGDECIMAL);
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return isBatchNumericType(resultType) && operandsSupportBatch();
+    }
+
+    @Override
+    public Object[] evaluateBatch(TupleBatch batch) throws ExecException {
+        Object[] left = lhs.evaluateBatch(batch);
+        Object[] right = rhs.evaluateBatch(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            if (left[i] == null || right[i] == null) {
+                left[i] = null;
+            } else if (equalsZero((Number) right[i], resultType)) {
+                if(pigLogger != null) {
+                    pigLogger.warn(this, "Divide by zero. Converting it to NULL.", PigWarning.DIVIDE_BY_ZERO);
+                }
+                left[i] = null;
+            } else {
+                left[i] = divide((Number) left[i], (Number) right[i], resultType);
+            }
+        }
+        return left;
+    }
+
     @Override
     public Divide clone() throws CloneNotSupportedException {
         Divide clone = new Divide(new OperatorKey(mKey.scope,
@@ -31,7 +31,7 @@ import org.apache.pig.impl.plan.NodeIdGenerator;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
 
-public class EqualToExpr extends BinaryComparisonOperator {
+public class EqualToExpr extends BatchComparisonOperator {
 
     /**
      *
@@ -135,6 +135,16 @@ public class EqualToExpr extends BinaryComparisonOperator {
         return left;
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return supportsBatchComparison(true);
+    }
+
+    @Override
+    protected boolean satisfies(int cmp) {
+        return cmp == 0;
+    }
+
     @Override
     public EqualToExpr clone() throws CloneNotSupportedException {
         EqualToExpr clone = new EqualToExpr(new OperatorKey(mKey.scope,
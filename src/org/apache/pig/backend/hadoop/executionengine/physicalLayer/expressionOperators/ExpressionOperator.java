@@ -26,6 +26,7 @@ import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
@@ -80,6 +81,28 @@ public abstract class ExpressionOperator extends PhysicalOperator {
         throw new CloneNotSupportedException(s);
     }
 
+    /**
+     * Evaluates this expression for every row of a batch at once. Only
+     * called when {@link #supportsBatch()} is true, which for expressions
+     * also implies that all the child expressions support batch mode.
+     *
+     * @param batch rows the expression plan is evaluated against
+     * @return one value per row of the batch, null for a null result. The
+     *         array belongs to the caller, which may overwrite it.
+     * @throws ExecException
+     */
+    public Object[] evaluateBatch(TupleBatch batch) throws ExecException {
+        throw new ExecException(this.getClass().getSimpleName() + " does not support batch mode");
+    }
+
+    /**
+     * Batch mode is never used while accumulating or illustrating, both of
+     * which rely on the per-row protocol.
+     */
+    protected boolean canRunBatch() {
+        return !isAccumulative() && illustrator == null;
+    }
+
     /**
      * Get the sub-expressions of this expression.
      * This is called if reducer is run as accumulative mode, all the child
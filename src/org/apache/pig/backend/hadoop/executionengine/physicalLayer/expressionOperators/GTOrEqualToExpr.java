@@ -29,7 +29,7 @@ import org.apache.pig.impl.plan.NodeIdGenerator;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
 
-public class GTOrEqualToExpr extends BinaryComparisonOperator {
+public class GTOrEqualToExpr extends BatchComparisonOperator {
 
     /**
      *
@@ -115,6 +115,16 @@ public class GTOrEqualToExpr extends BinaryComparisonOperator {
         return left;
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return supportsBatchComparison(false);
+    }
+
+    @Override
+    protected boolean satisfies(int cmp) {
+        return cmp >= 0;
+    }
+
     @Override
     public GTOrEqualToExpr clone() throws CloneNotSupportedException {
         GTOrEqualToExpr clone = new GTOrEqualToExpr(new OperatorKey(mKey.scope,
@@ -27,7 +27,7 @@ import org.apache.pig.impl.plan.NodeIdGenerator;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
 
-public class GreaterThanExpr extends BinaryComparisonOperator {
+public class GreaterThanExpr extends BatchComparisonOperator {
 
     /**
      *
@@ -111,6 +111,16 @@ public class GreaterThanExpr extends BinaryComparisonOperator {
         return left;
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return supportsBatchComparison(false);
+    }
+
+    @Override
+    protected boolean satisfies(int cmp) {
+        return cmp > 0;
+    }
+
     @Override
     public GreaterThanExpr clone() throws CloneNotSupportedException {
         GreaterThanExpr clone = new GreaterThanExpr(new OperatorKey(mKey.scope,
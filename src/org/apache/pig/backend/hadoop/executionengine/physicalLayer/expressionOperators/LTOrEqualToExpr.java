@@ -29,7 +29,7 @@ import org.apache.pig.impl.plan.NodeIdGenerator;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
 
-public class LTOrEqualToExpr extends BinaryComparisonOperator {
+public class LTOrEqualToExpr extends BatchComparisonOperator {
 
     /**
      *
@@ -114,6 +114,16 @@ public class LTOrEqualToExpr extends BinaryComparisonOperator {
         return left;
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return supportsBatchComparison(false);
+    }
+
+    @Override
+    protected boolean satisfies(int cmp) {
+        return cmp <= 0;
+    }
+
     @Override
     public LTOrEqualToExpr clone() throws CloneNotSupportedException {
         LTOrEqualToExpr clone = new LTOrEqualToExpr(new OperatorKey(mKey.scope,
@@ -29,7 +29,7 @@ import org.apache.pig.impl.plan.NodeIdGenerator;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
 
-public class LessThanExpr extends BinaryComparisonOperator {
+public class LessThanExpr extends BatchComparisonOperator {
 
     /**
      *
@@ -115,6 +115,16 @@ public class LessThanExpr extends BinaryComparisonOperator {
         return left;
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return supportsBatchComparison(false);
+    }
+
+    @Override
+    protected boolean satisfies(int cmp) {
+        return cmp < 0;
+    }
+
     @Override
     public LessThanExpr clone() throws CloneNotSupportedException {
         LessThanExpr clone = new LessThanExpr(new OperatorKey(mKey.scope,
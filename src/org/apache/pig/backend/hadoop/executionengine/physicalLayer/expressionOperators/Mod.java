@@ -22,6 +22,7 @@ import java.math.BigInteger;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.data.DataType;
 import org.apache.pig.impl.plan.NodeIdGenerator;
@@ -107,6 +108,26 @@ public class Mod extends BinaryExpressionOperator {
         return genericGetNext(DataType.BIGINTEGER);
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return (resultType == DataType.INTEGER || resultType == DataType.LONG
+                || resultType == DataType.BIGINTEGER) && operandsSupportBatch();
+    }
+
+    @Override
+    public Object[] evaluateBatch(TupleBatch batch) throws ExecException {
+        Object[] left = lhs.evaluateBatch(batch);
+        Object[] right = rhs.evaluateBatch(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            if (left[i] == null || right[i] == null) {
+                left[i] = null;
+            } else {
+                left[i] = mod((Number) left[i], (Number) right[i], resultType);
+            }
+        }
+        return left;
+    }
+
     @Override
     public Mod clone() throws CloneNotSupportedException {
         Mod clone = new Mod(new OperatorKey(mKey.scope,
@@ -31,7 +31,7 @@ import org.apache.pig.impl.plan.NodeIdGenerator;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
 
-public class NotEqualToExpr extends BinaryComparisonOperator {
+public class NotEqualToExpr extends BatchComparisonOperator {
 
     /**
      *
@@ -130,6 +130,16 @@ public class NotEqualToExpr extends BinaryComparisonOperator {
         return left;
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return supportsBatchComparison(true);
+    }
+
+    @Override
+    protected boolean satisfies(int cmp) {
+        return cmp != 0;
+    }
+
     @Override
     public NotEqualToExpr clone() throws CloneNotSupportedException {
         NotEqualToExpr clone = new NotEqualToExpr(new OperatorKey(mKey.scope,
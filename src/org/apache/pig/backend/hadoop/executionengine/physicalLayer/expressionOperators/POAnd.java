@@ -20,6 +20,7 @@ package org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOp
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.data.DataType;
 import org.apache.pig.impl.plan.NodeIdGenerator;
@@ -110,6 +111,28 @@ public class POAnd extends BinaryComparisonOperator {
         return right;
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return operandsSupportBatch();
+    }
+
+    @Override
+    public Object[] evaluateBatch(TupleBatch batch) throws ExecException {
+        Object[] left = lhs.evaluateBatch(batch);
+        Object[] right = rhs.evaluateBatch(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            // same truth table as getNextBoolean(), without the short circuit
+            if (Boolean.FALSE.equals(left[i]) || Boolean.FALSE.equals(right[i])) {
+                left[i] = Boolean.FALSE;
+            } else if (left[i] == null || right[i] == null) {
+                left[i] = null;
+            } else {
+                left[i] = Boolean.TRUE;
+            }
+        }
+        return left;
+    }
+
     @Override
     public POAnd clone() throws CloneNotSupportedException {
         POAnd clone = new POAnd(new OperatorKey(mKey.scope, 
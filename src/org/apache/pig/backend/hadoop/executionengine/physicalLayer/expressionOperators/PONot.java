@@ -20,6 +20,7 @@ package org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOp
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.data.DataType;
 import org.apache.pig.impl.plan.OperatorKey;
@@ -82,6 +83,22 @@ public class PONot extends UnaryComparisonOperator {
         }
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return canRunBatch() && expr.supportsBatch();
+    }
+
+    @Override
+    public Object[] evaluateBatch(TupleBatch batch) throws ExecException {
+        Object[] values = expr.evaluateBatch(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            if (values[i] != null) {
+                values[i] = ((Boolean) values[i]).booleanValue() ? Boolean.FALSE : Boolean.TRUE;
+            }
+        }
+        return values;
+    }
+
     @Override
     public PONot clone() throws CloneNotSupportedException {
         PONot clone = new PONot(new OperatorKey(mKey.scope, 
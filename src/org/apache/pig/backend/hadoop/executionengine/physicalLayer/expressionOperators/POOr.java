@@ -20,6 +20,7 @@ package org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOp
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.data.DataType;
 import org.apache.pig.impl.plan.NodeIdGenerator;
@@ -109,6 +110,28 @@ public class POOr extends BinaryComparisonOperator {
         return right;
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return operandsSupportBatch();
+    }
+
+    @Override
+    public Object[] evaluateBatch(TupleBatch batch) throws ExecException {
+        Object[] left = lhs.evaluateBatch(batch);
+        Object[] right = rhs.evaluateBatch(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            // same truth table as getNextBoolean(), without the short circuit
+            if (Boolean.TRUE.equals(left[i]) || Boolean.TRUE.equals(right[i])) {
+                left[i] = Boolean.TRUE;
+            } else if (left[i] == null || right[i] == null) {
+                left[i] = null;
+            } else {
+                left[i] = Boolean.FALSE;
+            }
+        }
+        return left;
+    }
+
     @Override
     public POOr clone() throws CloneNotSupportedException {
         POOr clone = new POOr(new OperatorKey(mKey.scope, 
@@ -26,6 +26,7 @@ import org.apache.pig.PigWarning;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.data.BagFactory;
 import org.apache.pig.data.DataBag;
@@ -198,6 +199,37 @@ public class POProject extends ExpressionOperator {
         return res;
     }
 
+    /**
+     * Batch mode is supported for the common case of a single column
+     * projected from the tuples the plan is attached to.
+     */
+    @Override
+    public boolean supportsBatch() {
+        return canRunBatch() && (inputs == null || inputs.isEmpty())
+                && !isStar() && !isProjectToEnd && !overloaded
+                && columns.size() == 1 && resultType != DataType.BAG;
+    }
+
+    @Override
+    public Object[] evaluateBatch(TupleBatch batch) throws ExecException {
+        int col = columns.get(0);
+        Object[] values = new Object[batch.size()];
+        for (int i = 0; i < values.length; i++) {
+            Tuple inpValue = batch.get(i);
+            if (inpValue == null) {
+                // the tuple is null, so a dereference should also produce a null
+                continue;
+            }
+            if (col < inpValue.size()) {
+                values[i] = inpValue.get(col);
+            } else if (pigLogger != null) {
+                pigLogger.warn(this,"Attempt to access field " +
+                        "which was not found in the input", PigWarning.ACCESSING_NON_EXISTENT_FIELD);
+            }
+        }
+        return values;
+    }
+
     private boolean isRangeInvalid(int lastColIdx) {
         if(startCol > lastColIdx){
             // this must be happening because tuple is smaller than startCol
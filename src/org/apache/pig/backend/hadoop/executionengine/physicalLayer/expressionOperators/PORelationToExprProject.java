@@ -100,6 +100,11 @@ public class PORelationToExprProject extends POProject {
         sendEmptyBagOnEOP = true;
     }
     
+    @Override
+    public boolean supportsBatch() {
+        return false;
+    }
+
     @Override
     public Result getNextDataBag() throws ExecException {
         Result input = processInputBag();
@@ -23,6 +23,7 @@ import java.math.BigInteger;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.data.DataType;
 import org.apache.pig.impl.plan.NodeIdGenerator;
@@ -133,6 +134,25 @@ public class Subtract extends BinaryExpressionOperator {
         return genericGetNext(DataType.BIGDECIMAL);
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return isBatchNumericType(resultType) && operandsSupportBatch();
+    }
+
+    @Override
+    public Object[] evaluateBatch(TupleBatch batch) throws ExecException {
+        Object[] left = lhs.evaluateBatch(batch);
+        Object[] right = rhs.evaluateBatch(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            if (left[i] == null || right[i] == null) {
+                left[i] = null;
+            } else {
+                left[i] = subtract((Number) left[i], (Number) right[i], resultType);
+            }
+        }
+        return left;
+    }
+
     @Override
     public Subtract clone() throws CloneNotSupportedException {
         Subtract clone = new Subtract(new OperatorKey(mKey.scope,
@@ -74,6 +74,17 @@ public class PhysicalPlan extends OperatorPlan<PhysicalOperator> implements Clon
         for(PhysicalOperator op : getRoots())
             op.detachInput();
     }
+
+    /**
+     * @return true if this is an expression plan whose single leaf can be
+     * evaluated against a whole batch of tuples at a time
+     */
+    public boolean supportsBatch() {
+        List<PhysicalOperator> leaves = getLeaves();
+        return leaves.size() == 1 && leaves.get(0) instanceof ExpressionOperator
+                && leaves.get(0).supportsBatch();
+    }
+
     /**
      * Write a visual representation of the Physical Plan
      * into the given output stream
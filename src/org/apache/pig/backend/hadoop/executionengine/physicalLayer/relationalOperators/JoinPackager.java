@@ -26,6 +26,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.InternalCachedBag;
+import org.apache.pig.data.InternalSerializedBag;
 import org.apache.pig.data.NonSpillableDataBag;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.plan.NodeIdGenerator;
@@ -209,6 +210,19 @@ public class JoinPackager extends Packager {
         this.newKey = true;
     }
 
+    /**
+     * The inputs before the last one are read many times, once for each
+     * chunk of the last input, so they are kept serialized to fit more of
+     * them in memory.
+     */
+    @Override
+    public DataBag newInputBag(int bagCount) {
+        if (illustrator != null) {
+            return super.newInputBag(bagCount);
+        }
+        return new InternalSerializedBag(bagCount);
+    }
+
     public List<PhysicalPlan> getInputPlans() {
         return forEach.getInputPlans();
     }
@@ -0,0 +1,446 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.Tuple;
+
+/**
+ * Multimap from key tuples to value tuples, used to hold the replicated
+ * inputs of {@link POFRJoin} outside of the Java heap.
+ *
+ * Keys and values are serialized with BinInterSedes into an arena of direct
+ * byte buffers. A key record holds the hash and the serialized key, and
+ * points to a linked list of value records. Keys are located through an open
+ * addressing index, also held in a direct buffer, mapping slots to key record
+ * offsets. Keys are compared on their serialized form, so the heap cost of
+ * the table does not depend on the number of tuples it holds.
+ *
+ * Once built, the map can be read by several threads at a time; put() must
+ * not be called concurrently with anything else. A built map can also be
+ * written to a file with {@link #writeTo(File)}, and the file memory mapped
+ * by other processes with {@link #map(File)}.
+ */
+public class OffHeapTupleMap {
+
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    // key record: hash, key length, first value, last value, value count, key
+    private static final int KEY_HASH = 0;
+    private static final int KEY_LENGTH = 4;
+    private static final int KEY_FIRST = 8;
+    private static final int KEY_LAST = 16;
+    private static final int KEY_COUNT = 24;
+    private static final int KEY_HEADER = 28;
+
+    // value record: next value, value length, value
+    private static final int VALUE_NEXT = 0;
+    private static final int VALUE_LENGTH = 8;
+    private static final int VALUE_HEADER = 12;
+
+    private static final long NONE = -1;
+
+    // file header: magic, version, keys, values, slots, chunks
+    private static final int MAGIC = 0x50494746;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER = 28;
+
+    private static final InterSedes SEDES = InterSedesFactory.getInterSedesInstance();
+
+    private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+    private ByteBuffer current;
+    private int nextChunkSize = MIN_CHUNK_SIZE;
+
+    // slot -> offset of the key record, NONE for a free slot
+    private ByteBuffer index;
+    private int numSlots;
+
+    private int numKeys = 0;
+    private long numValues = 0;
+
+    // true for a map read from a file
+    private final boolean readOnly;
+
+    private final ExposedByteArrayOutputStream keyBuffer = new ExposedByteArrayOutputStream();
+    private final ExposedByteArrayOutputStream valueBuffer = new ExposedByteArrayOutputStream();
+
+    public OffHeapTupleMap() {
+        readOnly = false;
+        allocateIndex(1024);
+    }
+
+    private OffHeapTupleMap(ByteBuffer index, int numSlots, List<ByteBuffer> chunks,
+            int numKeys, long numValues) {
+        readOnly = true;
+        this.index = index;
+        this.numSlots = numSlots;
+        this.chunks.addAll(chunks);
+        this.numKeys = numKeys;
+        this.numValues = numValues;
+    }
+
+    /**
+     * Writes the map to a file, which can then be opened with
+     * {@link #map(File)}.
+     * @param file the file to write
+     * @throws IOException
+     */
+    public void writeTo(File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER + 4 * chunks.size());
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(numKeys);
+            header.putLong(numValues);
+            header.putInt(numSlots);
+            header.putInt(chunks.size());
+            for (ByteBuffer chunk : chunks) {
+                header.putInt(usedBytes(chunk));
+            }
+            header.flip();
+            writeFully(channel, header);
+            writeFully(channel, slice(index, 0, index.capacity()));
+            for (ByteBuffer chunk : chunks) {
+                writeFully(channel, slice(chunk, 0, usedBytes(chunk)));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Opens a map written by {@link #writeTo(File)}. The file is memory
+     * mapped rather than read, so processes mapping the same file share
+     * its pages. The returned map is read only.
+     * @param file the file to map
+     * @return the map
+     * @throws IOException if the file is not a map file
+     */
+    public static OffHeapTupleMap map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(file + " is not a replicated join table");
+            }
+            int numKeys = header.getInt();
+            long numValues = header.getLong();
+            int numSlots = header.getInt();
+            int numChunks = header.getInt();
+            ByteBuffer sizes = channel.map(FileChannel.MapMode.READ_ONLY, FILE_HEADER, 4L * numChunks);
+            long offset = FILE_HEADER + 4L * numChunks;
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, offset, 8L * numSlots);
+            offset += 8L * numSlots;
+            List<ByteBuffer> chunks = new ArrayList<ByteBuffer>(numChunks);
+            for (int i = 0; i < numChunks; i++) {
+                int size = sizes.getInt();
+                chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, offset, size));
+                offset += size;
+            }
+            // the mappings stay valid once the file is closed
+            return new OffHeapTupleMap(index, numSlots, chunks, numKeys, numValues);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private int usedBytes(ByteBuffer chunk) {
+        // position is the allocation cursor of a chunk built by put()
+        return readOnly ? chunk.capacity() : chunk.position();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int from, int to) {
+        ByteBuffer dup = buf.duplicate();
+        dup.limit(to);
+        dup.position(from);
+        return dup;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /**
+     * Adds a value for a key.
+     * @param key the key
+     * @param value the value
+     * @throws ExecException
+     */
+    public void put(Tuple key, Tuple value) throws ExecException {
+        if (readOnly) {
+            throw new ExecException("Cannot add to a mapped replicated join table",
+                    2052, PigException.BUG);
+        }
+        serialize(key, keyBuffer);
+        int hash = hash(keyBuffer.getBuffer(), keyBuffer.size());
+        long keyRecord = find(keyBuffer.getBuffer(), keyBuffer.size(), hash);
+        if (keyRecord == NONE) {
+            keyRecord = allocate(KEY_HEADER + keyBuffer.size());
+            ByteBuffer chunk = chunk(keyRecord);
+            int pos = position(keyRecord);
+            chunk.putInt(pos + KEY_HASH, hash);
+            chunk.putInt(pos + KEY_LENGTH, keyBuffer.size());
+            chunk.putLong(pos + KEY_FIRST, NONE);
+            chunk.putLong(pos + KEY_LAST, NONE);
+            chunk.putInt(pos + KEY_COUNT, 0);
+            write(chunk, pos + KEY_HEADER, keyBuffer.getBuffer(), keyBuffer.size());
+            insert(keyRecord, hash);
+        }
+
+        serialize(value, valueBuffer);
+        long valueRecord = allocate(VALUE_HEADER + valueBuffer.size());
+        ByteBuffer chunk = chunk(valueRecord);
+        int pos = position(valueRecord);
+        chunk.putLong(pos + VALUE_NEXT, NONE);
+        chunk.putInt(pos + VALUE_LENGTH, valueBuffer.size());
+        write(chunk, pos + VALUE_HEADER, valueBuffer.getBuffer(), valueBuffer.size());
+
+        ByteBuffer keyChunk = chunk(keyRecord);
+        int keyPos = position(keyRecord);
+        long last = keyChunk.getLong(keyPos + KEY_LAST);
+        if (last == NONE) {
+            keyChunk.putLong(keyPos + KEY_FIRST, valueRecord);
+        } else {
+            chunk(last).putLong(position(last) + VALUE_NEXT, valueRecord);
+        }
+        keyChunk.putLong(keyPos + KEY_LAST, valueRecord);
+        keyChunk.putInt(keyPos + KEY_COUNT, keyChunk.getInt(keyPos + KEY_COUNT) + 1);
+        numValues++;
+    }
+
+    /**
+     * Looks up the values of a key. The returned tuples are deserialized
+     * for this call, and belong to the caller.
+     * @param key the key
+     * @return the values in the order they were added, null if the key is
+     *         not in the map
+     * @throws ExecException
+     */
+    public List<Tuple> get(Tuple key) throws ExecException {
+        // the lookup must not touch the shared buffers so that it is safe
+        // for concurrent readers
+        ExposedByteArrayOutputStream buf = new ExposedByteArrayOutputStream();
+        serialize(key, buf);
+        long keyRecord = find(buf.getBuffer(), buf.size(), hash(buf.getBuffer(), buf.size()));
+        if (keyRecord == NONE) {
+            return null;
+        }
+        ByteBuffer keyChunk = chunk(keyRecord);
+        int keyPos = position(keyRecord);
+        List<Tuple> values = new ArrayList<Tuple>(keyChunk.getInt(keyPos + KEY_COUNT));
+        try {
+            for (long v = keyChunk.getLong(keyPos + KEY_FIRST); v != NONE;) {
+                ByteBuffer chunk = chunk(v);
+                int pos = position(v);
+                ByteBuffer in = chunk.duplicate();
+                in.position(pos + VALUE_HEADER);
+                in.limit(pos + VALUE_HEADER + chunk.getInt(pos + VALUE_LENGTH));
+                values.add((Tuple) SEDES.readDatum(new DataInputStream(new ByteBufferInputStream(in))));
+                v = chunk.getLong(pos + VALUE_NEXT);
+            }
+        } catch (IOException e) {
+            int errCode = 2052;
+            String msg = "Internal error. Could not read replicated tuples.";
+            throw new ExecException(msg, errCode, PigException.BUG, e);
+        }
+        return values;
+    }
+
+    /**
+     * @return number of distinct keys
+     */
+    public int size() {
+        return numKeys;
+    }
+
+    /**
+     * @return number of values, over all keys
+     */
+    public long getNumValues() {
+        return numValues;
+    }
+
+    /**
+     * @return number of bytes allocated outside of the heap, or mapped
+     */
+    public long getMemorySize() {
+        long mem = index.capacity();
+        for (ByteBuffer chunk : chunks) {
+            mem += chunk.capacity();
+        }
+        return mem;
+    }
+
+    private static void serialize(Tuple t, ExposedByteArrayOutputStream buf) throws ExecException {
+        buf.reset();
+        try {
+            SEDES.writeDatum(new DataOutputStream(buf), t);
+        } catch (IOException e) {
+            int errCode = 2052;
+            String msg = "Internal error. Could not serialize replicated tuple.";
+            throw new ExecException(msg, errCode, PigException.BUG, e);
+        }
+    }
+
+    private static int hash(byte[] bytes, int len) {
+        int h = 1;
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + bytes[i];
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private long find(byte[] key, int len, int hash) {
+        int mask = numSlots - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            long record = index.getLong(slot * 8);
+            if (record == NONE) {
+                return NONE;
+            }
+            ByteBuffer chunk = chunk(record);
+            int pos = position(record);
+            if (chunk.getInt(pos + KEY_HASH) == hash && chunk.getInt(pos + KEY_LENGTH) == len
+                    && sameBytes(chunk, pos + KEY_HEADER, key, len)) {
+                return record;
+            }
+        }
+    }
+
+    private static boolean sameBytes(ByteBuffer chunk, int pos, byte[] bytes, int len) {
+        for (int i = 0; i < len; i++) {
+            if (chunk.get(pos + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(long keyRecord, int hash) {
+        if (++numKeys * 2 > numSlots) {
+            ByteBuffer old = index;
+            int oldSlots = numSlots;
+            allocateIndex(numSlots * 2);
+            for (int slot = 0; slot < oldSlots; slot++) {
+                long record = old.getLong(slot * 8);
+                if (record != NONE) {
+                    putInIndex(record, chunk(record).getInt(position(record) + KEY_HASH));
+                }
+            }
+        }
+        putInIndex(keyRecord, hash);
+    }
+
+    private void putInIndex(long record, int hash) {
+        int mask = numSlots - 1;
+        int slot = hash & mask;
+        while (index.getLong(slot * 8) != NONE) {
+            slot = (slot + 1) & mask;
+        }
+        index.putLong(slot * 8, record);
+    }
+
+    private void allocateIndex(int slots) {
+        numSlots = slots;
+        index = ByteBuffer.allocateDirect(slots * 8);
+        for (int i = 0; i < slots; i++) {
+            index.putLong(i * 8, NONE);
+        }
+    }
+
+    /**
+     * Reserves len bytes in the arena.
+     * @return offset of the reserved bytes: chunk number in the high int,
+     *         position in the chunk in the low int
+     */
+    private long allocate(int len) {
+        if (current == null || current.remaining() < len) {
+            current = ByteBuffer.allocateDirect(Math.max(nextChunkSize, len));
+            chunks.add(current);
+            nextChunkSize = Math.min(nextChunkSize * 2, MAX_CHUNK_SIZE);
+        }
+        long offset = ((long) (chunks.size() - 1) << 32) | current.position();
+        current.position(current.position() + len);
+        return offset;
+    }
+
+    private ByteBuffer chunk(long offset) {
+        return chunks.get((int) (offset >>> 32));
+    }
+
+    private static int position(long offset) {
+        return (int) offset;
+    }
+
+    private static void write(ByteBuffer chunk, int pos, byte[] bytes, int len) {
+        ByteBuffer dup = chunk.duplicate();
+        dup.position(pos);
+        dup.put(bytes, 0, len);
+    }
+
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buf.remaining());
+            buf.get(b, off, len);
+            return len;
+        }
+    }
+}
@@ -17,8 +17,14 @@
  */
 package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -28,10 +34,14 @@ import java.util.Properties;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
@@ -93,6 +103,12 @@ public class POFRJoin extends PhysicalOperator {
     // null
     // fragment is the input which is fragmented and not replicated.
     private TupleToMapKey replicates[];
+    // Used instead of replicates when the replicated inputs are held off heap
+    private transient OffHeapTupleMap[] offHeapReplicates;
+    // Off heap tables, shared by the join operators of the JVM while any of
+    // them uses the table
+    private static final Map<String, WeakReference<OffHeapTupleMap>> OFF_HEAP_TABLES =
+            new HashMap<String, WeakReference<OffHeapTupleMap>>();
     // varaible which denotes whether we are returning tuples from the foreach
     // operator
     private boolean processingPlan;
@@ -288,15 +304,15 @@ public class POFRJoin extends PhysicalOperator {
                     ce.setValue(value);
                     continue;
                 }
-                TupleToMapKey replicate = replicates[i];
-                if (replicate.get(key) == null) {
+                List<Tuple> replicated = getReplicatedTuples(i, key);
+                if (replicated == null) {
                     if (isLeftOuterJoin) {
                         ce.setValue(nullBag);
                     }
                     noMatch = true;
                     break;
                 }
-                ce.setValue(new NonSpillableDataBag(replicate.get(key).getList()));
+                ce.setValue(new NonSpillableDataBag(replicated));
             }
 
             // If this is not LeftOuter Join and there was no match we
@@ -318,6 +334,14 @@ public class POFRJoin extends PhysicalOperator {
         }
     }
 
+    private List<Tuple> getReplicatedTuples(int i, Tuple key) throws ExecException {
+        if (offHeapReplicates != null) {
+            return offHeapReplicates[i].get(key);
+        }
+        TuplesToSchemaTupleList tuples = replicates[i].get(key);
+        return tuples == null ? null : tuples.getList();
+    }
+
     private static class TupleToMapKey {
         private HashMap<Tuple, TuplesToSchemaTupleList> tuples;
         private SchemaTupleFactory tf;
@@ -349,6 +373,12 @@ public class POFRJoin extends PhysicalOperator {
      * @throws ExecException
      */
     private void setUpHashMap() throws ExecException {
+        Configuration conf = PigMapReduce.sJobConfInternal.get();
+        if (conf != null && (conf.getBoolean(PigConfiguration.PIG_JOIN_REPLICATED_OFFHEAP, false)
+                || conf.getBoolean(PigConfiguration.PIG_JOIN_REPLICATED_MMAP, false))) {
+            setUpOffHeapTables(conf.getBoolean(PigConfiguration.PIG_JOIN_REPLICATED_MMAP, false));
+            return;
+        }
         SchemaTupleFactory[] inputSchemaTupleFactories = new SchemaTupleFactory[inputSchemas.length];
         SchemaTupleFactory[] keySchemaTupleFactories = new SchemaTupleFactory[inputSchemas.length];
         for (int i = 0; i < inputSchemas.length; i++) {
@@ -416,6 +446,143 @@ public class POFRJoin extends PhysicalOperator {
         log.debug("Hash Table built. Time taken: " + (time2 - time1));
     }
 
+    /**
+     * Same as setUpHashMap(), but serializes the replicated inputs into
+     * off heap tables. A table already built by another join operator of
+     * the JVM for the same input is reused.
+     *
+     * @param mmap if true, the tables are built once per node and memory
+     *        mapped
+     * @throws ExecException
+     */
+    private void setUpOffHeapTables(boolean mmap) throws ExecException {
+        offHeapReplicates = new OffHeapTupleMap[replFiles.length];
+        long time1 = System.currentTimeMillis();
+        for (int i = 0; i < replFiles.length; i++) {
+            if (i == fragment) {
+                continue;
+            }
+            String tableId = mKey.toString() + "#" + i + "#" + replFiles[i].getFileName();
+            synchronized (OFF_HEAP_TABLES) {
+                WeakReference<OffHeapTupleMap> ref = OFF_HEAP_TABLES.get(tableId);
+                OffHeapTupleMap table = ref == null ? null : ref.get();
+                if (table == null) {
+                    table = mmap ? mapOffHeapTable(i) : buildOffHeapTable(i);
+                    OFF_HEAP_TABLES.put(tableId, new WeakReference<OffHeapTupleMap>(table));
+                } else {
+                    log.info("Reusing replicated join table for " + replFiles[i].getFileName());
+                }
+                offHeapReplicates[i] = table;
+            }
+        }
+        long time2 = System.currentTimeMillis();
+        log.debug("Off heap tables built. Time taken: " + (time2 - time1));
+    }
+
+    /**
+     * Memory maps the table of a replicated input from a file in a local
+     * directory shared by the tasks of the job on the node. The first task
+     * to get the lock on the file builds the table and writes it; the other
+     * tasks wait for it and map the file. Without such a directory the
+     * table is built in the task.
+     */
+    private OffHeapTupleMap mapOffHeapTable(int i) throws ExecException {
+        Configuration conf = PigMapReduce.sJobConfInternal.get();
+        String dirName = conf.get(PigConfiguration.PIG_JOIN_REPLICATED_MMAP_DIR);
+        if (dirName == null) {
+            dirName = conf.get("job.local.dir");
+        }
+        if (dirName == null) {
+            // nothing would remove the files from a directory shared with
+            // other jobs, like java.io.tmpdir
+            log.info("No job local directory to map the replicated join table of "
+                    + replFiles[i].getFileName() + " from, building it in the task");
+            return buildOffHeapTable(i);
+        }
+        File dir = new File(dirName.split(",")[0]);
+        try {
+            File tableFile = new File(dir, "pigrepl-" + getTableDigest(i) + ".tbl");
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Could not create " + dir);
+            }
+            RandomAccessFile lockFile = new RandomAccessFile(
+                    new File(dir, tableFile.getName() + ".lock"), "rw");
+            try {
+                FileLock lock = lockFile.getChannel().lock();
+                try {
+                    if (!tableFile.exists()) {
+                        OffHeapTupleMap table = buildOffHeapTable(i);
+                        File tmp = new File(dir, tableFile.getName() + ".tmp");
+                        table.writeTo(tmp);
+                        if (!tmp.renameTo(tableFile)) {
+                            throw new IOException("Could not rename " + tmp + " to " + tableFile);
+                        }
+                        log.info("Wrote replicated join table to " + tableFile);
+                        return table;
+                    }
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+            OffHeapTupleMap table = OffHeapTupleMap.map(tableFile);
+            log.info("Mapped replicated join table " + tableFile + ": " + table.size() + " keys");
+            return table;
+        } catch (IOException e) {
+            int errCode = 2052;
+            String msg = "Could not set up memory mapped table for replicated input "
+                    + replFiles[i].getFileName();
+            throw new ExecException(msg, errCode, PigException.BUG, e);
+        }
+    }
+
+    /**
+     * Identifies the table of a replicated input across the tasks of a node:
+     * the same join input of the same operator, read from the same file.
+     */
+    private String getTableDigest(int i) throws IOException {
+        File file = new File(new Path(replFiles[i].getFileName()).toUri().getPath());
+        String id = mKey.toString() + "#" + i + "#" + file.getCanonicalPath()
+                + "#" + file.length() + "#" + file.lastModified();
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            byte[] digest = md5.digest(id.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private OffHeapTupleMap buildOffHeapTable(int i) throws ExecException {
+        POLoad ld = new POLoad(new OperatorKey("Repl File Loader", 1L),
+                replFiles[i]);
+        Properties props = ConfigurationUtil.getLocalFSProperties();
+        PigContext pc = new PigContext(ExecType.LOCAL, props);
+        ld.setPc(pc);
+        POLocalRearrange lr = LRs[i];
+        lr.setInputs(Arrays.asList((PhysicalOperator) ld));
+
+        OffHeapTupleMap table = new OffHeapTupleMap();
+        for (Result res = lr.getNextTuple(); res.returnStatus != POStatus.STATUS_EOP; res = lr.getNextTuple()) {
+            if (getReporter() != null)
+                getReporter().progress();
+            Tuple tuple = (Tuple) res.result;
+            if (isKeyNull(tuple.get(1))) continue;
+            Tuple key = mTupleFactory.newTuple(1);
+            key.set(0, tuple.get(1));
+            table.put(key, getValueTuple(lr, tuple));
+        }
+        log.info("Built off heap table for " + replFiles[i].getFileName() + ": "
+                + table.size() + " keys, " + table.getNumValues() + " tuples, "
+                + table.getMemorySize() + " bytes");
+        return table;
+    }
+
     private boolean isKeyNull(Object key) throws ExecException {
         if (key == null) return true;
         if (key instanceof Tuple) {
@@ -17,14 +17,20 @@
  */
 package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
 
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.CompiledExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.ExpressionCompiler;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.plan.OperatorKey;
@@ -61,6 +67,12 @@ public class POFilter extends PhysicalOperator {
     // appropriate type
     byte compOperandType;
 
+    // The expression plan compiled by ExpressionCompiler, if enabled and
+    // the plan could be compiled
+    private transient CompiledExpression compiledPlan;
+
+    private transient boolean compileChecked = false;
+
     public POFilter(OperatorKey k) {
         this(k, -1, null);
     }
@@ -87,6 +99,7 @@ public class POFilter extends PhysicalOperator {
     public Result getNextTuple() throws ExecException {
         Result res = null;
         Result inp = null;
+        CompiledExpression compiled = getCompiledPlan();
         while (true) {
             inp = processInput();
             if (inp.returnStatus == POStatus.STATUS_EOP
@@ -96,6 +109,13 @@ public class POFilter extends PhysicalOperator {
                 continue;
             }
 
+            if (compiled != null) {
+                if (Boolean.TRUE.equals(evaluate(compiled, (Tuple) inp.result))) {
+                    return inp;
+                }
+                continue;
+            }
+
             plan.attachInput((Tuple) inp.result);
 
             /*
@@ -155,6 +175,89 @@ public class POFilter extends PhysicalOperator {
         return inp;
     }
 
+    @Override
+    public boolean supportsBatch() {
+        return illustrator == null;
+    }
+
+    /**
+     * Filters a whole batch of input at a time. If every operator of the
+     * expression plan supports batch mode the predicate is evaluated once
+     * for the batch, otherwise it is evaluated row by row.
+     */
+    @Override
+    public TupleBatch getNextBatch(int maxRows) throws ExecException {
+        if (illustrator != null) {
+            return super.getNextBatch(maxRows);
+        }
+        CompiledExpression compiled = getCompiledPlan();
+        boolean vectorized = compiled == null && plan.supportsBatch();
+        while (true) {
+            TupleBatch batch = processInputBatch(maxRows);
+            if (batch.returnStatus == POStatus.STATUS_ERR) {
+                return batch;
+            }
+            if (!batch.isEmpty()) {
+                boolean[] keep = new boolean[batch.size()];
+                if (compiled != null) {
+                    for (int i = 0; i < keep.length; i++) {
+                        keep[i] = Boolean.TRUE.equals(evaluate(compiled, batch.get(i)));
+                    }
+                } else if (vectorized) {
+                    Object[] values = ((ExpressionOperator) comOp).evaluateBatch(batch);
+                    for (int i = 0; i < keep.length; i++) {
+                        keep[i] = Boolean.TRUE.equals(values[i]);
+                    }
+                } else {
+                    for (int i = 0; i < keep.length; i++) {
+                        plan.attachInput(batch.get(i));
+                        Result res = comOp.getNextBoolean();
+                        plan.detachInput();
+                        if (res.returnStatus == POStatus.STATUS_ERR) {
+                            return TupleBatch.error(res.result);
+                        }
+                        if (res.returnStatus == POStatus.STATUS_EOP) {
+                            batch.returnStatus = POStatus.STATUS_EOP;
+                            break;
+                        }
+                        keep[i] = res.returnStatus == POStatus.STATUS_OK
+                                && Boolean.TRUE.equals(res.result);
+                    }
+                }
+                batch.retain(keep);
+            }
+            if (!batch.isEmpty() || batch.isLast()) {
+                return batch;
+            }
+        }
+    }
+
+    /**
+     * @return the compiled expression plan, or null if the plan is to be
+     *         interpreted
+     */
+    private CompiledExpression getCompiledPlan() {
+        if (!compileChecked) {
+            compileChecked = true;
+            if (illustrator == null && ExpressionCompiler.isEnabled()) {
+                CompiledExpression[] compiled =
+                        ExpressionCompiler.compile(Collections.singletonList(plan));
+                compiledPlan = compiled == null ? null : compiled[0];
+            }
+        }
+        return compiledPlan;
+    }
+
+    private static Object evaluate(CompiledExpression compiled, Tuple t) throws ExecException {
+        try {
+            return compiled.evaluate(t);
+        } catch (RuntimeException e) {
+            int errCode = 2067;
+            String msg = "Error while evaluating compiled filter expression";
+            throw new ExecException(msg, errCode, PigException.BUG, e);
+        }
+    }
+
     @Override
     public String name() {
         return getAliasString() + "Filter" + "["
@@ -180,6 +283,8 @@ public class POFilter extends PhysicalOperator {
     public void setPlan(PhysicalPlan plan) {
         this.plan = plan;
         comOp = plan.getLeaves().get(0);
+        compiledPlan = null;
+        compileChecked = false;
 //        compOperandType = comOp.getOperandType();
     }
 
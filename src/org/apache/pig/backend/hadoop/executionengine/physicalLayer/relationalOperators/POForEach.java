@@ -28,11 +28,14 @@ import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PORelationToExprProject;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.CompiledExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.ExpressionCompiler;
 import org.apache.pig.data.AccumulativeBag;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataType;
@@ -90,6 +93,12 @@ public class POForEach extends PhysicalOperator {
 
     protected transient AccumulativeTupleBuffer buffer;
 
+    // The input plans compiled by ExpressionCompiler, if enabled and every
+    // plan could be compiled
+    private transient CompiledExpression[] compiledPlans;
+
+    private transient boolean compileChecked = false;
+
     protected Tuple inpTuple;
 
     private Schema schema;
@@ -238,6 +247,7 @@ public class POForEach extends PhysicalOperator {
             //yet to begin. So process the input and start
             //nested plan processing on the input tuple
             //read
+            CompiledExpression[] compiled = getCompiledPlans();
             while (true) {
                 inp = processInput();
                 if (inp.returnStatus == POStatus.STATUS_EOP ||
@@ -248,6 +258,15 @@ public class POForEach extends PhysicalOperator {
                     continue;
                 }
 
+                if (compiled != null) {
+                    // one output per input, no need to go through processPlan()
+                    if (getReporter() != null) {
+                        getReporter().progress();
+                    }
+                    return new Result(POStatus.STATUS_OK,
+                            evaluateCompiled(compiled, (Tuple) inp.result));
+                }
+
                 attachInputToPlans((Tuple) inp.result);
                 inpTuple = (Tuple)inp.result;
 
@@ -319,7 +338,7 @@ public class POForEach extends PhysicalOperator {
         isEarlyTerminated = true;
     }
 
-    protected Result processPlan() throws ExecException{
+    private void initTupleMaker() {
         if (schema != null && tupleMaker == null) {
             // Note here that if SchemaTuple is currently turned on, then any UDF's in the chain
             // must follow good practices. Namely, they should not append to the Tuple that comes
@@ -332,6 +351,115 @@ public class POForEach extends PhysicalOperator {
         if (tupleMaker == null) {
             tupleMaker = TupleFactory.getInstance();
         }
+    }
+
+    /**
+     * @return the compiled input plans, or null if the plans are to be
+     *         interpreted
+     */
+    private CompiledExpression[] getCompiledPlans() {
+        if (!compileChecked) {
+            compileChecked = true;
+            if (illustrator == null && !isAccumulative() && inputPlans != null
+                    && opsToBeReset.isEmpty() && !isFlattening()
+                    && ExpressionCompiler.isEnabled()) {
+                compiledPlans = ExpressionCompiler.compile(inputPlans);
+            }
+        }
+        return compiledPlans;
+    }
+
+    private boolean isFlattening() {
+        for (int i = 0; i < noItems; i++) {
+            if (isToBeFlattenedArray[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Tuple evaluateCompiled(CompiledExpression[] compiled, Tuple in) throws ExecException {
+        initTupleMaker();
+        Tuple out = tupleMaker.newTuple();
+        for (int i = 0; i < compiled.length; i++) {
+            if (knownSize) {
+                out.set(i, compiled[i].evaluate(in));
+            } else {
+                out.append(compiled[i].evaluate(in));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Batch mode is supported when the foreach only generates expressions
+     * which can themselves be evaluated in batch mode and nothing is
+     * flattened, so every input row produces exactly one output row.
+     */
+    @Override
+    public boolean supportsBatch() {
+        if (illustrator != null || isAccumulative() || inputPlans == null
+                || !opsToBeReset.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < noItems; i++) {
+            if (isToBeFlattenedArray[i] || !inputPlans.get(i).supportsBatch()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public TupleBatch getNextBatch(int maxRows) throws ExecException {
+        if (!supportsBatch()) {
+            return super.getNextBatch(maxRows);
+        }
+        initTupleMaker();
+        CompiledExpression[] compiled = getCompiledPlans();
+        try {
+            while (true) {
+                TupleBatch batch = processInputBatch(maxRows);
+                if (batch.returnStatus == POStatus.STATUS_ERR) {
+                    return batch;
+                }
+                if (!batch.isEmpty()) {
+                    if (compiled != null) {
+                        for (int row = 0; row < batch.size(); row++) {
+                            batch.set(row, evaluateCompiled(compiled, batch.get(row)));
+                        }
+                    } else {
+                        Object[][] columns = new Object[noItems][];
+                        for (int i = 0; i < noItems; i++) {
+                            columns[i] = ((ExpressionOperator) planLeafOps[i]).evaluateBatch(batch);
+                        }
+                        for (int row = 0; row < batch.size(); row++) {
+                            Tuple out = tupleMaker.newTuple();
+                            for (int i = 0; i < noItems; i++) {
+                                if (knownSize) {
+                                    out.set(i, columns[i][row]);
+                                } else {
+                                    out.append(columns[i][row]);
+                                }
+                            }
+                            batch.set(row, out);
+                        }
+                    }
+                    if (getReporter() != null) {
+                        getReporter().progress();
+                    }
+                }
+                if (!batch.isEmpty() || batch.isLast()) {
+                    return batch;
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new ExecException("Error while executing ForEach at " + this.getOriginalLocations(), e);
+        }
+    }
+
+    protected Result processPlan() throws ExecException{
+        initTupleMaker();
 
         Result res = new Result();
 
@@ -558,6 +686,8 @@ public class POForEach extends PhysicalOperator {
     }
 
     private void reInitialize() {
+        compiledPlans = null;
+        compileChecked = false;
         if(planLeafOps != null) {
             noItems = planLeafOps.length;
             resultTypes = new byte[noItems];
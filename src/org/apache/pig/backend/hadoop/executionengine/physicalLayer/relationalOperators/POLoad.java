@@ -29,10 +29,12 @@ import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.io.FileSpec;
 import org.apache.pig.impl.io.ReadToEndLoader;
 import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.util.StatisticsFilter;
 import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.impl.plan.VisitorException;
 import org.apache.pig.pen.util.ExampleTuple;
@@ -65,6 +67,8 @@ public class POLoad extends PhysicalOperator {
     private boolean isTmpLoad;
     
     private long limit=-1;
+
+    private StatisticsFilter statisticsFilter;
     
     public POLoad(OperatorKey k) {
         this(k,-1, null);
@@ -118,16 +122,7 @@ public class POLoad extends PhysicalOperator {
      */
     @Override
     public Result getNextTuple() throws ExecException {
-        if(!setUpDone && lFile!=null){
-            try {
-                setUp();
-            } catch (IOException ioe) {
-                int errCode = 2081;
-                String msg = "Unable to setup the load function.";
-                throw new ExecException(msg, errCode, PigException.BUG, ioe);
-            }
-            setUpDone = true;
-        }
+        checkSetUp();
         Result res = new Result();
         try {
             res.result = loader.getNext();
@@ -147,6 +142,51 @@ public class POLoad extends PhysicalOperator {
         return res;
     }
 
+    private void checkSetUp() throws ExecException {
+        if(!setUpDone && lFile!=null){
+            try {
+                setUp();
+            } catch (IOException ioe) {
+                int errCode = 2081;
+                String msg = "Unable to setup the load function.";
+                throw new ExecException(msg, errCode, PigException.BUG, ioe);
+            }
+            setUpDone = true;
+        }
+    }
+
+    @Override
+    public boolean supportsBatch() {
+        return illustrator == null;
+    }
+
+    /**
+     * Reads up to maxRows tuples from the load function in one call.
+     */
+    @Override
+    public TupleBatch getNextBatch(int maxRows) throws ExecException {
+        if (illustrator != null) {
+            return super.getNextBatch(maxRows);
+        }
+        checkSetUp();
+        TupleBatch batch = new TupleBatch(maxRows);
+        try {
+            while (batch.size() < maxRows) {
+                Tuple t = loader.getNext();
+                if (t == null) {
+                    batch.returnStatus = POStatus.STATUS_EOP;
+                    tearDown();
+                    break;
+                }
+                batch.add(t);
+            }
+        } catch (IOException e) {
+            log.error("Received error from loader function: " + e);
+            return TupleBatch.error(null);
+        }
+        return batch;
+    }
+
     @Override
     public String name() {
         return (lFile != null) ? getAliasString() + "Load" + "(" + lFile.toString()
@@ -252,4 +292,12 @@ public class POLoad extends PhysicalOperator {
     public void setLimit(long limit) {
         this.limit = limit;
     }
+
+    public StatisticsFilter getStatisticsFilter() {
+        return statisticsFilter;
+    }
+
+    public void setStatisticsFilter(StatisticsFilter statisticsFilter) {
+        this.statisticsFilter = statisticsFilter;
+    }
 }
@@ -29,6 +29,7 @@ import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
@@ -41,6 +42,7 @@ import org.apache.pig.impl.plan.NodeIdGenerator;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.PlanException;
 import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.util.HeavyHitters;
 import org.apache.pig.pen.util.ExampleTuple;
 
 /**
@@ -131,6 +133,12 @@ public class POLocalRearrange extends PhysicalOperator {
     // By default, we strip keys from the value.
     private boolean stripKeyFromValue = true;
 
+    // The number of keys counted to find the most frequent ones, 0 if
+    // they are not counted.
+    private int keySketchCapacity = 0;
+
+    private transient HeavyHitters<Object> keySketch;
+
     public POLocalRearrange(OperatorKey k) {
         this(k, -1, null);
     }
@@ -367,6 +375,55 @@ public class POLocalRearrange extends PhysicalOperator {
     }
 
 
+    /**
+     * Batch mode is supported when all the key plans can be evaluated in
+     * batch mode and there is no secondary key.
+     */
+    @Override
+    public boolean supportsBatch() {
+        if (illustrator != null || secondaryPlans != null || plans == null) {
+            return false;
+        }
+        for (PhysicalPlan ep : plans) {
+            if (!ep.supportsBatch()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public TupleBatch getNextBatch(int maxRows) throws ExecException {
+        if (!supportsBatch()) {
+            return super.getNextBatch(maxRows);
+        }
+        while (true) {
+            TupleBatch batch = processInputBatch(maxRows);
+            if (batch.returnStatus == POStatus.STATUS_ERR) {
+                return batch;
+            }
+            if (!batch.isEmpty()) {
+                Object[][] keys = new Object[leafOps.size()][];
+                List<Result> resLst = new ArrayList<Result>(leafOps.size());
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = leafOps.get(i).evaluateBatch(batch);
+                    resLst.add(new Result(POStatus.STATUS_OK, null));
+                }
+                // constructLROutput() only reads the values out of resLst,
+                // so the same Results are reused for every row
+                for (int row = 0; row < batch.size(); row++) {
+                    for (int i = 0; i < keys.length; i++) {
+                        resLst.get(i).result = keys[i][row];
+                    }
+                    batch.set(row, constructLROutput(resLst, null, batch.get(row)));
+                }
+            }
+            if (!batch.isEmpty() || batch.isLast()) {
+                return batch;
+            }
+        }
+    }
+
     private void detachPlans(List<PhysicalPlan> plans) {
         for (PhysicalPlan ep : plans) {
             ep.detachInput();
@@ -417,6 +474,12 @@ public class POLocalRearrange extends PhysicalOperator {
             key = getKeyFromResult(resLst, keyType);
         }
 
+        if (keySketchCapacity > 0) {
+            if (keySketch == null) {
+                keySketch = new HeavyHitters<Object>(keySketchCapacity);
+            }
+            keySketch.add(key);
+        }
 
         if(!stripKeyFromValue){
             lrOutput.set(1, key);
@@ -700,10 +763,32 @@ public class POLocalRearrange extends PhysicalOperator {
         // Needs to be called as setDistinct so that the fake index tuple gets
         // created.
         clone.setDistinct(mIsDistinct);
+        clone.keySketchCapacity = keySketchCapacity;
         clone.addOriginalLocation(alias, getOriginalLocations());
         return clone;
     }
 
+    /**
+     * Makes this operator count its most frequent keys.
+     * @param keySketchCapacity the number of keys counted, 0 to not count
+     * them
+     */
+    public void setKeySketchCapacity(int keySketchCapacity) {
+        this.keySketchCapacity = keySketchCapacity;
+    }
+
+    public int getKeySketchCapacity() {
+        return keySketchCapacity;
+    }
+
+    /**
+     * @return the most frequent keys this operator has seen, or null if it
+     * doesn't count them or has seen no key
+     */
+    public HeavyHitters<Object> getKeySketch() {
+        return keySketch;
+    }
+
     public boolean isCross() {
         return isCross;
     }
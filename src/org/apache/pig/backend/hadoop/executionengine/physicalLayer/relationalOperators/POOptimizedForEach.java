@@ -83,6 +83,14 @@ public class POOptimizedForEach extends POForEach {
         return "Optimized For Each" + "(" + fString + ")" + "[" + DataType.findTypeName(resultType) + "]" +" - " + mKey.toString();
     }
     
+    /**
+     * The optimized foreach has its own row by row getNextTuple(), so the batch implementation of the parent does not apply.
+     */
+    @Override
+    public boolean supportsBatch() {
+        return false;
+    }
+
     /**
      * Calls getNext on the generate operator inside the nested
      * physical plan and returns it maintaining an additional state
@@ -33,7 +33,6 @@ import org.apache.pig.data.AccumulativeBag;
 import org.apache.pig.data.BagFactory;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataType;
-import org.apache.pig.data.InternalCachedBag;
 import org.apache.pig.data.ReadOnceBag;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
@@ -231,7 +230,7 @@ public class POPackage extends PhysicalOperator {
                             // constructor argument should be 2 * numInputs. But for one
                             // obscure
                             // case we don't want to pay the penalty all the time.
-                            : new InternalCachedBag(numInputs);
+                            : pkgr.newInputBag(numInputs);
                 }
                 // For each indexed tup in the inp, sort them
                 // into their corresponding bags based
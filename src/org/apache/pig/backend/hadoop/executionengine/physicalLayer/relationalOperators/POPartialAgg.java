@@ -111,6 +111,11 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
     private Iterator<Entry<Object, List<Tuple>>> spillingIterator;
     private boolean estimatedMemThresholds = false;
 
+    // Used instead of the maps when the key and aggregates allow it
+    private transient PartialAggHashTable aggTable;
+    private transient long aggTableMemLimit;
+    private transient int aggTableOutputIndex = 0;
+
 
     public POPartialAgg(OperatorKey k) {
         super(k);
@@ -122,6 +127,12 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
         if (percent <= 0) {
             LOG.info("No memory allocated to intermediate memory buffers. Turning off partial aggregation.");
             disableMapAgg();
+        } else if (isPrimitiveTableEnabled()) {
+            aggTable = PartialAggHashTable.create(keyPlan, valuePlans);
+            if (aggTable != null) {
+                aggTableMemLimit = (long) (Runtime.getRuntime().maxMemory() * percent / ALL_POPARTS.size());
+                LOG.info("Aggregating into primitive hash table, memory limit: " + aggTableMemLimit);
+            }
         }
         initialized = true;
         SpillableMemoryManager.getInstance().registerSpillable(this);
@@ -143,6 +154,9 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
         if (!initialized && !ALL_POPARTS.containsKey(this)) {
             init();
         }
+        if (aggTable != null) {
+            return getNextFromTable();
+        }
 
         while (true) {
             if (!sizeReductionChecked && numRecsInRawMap >= NUM_RECS_TO_SAMPLE) {
@@ -212,6 +226,54 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
         }
     }
 
+    /**
+     * Same as getNextTuple(), but aggregates into aggTable. The aggregate
+     * states are updated as inputs come in, so there are no tiers and no
+     * reduction check: the table is emptied when it reaches its memory limit,
+     * when the SpillableMemoryManager asks for it, or at the end of input.
+     */
+    private Result getNextFromTable() throws ExecException {
+        while (true) {
+            if (doSpill) {
+                if (aggTableOutputIndex < aggTable.size()) {
+                    return new Result(POStatus.STATUS_OK, aggTable.getOutput(aggTableOutputIndex++));
+                }
+                aggTable.clear();
+                aggTableOutputIndex = 0;
+                doSpill = false;
+                if (inputsExhausted) {
+                    return EOP_RESULT;
+                }
+            }
+            Result inp = processInput();
+            if (inp.returnStatus == POStatus.STATUS_ERR) {
+                return inp;
+            } else if (inp.returnStatus == POStatus.STATUS_EOP) {
+                if (parentPlan.endOfAllInput) {
+                    inputsExhausted = true;
+                    doSpill = true;
+                    continue;
+                }
+                return EOP_RESULT;
+            } else if (inp.returnStatus == POStatus.STATUS_NULL) {
+                continue;
+            }
+            Tuple inpTuple = (Tuple) inp.result;
+            keyPlan.attachInput(inpTuple);
+            Result keyRes = getResult(keyLeaf);
+            keyPlan.detachInput();
+            if (keyRes.returnStatus != POStatus.STATUS_OK) {
+                return keyRes;
+            }
+            aggTable.add(keyRes.result, inpTuple);
+            if (aggTable.getMemorySize() > aggTableMemLimit) {
+                LOG.info("Primitive hash table reached its memory limit with "
+                        + aggTable.size() + " keys, emitting.");
+                doSpill = true;
+            }
+        }
+    }
+
     private void estimateMemThresholds() {
         if (!mapAggDisabled()) {
             LOG.info("Getting mem limits; considering " + ALL_POPARTS.size() + " POPArtialAgg objects.");
@@ -434,6 +496,12 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
         return minReduction;
     }
 
+    private boolean isPrimitiveTableEnabled() {
+        return PigMapReduce.sJobConfInternal.get() == null
+                || PigMapReduce.sJobConfInternal.get().getBoolean(
+                        PigConfiguration.PARTAGG_PRIMITIVE_TABLE, true);
+    }
+
     private float getPercentUsageFromProp() {
         float percent = 0.2F;
         if (PigMapReduce.sJobConfInternal.get() != null) {
@@ -543,6 +611,9 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
 
     @Override
     public long getMemorySize() {
+        if (aggTable != null) {
+            return aggTable.getMemorySize();
+        }
         return avgTupleSize * (numRecsInProcessedMap + numRecsInRawMap);
     }
 
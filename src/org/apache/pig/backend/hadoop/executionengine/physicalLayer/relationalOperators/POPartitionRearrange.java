@@ -116,6 +116,14 @@ public class POPartitionRearrange extends POLocalRearrange {
                 + ") - " + mKey.toString();
     }
 
+    /**
+     * Partitioning is done row by row in getNextTuple(), so the batch implementation of the parent does not apply.
+     */
+    @Override
+    public boolean supportsBatch() {
+        return false;
+    }
+
     /**
      * Calls getNext on the generate operator inside the nested
      * physical plan. Converts the generated tuple into the proper
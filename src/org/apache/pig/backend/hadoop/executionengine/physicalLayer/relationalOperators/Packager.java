@@ -475,6 +475,16 @@ public class Packager implements Illustrable, Serializable, Cloneable {
         }
     }
 
+    /**
+     * @param bagCount the number of bags which share the memory of the
+     * package
+     * @return a bag to hold the tuples of an input for a key, when they are
+     * all read before the next input
+     */
+    public DataBag newInputBag(int bagCount) {
+        return new InternalCachedBag(bagCount);
+    }
+
     public DataBag getBag(){
         return useDefaultBag ? mBagFactory.newDefaultBag()
                 // In a very rare case if there is a POStream after this
@@ -0,0 +1,489 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.builtin.AVG;
+import org.apache.pig.builtin.COUNT;
+import org.apache.pig.builtin.COUNT_STAR;
+import org.apache.pig.builtin.DoubleAvg;
+import org.apache.pig.builtin.DoubleMax;
+import org.apache.pig.builtin.DoubleMin;
+import org.apache.pig.builtin.DoubleSum;
+import org.apache.pig.builtin.IntAvg;
+import org.apache.pig.builtin.IntMax;
+import org.apache.pig.builtin.IntMin;
+import org.apache.pig.builtin.LongAvg;
+import org.apache.pig.builtin.LongMax;
+import org.apache.pig.builtin.LongMin;
+import org.apache.pig.builtin.LongSum;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * Hash table used by {@link POPartialAgg} when the group key is an int, long
+ * or chararray and every value plan is the Intermediate stage of a builtin
+ * SUM, COUNT, MIN, MAX or AVG. Instead of buffering the input tuples of a key
+ * until they are handed to the Intermediate functions, the running state of
+ * each function is updated in place in primitive arrays, and the tuples the
+ * Intermediate functions would have produced are only built when the table
+ * is emptied.
+ *
+ * Keys are stored densely in insertion order, and located through an open
+ * addressing index with linear probing. Since every array is allocated by the
+ * table, {@link #getMemorySize()} is exact up to the chararray keys, whose
+ * size is estimated as for a tuple field.
+ */
+public class PartialAggHashTable {
+
+    /**
+     * Running state kept for one value plan.
+     */
+    public static enum Aggregate {
+        LONG_SUM, LONG_MIN, LONG_MAX, INT_MIN, INT_MAX,
+        DOUBLE_SUM, DOUBLE_MIN, DOUBLE_MAX, COUNT, LONG_AVG, DOUBLE_AVG
+    }
+
+    private static final Map<String, Aggregate> INTERMEDIATES = new HashMap<String, Aggregate>();
+    static {
+        // IntSum and FloatSum inherit the Intermediate of LongSum and DoubleSum
+        INTERMEDIATES.put(LongSum.Intermediate.class.getName(), Aggregate.LONG_SUM);
+        INTERMEDIATES.put(LongMin.Intermediate.class.getName(), Aggregate.LONG_MIN);
+        INTERMEDIATES.put(LongMax.Intermediate.class.getName(), Aggregate.LONG_MAX);
+        INTERMEDIATES.put(IntMin.Intermediate.class.getName(), Aggregate.INT_MIN);
+        INTERMEDIATES.put(IntMax.Intermediate.class.getName(), Aggregate.INT_MAX);
+        INTERMEDIATES.put(DoubleSum.Intermediate.class.getName(), Aggregate.DOUBLE_SUM);
+        INTERMEDIATES.put(DoubleMin.Intermediate.class.getName(), Aggregate.DOUBLE_MIN);
+        INTERMEDIATES.put(DoubleMax.Intermediate.class.getName(), Aggregate.DOUBLE_MAX);
+        INTERMEDIATES.put(COUNT.Intermediate.class.getName(), Aggregate.COUNT);
+        INTERMEDIATES.put(COUNT_STAR.Intermediate.class.getName(), Aggregate.COUNT);
+        INTERMEDIATES.put(IntAvg.Intermediate.class.getName(), Aggregate.LONG_AVG);
+        INTERMEDIATES.put(LongAvg.Intermediate.class.getName(), Aggregate.LONG_AVG);
+        INTERMEDIATES.put(AVG.Intermediate.class.getName(), Aggregate.DOUBLE_AVG);
+        INTERMEDIATES.put(DoubleAvg.Intermediate.class.getName(), Aggregate.DOUBLE_AVG);
+    }
+
+    private static final TupleFactory TF = TupleFactory.getInstance();
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // object header plus length of an array
+    private static final long ARRAY_OVERHEAD = 16;
+
+    private final byte keyType;
+    private final Aggregate[] aggregates;
+    private final int[] columns;
+
+    // index into the entries, entry number + 1, 0 for a free slot
+    private int[] slots;
+    private int mask;
+
+    private long[] longKeys;
+    private String[] stringKeys;
+    private long stringKeysSize = 0;
+    private int nullKeyEntry = -1;
+    private int size = 0;
+
+    private long[][] longStates;
+    private double[][] doubleStates;
+    private long[][] counts;
+    private boolean[][] seen;
+
+    /**
+     * @param keyType type of the group key, one of INTEGER, LONG or CHARARRAY
+     * @param aggregates state to keep for each value plan
+     * @param columns column of the input tuple holding the output of the
+     *        Initial function, for each value plan
+     */
+    public PartialAggHashTable(byte keyType, Aggregate[] aggregates, int[] columns) {
+        this.keyType = keyType;
+        this.aggregates = aggregates;
+        this.columns = columns;
+        allocate();
+    }
+
+    private void allocate() {
+        slots = new int[INITIAL_CAPACITY * 2];
+        mask = slots.length - 1;
+        if (keyType == DataType.CHARARRAY) {
+            stringKeys = new String[INITIAL_CAPACITY];
+        } else {
+            longKeys = new long[INITIAL_CAPACITY];
+        }
+        longStates = new long[aggregates.length][];
+        doubleStates = new double[aggregates.length][];
+        counts = new long[aggregates.length][];
+        seen = new boolean[aggregates.length][];
+        for (int i = 0; i < aggregates.length; i++) {
+            if (isDouble(aggregates[i])) {
+                doubleStates[i] = new double[INITIAL_CAPACITY];
+            } else {
+                longStates[i] = new long[INITIAL_CAPACITY];
+            }
+            if (aggregates[i] == Aggregate.LONG_AVG || aggregates[i] == Aggregate.DOUBLE_AVG) {
+                counts[i] = new long[INITIAL_CAPACITY];
+            }
+            seen[i] = new boolean[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * Creates a table for the plans of a POPartialAgg.
+     *
+     * @param keyPlan the key plan
+     * @param valuePlans the value plans
+     * @return the table, or null if the key type or one of the value plans
+     *         is not supported
+     */
+    public static PartialAggHashTable create(PhysicalPlan keyPlan, List<PhysicalPlan> valuePlans) {
+        byte keyType = keyPlan.getLeaves().get(0).getResultType();
+        if (keyType != DataType.INTEGER && keyType != DataType.LONG
+                && keyType != DataType.CHARARRAY) {
+            return null;
+        }
+        Aggregate[] aggregates = new Aggregate[valuePlans.size()];
+        int[] columns = new int[valuePlans.size()];
+        for (int i = 0; i < valuePlans.size(); i++) {
+            PhysicalPlan plan = valuePlans.get(i);
+            // expected shape is Project(col) -> Intermediate
+            if (plan.size() != 2 || plan.getLeaves().size() != 1
+                    || !(plan.getLeaves().get(0) instanceof POUserFunc)) {
+                return null;
+            }
+            POUserFunc func = (POUserFunc) plan.getLeaves().get(0);
+            aggregates[i] = INTERMEDIATES.get(func.getFuncSpec().getClassName());
+            if (aggregates[i] == null || func.getFuncSpec().getCtorArgs() != null) {
+                return null;
+            }
+            List<PhysicalOperator> preds = plan.getPredecessors(func);
+            if (preds == null || preds.size() != 1 || preds.get(0).getClass() != POProject.class) {
+                return null;
+            }
+            POProject proj = (POProject) preds.get(0);
+            if (proj.isStar() || proj.isProjectToEnd() || proj.getColumns().size() != 1) {
+                return null;
+            }
+            columns[i] = proj.getColumns().get(0);
+        }
+        return new PartialAggHashTable(keyType, aggregates, columns);
+    }
+
+    private static boolean isDouble(Aggregate aggregate) {
+        switch (aggregate) {
+        case DOUBLE_SUM:
+        case DOUBLE_MIN:
+        case DOUBLE_MAX:
+        case DOUBLE_AVG:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Folds an input tuple into the state of its key.
+     *
+     * @param key the group key of the tuple
+     * @param input the input tuple, holding the outputs of the Initial
+     *        functions
+     * @throws ExecException
+     */
+    public void add(Object key, Tuple input) throws ExecException {
+        int entry = findOrInsert(key);
+        try {
+            for (int i = 0; i < aggregates.length; i++) {
+                update(i, entry, (Tuple) input.get(columns[i]));
+            }
+        } catch (ClassCastException e) {
+            int errCode = 2106;
+            String msg = "Unexpected intermediate value in partial aggregation";
+            throw new ExecException(msg, errCode, PigException.BUG, e);
+        }
+    }
+
+    private void update(int i, int entry, Tuple value) throws ExecException {
+        Number n = (Number) value.get(0);
+        switch (aggregates[i]) {
+        case COUNT:
+            if (n != null) {
+                longStates[i][entry] += n.longValue();
+            }
+            return;
+        case LONG_AVG:
+        case DOUBLE_AVG:
+            // nulls do not contribute to the sum but are in the count
+            counts[i][entry] += ((Number) value.get(1)).longValue();
+            break;
+        default:
+            break;
+        }
+        if (n == null) {
+            return;
+        }
+        boolean first = !seen[i][entry];
+        seen[i][entry] = true;
+        switch (aggregates[i]) {
+        case LONG_SUM:
+        case LONG_AVG:
+            longStates[i][entry] += n.longValue();
+            break;
+        case LONG_MIN:
+        case INT_MIN:
+            if (first || n.longValue() < longStates[i][entry]) {
+                longStates[i][entry] = n.longValue();
+            }
+            break;
+        case LONG_MAX:
+        case INT_MAX:
+            if (first || n.longValue() > longStates[i][entry]) {
+                longStates[i][entry] = n.longValue();
+            }
+            break;
+        case DOUBLE_SUM:
+        case DOUBLE_AVG:
+            doubleStates[i][entry] += n.doubleValue();
+            break;
+        case DOUBLE_MIN:
+            doubleStates[i][entry] = first ? n.doubleValue()
+                    : Math.min(doubleStates[i][entry], n.doubleValue());
+            break;
+        case DOUBLE_MAX:
+            doubleStates[i][entry] = first ? n.doubleValue()
+                    : Math.max(doubleStates[i][entry], n.doubleValue());
+            break;
+        default:
+            break;
+        }
+    }
+
+    private int findOrInsert(Object key) {
+        if (key == null) {
+            if (nullKeyEntry < 0) {
+                nullKeyEntry = newEntry();
+            }
+            return nullKeyEntry;
+        }
+        long longKey = 0;
+        int hash;
+        if (keyType == DataType.CHARARRAY) {
+            hash = mix(key.hashCode());
+        } else {
+            longKey = ((Number) key).longValue();
+            hash = mix((int) (longKey ^ (longKey >>> 32)));
+        }
+        int slot = hash & mask;
+        while (true) {
+            int entry = slots[slot] - 1;
+            if (entry < 0) {
+                break;
+            }
+            if (keyType == DataType.CHARARRAY ? key.equals(stringKeys[entry])
+                    : longKeys[entry] == longKey) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int entry = newEntry();
+        if (keyType == DataType.CHARARRAY) {
+            String s = (String) key;
+            stringKeys[entry] = s;
+            stringKeysSize += 40 + 2 * s.length();
+        } else {
+            longKeys[entry] = longKey;
+        }
+        slots[slot] = entry + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return entry;
+    }
+
+    private static int mix(int h) {
+        // spread the bits, keys are often small sequential numbers
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int newEntry() {
+        int capacity = seen.length > 0 ? seen[0].length
+                : (longKeys != null ? longKeys.length : stringKeys.length);
+        if (size == capacity) {
+            grow(capacity * 2);
+        }
+        return size++;
+    }
+
+    private void grow(int capacity) {
+        if (longKeys != null) {
+            longKeys = Arrays.copyOf(longKeys, capacity);
+        } else {
+            stringKeys = Arrays.copyOf(stringKeys, capacity);
+        }
+        for (int i = 0; i < aggregates.length; i++) {
+            if (longStates[i] != null) {
+                longStates[i] = Arrays.copyOf(longStates[i], capacity);
+            }
+            if (doubleStates[i] != null) {
+                doubleStates[i] = Arrays.copyOf(doubleStates[i], capacity);
+            }
+            if (counts[i] != null) {
+                counts[i] = Arrays.copyOf(counts[i], capacity);
+            }
+            seen[i] = Arrays.copyOf(seen[i], capacity);
+        }
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        mask = slots.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            if (entry == nullKeyEntry) {
+                continue;
+            }
+            int hash;
+            if (keyType == DataType.CHARARRAY) {
+                hash = mix(stringKeys[entry].hashCode());
+            } else {
+                hash = mix((int) (longKeys[entry] ^ (longKeys[entry] >>> 32)));
+            }
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+    }
+
+    /**
+     * @return number of distinct keys in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Builds the output for an entry of the table, in the form produced by
+     * POPartialAgg: the key followed by the tuple returned by each
+     * Intermediate function.
+     *
+     * @param entry number of the entry, between 0 and size() - 1
+     * @return (key, intermediate1, intermediate2, ...)
+     * @throws ExecException
+     */
+    public Tuple getOutput(int entry) throws ExecException {
+        Tuple output = TF.newTuple(aggregates.length + 1);
+        output.set(0, getKey(entry));
+        for (int i = 0; i < aggregates.length; i++) {
+            Tuple value;
+            boolean hasValue = seen[i][entry];
+            switch (aggregates[i]) {
+            case COUNT:
+                value = TF.newTuple(Long.valueOf(longStates[i][entry]));
+                break;
+            case LONG_SUM:
+            case LONG_MIN:
+            case LONG_MAX:
+                value = TF.newTuple(hasValue ? Long.valueOf(longStates[i][entry]) : null);
+                break;
+            case INT_MIN:
+            case INT_MAX:
+                value = TF.newTuple(hasValue ? Integer.valueOf((int) longStates[i][entry]) : null);
+                break;
+            case DOUBLE_SUM:
+            case DOUBLE_MIN:
+            case DOUBLE_MAX:
+                value = TF.newTuple(hasValue ? Double.valueOf(doubleStates[i][entry]) : null);
+                break;
+            case LONG_AVG:
+                value = TF.newTuple(2);
+                value.set(0, hasValue ? Long.valueOf(longStates[i][entry]) : null);
+                value.set(1, Long.valueOf(counts[i][entry]));
+                break;
+            default:
+                value = TF.newTuple(2);
+                value.set(0, hasValue ? Double.valueOf(doubleStates[i][entry]) : null);
+                value.set(1, Long.valueOf(counts[i][entry]));
+                break;
+            }
+            output.set(i + 1, value);
+        }
+        return output;
+    }
+
+    private Object getKey(int entry) {
+        if (entry == nullKeyEntry) {
+            return null;
+        }
+        switch (keyType) {
+        case DataType.INTEGER:
+            return Integer.valueOf((int) longKeys[entry]);
+        case DataType.LONG:
+            return Long.valueOf(longKeys[entry]);
+        default:
+            return stringKeys[entry];
+        }
+    }
+
+    /**
+     * Removes all the entries. The arrays go back to their initial size, so
+     * that the memory held by the table is measured from scratch again.
+     */
+    public void clear() {
+        allocate();
+        stringKeysSize = 0;
+        nullKeyEntry = -1;
+        size = 0;
+    }
+
+    /**
+     * @return the memory held by the table, in bytes
+     */
+    public long getMemorySize() {
+        long mem = ARRAY_OVERHEAD + 4L * slots.length;
+        if (longKeys != null) {
+            mem += ARRAY_OVERHEAD + 8L * longKeys.length;
+        } else {
+            mem += ARRAY_OVERHEAD + 8L * stringKeys.length + stringKeysSize;
+        }
+        for (int i = 0; i < aggregates.length; i++) {
+            if (longStates[i] != null) {
+                mem += ARRAY_OVERHEAD + 8L * longStates[i].length;
+            }
+            if (doubleStates[i] != null) {
+                mem += ARRAY_OVERHEAD + 8L * doubleStates[i].length;
+            }
+            if (counts[i] != null) {
+                mem += ARRAY_OVERHEAD + 8L * counts[i].length;
+            }
+            mem += ARRAY_OVERHEAD + seen[i].length;
+        }
+        return mem;
+    }
+}
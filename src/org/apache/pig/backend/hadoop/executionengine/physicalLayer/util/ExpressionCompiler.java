@@ -0,0 +1,510 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.util;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.ToolProvider;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigWarning;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Add;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.BinaryComparisonOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.BinaryExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Divide;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.EqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GTOrEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GreaterThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.LTOrEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.LessThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Mod;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Multiply;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.NotEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POAnd;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POBinCond;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONegative;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONot;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POOr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Subtract;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.UnaryExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.util.JavaCompilerHelper;
+
+import com.google.common.io.Files;
+
+/**
+ * Compiles expression plans into classes implementing
+ * {@link CompiledExpression}, so that evaluating a plan for a tuple is a
+ * straight sequence of Java statements rather than a walk over the operator
+ * tree with a Result per node. Code is generated and compiled in the same
+ * way as for SchemaTuples, but at task setup.
+ *
+ * Only plans made of projections, constants, arithmetic, comparisons and
+ * boolean operators are compiled. For every other plan, or when no Java
+ * compiler is available in the task JVM, {@link #compile(List)} returns null
+ * and the caller keeps interpreting the plan.
+ */
+public class ExpressionCompiler {
+    private static final Log log = LogFactory.getLog(ExpressionCompiler.class);
+
+    private static final String CLASS_PREFIX = "PigCompiledExpression_";
+
+    private static final AtomicInteger nextClassId = new AtomicInteger();
+
+    private final String className;
+    private final StringBuilder declarations = new StringBuilder();
+    private final StringBuilder body = new StringBuilder();
+    private final List<Object> constants = new ArrayList<Object>();
+    private final List<PhysicalOperator> operators = new ArrayList<PhysicalOperator>();
+    private int nextVar = 0;
+
+    private ExpressionCompiler() {
+        className = CLASS_PREFIX + nextClassId.getAndIncrement();
+    }
+
+    /**
+     * @return true if expression compilation was requested for the current
+     *         task through pig.exec.compile.expressions
+     */
+    public static boolean isEnabled() {
+        Configuration conf = PigMapReduce.sJobConfInternal.get();
+        return conf != null && conf.getBoolean(PigConfiguration.PIG_EXEC_COMPILE_EXPRESSIONS, false);
+    }
+
+    /**
+     * Compiles a set of expression plans in one pass of the compiler.
+     *
+     * @param plans the plans to compile
+     * @return one compiled expression per plan, or null if any of the plans
+     *         cannot be compiled
+     */
+    public static CompiledExpression[] compile(List<PhysicalPlan> plans) {
+        for (PhysicalPlan plan : plans) {
+            if (!isCompilable(plan)) {
+                return null;
+            }
+        }
+        if (ToolProvider.getSystemJavaCompiler() == null) {
+            log.warn("No Java compiler available, expression plans will be interpreted");
+            return null;
+        }
+
+        File dir = null;
+        try {
+            ExpressionCompiler[] generators = new ExpressionCompiler[plans.size()];
+            JavaCompilerHelper.JavaSourceFromString[] sources =
+                    new JavaCompilerHelper.JavaSourceFromString[plans.size()];
+            for (int i = 0; i < plans.size(); i++) {
+                generators[i] = new ExpressionCompiler();
+                String code = generators[i].generate(
+                        (ExpressionOperator) plans.get(i).getLeaves().get(0));
+                if (log.isDebugEnabled()) {
+                    log.debug("Generated code for " + generators[i].className + ":\n" + code);
+                }
+                sources[i] = new JavaCompilerHelper.JavaSourceFromString(generators[i].className, code);
+            }
+
+            dir = Files.createTempDir();
+            JavaCompilerHelper compiler = new JavaCompilerHelper();
+            compiler.addToClassPath(dir.getAbsolutePath());
+            compiler.compile(dir.getAbsolutePath(), sources);
+
+            URLClassLoader loader = new URLClassLoader(new URL[] { dir.toURI().toURL() },
+                    ExpressionCompiler.class.getClassLoader());
+            CompiledExpression[] compiled = new CompiledExpression[plans.size()];
+            for (int i = 0; i < plans.size(); i++) {
+                ExpressionCompiler g = generators[i];
+                compiled[i] = (CompiledExpression) loader.loadClass(g.className)
+                        .getConstructor(Object[].class, PhysicalOperator[].class)
+                        .newInstance(g.constants.toArray(),
+                                g.operators.toArray(new PhysicalOperator[g.operators.size()]));
+            }
+            return compiled;
+        } catch (Exception e) {
+            log.warn("Unable to compile expression plans, they will be interpreted", e);
+            return null;
+        } finally {
+            // the classes are loaded by now
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    /**
+     * @return true if every operator of the plan can be compiled
+     */
+    public static boolean isCompilable(PhysicalPlan plan) {
+        List<PhysicalOperator> leaves = plan.getLeaves();
+        return leaves.size() == 1 && leaves.get(0) instanceof ExpressionOperator
+                && isCompilable((ExpressionOperator) leaves.get(0));
+    }
+
+    private static boolean isCompilable(ExpressionOperator op) {
+        if (op.isAccumulative() || op.getIllustrator() != null) {
+            return false;
+        }
+        Class<?> c = op.getClass();
+        if (c == POProject.class || c == ConstantExpression.class) {
+            return op.supportsBatch();
+        }
+        if (c == Add.class || c == Subtract.class || c == Multiply.class || c == Divide.class) {
+            return javaType(op.getResultType()) != null && isNumeric(op.getResultType())
+                    && childrenCompilable((BinaryExpressionOperator) op);
+        }
+        if (c == Mod.class) {
+            byte t = op.getResultType();
+            return (t == DataType.INTEGER || t == DataType.LONG || t == DataType.BIGINTEGER)
+                    && childrenCompilable((BinaryExpressionOperator) op);
+        }
+        if (c == EqualToExpr.class || c == NotEqualToExpr.class) {
+            return javaType(((BinaryComparisonOperator) op).getOperandType()) != null
+                    && childrenCompilable((BinaryExpressionOperator) op);
+        }
+        if (c == GreaterThanExpr.class || c == GTOrEqualToExpr.class
+                || c == LessThanExpr.class || c == LTOrEqualToExpr.class) {
+            byte t = ((BinaryComparisonOperator) op).getOperandType();
+            return javaType(t) != null && t != DataType.BOOLEAN
+                    && childrenCompilable((BinaryExpressionOperator) op);
+        }
+        if (c == POAnd.class || c == POOr.class) {
+            return childrenCompilable((BinaryExpressionOperator) op);
+        }
+        if (c == PONot.class || c == POIsNull.class) {
+            return isCompilable(((UnaryExpressionOperator) op).getExpr());
+        }
+        if (c == PONegative.class) {
+            return isNumeric(op.getResultType())
+                    && isCompilable(((UnaryExpressionOperator) op).getExpr());
+        }
+        if (c == POBinCond.class) {
+            POBinCond bc = (POBinCond) op;
+            return isCompilable(bc.getCond()) && isCompilable(bc.getLhs())
+                    && isCompilable(bc.getRhs());
+        }
+        return false;
+    }
+
+    private static boolean childrenCompilable(BinaryExpressionOperator op) {
+        return isCompilable(op.getLhs()) && isCompilable(op.getRhs());
+    }
+
+    private static boolean isNumeric(byte dataType) {
+        switch (dataType) {
+        case DataType.INTEGER:
+        case DataType.LONG:
+        case DataType.FLOAT:
+        case DataType.DOUBLE:
+        case DataType.BIGINTEGER:
+        case DataType.BIGDECIMAL:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static String javaType(byte dataType) {
+        switch (dataType) {
+        case DataType.INTEGER:
+            return "Integer";
+        case DataType.LONG:
+            return "Long";
+        case DataType.FLOAT:
+            return "Float";
+        case DataType.DOUBLE:
+            return "Double";
+        case DataType.BOOLEAN:
+            return "Boolean";
+        case DataType.CHARARRAY:
+            return "String";
+        case DataType.BYTEARRAY:
+            return "org.apache.pig.data.DataByteArray";
+        case DataType.BIGINTEGER:
+            return "java.math.BigInteger";
+        case DataType.BIGDECIMAL:
+            return "java.math.BigDecimal";
+        case DataType.DATETIME:
+            return "org.joda.time.DateTime";
+        default:
+            return null;
+        }
+    }
+
+    private String generate(ExpressionOperator leaf) {
+        String result = emit(leaf, "        ");
+        StringBuilder sb = new StringBuilder();
+        sb.append("public class ").append(className)
+          .append(" implements ").append(CompiledExpression.class.getName()).append(" {\n")
+          .append("    private final Object[] c;\n")
+          .append("    private final ").append(PhysicalOperator.class.getName()).append("[] o;\n\n")
+          .append("    public ").append(className).append("(Object[] c, ")
+          .append(PhysicalOperator.class.getName()).append("[] o) {\n")
+          .append("        this.c = c;\n")
+          .append("        this.o = o;\n")
+          .append("    }\n\n")
+          .append("    public Object evaluate(").append(Tuple.class.getName()).append(" t) throws ")
+          .append(ExecException.class.getName()).append(" {\n")
+          .append(declarations)
+          .append(body)
+          .append("        return ").append(result).append(";\n")
+          .append("    }\n")
+          .append("}\n");
+        return sb.toString();
+    }
+
+    private String newVar() {
+        String v = "v" + nextVar++;
+        declarations.append("        Object ").append(v).append(" = null;\n");
+        return v;
+    }
+
+    private int addOperator(PhysicalOperator op) {
+        operators.add(op);
+        return operators.size() - 1;
+    }
+
+    private void line(String indent, String code) {
+        body.append(indent).append(code).append('\n');
+    }
+
+    /**
+     * Appends the statements evaluating op to the body and returns the name
+     * of the variable holding its value. Null handling and short circuits
+     * follow the getNext() implementations of the operators.
+     */
+    private String emit(ExpressionOperator op, String indent) {
+        String v = newVar();
+        Class<?> c = op.getClass();
+        if (c == POProject.class) {
+            int col;
+            try {
+                col = ((POProject) op).getColumn();
+            } catch (ExecException e) {
+                throw new IllegalStateException(e);
+            }
+            line(indent, v + " = " + ExpressionCompiler.class.getName() + ".project(t, " + col
+                    + ", o[" + addOperator(op) + "]);");
+        } else if (c == ConstantExpression.class) {
+            constants.add(((ConstantExpression) op).getValue());
+            line(indent, v + " = c[" + (constants.size() - 1) + "];");
+        } else if (c == Add.class || c == Subtract.class || c == Multiply.class
+                || c == Divide.class || c == Mod.class) {
+            emitArithmetic((BinaryExpressionOperator) op, v, indent);
+        } else if (c == POAnd.class || c == POOr.class) {
+            BinaryExpressionOperator bin = (BinaryExpressionOperator) op;
+            boolean isAnd = c == POAnd.class;
+            // AND short circuits on false, OR on true
+            String shortCircuit = isAnd ? "Boolean.FALSE" : "Boolean.TRUE";
+            String other = isAnd ? "Boolean.TRUE" : "Boolean.FALSE";
+            String l = emit(bin.getLhs(), indent);
+            line(indent, "if (" + shortCircuit + ".equals(" + l + ")) {");
+            line(indent, "    " + v + " = " + shortCircuit + ";");
+            line(indent, "} else {");
+            String r = emit(bin.getRhs(), indent + "    ");
+            line(indent, "    " + v + " = (" + l + " == null && " + other + ".equals(" + r
+                    + ")) ? null : " + r + ";");
+            line(indent, "}");
+        } else if (op instanceof BinaryComparisonOperator) {
+            BinaryComparisonOperator cmp = (BinaryComparisonOperator) op;
+            String type = javaType(cmp.getOperandType());
+            String l = emit(cmp.getLhs(), indent);
+            String r = emit(cmp.getRhs(), indent);
+            line(indent, "if (" + l + " != null && " + r + " != null) {");
+            line(indent, "    " + v + " = Boolean.valueOf(((" + type + ") " + l + ").compareTo(("
+                    + type + ") " + r + ") " + comparisonOperator(cmp) + " 0);");
+            line(indent, "}");
+        } else if (c == PONot.class) {
+            String e = emit(((UnaryExpressionOperator) op).getExpr(), indent);
+            line(indent, "if (" + e + " != null) {");
+            line(indent, "    " + v + " = ((Boolean) " + e + ").booleanValue() ? Boolean.FALSE : Boolean.TRUE;");
+            line(indent, "}");
+        } else if (c == POIsNull.class) {
+            String e = emit(((UnaryExpressionOperator) op).getExpr(), indent);
+            line(indent, v + " = Boolean.valueOf(" + e + " == null);");
+        } else if (c == PONegative.class) {
+            byte t = op.getResultType();
+            String e = emit(((UnaryExpressionOperator) op).getExpr(), indent);
+            String value = (t == DataType.BIGINTEGER || t == DataType.BIGDECIMAL)
+                    ? "((" + javaType(t) + ") " + e + ").negate()"
+                    : javaType(t) + ".valueOf(-1 * " + unbox(t, e) + ")";
+            line(indent, "if (" + e + " != null) {");
+            line(indent, "    " + v + " = " + value + ";");
+            line(indent, "}");
+        } else if (c == POBinCond.class) {
+            POBinCond bc = (POBinCond) op;
+            String cond = emit(bc.getCond(), indent);
+            line(indent, "if (" + cond + " != null) {");
+            line(indent, "    if (((Boolean) " + cond + ").booleanValue()) {");
+            String l = emit(bc.getLhs(), indent + "        ");
+            line(indent, "        " + v + " = " + l + ";");
+            line(indent, "    } else {");
+            String r = emit(bc.getRhs(), indent + "        ");
+            line(indent, "        " + v + " = " + r + ";");
+            line(indent, "    }");
+            line(indent, "}");
+        } else {
+            throw new IllegalStateException("Cannot compile " + op);
+        }
+        return v;
+    }
+
+    private void emitArithmetic(BinaryExpressionOperator op, String v, String indent) {
+        byte t = op.getResultType();
+        String type = javaType(t);
+        Class<?> c = op.getClass();
+        String symbol;
+        String method;
+        if (c == Add.class) {
+            symbol = "+";
+            method = "add";
+        } else if (c == Subtract.class) {
+            symbol = "-";
+            method = "subtract";
+        } else if (c == Multiply.class) {
+            symbol = "*";
+            method = "multiply";
+        } else if (c == Divide.class) {
+            symbol = "/";
+            method = "divide";
+        } else {
+            symbol = "%";
+            method = "mod";
+        }
+
+        // like the interpreted operators, the right operand is not
+        // evaluated when the left one is null
+        String l = emit(op.getLhs(), indent);
+        line(indent, "if (" + l + " != null) {");
+        String r = emit(op.getRhs(), indent + "    ");
+        line(indent, "    if (" + r + " != null) {");
+        String value = (t == DataType.BIGINTEGER || t == DataType.BIGDECIMAL)
+                ? "((" + type + ") " + l + ")." + method + "((" + type + ") " + r + ")"
+                : type + ".valueOf(" + unbox(t, l) + " " + symbol + " " + unbox(t, r) + ")";
+        if (c == Divide.class) {
+            line(indent, "        if (" + equalsZero(t, r) + ") {");
+            line(indent, "            " + ExpressionCompiler.class.getName()
+                    + ".warnDivideByZero(o[" + addOperator(op) + "]);");
+            line(indent, "        } else {");
+            line(indent, "            " + v + " = " + value + ";");
+            line(indent, "        }");
+        } else {
+            line(indent, "        " + v + " = " + value + ";");
+        }
+        line(indent, "    }");
+        line(indent, "}");
+    }
+
+    private static String unbox(byte dataType, String var) {
+        return "((" + javaType(dataType) + ") " + var + ")." + primitiveType(dataType) + "Value()";
+    }
+
+    private static String primitiveType(byte dataType) {
+        switch (dataType) {
+        case DataType.INTEGER:
+            return "int";
+        case DataType.LONG:
+            return "long";
+        case DataType.FLOAT:
+            return "float";
+        case DataType.DOUBLE:
+            return "double";
+        default:
+            throw new IllegalStateException("No primitive type for " + DataType.findTypeName(dataType));
+        }
+    }
+
+    /**
+     * Same checks as Divide.equalsZero(). Note that -0.0 is not a zero there.
+     */
+    private static String equalsZero(byte dataType, String var) {
+        switch (dataType) {
+        case DataType.DOUBLE:
+            return "((Double) " + var + ").equals(0.0)";
+        case DataType.FLOAT:
+            return "((Float) " + var + ").equals(0.0f)";
+        case DataType.INTEGER:
+        case DataType.LONG:
+            return unbox(dataType, var) + " == 0";
+        default:
+            return javaType(dataType) + ".ZERO.equals(" + var + ")";
+        }
+    }
+
+    private static String comparisonOperator(BinaryComparisonOperator op) {
+        Class<?> c = op.getClass();
+        if (c == EqualToExpr.class) {
+            return "==";
+        } else if (c == NotEqualToExpr.class) {
+            return "!=";
+        } else if (c == GreaterThanExpr.class) {
+            return ">";
+        } else if (c == GTOrEqualToExpr.class) {
+            return ">=";
+        } else if (c == LessThanExpr.class) {
+            return "<";
+        } else {
+            return "<=";
+        }
+    }
+
+    /**
+     * Runtime support for generated code: projects a single column the same
+     * way POProject does.
+     */
+    public static Object project(Tuple t, int col, PhysicalOperator op) throws ExecException {
+        if (t == null) {
+            // the tuple is null, so a dereference should also produce a null
+            return null;
+        }
+        if (col < t.size()) {
+            return t.get(col);
+        }
+        if (PhysicalOperator.getPigLogger() != null) {
+            PhysicalOperator.getPigLogger().warn(op, "Attempt to access field " +
+                    "which was not found in the input", PigWarning.ACCESSING_NON_EXISTENT_FIELD);
+        }
+        return null;
+    }
+
+    /**
+     * Runtime support for generated code: reports a division by zero the
+     * same way Divide does.
+     */
+    public static void warnDivideByZero(PhysicalOperator op) {
+        if (PhysicalOperator.getPigLogger() != null) {
+            PhysicalOperator.getPigLogger().warn(op, "Divide by zero. Converting it to NULL.",
+                    PigWarning.DIVIDE_BY_ZERO);
+        }
+    }
+}
@@ -21,21 +21,27 @@ package org.apache.pig.builtin;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.util.bloom.BloomFilter;
 import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
 
 import org.apache.pig.FilterFunc;
 import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.logicalLayer.schema.Schema;
+import org.apache.pig.impl.util.UDFContext;
 
 /**
  * Use a Bloom filter build previously by BuildBloom.  You would first
@@ -77,6 +83,8 @@ public class Bloom extends FilterFunc {
         if (input.size() == 1) b = DataType.toBytes(input.get(0));
         else b = DataType.toBytes(input, DataType.TUPLE);
 
+        // BuildBloom leaves out null keys, as they can't be joined
+        if (b == null) return false;
         Key k = new Key(b);
         return filter.membershipTest(k);
     }
@@ -98,7 +106,26 @@ public class Bloom extends FilterFunc {
         filter = new BloomFilter();
         String dcFile = "./" + getFilenameFromPath(bloomFile) +
             "/part-r-00000";
-        filter.readFields(new DataInputStream(new FileInputStream(dcFile)));
+        InputStream in;
+        if (new File(dcFile).exists()) {
+            in = new FileInputStream(dcFile);
+        } else {
+            // The distributed cache isn't set up in local mode, read the
+            // file where it was stored
+            Path p = new Path(bloomFile, "part-r-00000");
+            Configuration conf = UDFContext.getUDFContext().getJobConf();
+            FileSystem fs = p.getFileSystem(conf == null ? new Configuration() : conf);
+            in = fs.open(p);
+        }
+        DataInputStream dis = new DataInputStream(in);
+        try {
+            filter.readFields(dis);
+        } catch (EOFException e) {
+            // BuildBloom had no input, nothing is in the filter
+            filter = new BloomFilter(1, 1, Hash.JENKINS_HASH);
+        } finally {
+            dis.close();
+        }
     }
 
     /**
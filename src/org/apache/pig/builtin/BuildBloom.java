@@ -88,7 +88,14 @@ public class BuildBloom extends BuildBloomBase<DataByteArray> implements Algebra
 
     @Override
     public DataByteArray exec(Tuple input) throws IOException {
-        throw new IOException("This must be used with algebraic!");
+        // Only called when the combiner is not used
+        filter = new BloomFilter(vSize, numHash, hType);
+        DataBag values = (DataBag)input.get(0);
+        for (Iterator<Tuple> it = values.iterator(); it.hasNext();) {
+            byte[] b = bloomKey(it.next());
+            if (b != null) filter.add(new Key(b));
+        }
+        return bloomOut();
     }
 
     public String getInitial() {
@@ -130,16 +137,10 @@ public class BuildBloom extends BuildBloomBase<DataByteArray> implements Algebra
             Iterator<Tuple> it = values.iterator();
             Tuple t = it.next();
 
-            // If the input tuple has only one field, then we'll extract
-            // that field and serialize it into a key.  If it has multiple
-            // fields, we'll serialize the whole tuple.
-            byte[] b;
-            if (t.size() == 1) b = DataType.toBytes(t.get(0));
-            else b = DataType.toBytes(t, DataType.TUPLE);
-
-            Key k = new Key(b);
+            // A null key can't be joined, so it is left out
+            byte[] b = bloomKey(t);
             filter = new BloomFilter(vSize, numHash, hType);
-            filter.add(k);
+            if (b != null) filter.add(new Key(b));
 
             return TupleFactory.getInstance().newTuple(bloomOut());
         }
@@ -32,6 +32,7 @@ import org.apache.pig.EvalFunc;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 
 /**
@@ -97,6 +98,17 @@ public abstract class BuildBloomBase<T> extends EvalFunc<T> {
         return bloomOut();
     }
 
+    /**
+     * If the tuple has only one field, then we'll extract that field and
+     * serialize it into a key.  If it has multiple fields, we'll serialize
+     * the whole tuple.
+     * @return the key, or null if the tuple has only one field and it is null
+     */
+    protected byte[] bloomKey(Tuple t) throws ExecException {
+        if (t.size() == 1) return DataType.toBytes(t.get(0));
+        else return DataType.toBytes(t, DataType.TUPLE);
+    }
+
     protected DataByteArray bloomOut() throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream(vSize / 8);
         DataOutputStream dos = new DataOutputStream(baos);
@@ -55,6 +55,7 @@ import org.apache.pig.LoadFunc;
 import org.apache.pig.LoadMetadata;
 import org.apache.pig.LoadPushDown;
 import org.apache.pig.OverwritableStoreFunc;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.ResourceSchema;
 import org.apache.pig.ResourceSchema.ResourceFieldSchema;
@@ -69,6 +70,7 @@ import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigTextOutpu
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
 import org.apache.pig.bzip2r.Bzip2TextInputFormat;
 import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.LazyTextTuple;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.PigContext;
@@ -155,6 +157,7 @@ LoadPushDown, LoadMetadata, StoreMetadata, OverwritableStoreFunc {
 
     protected boolean[] mRequiredColumns = null;
     private boolean mRequiredColumnsInitialized = false;
+    private Boolean lazyTuples = null;
 
     // Indicates whether the input file name/path should be read.
     private boolean tagFile = false;
@@ -259,6 +262,10 @@ LoadPushDown, LoadMetadata, StoreMetadata, OverwritableStoreFunc {
             Text value = (Text) in.getCurrentValue();
             byte[] buf = value.getBytes();
             int len = value.getLength();
+            if (useLazyTuples()) {
+                Tuple t = getNextLazy(buf, len);
+                return dontLoadSchema ? t : applySchema(t);
+            }
             int start = 0;
             int fieldID = 0;
             for (int i = 0; i < len; i++) {
@@ -284,6 +291,59 @@ LoadPushDown, LoadMetadata, StoreMetadata, OverwritableStoreFunc {
         }
     }
 
+    /**
+     * Lazy tuples are used unless disabled with pig.load.lazy.tuples, or a
+     * subclass reads fields its own way by overriding readField.
+     */
+    private boolean useLazyTuples() {
+        if (lazyTuples == null) {
+            boolean lazy = true;
+            Configuration conf = UDFContext.getUDFContext().getJobConf();
+            if (conf != null) {
+                lazy = conf.getBoolean(PigConfiguration.PIG_LOAD_LAZY_TUPLES, true);
+            }
+            for (Class<?> c = getClass(); lazy && c != PigStorage.class; c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod("readField", byte[].class, int.class, int.class);
+                    lazy = false;
+                } catch (NoSuchMethodException e) {
+                    // not overridden here
+                }
+            }
+            lazyTuples = lazy;
+        }
+        return lazyTuples;
+    }
+
+    /**
+     * Splits the line as getNext does, but leaves the fields in a copy of
+     * the line, to be built when first read.
+     */
+    private Tuple getNextLazy(byte[] buf, int len) throws IOException {
+        if (caster == null) {
+            caster = getLoadCaster();
+        }
+        LazyTextTuple t = new LazyTextTuple(Arrays.copyOf(buf, len), caster);
+        for (Object tag : mProtoTuple) {
+            t.append(tag);
+        }
+        int start = 0;
+        int fieldID = 0;
+        for (int i = 0; i < len; i++) {
+            if (buf[i] == fieldDel) {
+                if (mRequiredColumns==null || (mRequiredColumns.length>fieldID && mRequiredColumns[fieldID]))
+                    t.appendField(start, i);
+                start = i + 1;
+                fieldID++;
+            }
+        }
+        // pick up the last field
+        if (start <= len && (mRequiredColumns==null || (mRequiredColumns.length>fieldID && mRequiredColumns[fieldID]))) {
+            t.appendField(start, len);
+        }
+        return t;
+    }
+
     private Tuple applySchema(Tuple tup) throws IOException {
         if ( caster == null) {
             caster = getLoadCaster();
@@ -329,6 +389,12 @@ LoadPushDown, LoadMetadata, StoreMetadata, OverwritableStoreFunc {
                         tup.append(null);
                     }
                     
+                    if (tup instanceof LazyTextTuple && ((LazyTextTuple) tup).isUnread(tupleIdx)) {
+                        // cast when, and if, the field is read
+                        ((LazyTextTuple) tup).setFieldSchema(tupleIdx, fieldSchemas[i]);
+                        tupleIdx++;
+                        continue;
+                    }
                     Object val = null;
                     if(tup.get(tupleIdx) != null){
                         byte[] bytes = ((DataByteArray) tup.get(tupleIdx)).get();
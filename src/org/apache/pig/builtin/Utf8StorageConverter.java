@@ -39,10 +39,12 @@ import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.DefaultBagFactory;
+import org.apache.pig.data.StringDictionary;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.util.LogUtils;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 
 /**
  * This abstract class provides standard conversions between utf8 encoded data
@@ -347,15 +349,46 @@ public class Utf8StorageConverter implements LoadStoreCaster {
     public String bytesToCharArray(byte[] b) throws IOException {
         if(b == null)
             return null;
-        return new String(b, "UTF-8");
+        return bytesToCharArray(b, 0, b.length);
+    }
+
+    /**
+     * Converts the bytes of b from off to off + len, as
+     * {@link #bytesToCharArray(byte[])} does.
+     */
+    public String bytesToCharArray(byte[] b, int off, int len) throws IOException {
+        StringDictionary dict = StringDictionary.get();
+        if (dict != null) {
+            return dict.intern(b, off, len);
+        }
+        return new String(b, off, len, "UTF-8");
     }
 
     @Override
     public Double bytesToDouble(byte[] b) {
-        if(b == null || b.length == 0) {
+        if(b == null) {
+            return null;
+        }
+        return bytesToDouble(b, 0, b.length);
+    }
+
+    /**
+     * Converts the bytes of b from off to off + len, as
+     * {@link #bytesToDouble(byte[])} does.
+     */
+    public Double bytesToDouble(byte[] b, int off, int len) {
+        if (len == 0) {
             return null;
         }
-        
+        int start = trimStart(b, off, off + len);
+        int end = trimEnd(b, start, off + len);
+        double d = parseDouble(b, start, end);
+        if (!Double.isNaN(d)) {
+            return Double.valueOf(d);
+        }
+        if (off != 0 || len != b.length) {
+            b = Arrays.copyOfRange(b, off, off + len);
+        }
         try {
             return Double.valueOf(new String(b));
         } catch (NumberFormatException nfe) {
@@ -369,10 +402,33 @@ public class Utf8StorageConverter implements LoadStoreCaster {
 
     @Override
     public Float bytesToFloat(byte[] b) throws IOException {
-        if(b == null || b.length == 0) {
+        if(b == null) {
+            return null;
+        }
+        return bytesToFloat(b, 0, b.length);
+    }
+
+    /**
+     * Converts the bytes of b from off to off + len, as
+     * {@link #bytesToFloat(byte[])} does.
+     */
+    public Float bytesToFloat(byte[] b, int off, int len) {
+        if (len == 0) {
             return null;
         }
-        
+        int end = off + len;
+        if (b[end - 1] == 'F' || b[end - 1] == 'f') {
+            end--;
+        }
+        int start = trimStart(b, off, end);
+        float f = parseFloat(b, start, trimEnd(b, start, end));
+        if (!Float.isNaN(f)) {
+            return Float.valueOf(f);
+        }
+        if (off != 0 || len != b.length) {
+            b = Arrays.copyOfRange(b, off, off + len);
+        }
+
         String s;
         if (b.length > 0 && (b[b.length - 1] == 'F' || b[b.length - 1] == 'f')) {
             s = new String(b, 0, b.length - 1);
@@ -396,16 +452,291 @@ public class Utf8StorageConverter implements LoadStoreCaster {
     public Boolean bytesToBoolean(byte[] b) throws IOException {
         if(b == null)
             return null;
-        String s = new String(b);
-        if (s.equalsIgnoreCase("true")) {
+        return bytesToBoolean(b, 0, b.length);
+    }
+
+    /**
+     * Converts the bytes of b from off to off + len, as
+     * {@link #bytesToBoolean(byte[])} does.
+     */
+    public Boolean bytesToBoolean(byte[] b, int off, int len) {
+        if (equalsIgnoreCase(b, off, len, TRUE_BYTES)) {
             return Boolean.TRUE;
-        } else if (s.equalsIgnoreCase("false")) {
+        } else if (equalsIgnoreCase(b, off, len, FALSE_BYTES)) {
             return Boolean.FALSE;
         } else {
             return null;
         }
     }
 
+    private static final byte[] TRUE_BYTES = { 't', 'r', 'u', 'e' };
+    private static final byte[] FALSE_BYTES = { 'f', 'a', 'l', 's', 'e' };
+
+    // decimals with at most this many significant digits, and a power of ten
+    // at most this large, convert exactly with a single multiply or divide
+    private static final int MAX_DOUBLE_FAST_DIGITS = 15;
+    private static final int MAX_DOUBLE_FAST_EXPONENT = 22;
+    private static final int MAX_FLOAT_FAST_DIGITS = 7;
+    private static final int MAX_FLOAT_FAST_EXPONENT = 10;
+
+    private static final double[] DOUBLE_POWERS_OF_TEN = new double[MAX_DOUBLE_FAST_EXPONENT + 1];
+    private static final float[] FLOAT_POWERS_OF_TEN = new float[MAX_FLOAT_FAST_EXPONENT + 1];
+    static {
+        DOUBLE_POWERS_OF_TEN[0] = 1.0d;
+        for (int i = 1; i < DOUBLE_POWERS_OF_TEN.length; i++) {
+            DOUBLE_POWERS_OF_TEN[i] = DOUBLE_POWERS_OF_TEN[i - 1] * 10;
+        }
+        FLOAT_POWERS_OF_TEN[0] = 1.0f;
+        for (int i = 1; i < FLOAT_POWERS_OF_TEN.length; i++) {
+            FLOAT_POWERS_OF_TEN[i] = FLOAT_POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * @return the first byte from start that String.trim() would not remove
+     */
+    private static int trimStart(byte[] b, int start, int end) {
+        while (start < end && (b[start] & 0xff) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(byte[] b, int start, int end) {
+        while (end > start && (b[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return true if the bytes are an optional '-' followed by 1 to 18
+     * digits, which always fit in a long
+     */
+    private static boolean isSmallInteger(byte[] b, int start, int end) {
+        if (start < end && b[start] == '-') {
+            start++;
+        }
+        if (end - start < 1 || end - start > 18) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (!isDigit(b[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseSmallInteger(byte[] b, int start, int end) {
+        boolean negative = b[start] == '-';
+        long l = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            l = l * 10 + (b[i] - '0');
+        }
+        return negative ? -l : l;
+    }
+
+    /**
+     * Parses [+-]digits[.digits][(e|E)[+-]digits] when the value is exactly
+     * representable from its digits and power of ten, so that one multiply
+     * or divide gives the correctly rounded result Double.valueOf and
+     * Float.valueOf would.
+     * @return the value, or NaN if the bytes need the full parser
+     */
+    private static double parseDecimal(byte[] b, int start, int end, boolean toFloat) {
+        int maxDigits = toFloat ? MAX_FLOAT_FAST_DIGITS : MAX_DOUBLE_FAST_DIGITS;
+        int maxExponent = toFloat ? MAX_FLOAT_FAST_EXPONENT : MAX_DOUBLE_FAST_EXPONENT;
+        int i = start;
+        boolean negative = false;
+        if (i < end && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean sawDigit = false;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            byte c = b[i];
+            if (isDigit(c)) {
+                sawDigit = true;
+                if ((mantissa != 0 || c != '0') && ++digits > maxDigits) {
+                    return Double.NaN;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (fraction) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (!sawDigit) {
+            return Double.NaN;
+        }
+        int exponent = 0;
+        if (i < end && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (b[i] == '-' || b[i] == '+')) {
+                negativeExponent = b[i] == '-';
+                i++;
+            }
+            int exponentDigits = 0;
+            for (; i < end && isDigit(b[i]); i++) {
+                if (++exponentDigits > 3) {
+                    return Double.NaN;
+                }
+                exponent = exponent * 10 + (b[i] - '0');
+            }
+            if (exponentDigits == 0) {
+                return Double.NaN;
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        if (i != end) {
+            return Double.NaN;
+        }
+        exponent -= fractionDigits;
+        double d;
+        if (mantissa == 0) {
+            d = 0.0d;
+        } else if (exponent < -maxExponent || exponent > maxExponent) {
+            return Double.NaN;
+        } else if (toFloat) {
+            float f = mantissa;
+            d = exponent < 0 ? f / FLOAT_POWERS_OF_TEN[-exponent] : f * FLOAT_POWERS_OF_TEN[exponent];
+        } else {
+            d = mantissa;
+            d = exponent < 0 ? d / DOUBLE_POWERS_OF_TEN[-exponent] : d * DOUBLE_POWERS_OF_TEN[exponent];
+        }
+        return negative ? -d : d;
+    }
+
+    private static double parseDouble(byte[] b, int start, int end) {
+        return parseDecimal(b, start, end, false);
+    }
+
+    private static float parseFloat(byte[] b, int start, int end) {
+        return (float) parseDecimal(b, start, end, true);
+    }
+
+    private static boolean equalsIgnoreCase(byte[] b, int off, int len, byte[] lowerCase) {
+        if (len != lowerCase.length) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            int c = b[off + i];
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != lowerCase[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the value of the n digits at off, or -1 if they are not all digits
+     */
+    private static int parseDigits(byte[] b, int off, int n) {
+        int v = 0;
+        for (int i = off; i < off + n; i++) {
+            if (!isDigit(b[i])) {
+                return -1;
+            }
+            v = v * 10 + (b[i] - '0');
+        }
+        return v;
+    }
+
+    /**
+     * Parses the common ISO forms yyyy-MM-dd['T'HH:mm[:ss[.SSS]][Z|+HH:mm|-HH:mm]]
+     * to the same DateTime as ToDate.extractDateTime.
+     * @return the value, or null if the bytes need the full parser
+     */
+    private static DateTime parseDateTime(byte[] b, int start, int end) {
+        if (end - start < 10 || b[start + 4] != '-' || b[start + 7] != '-') {
+            return null;
+        }
+        int year = parseDigits(b, start, 4);
+        int month = parseDigits(b, start + 5, 2);
+        int day = parseDigits(b, start + 8, 2);
+        int hour = 0, minute = 0, second = 0, millis = 0;
+        int i = start + 10;
+        if (i < end) {
+            if (b[i] != 'T' || i + 6 > end || b[i + 3] != ':') {
+                return null;
+            }
+            hour = parseDigits(b, i + 1, 2);
+            minute = parseDigits(b, i + 4, 2);
+            i += 6;
+            if (i < end && b[i] == ':') {
+                if (i + 3 > end) {
+                    return null;
+                }
+                second = parseDigits(b, i + 1, 2);
+                i += 3;
+                if (i < end && b[i] == '.') {
+                    i++;
+                    int n = 0;
+                    for (; i < end && isDigit(b[i]); i++, n++) {
+                        if (n == 3) {
+                            return null;
+                        }
+                        millis = millis * 10 + (b[i] - '0');
+                    }
+                    if (n == 0) {
+                        return null;
+                    }
+                    for (; n < 3; n++) {
+                        millis *= 10;
+                    }
+                }
+            }
+        }
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0) {
+            return null;
+        }
+        DateTimeZone zone;
+        if (i == end) {
+            zone = DateTimeZone.getDefault();
+        } else if (i + 1 == end && b[i] == 'Z') {
+            zone = DateTimeZone.forOffsetMillis(0);
+        } else if (i + 6 == end && (b[i] == '+' || b[i] == '-') && b[i + 3] == ':') {
+            int offsetHours = parseDigits(b, i + 1, 2);
+            int offsetMinutes = parseDigits(b, i + 4, 2);
+            if (offsetHours < 0 || offsetMinutes < 0) {
+                return null;
+            }
+            int offset = (offsetHours * 60 + offsetMinutes) * 60000;
+            try {
+                zone = DateTimeZone.forOffsetMillis(b[i] == '-' ? -offset : offset);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        try {
+            return new DateTime(year, month, day, hour, minute, second, millis, zone);
+        } catch (IllegalArgumentException e) {
+            // out of range fields, or a time in a daylight saving gap
+            return null;
+        }
+    }
+
     /**
      * Sanity check of whether this number is a valid integer or long.
      * @param number the number to check
@@ -426,10 +757,34 @@ public class Utf8StorageConverter implements LoadStoreCaster {
 
     @Override
     public Integer bytesToInteger(byte[] b) throws IOException {
-        if(b == null || b.length == 0) {
+        if(b == null) {
             return null;
         }
-        
+        return bytesToInteger(b, 0, b.length);
+    }
+
+    /**
+     * Converts the bytes of b from off to off + len, as
+     * {@link #bytesToInteger(byte[])} does.
+     */
+    public Integer bytesToInteger(byte[] b, int off, int len) {
+        if (len == 0) {
+            return null;
+        }
+        int start = trimStart(b, off, off + len);
+        int end = trimEnd(b, start, off + len);
+        if (isSmallInteger(b, start, end)) {
+            long l = parseSmallInteger(b, start, end);
+            if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) {
+                return Integer.valueOf((int) l);
+            }
+        }
+        // overflows, doubles and malformed values take the String path,
+        // which logs the same warnings as before
+        if (off != 0 || len != b.length) {
+            b = Arrays.copyOfRange(b, off, off + len);
+        }
+
         String s = new String(b);
         s = s.trim();
         Integer ret = null;
@@ -470,10 +825,32 @@ public class Utf8StorageConverter implements LoadStoreCaster {
 
     @Override
     public Long bytesToLong(byte[] b) throws IOException {
-        if (b == null || b.length == 0) {
+        if (b == null) {
+            return null;
+        }
+        return bytesToLong(b, 0, b.length);
+    }
+
+    /**
+     * Converts the bytes of b from off to off + len, as
+     * {@link #bytesToLong(byte[])} does.
+     */
+    public Long bytesToLong(byte[] b, int off, int len) {
+        if (len == 0) {
             return null;
         }
-        
+        int start = trimStart(b, off, off + len);
+        int end = trimEnd(b, start, off + len);
+        if (end > start && (b[end - 1] == 'l' || b[end - 1] == 'L')) {
+            end--;
+        }
+        if (isSmallInteger(b, start, end)) {
+            return Long.valueOf(parseSmallInteger(b, start, end));
+        }
+        if (off != 0 || len != b.length) {
+            b = Arrays.copyOfRange(b, off, off + len);
+        }
+
         String s = new String(b).trim();
         if(s.endsWith("l") || s.endsWith("L")) {
             s = s.substring(0, s.length()-1);
@@ -520,6 +897,21 @@ public class Utf8StorageConverter implements LoadStoreCaster {
         if (b == null) {
             return null;
         }
+        return bytesToDateTime(b, 0, b.length);
+    }
+
+    /**
+     * Converts the bytes of b from off to off + len, as
+     * {@link #bytesToDateTime(byte[])} does.
+     */
+    public DateTime bytesToDateTime(byte[] b, int off, int len) {
+        DateTime dt = parseDateTime(b, off, off + len);
+        if (dt != null) {
+            return dt;
+        }
+        if (off != 0 || len != b.length) {
+            b = Arrays.copyOfRange(b, off, off + len);
+        }
         try {
             String dtStr = new String(b);
             return ToDate.extractDateTime(dtStr);
@@ -125,6 +125,12 @@ public class BinInterSedes implements InterSedes {
 
     public static final byte DATETIME = 48;
 
+    // dictionary encoded chararrays, only found in streams written through a
+    // StringDictionary.EncodingOutputStream such as spill files
+    public static final byte CHARARRAY_DEF = 49;
+    public static final byte CHARARRAY_REF_BYTE = 50;
+    public static final byte CHARARRAY_REF_SHORT = 51;
+
     private static TupleFactory mTupleFactory = TupleFactory.getInstance();
     private static BagFactory mBagFactory = BagFactory.getInstance();
     public static final int UNSIGNED_SHORT_MAX = 65535;
@@ -416,6 +422,9 @@ public class BinInterSedes implements InterSedes {
 
         case CHARARRAY:
         case SMALLCHARARRAY:
+        case CHARARRAY_DEF:
+        case CHARARRAY_REF_BYTE:
+        case CHARARRAY_REF_SHORT:
             return SedesHelper.readChararray(in, type);
 
         case GENERIC_WRITABLECOMPARABLE:
@@ -17,12 +17,11 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedOutputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
@@ -35,6 +34,7 @@ import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigHadoopLogger;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PigLogger;
+import org.apache.pig.impl.io.SpillFiles;
 import org.apache.pig.impl.util.BagFormat;
 import org.apache.pig.impl.util.SpillableMemoryManager;
 import org.apache.pig.tools.pigstats.PigStatusReporter;
@@ -277,7 +277,7 @@ public abstract class DefaultAbstractBag implements DataBag {
             DataBag otherClone;
             BagFactory factory = BagFactory.getInstance();
 
-            if (this.isSorted() || this.isDistinct()) {
+            if (readsSorted(this)) {
                 thisClone = this;
             } else {
                 thisClone = factory.newSortedBag(null);
@@ -285,7 +285,7 @@ public abstract class DefaultAbstractBag implements DataBag {
                 while (i.hasNext()) thisClone.add(i.next());
 
             }
-            if (((DataBag) other).isSorted() || ((DataBag)other).isDistinct()) {
+            if (readsSorted(bOther)) {
                 otherClone = bOther;
             } else {
                 otherClone = factory.newSortedBag(null);
@@ -308,6 +308,14 @@ public abstract class DefaultAbstractBag implements DataBag {
         }
     }
 
+    /**
+     * @return whether the tuples of a bag are read back in sorted order.
+     * Sorted bags and DistinctDataBag are, InternalDistinctBag is not.
+     */
+    static boolean readsSorted(DataBag b) {
+        return b.isSorted() || (b.isDistinct() && !(b instanceof InternalDistinctBag));
+    }
+
     @Override
     public boolean equals(Object other) {
         return compareTo(other) == 0;
@@ -360,11 +368,12 @@ public abstract class DefaultAbstractBag implements DataBag {
 
     @Override
     public int hashCode() {
-        int hash = 1;
+        // Equal bags may read back their tuples in different orders, like
+        // InternalDistinctBag, so the hash code doesn't depend on it.
+        int hash = 0;
         Iterator<Tuple> i = iterator();
         while (i.hasNext()) {
-            // Use 37 because we want a prime, and tuple uses 31.
-            hash = 37 * hash + i.next().hashCode();
+            hash += i.next().hashCode();
         }
         return hash;
     }
@@ -410,8 +419,16 @@ public abstract class DefaultAbstractBag implements DataBag {
         File f = File.createTempFile("pigbag", null);
         f.deleteOnExit();
         mSpillFiles.add(f);
-        return new DataOutputStream(new BufferedOutputStream(
-            new FileOutputStream(f)));
+        return SpillFiles.create(f);
+    }
+
+    /**
+     * Open a file written through a stream of {@link #getSpillFile()}.
+     * @param f spill file to read
+     * @return stream to read tuples from.
+     */
+    protected DataInputStream openSpillFile(File f) throws IOException {
+        return SpillFiles.open(f);
     }
 
     /**
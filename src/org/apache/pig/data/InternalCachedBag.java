@@ -17,13 +17,10 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -178,11 +175,11 @@ public class InternalCachedBag extends SelfSpillBag {
             if(mSpillFiles != null && mSpillFiles.size() > 0) {
                 File file = mSpillFiles.get(0);
                 try {
-                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                    in = openSpillFile(file);
                 }
-                catch(FileNotFoundException fnfe) {
+                catch(IOException ioe) {
                     String msg = "Unable to find our spill file.";
-                    throw new RuntimeException(msg, fnfe);
+                    throw new RuntimeException(msg, ioe);
                 }
             }
         }
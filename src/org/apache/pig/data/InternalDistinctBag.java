@@ -17,25 +17,24 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.ListIterator;
-import java.util.TreeSet;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigCounters;
+import org.apache.pig.PigWarning;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
 import org.apache.pig.classification.InterfaceAudience;
 import org.apache.pig.classification.InterfaceStability;
@@ -44,30 +43,54 @@ import org.apache.pig.classification.InterfaceStability;
 
 /**
  * An unordered collection of Tuples with no multiples.  Data is
- * stored without duplicates as it comes in.  When it is time to spill,
- * that data is sorted and written to disk.  The data is
- * stored in a HashSet.  When it is time to sort it is placed in an
- * ArrayList and then sorted.  Dispite all these machinations, this was
- * found to be faster than storing it in a TreeSet.
+ * stored without duplicates in a HashSet as it comes in.  When it is time
+ * to spill, each tuple is written to one of a fixed number of partition
+ * files picked by its hash, and the set starts over.  A tuple and its
+ * duplicates always land in the same partition, so when the bag is read
+ * each partition is deduplicated on its own, in a HashSet, and nothing is
+ * ever sorted or merged.  A partition with more distinct tuples than
+ * memory can hold is split again, with another hash, into partitions read
+ * one at a time.
+ *
+ * Tuples are read back in no particular order.
  *
  * This bag spills pro-actively when the number of tuples in memory
  * reaches a limit
  */
 @InterfaceAudience.Private
 @InterfaceStability.Evolving
-public class InternalDistinctBag extends SortedSpillBag {
+public class InternalDistinctBag extends SelfSpillBag {
 
     /**
      *
      */
-    private static final long serialVersionUID = 2L;
+    private static final long serialVersionUID = 3L;
 
     private static final Log log = LogFactory.getLog(InternalDistinctBag.class);
 
     private static TupleFactory gTupleFactory = TupleFactory.getInstance();
 
+    static final int NUM_PARTITIONS = 16;
+
+    // Number of times a partition can be split again, after which it is
+    // read whole, since all its tuples may have the same hash code.
+    private static final int MAX_SPLITS = 3;
+
+    // Number of distinct tuples a partition can always hold while it is
+    // read, so that a small memory limit does not split every partition.
+    private static final long MIN_PARTITION_TUPLES = 1000;
+
     private transient boolean mReadStarted = false;
 
+    // Streams to the partition files while tuples are added, null until
+    // the first spill.
+    private transient DataOutputStream[] mPartitions = null;
+
+    private transient File[] mPartitionFiles = null;
+
+    // Whether mSize may count tuples spilled more than once.
+    private transient boolean mSizeStale = false;
+
     public InternalDistinctBag() {
         this(1, -1.0f);
     }
@@ -87,7 +110,7 @@ public class InternalDistinctBag extends SortedSpillBag {
                 }
             }
         }
-               
+
         init(bagCount, percent);
     }
 
@@ -108,7 +131,7 @@ public class InternalDistinctBag extends SortedSpillBag {
 
     @Override
     public long size() {
-        if (mSpillFiles != null && mSpillFiles.size() > 0){
+        if (mSizeStale) {
             //We need to racalculate size to guarantee a count of unique
             //entries including those on disk
             Iterator<Tuple> iter = iterator();
@@ -118,7 +141,9 @@ public class InternalDistinctBag extends SortedSpillBag {
                 iter.next();
             }
 
+            // no tuple can be added once the bag is read
             mSize = newSize;
+            mSizeStale = false;
         }
         return mSize;
     }
@@ -137,7 +162,7 @@ public class InternalDistinctBag extends SortedSpillBag {
             }
 
             if (mContents.size() > memLimit.getCacheLimit()) {
-                proactive_spill(null);
+                proactive_spill();
             }
 
             if (mContents.add(t)) {
@@ -145,7 +170,7 @@ public class InternalDistinctBag extends SortedSpillBag {
 
                 // check how many tuples memory can hold by getting average
                 // size of first 100 tuples
-                if(mSize < 100 && (mSpillFiles == null || mSpillFiles.isEmpty())) {
+                if(mSize < 100 && mPartitions == null) {
                     memLimit.addNewObjSize(t.getMemorySize());
                 }
             }
@@ -154,58 +179,151 @@ public class InternalDistinctBag extends SortedSpillBag {
     }
 
     /**
-     * An iterator that handles getting the next tuple from the bag.
-     * Data can be stored in a combination of in memory and on disk.
+     * Picks the partition of a tuple.  Each level of splitting uses another
+     * hash of the hash code of the tuple, so that the tuples of a partition
+     * spread over all the partitions of the next level.
      */
-    private class DistinctDataBagIterator implements Iterator<Tuple> {
+    static int partition(Tuple t, int level) {
+        int h = t.hashCode() + level * 0x9e3779b9;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % NUM_PARTITIONS;
+    }
 
-        private class TContainer implements Comparable<TContainer> {
-            public Tuple tuple;
-            public int fileNum;
+    /**
+     * Writes the tuples in memory to the partition files, which are created
+     * on the first spill and stay open until the bag is read.
+     * @return number of tuples spilled
+     */
+    private long proactive_spill() {
+        // Make sure we have something to spill.
+        if (mContents.size() == 0) return 0;
 
-            @Override
-            @SuppressWarnings("unchecked")
-            public int compareTo(TContainer other) {
-                return tuple.compareTo(other.tuple);
+        if (mPartitions == null) {
+            DataOutputStream[] outs = new DataOutputStream[NUM_PARTITIONS];
+            try {
+                for (int i = 0; i < NUM_PARTITIONS; i++) {
+                    outs[i] = getSpillFile();
+                }
+            } catch (IOException ioe) {
+                closePartitions(outs);
+                warn(
+                    "Unable to create tmp file to spill to disk", PigWarning.UNABLE_TO_CREATE_FILE_TO_SPILL, ioe);
+                return 0;
             }
+            mPartitions = outs;
+            mPartitionFiles = mSpillFiles.subList(mSpillFiles.size() - NUM_PARTITIONS,
+                    mSpillFiles.size()).toArray(new File[NUM_PARTITIONS]);
+            incSpillCount(PigCounters.PROACTIVE_SPILL_COUNT_BAGS);
+        }
 
-            @Override
-            public boolean equals(Object obj) {
-                if (obj instanceof TContainer) {
-                    return compareTo((TContainer)obj) == 0;
-                }
+        long spilled = 0;
+        try {
+            for (Tuple t : mContents) {
+                t.write(mPartitions[partition(t, 0)]);
+                spilled++;
+                // This will spill every 16383 records.
+                if ((spilled & 0x3fff) == 0) reportProgress();
+            }
+        } catch (IOException ioe) {
+            // The tuples written so far can't be taken back out of the
+            // partition files.
+            String msg = "Unable to spill contents to disk";
+            log.fatal(msg, ioe);
+            throw new RuntimeException(msg, ioe);
+        }
+        mContents.clear();
+        // the duplicates of the spilled tuples are counted again
+        mSizeStale = true;
+
+        incSpillCount(PigCounters.PROACTIVE_SPILL_COUNT_RECS, spilled);
 
-                return false;
+        return spilled;
+    }
+
+    private void closePartitions(DataOutputStream[] outs) {
+        for (DataOutputStream out : outs) {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    warn("Error closing spill", PigWarning.UNABLE_TO_CLOSE_SPILL_FILE, e);
+                }
             }
+        }
+    }
 
-            @Override
-            public int hashCode() {
-                return tuple.hashCode();
+    @Override
+    public void clear() {
+        synchronized(mContents) {
+            if (mPartitions != null) {
+                closePartitions(mPartitions);
+                mPartitions = null;
             }
+            mPartitionFiles = null;
+            mSizeStale = false;
+            super.clear();
+        }
+    }
+
+    /**
+     * The tuples of a partition which are still in memory and in files.
+     */
+    private static class Partition {
+        final List<Tuple> memory;
+        final File file;
+        final int level;
+
+        Partition(List<Tuple> memory, File file, int level) {
+            this.memory = memory;
+            this.file = file;
+            this.level = level;
         }
+    }
+
+    /**
+     * An iterator that handles getting the next tuple from the bag.
+     * Data can be stored in a combination of in memory and on disk.
+     */
+    private class DistinctDataBagIterator implements Iterator<Tuple> {
 
         // We have to buffer a tuple because there's no easy way for next
         // to tell whether or not there's another tuple available, other
         // than to read it.
         private Tuple mBuf = null;
-        private int mMemoryPtr = 0;
-        private TreeSet<TContainer> mMergeTree = null;
-        private ArrayList<DataInputStream> mStreams = null;
+        private Iterator<Tuple> mCurrent = null;
+        private LinkedList<Partition> mPending = new LinkedList<Partition>();
         private int mCntr = 0;
 
-        @SuppressWarnings("unchecked")
         DistinctDataBagIterator() {
-            // If this is the first read, we need to sort the data.
             synchronized(mContents) {
                 if (!mReadStarted) {
-                    preMerge();
-                    // We're the first reader, we need to sort the data.
-                    // This is in case it gets dumped under us.
-                    ArrayList<Tuple> l = new ArrayList<Tuple>(mContents);
-                    Collections.sort(l);
-                    mContents = l;
+                    if (mPartitions != null) {
+                        // No more tuples can be added, finish the files.
+                        closePartitions(mPartitions);
+                        mPartitions = null;
+                    }
                     mReadStarted = true;
                 }
+                if (mPartitionFiles == null) {
+                    mCurrent = mContents.iterator();
+                } else {
+                    // Read each partition file with the tuples of the
+                    // partition still in memory.
+                    List<List<Tuple>> memory = new ArrayList<List<Tuple>>(NUM_PARTITIONS);
+                    for (int i = 0; i < NUM_PARTITIONS; i++) {
+                        memory.add(new ArrayList<Tuple>());
+                    }
+                    for (Tuple t : mContents) {
+                        memory.get(partition(t, 0)).add(t);
+                    }
+                    for (int i = 0; i < NUM_PARTITIONS; i++) {
+                        mPending.add(new Partition(memory.get(i), mPartitionFiles[i], 0));
+                    }
+                }
             }
         }
 
@@ -229,14 +347,19 @@ public class InternalDistinctBag extends SortedSpillBag {
                 return t;
             }
 
-            // Check to see if we just need to read from memory.
-            if (mSpillFiles == null || mSpillFiles.size() == 0) {
-                return readFromMemory();
+            try {
+                while (mCurrent == null || !mCurrent.hasNext()) {
+                    if (mPending.isEmpty()) {
+                        return null;
+                    }
+                    mCurrent = load(mPending.removeFirst());
+                }
+            } catch (IOException ioe) {
+                String msg = "Unable to find our spill file.";
+                log.fatal(msg, ioe);
+                throw new RuntimeException(msg, ioe);
             }
-
-            // We have spill files, so we need to read the next tuple from
-            // one of those files or from memory.
-            return readFromTree();
+            return mCurrent.next();
         }
 
         /**
@@ -245,219 +368,105 @@ public class InternalDistinctBag extends SortedSpillBag {
         @Override
         public void remove() {}
 
-        private Tuple readFromTree() {
-            if (mMergeTree == null) {
-                // First read, we need to set up the queue and the array of
-                // file streams
-                mMergeTree = new TreeSet<TContainer>();
-
-                // Add one to the size in case we spill later.
-                mStreams =
-                    new ArrayList<DataInputStream>(mSpillFiles.size() + 1);
-
-                Iterator<File> i = mSpillFiles.iterator();
-                while (i.hasNext()) {
-                    try {
-                        DataInputStream in =
-                            new DataInputStream(new BufferedInputStream(
-                                new FileInputStream(i.next())));
-                        mStreams.add(in);
-                        // Add the first tuple from this file into the
-                        // merge queue.
-                        addToQueue(null, mStreams.size() - 1);
-                    } catch (FileNotFoundException fnfe) {
-                        // We can't find our own spill file?  That should
-                        // never happen.
-                        String msg = "Unable to find our spill file.";
-                        log.fatal(msg, fnfe);
-                        throw new RuntimeException(msg, fnfe);
+        /**
+         * Reads the distinct tuples of a partition into memory.  If there
+         * are too many of them, splits the partition in the files of the
+         * next level instead, which are read next.
+         * @return iterator over the distinct tuples of the partition, or
+         * null if it was split
+         */
+        private Iterator<Tuple> load(Partition part) throws IOException {
+            long limit = Math.max(memLimit.getCacheLimit(), MIN_PARTITION_TUPLES);
+            Set<Tuple> set = new HashSet<Tuple>(part.memory);
+            DataInputStream in = openSpillFile(part.file);
+            try {
+                Tuple t;
+                while ((t = read(in)) != null) {
+                    set.add(t);
+                    if (set.size() > limit && part.level < MAX_SPLITS) {
+                        split(part, set, in);
+                        set = null;
+                        break;
                     }
                 }
-
-                // Prime one from memory too
-                if (mContents.size() > 0) {
-                    addToQueue(null, -1);
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close spill file.", e);
                 }
             }
-
-            if (mMergeTree.size() == 0) return null;
-
-            // Pop the top one off the queue
-            TContainer c = mMergeTree.first();
-            mMergeTree.remove(c);
-
-            // Add the next tuple from whereever we read from into the
-            // queue.  Buffer the tuple we're returning, as we'll be
-            // reusing c.
-            Tuple t = c.tuple;
-            addToQueue(c, c.fileNum);
-
-            return t;
-        }
-
-        private void addToQueue(TContainer c, int fileNum) {
-            if (c == null) {
-                c = new TContainer();
-            }
-            c.fileNum = fileNum;
-
-            if (fileNum == -1) {
-                // Need to read from memory.
-                do {
-                    c.tuple = readFromMemory();
-                    if (c.tuple != null) {
-                        // If we find a unique entry, then add it to the queue.
-                        // Otherwise ignore it and keep reading.
-                        if (mMergeTree.add(c)) {
-                            return;
-                        }
-                    }
-                } while (c.tuple != null);
-                return;
+            if (part.level > 0) {
+                // the files of the first level are kept to read the bag again
+                deleteSpillFile(part.file);
             }
-
-            // Read the next tuple from the indicated file
-            DataInputStream in = mStreams.get(fileNum);
-            if (in != null) {
-                // There's still data in this file
-                c.tuple = gTupleFactory.newTuple();
-                do {
-                    try {
-                        c.tuple.readFields(in);
-                        // If we find a unique entry, then add it to the queue.
-                        // Otherwise ignore it and keep reading.  If we run out
-                        // of tuples to read that's fine, we just won't add a
-                        // new one from this file.
-                        if (mMergeTree.add(c)) {
-                            return;
-                        }
-                    } catch (EOFException eof) {
-                        // Out of tuples in this file.  Set our slot in the
-                        // array to null so we don't keep trying to read from
-                        // this file.
-                        try {
-                            in.close();
-                        }catch(IOException e) {
-                            log.warn("Failed to close spill file.", e);
-                        }
-                        mStreams.set(fileNum, null);
-                        return;
-                    } catch (IOException ioe) {
-                        String msg = "Unable to find our spill file.";
-                        log.fatal(msg, ioe);
-                        throw new RuntimeException(msg, ioe);
-                    }
-                } while (true);
-            }
-        }
-
-        // Function assumes that the reader lock is already held before we enter
-        // this function.
-        private Tuple readFromMemory() {
-            if (mContents.size() == 0) return null;
-
-            if (mMemoryPtr < mContents.size()) {
-                return ((ArrayList<Tuple>)mContents).get(mMemoryPtr++);
-            } else {
+            if (set == null) {
                 return null;
             }
+            if (set.size() > limit) {
+                log.warn("Reading " + set.size() + " distinct tuples with the same hash "
+                        + "partition into memory");
+            }
+            return set.iterator();
         }
 
         /**
-         * Pre-merge if there are too many spill files.  This avoids the issue
-         * of having too large a fan out in our merge.  Experimentation by
-         * the hadoop team has shown that 100 is about the optimal number
-         * of spill files.  This function modifies the mSpillFiles array
-         * and assumes the write lock is already held. It will not unlock it.
-         *
-         * Tuples are reconstituted as tuples, evaluated, and rewritten as
-         * tuples.  This is expensive, but I don't know how to read tuples
-         * from the file otherwise.
-         *
-         * This function is slightly different than the one in
-         * SortedDataBag, as it uses a TreeSet instead of a PriorityQ.
+         * Writes the tuples read so far and the rest of the file to the
+         * partitions of the next level, and queues them to be read next.
          */
-        private void preMerge() {
-            if (mSpillFiles == null ||
-                    mSpillFiles.size() <= MAX_SPILL_FILES) {
-                return;
-            }
-
-            // While there are more than max spill files, gather max spill
-            // files together and merge them into one file.  Then remove the others
-            // from mSpillFiles.  The new spill files are attached at the
-            // end of the list, so I can just keep going until I get a
-            // small enough number without too much concern over uneven
-            // size merges.  Convert mSpillFiles to a linked list since
-            // we'll be removing pieces from the middle and we want to do
-            // it efficiently.
+        private void split(Partition part, Set<Tuple> set, DataInputStream in)
+                throws IOException {
+            int level = part.level + 1;
+            DataOutputStream[] outs = new DataOutputStream[NUM_PARTITIONS];
+            File[] files = new File[NUM_PARTITIONS];
             try {
-
-                LinkedList<File> ll = new LinkedList<File>(mSpillFiles);
-                LinkedList<File> filesToDelete = new LinkedList<File>();
-                while (ll.size() > MAX_SPILL_FILES) {
-                    ListIterator<File> i = ll.listIterator();
-                    mStreams =
-                        new ArrayList<DataInputStream>(MAX_SPILL_FILES);
-                    mMergeTree = new TreeSet<TContainer>();
-
-                    for (int j = 0; j < MAX_SPILL_FILES; j++) {
-                        try {
-                            File f = i.next();
-                            DataInputStream in =
-                                new DataInputStream(new BufferedInputStream(
-                                    new FileInputStream(f)));
-                            mStreams.add(in);
-                            addToQueue(null, mStreams.size() - 1);
-                            i.remove();
-                            filesToDelete.add(f);
-                        } catch (FileNotFoundException fnfe) {
-                            // We can't find our own spill file?  That should
-                            // neer happen.
-                            String msg = "Unable to find our spill file.";
-                            log.fatal(msg, fnfe);
-                            throw new RuntimeException(msg, fnfe);
-                        }
-                    }
-
-                    // Get a new spill file.  This adds one to the end of
-                    // the spill files list.  So I need to append it to my
-                    // linked list as well so that it's still there when I
-                    // move my linked list back to the spill files.
-                    try {
-                        DataOutputStream out = getSpillFile();
-                        ll.add(mSpillFiles.get(mSpillFiles.size() - 1));
-                        Tuple t;
-                        while ((t = readFromTree()) != null) {
-                            t.write(out);
-                        }
-                        out.flush();
-                        out.close();
-                    } catch (IOException ioe) {
-                        String msg = "Unable to find our spill file.";
-                        log.fatal(msg, ioe);
-                        throw new RuntimeException(msg, ioe);
-                    }
+                for (Tuple t : set) {
+                    write(outs, files, t, level);
                 }
+                set.clear();
+                Tuple t;
+                while ((t = read(in)) != null) {
+                    write(outs, files, t, level);
+                }
+            } finally {
+                closePartitions(outs);
+            }
+            for (int i = NUM_PARTITIONS - 1; i >= 0; i--) {
+                if (files[i] != null) {
+                    mPending.addFirst(new Partition(Collections.<Tuple>emptyList(),
+                            files[i], level));
+                }
+            }
+        }
 
-                // delete files that have been merged into new files
-                for(File f : filesToDelete){
-                    if( f.delete() == false){
-                        log.warn("Failed to delete spill file: " + f.getPath());
-                    }
+        private void write(DataOutputStream[] outs, File[] files, Tuple t, int level)
+                throws IOException {
+            int p = partition(t, level);
+            if (outs[p] == null) {
+                synchronized(mContents) {
+                    outs[p] = getSpillFile();
+                    files[p] = mSpillFiles.get(mSpillFiles.size() - 1);
                 }
+            }
+            t.write(outs[p]);
+        }
 
-                // clear the list, so that finalize does not delete any files,
-                // when mSpillFiles is assigned a new value
-                mSpillFiles.clear();
+        private Tuple read(DataInputStream in) throws IOException {
+            Tuple t = gTupleFactory.newTuple();
+            try {
+                t.readFields(in);
+            } catch (EOFException eof) {
+                return null;
+            }
+            return t;
+        }
 
-                // Now, move our new list back to the spill files array.
-                mSpillFiles = new FileList(ll);
-            } finally {
-                // Reset mStreams and mMerge so that they'll be allocated
-                // properly for regular merging.
-                mStreams = null;
-                mMergeTree = null;
+        private void deleteSpillFile(File f) {
+            synchronized(mContents) {
+                mSpillFiles.remove(f);
+            }
+            if (!f.delete()) {
+                log.warn("Failed to delete spill file: " + f.getPath());
             }
         }
     }
@@ -468,7 +477,7 @@ public class InternalDistinctBag extends SortedSpillBag {
             if (this.mReadStarted) {
                 return 0L;
             }
-            return proactive_spill(null);
+            return proactive_spill();
         }
     }
 
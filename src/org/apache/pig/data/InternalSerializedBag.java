@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.PigCounters;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * A bag which keeps its tuples serialized in memory, and puts them in a
+ * spill file once they use up its share of memory. It is meant for tuples
+ * which are added once and read many times, like the inputs a join holds
+ * while it streams the last one past them: a serialized tuple takes a few
+ * times less memory than the tuple objects, so many more fit before the
+ * bag spills. Each iteration deserializes the tuples again.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class InternalSerializedBag extends SelfSpillBag {
+    private static final long serialVersionUID = 1L;
+
+    private static final Log log = LogFactory.getLog(InternalSerializedBag.class);
+
+    private static final InterSedes SEDES = InterSedesFactory.getInterSedesInstance();
+
+    private static final int MIN_CHUNK_SIZE = 256;
+
+    private static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    private transient ChunkedOutputStream buffer;
+    private transient DataOutputStream bufferOut;
+    private transient DataOutputStream spillOut;
+    private transient long numInMemory;
+    private transient boolean addDone;
+
+    // used to store number of tuples spilled until counter is incremented
+    private transient int numTuplesSpilled = 0;
+
+    public InternalSerializedBag() {
+        this(1, -1f);
+    }
+
+    public InternalSerializedBag(int bagCount) {
+        this(bagCount, -1f);
+    }
+
+    public InternalSerializedBag(int bagCount, float percent) {
+        super(bagCount, percent);
+        init();
+    }
+
+    private void init() {
+        mContents = new ArrayList<Tuple>(0);
+        buffer = new ChunkedOutputStream();
+        bufferOut = new DataOutputStream(buffer);
+        spillOut = null;
+        numInMemory = 0;
+        addDone = false;
+    }
+
+    @Override
+    public void add(Tuple t) {
+        if (addDone) {
+            throw new IllegalStateException("InternalSerializedBag is closed for adding new tuples");
+        }
+        try {
+            if (numInMemory < memLimit.getCacheLimit()) {
+                long before = buffer.size();
+                SEDES.writeDatum(bufferOut, t, DataType.TUPLE);
+                memLimit.addNewObjSize(buffer.size() - before);
+                numInMemory++;
+            } else {
+                if (spillOut == null) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Memory can hold " + numInMemory
+                                + " serialized records, put the rest in spill file.");
+                    }
+                    spillOut = getSpillFile();
+                    incSpillCount(PigCounters.PROACTIVE_SPILL_COUNT_BAGS);
+                }
+                SEDES.writeDatum(spillOut, t, DataType.TUPLE);
+
+                //periodically update number of tuples spilled
+                numTuplesSpilled++;
+                if (numTuplesSpilled > 1000) {
+                    updateSpillRecCounter();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        mSize++;
+    }
+
+    private void updateSpillRecCounter() {
+        incSpillCount(PigCounters.PROACTIVE_SPILL_COUNT_RECS, numTuplesSpilled);
+        numTuplesSpilled = 0;
+    }
+
+    private void addDone() {
+        if (spillOut != null) {
+            try {
+                spillOut.flush();
+                spillOut.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        if (numTuplesSpilled > 0) {
+            updateSpillRecCounter();
+        }
+        addDone = true;
+    }
+
+    @Override
+    public long getMemorySize() {
+        return buffer.size() + 8 * buffer.chunks.size() + 64;
+    }
+
+    @Override
+    public void clear() {
+        if (!addDone) {
+            addDone();
+        }
+        super.clear();
+        init();
+    }
+
+    @Override
+    public boolean isDistinct() {
+        return false;
+    }
+
+    @Override
+    public boolean isSorted() {
+        return false;
+    }
+
+    @Override
+    public Iterator<Tuple> iterator() {
+        if (!addDone) {
+            addDone();
+        }
+        return new SerializedBagIterator();
+    }
+
+    @Override
+    public long spill() {
+        throw new RuntimeException("InternalSerializedBag.spill() should not be called");
+    }
+
+    /**
+     * An output stream which grows by chunks, so that no byte is copied
+     * when it grows. The chunks start small, as most bags only hold a few
+     * tuples.
+     */
+    private static class ChunkedOutputStream extends OutputStream {
+        private final List<byte[]> chunks = new ArrayList<byte[]>();
+        private byte[] current = new byte[0];
+        private int pos = 0;
+        private long size = 0;
+
+        @Override
+        public void write(int b) {
+            if (pos == current.length) {
+                newChunk();
+            }
+            current[pos++] = (byte) b;
+            size++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (pos == current.length) {
+                    newChunk();
+                }
+                int n = Math.min(len, current.length - pos);
+                System.arraycopy(b, off, current, pos, n);
+                pos += n;
+                off += n;
+                len -= n;
+                size += n;
+            }
+        }
+
+        private void newChunk() {
+            current = new byte[Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, current.length * 2))];
+            chunks.add(current);
+            pos = 0;
+        }
+
+        long size() {
+            return size;
+        }
+    }
+
+    private static class ChunkedInputStream extends InputStream {
+        private final Iterator<byte[]> chunks;
+        private byte[] current = new byte[0];
+        private int pos = 0;
+        private long remaining;
+
+        ChunkedInputStream(ChunkedOutputStream out) {
+            chunks = out.chunks.iterator();
+            remaining = out.size;
+        }
+
+        private boolean ensureChunk() {
+            if (remaining == 0) {
+                return false;
+            }
+            if (pos == current.length) {
+                current = chunks.next();
+                pos = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() {
+            if (!ensureChunk()) {
+                return -1;
+            }
+            remaining--;
+            return current[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureChunk()) {
+                return -1;
+            }
+            int n = (int) Math.min(Math.min(len, current.length - pos), remaining);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+    }
+
+    private class SerializedBagIterator implements Iterator<Tuple> {
+        private final DataInputStream memIn;
+        private long numMemRead = 0;
+        private DataInputStream in;
+        private Tuple next;
+        private long numTuplesRead = 0;
+
+        SerializedBagIterator() {
+            memIn = new DataInputStream(new ChunkedInputStream(buffer));
+            if (mSpillFiles != null && mSpillFiles.size() > 0) {
+                File file = mSpillFiles.get(0);
+                try {
+                    in = openSpillFile(file);
+                } catch (IOException ioe) {
+                    String msg = "Unable to find our spill file.";
+                    throw new RuntimeException(msg, ioe);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            try {
+                if (numMemRead < numInMemory) {
+                    next = (Tuple) SEDES.readDatum(memIn);
+                    numMemRead++;
+                    return true;
+                }
+                if (in == null) {
+                    return false;
+                }
+                next = (Tuple) SEDES.readDatum(in);
+                return true;
+            } catch (EOFException eof) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                in = null;
+                return false;
+            } catch (IOException e) {
+                String msg = "Unable to read our serialized tuples.";
+                throw new RuntimeException(msg, e);
+            }
+        }
+
+        @Override
+        public Tuple next() {
+            if (next == null) {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("No more elements from iterator");
+                }
+            }
+            Tuple t = next;
+            next = null;
+
+            numTuplesRead++;
+            // This will report progress every 16383 records.
+            if ((numTuplesRead & 0x3fff) == 0) reportProgress();
+
+            return t;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove is not supported for SerializedBagIterator");
+        }
+    }
+}
@@ -17,21 +17,12 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.EOFException;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.ListIterator;
-import java.util.PriorityQueue;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -154,43 +145,12 @@ public class InternalSortedBag extends SortedSpillBag{
      */
     private class SortedDataBagIterator implements Iterator<Tuple> {
 
-        /**
-         * A container to hold tuples in a priority queue.  Stores the
-         * file number the tuple came from, so that when the tuple is read
-         * out of the queue, we know which file to read its replacement
-         * tuple from.
-         */
-        private class PQContainer implements Comparable<PQContainer> {
-            public Tuple tuple;
-            public int fileNum;
-
-            @Override
-            public int compareTo(PQContainer other) {
-                return mComp.compare(tuple, other.tuple);
-            }
-            
-            @Override
-            public boolean equals(Object obj) {
-            	if (obj instanceof PQContainer) {
-            		return compareTo((PQContainer)obj) == 0;
-            	}
-            	
-            	return false;
-            }
-            
-            @Override
-            public int hashCode() {
-            	return tuple.hashCode();
-            }
-        }
-
         // We have to buffer a tuple because there's no easy way for next
         // to tell whether or not there's another tuple available, other
         // than to read it.
         private Tuple mBuf = null;
         private int mMemoryPtr = 0;
-        private PriorityQueue<PQContainer> mMergeQ = null;
-        private ArrayList<DataInputStream> mStreams = null;
+        private SpillMerger.LoserTree mMerge = null;
         private int mCntr = 0;
 
         SortedDataBagIterator() {
@@ -230,7 +190,7 @@ public class InternalSortedBag extends SortedSpillBag{
 
             // We have spill files, so we need to read the next tuple from
             // one of those files or from memory.
-            return readFromPriorityQ();
+            return readFromMerge();
         }
 
         /**
@@ -239,95 +199,33 @@ public class InternalSortedBag extends SortedSpillBag{
         @Override
         public void remove() {}
 
-        private Tuple readFromPriorityQ() {
-            if (mMergeQ == null) {
-                // First read, we need to set up the queue and the array of
-                // file streams
-                // Add one to the size for the list in memory.
-                mMergeQ =
-                    new PriorityQueue<PQContainer>(mSpillFiles.size() + 1);
-
-                // Add one to the size in case we spill later.
-                mStreams =
-                    new ArrayList<DataInputStream>(mSpillFiles.size() + 1);
-
-                Iterator<File> i = mSpillFiles.iterator();
-                while (i.hasNext()) {
-                    try {
-                        DataInputStream in = 
-                            new DataInputStream(new BufferedInputStream(
-                                new FileInputStream(i.next())));
-                        mStreams.add(in);
-                        // Add the first tuple from this file into the
-                        // merge queue.
-                        addToQueue(null, mStreams.size() - 1);
-                    } catch (FileNotFoundException fnfe) {
-                        // We can't find our own spill file?  That should
-                        // never happen.
-                        String msg = "Unable to find our spill file."; 
-                        log.fatal(msg, fnfe);
-                        throw new RuntimeException(msg, fnfe);
-                    }
-                }
-
-                // Prime one from memory too
-                if (mContents.size() > 0) {
-                    addToQueue(null, -1);
-                }
-            }
-
-            // Pop the top one off the queue
-            PQContainer c = mMergeQ.poll();
-            if (c == null) return null;
-
-            // Add the next tuple from whereever we read from into the
-            // queue.  Buffer the tuple we're returning, as we'll be
-            // reusing c.
-            Tuple t = c.tuple;
-            addToQueue(c, c.fileNum);
-
-            return t;
-        }
-
-        private void addToQueue(PQContainer c, int fileNum) {
-            if (c == null) {
-                c = new PQContainer();
-            }
-            c.fileNum = fileNum;
-
-            if (fileNum == -1) {
-                // Need to read from memory.  
-                 c.tuple = readFromMemory();
-                if (c.tuple != null) {
-                    mMergeQ.add(c);
-                }
-                return;
-            }
-
-            // Read the next tuple from the indicated file
-            DataInputStream in = mStreams.get(fileNum);
-            if (in != null) {
-                // There's still data in this file
-                c.tuple = gTupleFactory.newTuple();
-                try {
-                    c.tuple.readFields(in);
-                    mMergeQ.add(c);
-                } catch (EOFException eof) {
-                    // Out of tuples in this file.  Set our slot in the
-                    // array to null so we don't keep trying to read from
-                    // this file.
-                    try {
-                        in.close();
-                    }catch(IOException e) {
-                        log.warn("Failed to close spill file.", e);
+        private Tuple readFromMerge() {
+            try {
+                if (mMerge == null) {
+                    // First read, we need to open the spill files and
+                    // merge them with the list in memory.
+                    SpillMerger merger = new SpillMerger(InternalSortedBag.this, mComp,
+                            gTupleFactory, mComp instanceof DefaultComparator);
+                    List<SpillMerger.Run> runs = merger.open(mSpillFiles);
+                    if (mContents.size() > 0) {
+                        runs.add(new SpillMerger.Run() {
+                            @Override
+                            public Tuple next() {
+                                return readFromMemory();
+                            }
+
+                            @Override
+                            public void close() {
+                            }
+                        });
                     }
-                    mStreams.set(fileNum, null);
-                } catch (IOException ioe) {
-                    String msg = "Unable to find our spill file.";
-                    log.fatal(msg, ioe);
-                    throw new RuntimeException(msg, ioe);
+                    mMerge = merger.merge(runs);
                 }
-
+                return mMerge.next();
+            } catch (IOException ioe) {
+                String msg = "Unable to find our spill file.";
+                log.fatal(msg, ioe);
+                throw new RuntimeException(msg, ioe);
             }
         }
 
@@ -355,85 +253,13 @@ public class InternalSortedBag extends SortedSpillBag{
          * use the sort spec that was provided to me.
          */
         private void preMerge() {
-            if (mSpillFiles == null ||
-                    mSpillFiles.size() <= MAX_SPILL_FILES) {
-                return;
-            }
-
-            // While there are more than max spill files, gather max spill
-            // files together and merge them into one file.  Then remove the others
-            // from mSpillFiles.  The new spill files are attached at the
-            // end of the list, so I can just keep going until I get a
-            // small enough number without too much concern over uneven
-            // size merges.  Convert mSpillFiles to a linked list since
-            // we'll be removing pieces from the middle and we want to do
-            // it efficiently.
             try {
-                LinkedList<File> ll = new LinkedList<File>(mSpillFiles);
-                LinkedList<File> filesToDelete = new LinkedList<File>();
-                while (ll.size() > MAX_SPILL_FILES) {
-                    ListIterator<File> i = ll.listIterator();
-                    mStreams =
-                        new ArrayList<DataInputStream>(MAX_SPILL_FILES);
-                    mMergeQ = new PriorityQueue<PQContainer>(MAX_SPILL_FILES);
-
-                    for (int j = 0; j < MAX_SPILL_FILES; j++) {
-                        try {
-                            File f = i.next();
-                            DataInputStream in =
-                                new DataInputStream(new BufferedInputStream(
-                                    new FileInputStream(f)));
-                            mStreams.add(in);
-                            addToQueue(null, mStreams.size() - 1);
-                            i.remove();
-                            filesToDelete.add(f);
-                            
-                        } catch (FileNotFoundException fnfe) {
-                            // We can't find our own spill file?  That should
-                            // neer happen.
-                            String msg = "Unable to find our spill file.";
-                            log.fatal(msg, fnfe);
-                            throw new RuntimeException(msg, fnfe);
-                        }
-                    }
-
-                    // Get a new spill file.  This adds one to the end of
-                    // the spill files list.  So I need to append it to my
-                    // linked list as well so that it's still there when I
-                    // move my linked list back to the spill files.
-                    try {
-                        DataOutputStream out = getSpillFile();
-                        ll.add(mSpillFiles.get(mSpillFiles.size() - 1));
-                        Tuple t;
-                        while ((t = readFromPriorityQ()) != null) {
-                            t.write(out);
-                        }
-                        out.flush();
-                        out.close();
-                    } catch (IOException ioe) {
-                        String msg = "Unable to find our spill file.";
-                        log.fatal(msg, ioe);
-                        throw new RuntimeException(msg, ioe);
-                    }
-                }
-                // delete files that have been merged into new files
-                for(File f : filesToDelete){
-                    if( f.delete() == false){
-                        log.warn("Failed to delete spill file: " + f.getPath());
-                    }
-                }
-                
-                // clear the list, so that finalize does not delete any files,
-                // when mSpillFiles is assigned a new value
-                mSpillFiles.clear();
-
-                // Now, move our new list back to the spill files array.
-                mSpillFiles = new FileList(ll);
-            } finally {
-                // Reset mStreams and mMerge so that they'll be allocated
-                // properly for regular merging.
-                mStreams = null;
-                mMergeQ = null;
+                new SpillMerger(InternalSortedBag.this, mComp, gTupleFactory,
+                        mComp instanceof DefaultComparator).mergeLevels(MAX_SPILL_FILES);
+            } catch (IOException ioe) {
+                String msg = "Unable to find our spill file.";
+                log.fatal(msg, ioe);
+                throw new RuntimeException(msg, ioe);
             }
         }
     }
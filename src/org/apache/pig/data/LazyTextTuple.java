@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.pig.LoadCaster;
+import org.apache.pig.PigException;
+import org.apache.pig.ResourceSchema.ResourceFieldSchema;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.builtin.Utf8StorageConverter;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.impl.util.CastUtils;
+
+/**
+ * A tuple over a line of delimited text that keeps the line and the offsets
+ * of its fields, and only builds a field, a DataByteArray or the value cast
+ * by the loader's LoadCaster, the first time it is read. Columns that are
+ * loaded but never looked at, and rows dropped by a filter before reading all
+ * their columns, so cost no allocation beyond the copy of the line.
+ * <p>
+ * Fields appended with {@link #append(Object)} or set with
+ * {@link #set(int, Object)} are stored as in any other tuple. The line is
+ * released once every field has been read.
+ */
+@InterfaceAudience.Private
+public class LazyTextTuple extends BinSedesTuple {
+    private static final long serialVersionUID = 1L;
+
+    // marks the fields that still have to be read from the line
+    private static final Object UNREAD = new Object();
+
+    private transient byte[] buf;
+    private transient LoadCaster caster;
+    private transient int[] starts;
+    private transient int[] ends;
+    private transient ResourceFieldSchema[] fieldSchemas;
+    private transient int unread = 0;
+
+    /**
+     * @param buf the line, which the tuple keeps; callers reusing their
+     * buffer must pass a copy
+     * @param caster used to convert fields given a schema with
+     * {@link #setFieldSchema(int, ResourceFieldSchema)}
+     */
+    public LazyTextTuple(byte[] buf, LoadCaster caster) {
+        super();
+        this.buf = buf;
+        this.caster = caster;
+    }
+
+    /**
+     * Appends a field made of the bytes of the line from start, inclusive,
+     * to end, exclusive. An empty field reads as null.
+     */
+    public void appendField(int start, int end) {
+        int i = mFields.size();
+        if (starts == null) {
+            starts = new int[8];
+            ends = new int[8];
+        } else if (i >= starts.length) {
+            starts = Arrays.copyOf(starts, Math.max(i + 1, starts.length * 2));
+            ends = Arrays.copyOf(ends, starts.length);
+        }
+        starts[i] = start;
+        ends[i] = end;
+        mFields.add(UNREAD);
+        unread++;
+    }
+
+    /**
+     * @return true if field i is still to be read from the line
+     */
+    public boolean isUnread(int i) {
+        return i < mFields.size() && mFields.get(i) == UNREAD;
+    }
+
+    /**
+     * Has field i, which must still be unread, converted to the type of
+     * fieldSchema by the LoadCaster when it is read.
+     */
+    public void setFieldSchema(int i, ResourceFieldSchema fieldSchema) {
+        if (fieldSchemas == null) {
+            fieldSchemas = new ResourceFieldSchema[Math.max(starts.length, i + 1)];
+        } else if (i >= fieldSchemas.length) {
+            fieldSchemas = Arrays.copyOf(fieldSchemas, Math.max(i + 1, starts.length));
+        }
+        fieldSchemas[i] = fieldSchema;
+    }
+
+    private Object read(int i) throws ExecException {
+        int start = starts[i];
+        int end = ends[i];
+        Object val = null;
+        if (start != end) {
+            ResourceFieldSchema fs = fieldSchemas == null || i >= fieldSchemas.length ? null : fieldSchemas[i];
+            if (fs == null || fs.getType() == DataType.BYTEARRAY) {
+                val = new DataByteArray(buf, start, end);
+            } else {
+                try {
+                    if (caster.getClass() == Utf8StorageConverter.class) {
+                        val = convert((Utf8StorageConverter) caster, fs, start, end);
+                    } else {
+                        val = CastUtils.convertToType(caster, Arrays.copyOfRange(buf, start, end),
+                                fs, fs.getType());
+                    }
+                } catch (ExecException ee) {
+                    throw ee;
+                } catch (IOException e) {
+                    int errCode = 6018;
+                    String msg = "Error while reading field " + i + " of input";
+                    throw new ExecException(msg, errCode, PigException.REMOTE_ENVIRONMENT, e);
+                }
+            }
+        }
+        mFields.set(i, val);
+        if (--unread == 0) {
+            buf = null;
+            starts = null;
+            ends = null;
+            fieldSchemas = null;
+        }
+        return val;
+    }
+
+    /**
+     * Converts simple types straight from the line, without copying the
+     * field's bytes first.
+     */
+    private Object convert(Utf8StorageConverter converter, ResourceFieldSchema fs,
+            int start, int end) throws IOException {
+        int len = end - start;
+        switch (fs.getType()) {
+        case DataType.CHARARRAY:
+            return converter.bytesToCharArray(buf, start, len);
+        case DataType.INTEGER:
+            return converter.bytesToInteger(buf, start, len);
+        case DataType.LONG:
+            return converter.bytesToLong(buf, start, len);
+        case DataType.FLOAT:
+            return converter.bytesToFloat(buf, start, len);
+        case DataType.DOUBLE:
+            return converter.bytesToDouble(buf, start, len);
+        case DataType.BOOLEAN:
+            return converter.bytesToBoolean(buf, start, len);
+        case DataType.DATETIME:
+            return converter.bytesToDateTime(buf, start, len);
+        default:
+            return CastUtils.convertToType(converter, Arrays.copyOfRange(buf, start, end),
+                    fs, fs.getType());
+        }
+    }
+
+    private void readAll() {
+        if (unread == 0) {
+            return;
+        }
+        try {
+            for (int i = 0; i < mFields.size(); i++) {
+                if (mFields.get(i) == UNREAD) {
+                    read(i);
+                }
+            }
+        } catch (ExecException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Object get(int fieldNum) throws ExecException {
+        Object val = mFields.get(fieldNum);
+        return val == UNREAD ? read(fieldNum) : val;
+    }
+
+    @Override
+    public List<Object> getAll() {
+        readAll();
+        return mFields;
+    }
+
+    @Override
+    public void set(int fieldNum, Object val) throws ExecException {
+        if (mFields.get(fieldNum) == UNREAD && --unread == 0) {
+            buf = null;
+        }
+        mFields.set(fieldNum, val);
+    }
+
+    @Override
+    public long getMemorySize() {
+        if (unread == 0) {
+            return super.getMemorySize();
+        }
+        // same estimate as DefaultTuple, plus the line and offsets
+        long sum = 8 + 8 + 8 + 32 + Math.max(40, SizeUtil.roundToEight(4 + 4 * mFields.size()));
+        for (Object o : mFields) {
+            if (o != UNREAD) {
+                sum += SizeUtil.getPigObjMemSize(o);
+            }
+        }
+        sum += SizeUtil.roundToEight(16 + buf.length) + 2 * SizeUtil.roundToEight(16 + 4 * starts.length);
+        return sum;
+    }
+
+    @Override
+    public int compareTo(Object other) {
+        readAll();
+        return super.compareTo(other);
+    }
+
+    @Override
+    public int hashCode() {
+        readAll();
+        return super.hashCode();
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        buf = null;
+        starts = null;
+        ends = null;
+        fieldSchemas = null;
+        unread = 0;
+        super.readFields(in);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        readAll();
+        out.defaultWriteObject();
+    }
+}
@@ -202,7 +202,12 @@ public class NonSpillableDataBag implements DataBag {
     }
 
     public int hashCode() {
-        return mContents.hashCode();
+        // Same as DefaultAbstractBag, which doesn't depend on the order
+        int hash = 0;
+        for (Tuple t : mContents) {
+            hash += t.hashCode();
+        }
+        return hash;
     }
 
     @SuppressWarnings("unchecked")
@@ -229,7 +234,7 @@ public class NonSpillableDataBag implements DataBag {
             thisClone = factory.newSortedBag(null);
             Iterator<Tuple> i = iterator();
             while (i.hasNext()) thisClone.add(i.next());
-            if (((DataBag) other).isSorted() || ((DataBag) other).isDistinct()) {
+            if (DefaultAbstractBag.readsSorted(bOther)) {
                 otherClone = bOther;
             } else {
                 otherClone = factory.newSortedBag(null);
@@ -17,21 +17,15 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.ListIterator;
-import java.util.PriorityQueue;
+import java.util.List;
   
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -179,31 +173,70 @@ public class SortedDataBag extends DefaultAbstractBag{
     private class SortedDataBagIterator implements Iterator<Tuple> {
 
         /**
-         * A container to hold tuples in a priority queue.  Stores the
-         * file number the tuple came from, so that when the tuple is read
-         * out of the queue, we know which file to read its replacement
-         * tuple from.
+         * Reads the tuples in memory. If the bag spills while they are
+         * read, the rest of them is read from the file they were spilled
+         * to.
          */
-        private class PQContainer implements Comparable<PQContainer> {
-            public Tuple tuple;
-            public int fileNum;
-
-            @Override
-            public int compareTo(PQContainer other) {
-                return mComp.compare(tuple, other.tuple);
+        private class MemoryRun implements SpillMerger.Run {
+            // Number of spill files when we started reading.
+            private final int mNumFiles;
+            private DataInputStream mIn = null;
+            private boolean mDone = false;
+
+            MemoryRun(int numFiles) {
+                mNumFiles = numFiles;
             }
 
             @Override
-            public boolean equals(Object other) {
-                if (other instanceof PQContainer)
-                    return tuple.equals(((PQContainer)other).tuple);
-                else
-                    return false;
+            public Tuple next() throws IOException {
+                if (mDone) {
+                    return null;
+                }
+                synchronized (mContents) {
+                    if (mIn == null) {
+                        if (mSpillFiles == null || mSpillFiles.size() <= mNumFiles) {
+                            return readFromMemory();
+                        }
+                        // We spilled since we started reading.  Open the
+                        // new file and fast forward past all of the
+                        // tuples we've already read.  The file is the
+                        // first one added since we started, because we
+                        // don't support calls to add() after calls to
+                        // iterator(), and spill() won't create empty files.
+                        mIn = openSpillFile(mSpillFiles.get(mNumFiles));
+                        for (int i = 0; i < mMemoryPtr; i++) {
+                            try {
+                                SEDES.readDatum(mIn);
+                            } catch (EOFException eof) {
+                                // This should never happen, it means we
+                                // didn't dump all of our tuples to disk.
+                                String msg = "Ran out of tuples to read prematurely.";
+                                log.fatal(msg, eof);
+                                throw new RuntimeException(msg, eof);
+                            }
+                        }
+                        mMemoryPtr = 0;
+                    }
+                }
+                try {
+                    return (Tuple) SEDES.readDatum(mIn);
+                } catch (EOFException eof) {
+                    close();
+                    return null;
+                }
             }
 
             @Override
-            public int hashCode() {
-                return tuple.hashCode(); 
+            public void close() {
+                if (mIn != null) {
+                    try {
+                        mIn.close();
+                    } catch (IOException e) {
+                        log.warn("Failed to close spill file.", e);
+                    }
+                    mIn = null;
+                }
+                mDone = true;
             }
         }
 
@@ -212,8 +245,8 @@ public class SortedDataBag extends DefaultAbstractBag{
         // than to read it.
         private Tuple mBuf = null;
         private int mMemoryPtr = 0;
-        private PriorityQueue<PQContainer> mMergeQ = null;
-        private ArrayList<DataInputStream> mStreams = null;
+        private MemoryRun mMemory = null;
+        private SpillMerger.LoserTree mMerge = null;
         private int mCntr = 0;
 
         SortedDataBagIterator() {
@@ -247,77 +280,18 @@ public class SortedDataBag extends DefaultAbstractBag{
                 return t;
             }
 
-            // Check to see if we just need to read from memory.
-            boolean spilled = false;
-            synchronized (mContents) {
-                if (mSpillFiles == null || mSpillFiles.size() == 0) {
-                    return readFromMemory();
-                }
-
-                // Check to see if we were reading from memory but we spilled
-                if (mMemoryPtr > 0 && mContents.size() == 0) {
-                    spilled = true;
-                }
-            }
-
-            if (spilled) {
-                DataInputStream in;
-                // We need to open the new file
-                // and then fast forward past all of the tuples we've
-                // already read.  Then we need to place the first tuple
-                // from that file in the priority queue.  Whatever tuples
-                // from memory that were already in the queue will be fine,
-                // as they're guaranteed to be ahead of the point we fast
-                // foward to.
-                // We're guaranteed that the file we want to read from for
-                // the fast forward is the last element in mSpillFiles,
-                // because we don't support calls to add() after calls to
-                // iterator(), and spill() won't create empty files.
-                try {
-                    in = new DataInputStream(new BufferedInputStream(
-                        new FileInputStream(mSpillFiles.get(
-                                mSpillFiles.size() - 1))));
-                    if (mStreams == null) {
-                        // We didn't have any files before this spill.
-                        mMergeQ = new PriorityQueue<PQContainer>(1);
-                        mStreams = new ArrayList<DataInputStream>(1);
-                    }
-                    mStreams.add(in);
-                } catch (FileNotFoundException fnfe) {
-                    // We can't find our own spill file?  That should never
-                    // happen.
-                    String msg = "Unable to find our spill file.";
-                    log.fatal(msg, fnfe);
-                    throw new RuntimeException(msg, fnfe);
-                }
-
-                // Fast foward past the tuples we've already put in the
-                // queue.
-                for (int i = 0; i < mMemoryPtr; i++) {
-                    try {
-                        SEDES.readDatum(in);
-                    } catch (EOFException eof) {
-                        // This should never happen, it means we
-                        // didn't dump all of our tuples to disk.
-                        String msg = "Ran out of tuples to read prematurely.";
-                        log.fatal(msg, eof);
-                        throw new RuntimeException(msg, eof);
-                    } catch (IOException ioe) {
-                        String msg = "Unable to find our spill file.";
-                        log.fatal(msg, ioe);
-                        throw new RuntimeException(msg, ioe);
-                    }
+            try {
+                if (mMemory == null) {
+                    start();
                 }
-                mMemoryPtr = 0;
-                // Add the next tuple from this file to the queue.
-                addToQueue(null, mSpillFiles.size() - 1);
-                // Fall through to read the next entry from the priority
-                // queue.
+                // If we had spill files when we started, we need to merge
+                // them with the tuples in memory.
+                return mMerge != null ? mMerge.next() : mMemory.next();
+            } catch (IOException ioe) {
+                String msg = "Unable to find our spill file.";
+                log.fatal(msg, ioe);
+                throw new RuntimeException(msg, ioe);
             }
-
-            // We have spill files, so we need to read the next tuple from
-            // one of those files or from memory.
-            return readFromPriorityQ();
         }
 
         /**
@@ -326,99 +300,17 @@ public class SortedDataBag extends DefaultAbstractBag{
         @Override
         public void remove() {}
 
-        private Tuple readFromPriorityQ() {
-            if (mMergeQ == null) {
-                // First read, we need to set up the queue and the array of
-                // file streams
-                // Add one to the size for the list in memory.
-                mMergeQ =
-                    new PriorityQueue<PQContainer>(mSpillFiles.size() + 1);
-
-                // Add one to the size in case we spill later.
-                mStreams =
-                    new ArrayList<DataInputStream>(mSpillFiles.size() + 1);
-
-                Iterator<File> i = mSpillFiles.iterator();
-                while (i.hasNext()) {
-                    try {
-                        DataInputStream in = 
-                            new DataInputStream(new BufferedInputStream(
-                                new FileInputStream(i.next())));
-                        mStreams.add(in);
-                        // Add the first tuple from this file into the
-                        // merge queue.
-                        addToQueue(null, mStreams.size() - 1);
-                    } catch (FileNotFoundException fnfe) {
-                        // We can't find our own spill file?  That should
-                        // never happen.
-                        String msg = "Unable to find our spill file."; 
-                        log.fatal(msg, fnfe);
-                        throw new RuntimeException(msg, fnfe);
-                    }
-                }
-
-                // Prime one from memory too
-                if (mContents.size() > 0) {
-                    addToQueue(null, -1);
-                }
-            }
-
-            // Pop the top one off the queue
-            PQContainer c = mMergeQ.poll();
-            if (c == null) return null;
-
-            // Add the next tuple from whereever we read from into the
-            // queue.  Buffer the tuple we're returning, as we'll be
-            // reusing c.
-            Tuple t = c.tuple;
-            addToQueue(c, c.fileNum);
-
-            return t;
-        }
-
-        private void addToQueue(PQContainer c, int fileNum) {
-            if (c == null) {
-                c = new PQContainer();
-            }
-            c.fileNum = fileNum;
-
-            if (fileNum == -1) {
-                // Need to read from memory.  We may have spilled since
-                // this tuple was put in the queue, and hence memory might
-                // be empty.  But I don't care, as then I just won't add
-                // any more from memory.
-                synchronized (mContents) {
-                    c.tuple = readFromMemory();
-                }
-                if (c.tuple != null) {
-                    mMergeQ.add(c);
-                }
-                return;
-            }
-
-            // Read the next tuple from the indicated file
-            DataInputStream in = mStreams.get(fileNum);
-            if (in != null) {
-                // There's still data in this file
-                try {
-                    c.tuple = (Tuple) SEDES.readDatum(in);
-                    mMergeQ.add(c);
-                } catch (EOFException eof) {
-                    // Out of tuples in this file.  Set our slot in the
-                    // array to null so we don't keep trying to read from
-                    // this file.
-                    try {
-                        in.close();
-                    }catch(IOException e) {
-                        log.warn("Failed to close spill file.", e);
-                    }                	
-                    mStreams.set(fileNum, null);
-                } catch (IOException ioe) {
-                    String msg = "Unable to find our spill file.";
-                    log.fatal(msg, ioe);
-                    throw new RuntimeException(msg, ioe);
+        private void start() throws IOException {
+            synchronized (mContents) {
+                int numFiles = mSpillFiles == null ? 0 : mSpillFiles.size();
+                mMemory = new MemoryRun(numFiles);
+                if (numFiles > 0) {
+                    SpillMerger merger = new SpillMerger(SortedDataBag.this, mComp, null,
+                            mComp instanceof DefaultComparator);
+                    List<SpillMerger.Run> runs = merger.open(mSpillFiles.subList(0, numFiles));
+                    runs.add(mMemory);
+                    mMerge = merger.merge(runs);
                 }
-
             }
         }
 
@@ -446,85 +338,13 @@ public class SortedDataBag extends DefaultAbstractBag{
          * use the sort spec that was provided to me.
          */
         private void preMerge() {
-            if (mSpillFiles == null ||
-                    mSpillFiles.size() <= MAX_SPILL_FILES) {
-                return;
-            }
-
-            // While there are more than max spill files, gather max spill
-            // files together and merge them into one file.  Then remove the others
-            // from mSpillFiles.  The new spill files are attached at the
-            // end of the list, so I can just keep going until I get a
-            // small enough number without too much concern over uneven
-            // size merges.  Convert mSpillFiles to a linked list since
-            // we'll be removing pieces from the middle and we want to do
-            // it efficiently.
             try {
-                LinkedList<File> ll = new LinkedList<File>(mSpillFiles);
-                LinkedList<File> filesToDelete = new LinkedList<File>();
-                while (ll.size() > MAX_SPILL_FILES) {
-                    ListIterator<File> i = ll.listIterator();
-                    mStreams =
-                        new ArrayList<DataInputStream>(MAX_SPILL_FILES);
-                    mMergeQ = new PriorityQueue<PQContainer>(MAX_SPILL_FILES);
-
-                    for (int j = 0; j < MAX_SPILL_FILES; j++) {
-                        try {
-                            File f = i.next();
-                            DataInputStream in =
-                                new DataInputStream(new BufferedInputStream(
-                                    new FileInputStream(f)));
-                            mStreams.add(in);
-                            addToQueue(null, mStreams.size() - 1);
-                            i.remove();
-                            filesToDelete.add(f);
-                        } catch (FileNotFoundException fnfe) {
-                            // We can't find our own spill file?  That should
-                            // neer happen.
-                            String msg = "Unable to find our spill file.";
-                            log.fatal(msg, fnfe);
-                            throw new RuntimeException(msg, fnfe);
-                        }
-                    }
-
-                    // Get a new spill file.  This adds one to the end of
-                    // the spill files list.  So I need to append it to my
-                    // linked list as well so that it's still there when I
-                    // move my linked list back to the spill files.
-                    try {
-                        DataOutputStream out = getSpillFile();
-                        ll.add(mSpillFiles.get(mSpillFiles.size() - 1));
-                        Tuple t;
-                        while ((t = readFromPriorityQ()) != null) {
-                            t.write(out);
-                        }
-                        out.flush();
-                        out.close();
-                    } catch (IOException ioe) {
-                        String msg = "Unable to find our spill file.";
-                        log.fatal(msg, ioe);
-                        throw new RuntimeException(msg, ioe);
-                    }
-                }
-                // delete files that have been merged into new files
-                for(File f : filesToDelete){
-                    if( f.delete() == false){
-                        log.warn("Failed to delete spill file: " + f.getPath());
-                    }
-                }
-                
-                // clear the list, so that finalize does not delete any files,
-                // when mSpillFiles is assigned a new value
-                mSpillFiles.clear();
-
-                // Now, move our new list back to the spill files array.
-                mSpillFiles = new FileList(ll);
-
-            } finally {
-                // Reset mStreams and mMerge so that they'll be allocated
-                // properly for regular merging.
-                mStreams = null;
-                mMergeQ = null;
+                new SpillMerger(SortedDataBag.this, mComp, null,
+                        mComp instanceof DefaultComparator).mergeLevels(MAX_SPILL_FILES);
+            } catch (IOException ioe) {
+                String msg = "Unable to find our spill file.";
+                log.fatal(msg, ioe);
+                throw new RuntimeException(msg, ioe);
             }
         }
     }
@@ -0,0 +1,501 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * Merges the sorted spill files of a bag. The final merge picks the next
+ * tuple with a loser tree, which takes one comparison per level of the tree
+ * where a priority queue takes two, and the tuples of each file are
+ * deserialized a batch ahead of the merge on background threads. When a bag
+ * has more spill files than it can merge at once, they are first merged in
+ * groups, the groups of a level running in parallel when the order of the
+ * tuples can be compared from several threads at once.
+ * <p>
+ * pig.spill.merge.threads sets the number of background threads, 0 does
+ * all the work on the thread reading the bag.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class SpillMerger {
+    private static final Log log = LogFactory.getLog(SpillMerger.class);
+
+    private static final InterSedes SEDES = InterSedesFactory.getInterSedesInstance();
+
+    private static final int PREFETCH_BATCH = 64;
+
+    private static final long PROGRESS_INTERVAL_MS = 10000;
+
+    private static volatile int numThreads = 2;
+
+    private static ThreadPoolExecutor pool;
+
+    /**
+     * Reads pig.spill.merge.threads.
+     */
+    public static void configure(Properties properties) {
+        numThreads = Integer.parseInt(properties.getProperty(
+                PigConfiguration.PIG_SPILL_MERGE_THREADS, "2"));
+    }
+
+    private static synchronized ThreadPoolExecutor getPool() {
+        if (pool == null || pool.getMaximumPoolSize() != Math.max(1, numThreads)) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            int n = Math.max(1, numThreads);
+            pool = new ThreadPoolExecutor(n, n,
+                    60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private int count = 0;
+
+                        @Override
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "SpillMerger-" + count++);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+
+    /**
+     * A sorted sequence of tuples.
+     */
+    interface Run {
+        /**
+         * @return the next tuple, or null at the end of the run
+         */
+        Tuple next() throws IOException;
+
+        void close();
+    }
+
+    private final DefaultAbstractBag bag;
+    private final Comparator<Tuple> comp;
+    private final TupleFactory factory;
+    private final boolean concurrentComp;
+
+    /**
+     * @param bag bag owning the spill files
+     * @param comp order of the tuples in the files
+     * @param factory factory of the tuples read with Tuple.readFields, or
+     * null if the bag writes its tuples with the default InterSedes
+     * @param concurrentComp whether comp can be called from several threads
+     * at once. The comparators of a nested ORDER BY evaluate a physical plan
+     * shared by all their calls, so they cannot.
+     */
+    SpillMerger(DefaultAbstractBag bag, Comparator<Tuple> comp, TupleFactory factory,
+            boolean concurrentComp) {
+        this.bag = bag;
+        this.comp = comp;
+        this.factory = factory;
+        this.concurrentComp = concurrentComp;
+    }
+
+    /**
+     * Opens the files for the final merge.
+     */
+    List<Run> open(List<File> files) throws IOException {
+        List<Run> runs = new ArrayList<Run>(files.size() + 1);
+        try {
+            for (File f : files) {
+                Run run = new FileRun(f);
+                runs.add(numThreads > 0 ? new PrefetchingRun(run) : run);
+            }
+        } catch (IOException e) {
+            for (Run run : runs) {
+                run.close();
+            }
+            throw e;
+        }
+        return runs;
+    }
+
+    LoserTree merge(List<Run> runs) throws IOException {
+        return new LoserTree(runs, comp);
+    }
+
+    /**
+     * Merges the spill files of the bag in groups until there are no more
+     * than fanIn of them left, and replaces the spill files of the bag with
+     * the result. Each level merges all of the files, as evenly as
+     * possible, with the groups of the level merged in parallel if the
+     * comparator allows it. The files
+     * of a level are deleted once the next level is written.
+     */
+    void mergeLevels(int fanIn) throws IOException {
+        if (bag.mSpillFiles == null || bag.mSpillFiles.size() <= fanIn) {
+            return;
+        }
+        List<File> files = new ArrayList<File>(bag.mSpillFiles);
+        while (files.size() > fanIn) {
+            int numGroups = (files.size() + fanIn - 1) / fanIn;
+            List<File> next = new ArrayList<File>(numGroups);
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numGroups);
+            for (int g = 0; g < numGroups; g++) {
+                final List<File> group = files.subList(g * files.size() / numGroups,
+                        (g + 1) * files.size() / numGroups);
+                // getSpillFile adds the new file at the end of the spill
+                // files of the bag
+                final DataOutputStream out = bag.getSpillFile();
+                next.add(bag.mSpillFiles.get(bag.mSpillFiles.size() - 1));
+                tasks.add(new Callable<Object>() {
+                    @Override
+                    public Object call() throws IOException {
+                        mergeGroup(group, out);
+                        return null;
+                    }
+                });
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Merging " + files.size() + " spill files into " + numGroups);
+            }
+            runAll(tasks);
+            for (File f : files) {
+                if (!f.delete()) {
+                    log.warn("Failed to delete spill file: " + f.getPath());
+                }
+            }
+            files = next;
+        }
+        // clear the list, so that finalize does not delete any files,
+        // when mSpillFiles is assigned a new value
+        bag.mSpillFiles.clear();
+        FileList fl = new FileList(files.size());
+        fl.addAll(files);
+        bag.mSpillFiles = fl;
+    }
+
+    private void mergeGroup(List<File> group, DataOutputStream out) throws IOException {
+        List<Run> runs = new ArrayList<Run>(group.size());
+        try {
+            for (File f : group) {
+                runs.add(new FileRun(f));
+            }
+            LoserTree tree = new LoserTree(runs, comp);
+            Tuple t;
+            long n = 0;
+            while ((t = tree.next()) != null) {
+                write(out, t);
+                // The reporter is only set on the thread reading the bag,
+                // the others report through runAll.
+                if ((++n & 0x3fff) == 0) bag.reportProgress();
+            }
+            out.flush();
+        } finally {
+            for (Run run : runs) {
+                run.close();
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * Runs the tasks on the background threads, or on this one if there is
+     * only one of them or they cannot share the comparator, and reports
+     * progress while waiting for them.
+     */
+    private void runAll(List<Callable<Object>> tasks) throws IOException {
+        if (numThreads <= 0 || tasks.size() == 1 || !concurrentComp) {
+            for (Callable<Object> task : tasks) {
+                try {
+                    task.call();
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+            return;
+        }
+        List<Future<Object>> futures = new ArrayList<Future<Object>>(tasks.size());
+        for (Callable<Object> task : tasks) {
+            futures.add(getPool().submit(task));
+        }
+        try {
+            for (Future<Object> f : futures) {
+                waitFor(f, true);
+            }
+        } finally {
+            for (Future<Object> f : futures) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    private <T> T waitFor(Future<T> f, boolean reportProgress) throws IOException {
+        try {
+            while (true) {
+                try {
+                    return f.get(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (reportProgress) {
+                        bag.reportProgress();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            InterruptedIOException iioe = new InterruptedIOException();
+            iioe.initCause(e);
+            throw iioe;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private Tuple read(DataInputStream in) throws IOException {
+        if (factory == null) {
+            return (Tuple) SEDES.readDatum(in);
+        }
+        Tuple t = factory.newTuple();
+        t.readFields(in);
+        return t;
+    }
+
+    private void write(DataOutputStream out, Tuple t) throws IOException {
+        if (factory == null) {
+            SEDES.writeDatum(out, t, DataType.TUPLE);
+        } else {
+            t.write(out);
+        }
+    }
+
+    /**
+     * Reads the tuples of a spill file on the thread calling next.
+     */
+    private class FileRun implements Run {
+        private DataInputStream in;
+
+        FileRun(File f) throws IOException {
+            in = bag.openSpillFile(f);
+        }
+
+        @Override
+        public Tuple next() throws IOException {
+            if (in == null) {
+                return null;
+            }
+            try {
+                return read(in);
+            } catch (EOFException eof) {
+                close();
+                return null;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close spill file.", e);
+                }
+                in = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the next batch of tuples of a run on a background thread while
+     * the current one is merged.
+     */
+    private class PrefetchingRun implements Run {
+        private final Run source;
+        private List<Tuple> batch = null;
+        private int pos = 0;
+        private Future<List<Tuple>> pending;
+
+        PrefetchingRun(Run source) {
+            this.source = source;
+            prefetch();
+        }
+
+        private void prefetch() {
+            pending = getPool().submit(new Callable<List<Tuple>>() {
+                @Override
+                public List<Tuple> call() throws IOException {
+                    List<Tuple> tuples = new ArrayList<Tuple>(PREFETCH_BATCH);
+                    Tuple t;
+                    while (tuples.size() < PREFETCH_BATCH && (t = source.next()) != null) {
+                        tuples.add(t);
+                    }
+                    return tuples;
+                }
+            });
+        }
+
+        @Override
+        public Tuple next() throws IOException {
+            if (batch == null || pos == batch.size()) {
+                if (pending == null) {
+                    return null;
+                }
+                try {
+                    batch = waitFor(pending, false);
+                } finally {
+                    pending = null;
+                }
+                pos = 0;
+                // a short batch means the end of the run was reached
+                if (batch.size() == PREFETCH_BATCH) {
+                    prefetch();
+                }
+                if (batch.isEmpty()) {
+                    return null;
+                }
+            }
+            return batch.get(pos++);
+        }
+
+        @Override
+        public void close() {
+            if (pending != null) {
+                // let the pending read finish before closing the file
+                try {
+                    waitFor(pending, false);
+                } catch (IOException e) {
+                    // closing anyway
+                }
+                pending = null;
+            }
+            batch = null;
+            source.close();
+        }
+    }
+
+    /**
+     * A tree of losers merging sorted runs. Each inner node holds the run
+     * which lost the comparison at that node, and the root the run of the
+     * smallest tuple. Replacing that tuple with the next one of its run
+     * only replays the comparisons on the path from its leaf to the root.
+     * Ties go to the run listed first.
+     */
+    static class LoserTree {
+        private final Comparator<Tuple> comp;
+        private final Run[] runs;
+        private final Tuple[] heads;
+        private final int[] tree;
+        private final int k;
+
+        LoserTree(List<Run> runs, Comparator<Tuple> comp) throws IOException {
+            this.comp = comp;
+            this.runs = runs.toArray(new Run[runs.size()]);
+            k = this.runs.length;
+            heads = new Tuple[k];
+            tree = new int[Math.max(k, 1)];
+            for (int i = 0; i < k; i++) {
+                heads[i] = this.runs[i].next();
+            }
+            if (k > 0) {
+                tree[0] = build(1);
+            }
+        }
+
+        /**
+         * Fills the losers of the subtree under node, leaves being the
+         * nodes k to 2k - 1, and returns its winner.
+         */
+        private int build(int node) {
+            if (node >= k) {
+                return node - k;
+            }
+            int left = build(2 * node);
+            int right = build(2 * node + 1);
+            if (less(left, right)) {
+                tree[node] = right;
+                return left;
+            }
+            tree[node] = left;
+            return right;
+        }
+
+        private boolean less(int a, int b) {
+            if (heads[b] == null) {
+                return heads[a] != null || a < b;
+            }
+            if (heads[a] == null) {
+                return false;
+            }
+            int c = comp.compare(heads[a], heads[b]);
+            return c < 0 || (c == 0 && a < b);
+        }
+
+        /**
+         * @return the smallest tuple left, or null once all the runs are
+         * exhausted
+         */
+        Tuple next() throws IOException {
+            if (k == 0) {
+                return null;
+            }
+            int winner = tree[0];
+            Tuple t = heads[winner];
+            if (t == null) {
+                return null;
+            }
+            heads[winner] = runs[winner].next();
+            for (int node = (winner + k) / 2; node > 0; node /= 2) {
+                if (less(tree[node], winner)) {
+                    int tmp = tree[node];
+                    tree[node] = winner;
+                    winner = tmp;
+                }
+            }
+            tree[0] = winner;
+            return t;
+        }
+
+        void close() {
+            for (Run run : runs) {
+                run.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.pig.PigConfiguration;
+
+/**
+ * A bounded pool of chararray values for low-cardinality columns. Loaders
+ * decode field bytes through {@link #intern(byte[], int, int)} so that rows
+ * repeating a value share one String instance instead of each holding its own
+ * copy. The dictionary stops growing once it holds the configured number of
+ * values, after which unknown values are decoded as usual.
+ * <p>
+ * Spill files written through {@link EncodingOutputStream} use the same idea
+ * on disk: the first occurrence of a value in the stream is written in full
+ * and later occurrences as a one or two byte code.
+ * <p>
+ * Dictionaries are per thread, and so per task; they are disabled unless
+ * pig.chararray.dictionary is set.
+ */
+public class StringDictionary {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Values longer than this, in bytes, are unlikely to repeat and are never pooled */
+    static final int MAX_VALUE_LENGTH = 64;
+
+    /** Codes are written as an unsigned short at most */
+    static final int MAX_STREAM_CODES = BinInterSedes.UNSIGNED_SHORT_MAX + 1;
+
+    private static volatile boolean enabled = false;
+
+    private static volatile int maxSize = 4096;
+
+    private static final ThreadLocal<StringDictionary> dictionaries = new ThreadLocal<StringDictionary>();
+
+    private final int capacity;
+    private byte[][] keys;
+    private String[] values;
+    private int[] hashes;
+    private int size = 0;
+
+    StringDictionary(int capacity) {
+        this.capacity = capacity;
+        int slots = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1) * 2;
+        keys = new byte[slots][];
+        values = new String[slots];
+        hashes = new int[slots];
+    }
+
+    /**
+     * Reads pig.chararray.dictionary and pig.chararray.dictionary.size.
+     */
+    public static void configure(Properties properties) {
+        enabled = Boolean.parseBoolean(properties.getProperty(
+                PigConfiguration.PIG_CHARARRAY_DICTIONARY, "false"));
+        maxSize = Integer.parseInt(properties.getProperty(
+                PigConfiguration.PIG_CHARARRAY_DICTIONARY_SIZE, "4096"));
+    }
+
+    public static boolean isEnabled() {
+        return enabled && maxSize > 0;
+    }
+
+    /**
+     * @return the dictionary of the current thread, or null if dictionaries
+     * are disabled
+     */
+    public static StringDictionary get() {
+        if (!isEnabled()) {
+            return null;
+        }
+        StringDictionary dict = dictionaries.get();
+        if (dict == null || dict.capacity != maxSize) {
+            dict = new StringDictionary(maxSize);
+            dictionaries.set(dict);
+        }
+        return dict;
+    }
+
+    /**
+     * Decodes UTF-8 bytes, returning the pooled instance if the value was
+     * seen before.
+     */
+    public String intern(byte[] b, int off, int len) {
+        if (len > MAX_VALUE_LENGTH) {
+            return new String(b, off, len, UTF8);
+        }
+        int hash = 1;
+        for (int i = off; i < off + len; i++) {
+            hash = 31 * hash + b[i];
+        }
+        int mask = keys.length - 1;
+        int slot = mix(hash) & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && equal(keys[slot], b, off, len)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String s = new String(b, off, len, UTF8);
+        if (size < capacity) {
+            byte[] key = new byte[len];
+            System.arraycopy(b, off, key, 0, len);
+            keys[slot] = key;
+            values[slot] = s;
+            hashes[slot] = hash;
+            size++;
+        }
+        return s;
+    }
+
+    /**
+     * Returns the pooled instance equal to s, pooling s if there is room.
+     */
+    public String intern(String s) {
+        if (s == null || s.length() > MAX_VALUE_LENGTH) {
+            return s;
+        }
+        byte[] b = s.getBytes(UTF8);
+        return intern(b, 0, b.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int mix(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+    private static boolean equal(byte[] key, byte[] b, int off, int len) {
+        if (key.length != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (key[i] != b[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A stream that lets BinInterSedes replace repeated chararrays with codes
+     * assigned in the order the values were first written.
+     */
+    public static class EncodingOutputStream extends DataOutputStream {
+        private final Map<String, Integer> codes = new HashMap<String, Integer>();
+
+        public EncodingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        /**
+         * Writes s as a dictionary reference or definition.
+         * @return false if s cannot be encoded and must be written in full
+         */
+        public boolean writeEncoded(String s) throws IOException {
+            if (s.length() > MAX_VALUE_LENGTH) {
+                return false;
+            }
+            Integer code = codes.get(s);
+            if (code != null) {
+                int c = code.intValue();
+                if (c <= BinInterSedes.UNSIGNED_BYTE_MAX) {
+                    writeByte(BinInterSedes.CHARARRAY_REF_BYTE);
+                    writeByte(c);
+                } else {
+                    writeByte(BinInterSedes.CHARARRAY_REF_SHORT);
+                    writeShort(c);
+                }
+                return true;
+            }
+            if (codes.size() >= MAX_STREAM_CODES) {
+                return false;
+            }
+            codes.put(s, codes.size());
+            writeByte(BinInterSedes.CHARARRAY_DEF);
+            writeUTF(s);
+            return true;
+        }
+    }
+
+    /**
+     * Reads a stream written by an {@link EncodingOutputStream}.
+     */
+    public static class DecodingInputStream extends DataInputStream {
+        private final List<String> values = new ArrayList<String>();
+
+        public DecodingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public String readEncoded(byte type) throws IOException {
+            switch (type) {
+            case BinInterSedes.CHARARRAY_DEF:
+                String s = readUTF();
+                values.add(s);
+                return s;
+            case BinInterSedes.CHARARRAY_REF_BYTE:
+                return lookup(readUnsignedByte());
+            case BinInterSedes.CHARARRAY_REF_SHORT:
+                return lookup(readUnsignedShort());
+            default:
+                throw new IOException("Unexpected chararray type " + type);
+            }
+        }
+
+        private String lookup(int code) throws IOException {
+            if (code >= values.size()) {
+                throw new IOException("Unknown chararray code " + code + " in stream");
+            }
+            return values.get(code);
+        }
+    }
+}
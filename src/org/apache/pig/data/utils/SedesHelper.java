@@ -23,6 +23,7 @@ import java.io.IOException;
 
 import org.apache.pig.classification.InterfaceAudience;
 import org.apache.pig.data.BinInterSedes;
+import org.apache.pig.data.StringDictionary;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 
@@ -59,6 +60,10 @@ public class SedesHelper {
     }
 
     public static void writeChararray(DataOutput out, String s) throws IOException {
+        if (out instanceof StringDictionary.EncodingOutputStream
+                && ((StringDictionary.EncodingOutputStream) out).writeEncoded(s)) {
+            return;
+        }
         // a char can take up to 3 bytes in the modified utf8 encoding
         // used by DataOutput.writeUTF, so use UNSIGNED_SHORT_MAX/3
         if (s.length() < BinInterSedes.UNSIGNED_SHORT_MAX / 3) {
@@ -78,6 +83,12 @@ public class SedesHelper {
         if (type == BinInterSedes.SMALLCHARARRAY) {
             return in.readUTF();
         }
+        if (type != BinInterSedes.CHARARRAY) {
+            if (!(in instanceof StringDictionary.DecodingInputStream)) {
+                throw new IOException("Dictionary encoded chararray found in a stream without dictionary");
+            }
+            return ((StringDictionary.DecodingInputStream) in).readEncoded(type);
+        }
 
         int size = in.readInt();
         byte[] buf = new byte[size];
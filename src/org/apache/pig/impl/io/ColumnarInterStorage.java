@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.pig.Expression;
+import org.apache.pig.FileInputLoadFunc;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadMetadata;
+import org.apache.pig.LoadPushDown;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.ResourceStatistics;
+import org.apache.pig.StoreFunc;
+import org.apache.pig.StoreFuncInterface;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigFileInputFormat;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.UDFContext;
+import org.apache.pig.impl.util.Utils;
+
+/**
+ * LOAD FUNCTION FOR PIG INTERNAL USE ONLY! This load function is used for
+ * storing intermediate data between MR jobs of a pig query. The serialization
+ * format of this load function can change in newer versions of pig, so this
+ * should NOT be used to store any persistent data.
+ * <p>
+ * Data is stored column by column in row groups, see
+ * {@link ColumnarRecordWriter}, so that only the columns a job needs are
+ * read. The columns to load are either pushed with
+ * {@link #pushProjection(RequiredFieldList)} or given to the constructor, as
+ * the MR compiler does for temporary files.
+ */
+@InterfaceAudience.Private
+public class ColumnarInterStorage extends FileInputLoadFunc implements
+                StoreFuncInterface, LoadMetadata, LoadPushDown {
+
+    private static final Log mLog = LogFactory.getLog(ColumnarInterStorage.class);
+    public static final String useLog = "Columnar storage in use";
+
+    private ColumnarRecordReader recReader = null;
+    private ColumnarRecordWriter recWriter = null;
+
+    private String signature;
+
+    /**
+     * the columns returned, in increasing order, null for all
+     */
+    private int[] requiredColumns = null;
+
+    public ColumnarInterStorage() {
+        mLog.debug(useLog);
+    }
+
+    /**
+     * @param requiredColumns comma separated indexes of the columns to
+     * load, the loaded tuples only have those columns
+     */
+    public ColumnarInterStorage(String requiredColumns) {
+        this();
+        this.requiredColumns = parseColumns(requiredColumns);
+    }
+
+    private static int[] parseColumns(String columns) {
+        if (columns.trim().length() == 0) {
+            return new int[0];
+        }
+        String[] split = columns.split(",");
+        int[] result = new int[split.length];
+        for (int i = 0; i < split.length; i++) {
+            result[i] = Integer.parseInt(split[i].trim());
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * @return the constructor argument that loads the given columns
+     */
+    public static String toColumnsArg(List<Integer> columns) {
+        List<Integer> sorted = new ArrayList<Integer>(columns);
+        Collections.sort(sorted);
+        StringBuilder sb = new StringBuilder();
+        for (Integer column : sorted) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append(column);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public Tuple getNext() throws IOException {
+        if (recReader.nextKeyValue()) {
+            return recReader.getCurrentValue();
+        }
+        else {
+            return null;
+        }
+    }
+
+    @Override
+    public void putNext(Tuple t) throws IOException {
+        try {
+            recWriter.write(null, t);
+        }
+        catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public static class ColumnarInputFormat extends
+                    PigFileInputFormat<Text, Tuple> {
+
+        @Override
+        public RecordReader<Text, Tuple> createRecordReader(InputSplit split,
+                        TaskAttemptContext context) throws IOException,
+                        InterruptedException {
+            return new ColumnarRecordReader();
+        }
+
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public InputFormat getInputFormat() {
+        return new ColumnarInputFormat();
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void prepareToRead(RecordReader reader, PigSplit split) {
+        recReader = (ColumnarRecordReader) reader;
+        if (requiredColumns == null && signature != null) {
+            Properties p = UDFContext.getUDFContext().getUDFProperties(this.getClass());
+            String columns = p.getProperty(signature);
+            if (columns != null) {
+                requiredColumns = parseColumns(columns);
+            }
+        }
+        recReader.setRequiredColumns(requiredColumns);
+    }
+
+    @Override
+    public void setLocation(String location, Job job) throws IOException {
+        FileInputFormat.setInputPaths(job, location);
+    }
+
+    @Override
+    public void setUDFContextSignature(String signature) {
+        this.signature = signature;
+    }
+
+    @Override
+    public List<OperatorSet> getFeatures() {
+        return Arrays.asList(LoadPushDown.OperatorSet.PROJECTION);
+    }
+
+    @Override
+    public RequiredFieldResponse pushProjection(
+            RequiredFieldList requiredFieldList) throws FrontendException {
+        if (requiredFieldList == null || requiredFieldList.getFields() == null) {
+            return null;
+        }
+        List<Integer> columns = new ArrayList<Integer>();
+        for (RequiredField rf : requiredFieldList.getFields()) {
+            if (rf.getIndex() != -1) {
+                columns.add(rf.getIndex());
+            }
+        }
+        Properties p = UDFContext.getUDFContext().getUDFProperties(this.getClass());
+        p.setProperty(signature, toColumnsArg(columns));
+        return new RequiredFieldResponse(true);
+    }
+
+    public static class ColumnarOutputFormat
+                    extends
+                    FileOutputFormat<WritableComparable<?>, Tuple> {
+
+        @Override
+        public RecordWriter<WritableComparable<?>, Tuple> getRecordWriter(
+                        TaskAttemptContext job) throws IOException,
+                        InterruptedException {
+            Configuration conf = job.getConfiguration();
+            String codec = conf.get(PigConfiguration.PIG_TEMP_FILE_COMPRESSION_CODEC, "");
+            String codecClassName;
+            try {
+                codecClassName = Utils.getTmpFileCompressionCodecClassName(codec);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            mLog.info((codecClassName == null ? "no" : codec) + " compression codec in use");
+            long rowGroupSize = conf.getLong(PigConfiguration.PIG_TEMP_FILE_COLUMNAR_ROW_GROUP_SIZE,
+                    ColumnarRecordWriter.DEFAULT_ROW_GROUP_SIZE);
+            Path file = getDefaultWorkFile(job, "");
+            return new ColumnarRecordWriter(file, codecClassName, rowGroupSize, conf);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public OutputFormat getOutputFormat() {
+        return new ColumnarOutputFormat();
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void prepareToWrite(RecordWriter writer) {
+        this.recWriter = (ColumnarRecordWriter) writer;
+    }
+
+    @Override
+    public void setStoreLocation(String location, Job job) throws IOException {
+        FileOutputFormat.setOutputPath(job, new Path(location));
+    }
+
+    @Override
+    public void checkSchema(ResourceSchema s) throws IOException {
+
+    }
+
+    @Override
+    public String relToAbsPathForStoreLocation(String location, Path curDir)
+                    throws IOException {
+        return LoadFunc.getAbsolutePath(location, curDir);
+    }
+
+    @Override
+    public String[] getPartitionKeys(String location, Job job)
+                    throws IOException {
+        return null;
+    }
+
+    @Override
+    public ResourceSchema getSchema(String location, Job job)
+                    throws IOException {
+        return Utils.getSchema(this, location, true, job);
+    }
+
+    @Override
+    public ResourceStatistics getStatistics(String location, Job job)
+                    throws IOException {
+        return null;
+    }
+
+    @Override
+    public void setPartitionFilter(Expression plan) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setStoreFuncUDFContextSignature(String signature) {
+    }
+
+    @Override
+    public void cleanupOnFailure(String location, Job job) throws IOException {
+        StoreFunc.cleanupOnFailureImpl(location, job);
+    }
+
+    @Override
+    public void cleanupOnSuccess(String location, Job job) throws IOException {
+        // DEFAULT: do nothing
+    }
+}
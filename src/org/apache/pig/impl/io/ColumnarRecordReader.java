@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * A record reader used to read data written using
+ * {@link ColumnarRecordWriter}. It reads the row groups whose sync marker is
+ * in the split, and only decodes the columns set with
+ * {@link #setRequiredColumns(int[])}.
+ */
+public class ColumnarRecordReader extends RecordReader<Text, Tuple> {
+
+    private static InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+    private static TupleFactory tupleFactory = TupleFactory.getInstance();
+
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private long start;
+    private long end;
+    private long fileLength;
+    private FSDataInputStream in = null;
+    private byte[] sync = new byte[ColumnarRecordWriter.SYNC_SIZE];
+    private CompressionCodec codec = null;
+    private Decompressor decompressor = null;
+    private boolean done = false;
+
+    /**
+     * the columns returned, in order, null for all
+     */
+    private int[] requiredColumns = null;
+
+    // the row group being read
+    private int rowsLeft = 0;
+    private int numColumns;
+    private ChunkDecoder arities;
+    private ChunkDecoder[] columns;
+
+    private Tuple value = null;
+
+    public void initialize(InputSplit genericSplit, TaskAttemptContext context)
+                    throws IOException {
+        FileSplit split = (FileSplit) genericSplit;
+        Configuration conf = context.getConfiguration();
+        start = split.getStart();
+        end = start + split.getLength();
+        final Path file = split.getPath();
+
+        FileSystem fs = file.getFileSystem(conf);
+        fileLength = fs.getFileStatus(file).getLen();
+        in = fs.open(file);
+
+        byte[] magic = new byte[ColumnarRecordWriter.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, ColumnarRecordWriter.MAGIC)) {
+            throw new IOException(file + " is not a columnar intermediate file");
+        }
+        byte version = in.readByte();
+        if (version != ColumnarRecordWriter.VERSION) {
+            throw new IOException("Unsupported version " + version + " of columnar intermediate file " + file);
+        }
+        String codecClassName = in.readUTF();
+        if (codecClassName.length() > 0) {
+            try {
+                codec = (CompressionCodec) ReflectionUtils.newInstance(
+                        conf.getClassByName(codecClassName), conf);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Compression codec " + codecClassName + " not found", e);
+            }
+            decompressor = CodecPool.getDecompressor(codec);
+        }
+        in.readFully(sync);
+
+        // the first row group starts right after the header
+        if (start > in.getPos()) {
+            sync(start);
+        }
+    }
+
+    /**
+     * @param requiredColumns indexes of the columns to return, in increasing
+     * order, or null to return whole rows
+     */
+    public void setRequiredColumns(int[] requiredColumns) {
+        this.requiredColumns = requiredColumns;
+    }
+
+    /**
+     * Seek to the first sync marker at or after position. A row group whose
+     * marker starts at or after the end of the split belongs to the next one.
+     */
+    private void sync(long position) throws IOException {
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        long pos = position;
+        while (pos < end) {
+            in.seek(pos);
+            int n = 0;
+            int read;
+            while (n < buffer.length && (read = in.read(buffer, n, buffer.length - n)) > 0) {
+                n += read;
+            }
+            if (n < sync.length) {
+                break;
+            }
+            for (int i = 0; i + sync.length <= n; i++) {
+                if (matchesSync(buffer, i)) {
+                    in.seek(pos + i);
+                    return;
+                }
+            }
+            pos += n - sync.length + 1;
+        }
+        done = true;
+    }
+
+    private boolean matchesSync(byte[] buffer, int offset) {
+        for (int i = 0; i < sync.length; i++) {
+            if (buffer[offset + i] != sync[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean readRowGroup() throws IOException {
+        if (done || in.getPos() >= end || in.getPos() >= fileLength) {
+            done = true;
+            return false;
+        }
+        byte[] marker = new byte[sync.length];
+        in.readFully(marker);
+        if (!Arrays.equals(marker, sync)) {
+            throw new IOException("Corrupt columnar intermediate file, missing sync marker at "
+                    + (in.getPos() - sync.length));
+        }
+        int rowCount = WritableUtils.readVInt(in);
+        numColumns = WritableUtils.readVInt(in);
+        int[] rawLengths = new int[numColumns + 1];
+        int[] storedLengths = new int[numColumns + 1];
+        for (int i = 0; i <= numColumns; i++) {
+            rawLengths[i] = WritableUtils.readVInt(in);
+            storedLengths[i] = WritableUtils.readVInt(in);
+        }
+
+        arities = readChunk(rawLengths[0], storedLengths[0]);
+        ChunkDecoder[] chunks = new ChunkDecoder[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            if (isRequired(i)) {
+                chunks[i] = readChunk(rawLengths[i + 1], storedLengths[i + 1]);
+            } else {
+                in.seek(in.getPos() + storedLengths[i + 1]);
+            }
+        }
+        if (requiredColumns == null) {
+            columns = chunks;
+        } else {
+            // columns the row group doesn't have are all null
+            columns = new ChunkDecoder[requiredColumns.length];
+            for (int i = 0; i < requiredColumns.length; i++) {
+                if (requiredColumns[i] < numColumns) {
+                    columns[i] = chunks[requiredColumns[i]];
+                }
+            }
+        }
+        rowsLeft = rowCount;
+        return true;
+    }
+
+    private boolean isRequired(int column) {
+        return requiredColumns == null || Arrays.binarySearch(requiredColumns, column) >= 0;
+    }
+
+    private ChunkDecoder readChunk(int rawLength, int storedLength) throws IOException {
+        if (storedLength == 0) {
+            return null;
+        }
+        byte[] stored = new byte[storedLength];
+        in.readFully(stored);
+        if (codec == null) {
+            return new ChunkDecoder(stored);
+        }
+        byte[] raw = new byte[rawLength];
+        if (decompressor != null) {
+            decompressor.reset();
+        }
+        CompressionInputStream cin = codec.createInputStream(
+                new ByteArrayInputStream(stored), decompressor);
+        try {
+            IOUtils.readFully(cin, raw, 0, rawLength);
+        } finally {
+            cin.close();
+        }
+        return new ChunkDecoder(raw);
+    }
+
+    public boolean nextKeyValue() throws IOException {
+        while (rowsLeft == 0) {
+            if (!readRowGroup()) {
+                value = null;
+                return false;
+            }
+        }
+        rowsLeft--;
+        int arity = arities == null ? numColumns : (Integer) arities.next();
+        if (requiredColumns == null) {
+            value = tupleFactory.newTuple(arity);
+            for (int i = 0; i < numColumns; i++) {
+                Object field = columns[i].next();
+                if (i < arity) {
+                    value.set(i, field);
+                }
+            }
+        } else {
+            value = tupleFactory.newTuple(requiredColumns.length);
+            for (int i = 0; i < requiredColumns.length; i++) {
+                if (columns[i] != null) {
+                    Object field = columns[i].next();
+                    if (requiredColumns[i] < arity) {
+                        value.set(i, field);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Text getCurrentKey() {
+        // the key is always null since we don't really have a key for each
+        // input record
+        return null;
+    }
+
+    @Override
+    public Tuple getCurrentValue() {
+        return value;
+    }
+
+    /**
+     * Get the progress within the split
+     */
+    @Override
+    public float getProgress() throws IOException {
+        if (start == end) {
+            return 0.0f;
+        }
+        else {
+            // progress is updated a row group at a time
+            return Math.min(1.0f, (in.getPos() - start) / (float) (end - start));
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (decompressor != null) {
+            CodecPool.returnDecompressor(decompressor);
+            decompressor = null;
+        }
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes the runs of values of a column chunk.
+     */
+    private static class ChunkDecoder {
+        private ByteArrayInputStream bytes;
+        private DataInputStream data;
+        private int runLeft = 0;
+        private boolean shareValue;
+        private Object value;
+
+        ChunkDecoder(byte[] chunk) {
+            bytes = new ByteArrayInputStream(chunk);
+            data = new DataInputStream(bytes);
+        }
+
+        Object next() throws IOException {
+            if (runLeft == 0) {
+                runLeft = WritableUtils.readVInt(data);
+                bytes.mark(0);
+                value = sedes.readDatum(data);
+                byte type = DataType.findType(value);
+                shareValue = DataType.isAtomic(type) && type != DataType.BYTEARRAY;
+            } else if (!shareValue) {
+                // the rows of a run don't share bags, tuples and maps,
+                // which may be changed downstream
+                bytes.reset();
+                value = sedes.readDatum(data);
+            }
+            runLeft--;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.Tuple;
+
+/**
+ * A record writer used to write data for {@link ColumnarRecordReader}.
+ * <p>
+ * Rows are buffered into row groups, and each row group is stored column by
+ * column. A file is laid out as
+ * <pre>
+ * header    : MAGIC, VERSION, codec class name (empty if none), sync marker
+ * row group : sync marker, row count, column count,
+ *             (raw length, stored length) of the arity chunk and of each column chunk,
+ *             arity chunk, column chunks
+ * </pre>
+ * A column chunk is a sequence of runs of equal values, each being the run
+ * length followed by the value serialized with the default InterSedes
+ * object; the chunk is then compressed with the codec, if any. The arity
+ * chunk holds the size of each row and is left out if all the rows of the
+ * group have as many fields as the group has columns. Rows with fewer fields
+ * have nulls in the remaining columns.
+ * <p>
+ * The sync marker lets a reader find the start of the first row group of its
+ * split, and the chunk lengths let it skip the columns it doesn't need.
+ */
+public class ColumnarRecordWriter extends
+                RecordWriter<WritableComparable<?>, Tuple> {
+
+    static final byte[] MAGIC = new byte[] { 'P', 'I', 'G', 'C' };
+    static final byte VERSION = 1;
+    static final int SYNC_SIZE = 16;
+
+    public static final long DEFAULT_ROW_GROUP_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * the buffered size is only summed up every so many rows
+     */
+    private static final int SIZE_CHECK_INTERVAL = 100;
+
+    private static InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+
+    private FSDataOutputStream out;
+    private CompressionCodec codec;
+    private Compressor compressor;
+    private final byte[] sync;
+    private final long rowGroupSize;
+
+    private int rowCount = 0;
+    private boolean aritiesDiffer = false;
+    private ChunkEncoder arities = new ChunkEncoder();
+    private List<ChunkEncoder> columns = new ArrayList<ChunkEncoder>();
+
+    /**
+     * @param file the file to write
+     * @param codecClassName class name of the Hadoop compression codec, or
+     * null to store the column chunks uncompressed
+     * @param rowGroupSize size in bytes of the encoded columns buffered before
+     * a row group is written
+     * @param conf configuration
+     */
+    public ColumnarRecordWriter(Path file, String codecClassName,
+            long rowGroupSize, Configuration conf) throws IOException {
+        if (codecClassName != null) {
+            try {
+                codec = (CompressionCodec) ReflectionUtils.newInstance(
+                        conf.getClassByName(codecClassName), conf);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Compression codec " + codecClassName + " not found", e);
+            }
+            compressor = CodecPool.getCompressor(codec);
+        }
+        this.rowGroupSize = rowGroupSize;
+        UUID uuid = UUID.randomUUID();
+        sync = ByteBuffer.allocate(SYNC_SIZE).putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits()).array();
+
+        FileSystem fs = file.getFileSystem(conf);
+        out = fs.create(file, false);
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(codecClassName == null ? "" : codecClassName);
+        out.write(sync);
+    }
+
+    @Override
+    public void write(WritableComparable<?> wc, Tuple t) throws IOException,
+                    InterruptedException {
+        int size = t.size();
+        while (columns.size() < size) {
+            // a column the previous rows of the group didn't have
+            ChunkEncoder column = new ChunkEncoder();
+            for (int i = 0; i < rowCount; i++) {
+                column.add(null);
+            }
+            columns.add(column);
+            aritiesDiffer |= rowCount > 0;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            columns.get(i).add(i < size ? t.get(i) : null);
+        }
+        aritiesDiffer |= size < columns.size();
+        arities.add(size);
+        rowCount++;
+
+        if (rowCount % SIZE_CHECK_INTERVAL == 0 && bufferedSize() >= rowGroupSize) {
+            writeRowGroup();
+        }
+    }
+
+    private long bufferedSize() {
+        long size = 0;
+        for (ChunkEncoder column : columns) {
+            size += column.size();
+        }
+        return size;
+    }
+
+    private void writeRowGroup() throws IOException {
+        List<ChunkEncoder> chunks = new ArrayList<ChunkEncoder>(columns.size() + 1);
+        chunks.add(aritiesDiffer ? arities : null);
+        chunks.addAll(columns);
+
+        List<DataOutputBuffer> stored = new ArrayList<DataOutputBuffer>(chunks.size());
+        out.write(sync);
+        WritableUtils.writeVInt(out, rowCount);
+        WritableUtils.writeVInt(out, columns.size());
+        for (ChunkEncoder chunk : chunks) {
+            DataOutputBuffer raw = chunk == null ? null : chunk.finish();
+            DataOutputBuffer data = compress(raw);
+            WritableUtils.writeVInt(out, raw == null ? 0 : raw.getLength());
+            WritableUtils.writeVInt(out, data == null ? 0 : data.getLength());
+            stored.add(data);
+        }
+        for (DataOutputBuffer data : stored) {
+            if (data != null) {
+                out.write(data.getData(), 0, data.getLength());
+            }
+        }
+
+        rowCount = 0;
+        aritiesDiffer = false;
+        arities = new ChunkEncoder();
+        columns = new ArrayList<ChunkEncoder>();
+    }
+
+    private DataOutputBuffer compress(DataOutputBuffer raw) throws IOException {
+        if (raw == null || codec == null) {
+            return raw;
+        }
+        DataOutputBuffer data = new DataOutputBuffer();
+        if (compressor != null) {
+            compressor.reset();
+        }
+        CompressionOutputStream cout = codec.createOutputStream(data, compressor);
+        cout.write(raw.getData(), 0, raw.getLength());
+        cout.finish();
+        cout.close();
+        return data;
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException,
+                    InterruptedException {
+        try {
+            if (rowCount > 0) {
+                writeRowGroup();
+            }
+        } finally {
+            if (compressor != null) {
+                CodecPool.returnCompressor(compressor);
+                compressor = null;
+            }
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * Run length encodes the values of a column.
+     */
+    private static class ChunkEncoder {
+        private DataOutputBuffer chunk = new DataOutputBuffer();
+        private DataOutputBuffer previous = new DataOutputBuffer();
+        private DataOutputBuffer current = new DataOutputBuffer();
+        private int run = 0;
+
+        void add(Object value) throws IOException {
+            current.reset();
+            sedes.writeDatum(current, value);
+            if (run > 0 && WritableComparator.compareBytes(previous.getData(), 0,
+                    previous.getLength(), current.getData(), 0, current.getLength()) == 0) {
+                run++;
+                return;
+            }
+            flushRun();
+            DataOutputBuffer tmp = previous;
+            previous = current;
+            current = tmp;
+            run = 1;
+        }
+
+        private void flushRun() throws IOException {
+            if (run > 0) {
+                WritableUtils.writeVInt(chunk, run);
+                chunk.write(previous.getData(), 0, previous.getLength());
+            }
+        }
+
+        long size() {
+            return chunk.getLength() + previous.getLength();
+        }
+
+        DataOutputBuffer finish() throws IOException {
+            flushRun();
+            run = 0;
+            return chunk;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.BinInterSedes;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.joda.time.DateTime;
+
+/**
+ * A sort key tuple that is serialized with a fixed length prefix in front of
+ * the tuple. The prefix is an order preserving encoding of the leading
+ * fields of the key, with descending fields inverted, so that comparing the
+ * prefixes of two keys as unsigned bytes gives the same result as comparing
+ * the keys, unless the prefixes are equal. The prefix is skipped when the key
+ * is read back.
+ * <p>
+ * Serialized as: null flag, prefix (only if not null), tuple, index.
+ */
+public class NullableSortKeyTuple extends NullableTuple {
+
+    public static final int PREFIX_LENGTH = 16;
+
+    private static final BinInterSedes bis = new BinInterSedes();
+
+    private boolean[] mAsc;
+
+    public NullableSortKeyTuple() {
+    }
+
+    /**
+     * @param t the key
+     * @param asc the sort order of each field of the key
+     */
+    public NullableSortKeyTuple(Tuple t, boolean[] asc) {
+        super(t);
+        mAsc = asc;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeBoolean(isNull());
+        if (!isNull()) {
+            byte[] prefix = new byte[PREFIX_LENGTH];
+            encodePrefix((Tuple) mValue, mAsc, prefix);
+            out.write(prefix);
+            mValue.write(out);
+        }
+        out.writeByte(getIndex());
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        boolean nullness = in.readBoolean();
+        setNull(nullness);
+        if (!nullness) {
+            in.skipBytes(PREFIX_LENGTH);
+            mValue = bis.readTuple(in);
+        }
+        setIndex(in.readByte());
+    }
+
+    /**
+     * Writes the prefix of a key to prefix, which is PREFIX_LENGTH long.
+     * Each field is encoded as its type followed by its value, in the order
+     * the raw tuple comparators use: types are compared first, then values.
+     * The encoding stops after a variable length value, or a type that
+     * can't be encoded; the rest of the prefix is then the same for all
+     * keys that are equal so far.
+     */
+    public static void encodePrefix(Tuple key, boolean[] asc, byte[] prefix)
+            throws ExecException {
+        Arrays.fill(prefix, (byte) 0);
+        int size = key.size();
+        if (size != asc.length) {
+            // tuples are ordered by size first
+            if (size > asc.length) {
+                Arrays.fill(prefix, (byte) 0xff);
+            }
+            return;
+        }
+        int pos = 0;
+        for (int i = 0; i < size && pos < PREFIX_LENGTH; i++) {
+            int start = pos;
+            Object o = key.get(i);
+            byte type = DataType.findType(o);
+            pos = put(prefix, pos, type);
+            boolean complete = true;
+            switch (type) {
+            case DataType.NULL:
+                break;
+            case DataType.BOOLEAN:
+                pos = put(prefix, pos, ((Boolean) o) ? 1 : 0);
+                break;
+            case DataType.BYTE:
+                pos = put(prefix, pos, ((Byte) o) ^ 0x80);
+                break;
+            case DataType.INTEGER:
+                pos = putInt(prefix, pos, ((Integer) o) ^ Integer.MIN_VALUE);
+                break;
+            case DataType.LONG:
+                pos = putLong(prefix, pos, ((Long) o) ^ Long.MIN_VALUE);
+                break;
+            case DataType.DATETIME:
+                pos = putLong(prefix, pos, ((DateTime) o).getMillis() ^ Long.MIN_VALUE);
+                break;
+            case DataType.FLOAT: {
+                int bits = Float.floatToIntBits((Float) o);
+                // negative values have all their bits flipped, positive
+                // ones only the sign
+                pos = putInt(prefix, pos, bits ^ ((bits >> 31) | Integer.MIN_VALUE));
+                break;
+            }
+            case DataType.DOUBLE: {
+                long bits = Double.doubleToLongBits((Double) o);
+                pos = putLong(prefix, pos, bits ^ ((bits >> 63) | Long.MIN_VALUE));
+                break;
+            }
+            case DataType.CHARARRAY: {
+                // strings compare by UTF-16 code unit
+                String s = (String) o;
+                for (int j = 0; j < s.length() && pos < PREFIX_LENGTH; j++) {
+                    char c = s.charAt(j);
+                    pos = put(prefix, pos, c >>> 8);
+                    pos = put(prefix, pos, c);
+                }
+                complete = false;
+                break;
+            }
+            case DataType.BYTEARRAY: {
+                byte[] bytes = ((DataByteArray) o).get();
+                for (int j = 0; j < bytes.length && pos < PREFIX_LENGTH; j++) {
+                    pos = put(prefix, pos, bytes[j]);
+                }
+                complete = false;
+                break;
+            }
+            default:
+                complete = false;
+            }
+            int end = complete ? Math.min(pos, PREFIX_LENGTH) : PREFIX_LENGTH;
+            if (!asc[i]) {
+                for (int j = start; j < end; j++) {
+                    prefix[j] = (byte) ~prefix[j];
+                }
+            }
+            if (!complete) {
+                break;
+            }
+        }
+    }
+
+    private static int put(byte[] prefix, int pos, int b) {
+        if (pos < PREFIX_LENGTH) {
+            prefix[pos] = (byte) b;
+        }
+        return pos + 1;
+    }
+
+    private static int putInt(byte[] prefix, int pos, int v) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            pos = put(prefix, pos, v >>> shift);
+        }
+        return pos;
+    }
+
+    private static int putLong(byte[] prefix, int pos, long v) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            pos = put(prefix, pos, (int) (v >>> shift));
+        }
+        return pos;
+    }
+}
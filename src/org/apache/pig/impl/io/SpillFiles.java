@@ -0,0 +1,452 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.data.StringDictionary;
+import org.xerial.snappy.Snappy;
+import org.xerial.snappy.SnappyInputStream;
+import org.xerial.snappy.SnappyOutputStream;
+
+/**
+ * Opens the local files bags spill to. Files are written through a buffered
+ * FileChannel, optionally compressed with the codec of
+ * pig.spill.compression.codec, and read back with a read ahead of one buffer,
+ * so that the next block is read from disk while the tuples of the current
+ * one are deserialized.
+ */
+public class SpillFiles {
+    private static final Log log = LogFactory.getLog(SpillFiles.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int READ_AHEAD_THREADS = 4;
+
+    // Memory for the buffers of all the open read ahead streams, as a merge
+    // opens as many as it has spill files. Streams opened once it is used up
+    // get buffers of the minimum size.
+    private static final long READ_AHEAD_MEMORY = 4 * 1024 * 1024;
+
+    private static final int MIN_READ_AHEAD_SIZE = 4 * 1024;
+
+    private static final AtomicLong readAheadMemory = new AtomicLong();
+
+    private static volatile Codec codec = null;
+
+    private static volatile boolean readAhead = true;
+
+    private static ThreadPoolExecutor readAheadPool;
+
+    private SpillFiles() {
+    }
+
+    /**
+     * Reads pig.spill.compression.codec and pig.spill.readahead.
+     */
+    public static void configure(Properties properties) {
+        codec = getCodec(properties.getProperty(
+                PigConfiguration.PIG_SPILL_COMPRESSION_CODEC, ""));
+        readAhead = Boolean.parseBoolean(properties.getProperty(
+                PigConfiguration.PIG_SPILL_READAHEAD, "true"));
+    }
+
+    private static Codec getCodec(String name) {
+        name = name.trim();
+        if (name.length() == 0 || name.equalsIgnoreCase("none")) {
+            return null;
+        }
+        if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("deflate")) {
+            return new DeflateCodec();
+        }
+        if (name.equalsIgnoreCase("snappy")) {
+            try {
+                Snappy.maxCompressedLength(BUFFER_SIZE);
+                return new SnappyCodec();
+            } catch (Throwable t) {
+                // snappy-java could not load its native library
+                log.warn("Snappy is not available, compressing spill files with gzip", t);
+                return new DeflateCodec();
+            }
+        }
+        try {
+            Class<?> clazz = Class.forName(name);
+            if (!CompressionCodec.class.isAssignableFrom(clazz)) {
+                throw new IllegalArgumentException(name + " is not a "
+                        + CompressionCodec.class.getName());
+            }
+            log.info("Compressing spill files with " + name);
+            return new HadoopCodec((CompressionCodec) ReflectionUtils.newInstance(
+                    clazz, new Configuration()));
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown spill compression codec " + name, e);
+        }
+    }
+
+    /**
+     * Creates a stream writing to a spill file. Repeated chararrays are
+     * written as codes if pig.chararray.dictionary is set.
+     */
+    public static DataOutputStream create(File f) throws IOException {
+        OutputStream out = new ChannelOutputStream(new FileOutputStream(f).getChannel());
+        Codec c = codec;
+        if (c != null) {
+            out = new BufferedOutputStream(c.compress(out), BUFFER_SIZE);
+        }
+        if (StringDictionary.isEnabled()) {
+            return new StringDictionary.EncodingOutputStream(out);
+        }
+        return new DataOutputStream(out);
+    }
+
+    /**
+     * Opens a stream reading a file written by {@link #create(File)}.
+     */
+    public static DataInputStream open(File f) throws IOException {
+        InputStream in;
+        if (readAhead) {
+            in = new ReadAheadInputStream(new FileInputStream(f).getChannel());
+        } else {
+            in = new BufferedInputStream(new FileInputStream(f), BUFFER_SIZE);
+        }
+        Codec c = codec;
+        if (c != null) {
+            in = new BufferedInputStream(c.decompress(in), BUFFER_SIZE);
+        }
+        // always able to decode, in case the file was written with
+        // pig.chararray.dictionary set
+        return new StringDictionary.DecodingInputStream(in);
+    }
+
+    private static synchronized ThreadPoolExecutor getReadAheadPool() {
+        if (readAheadPool == null) {
+            readAheadPool = new ThreadPoolExecutor(READ_AHEAD_THREADS, READ_AHEAD_THREADS,
+                    60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private int count = 0;
+
+                        @Override
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "SpillFileReadAhead-" + count++);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            readAheadPool.allowCoreThreadTimeOut(true);
+        }
+        return readAheadPool;
+    }
+
+    private static abstract class Codec {
+        abstract OutputStream compress(OutputStream out) throws IOException;
+
+        abstract InputStream decompress(InputStream in) throws IOException;
+    }
+
+    private static class DeflateCodec extends Codec {
+        @Override
+        OutputStream compress(OutputStream out) {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            final Inflater inflater = new Inflater(true);
+            return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+    }
+
+    private static class SnappyCodec extends Codec {
+        @Override
+        OutputStream compress(OutputStream out) throws IOException {
+            return new SnappyOutputStream(out, BUFFER_SIZE);
+        }
+
+        @Override
+        InputStream decompress(InputStream in) throws IOException {
+            return new SnappyInputStream(in);
+        }
+    }
+
+    private static class HadoopCodec extends Codec {
+        private final CompressionCodec codec;
+
+        HadoopCodec(CompressionCodec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        OutputStream compress(OutputStream out) throws IOException {
+            return codec.createOutputStream(out);
+        }
+
+        @Override
+        InputStream decompress(InputStream in) throws IOException {
+            return codec.createInputStream(in);
+        }
+    }
+
+    /**
+     * An output stream buffering writes to a FileChannel.
+     */
+    private static class ChannelOutputStream extends OutputStream {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        ChannelOutputStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flushBuffer();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > buffer.remaining()) {
+                flushBuffer();
+                if (len >= buffer.capacity()) {
+                    ByteBuffer src = ByteBuffer.wrap(b, off, len);
+                    while (src.hasRemaining()) {
+                        channel.write(src);
+                    }
+                    return;
+                }
+            }
+            buffer.put(b, off, len);
+        }
+
+        private void flushBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel.isOpen()) {
+                try {
+                    flushBuffer();
+                } finally {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * An input stream reading a FileChannel one buffer ahead of the reader,
+     * on the read ahead threads.
+     */
+    private static class ReadAheadInputStream extends InputStream {
+        private final FileChannel channel;
+        private final int bufferSize;
+        private ByteBuffer current;
+        private ByteBuffer next;
+        private Future<Integer> pending;
+        private boolean closed = false;
+
+        ReadAheadInputStream(FileChannel channel) {
+            this.channel = channel;
+            bufferSize = reserveBuffers();
+            current = ByteBuffer.allocate(bufferSize);
+            next = ByteBuffer.allocate(bufferSize);
+            current.flip();
+            readAhead();
+        }
+
+        /**
+         * @return the size of the two buffers of the stream, taken from
+         *         what is left of {@link #READ_AHEAD_MEMORY}
+         */
+        private static int reserveBuffers() {
+            while (true) {
+                long used = readAheadMemory.get();
+                long size = Math.max(MIN_READ_AHEAD_SIZE,
+                        Math.min(BUFFER_SIZE, (READ_AHEAD_MEMORY - used) / 2));
+                if (readAheadMemory.compareAndSet(used, used + 2 * size)) {
+                    return (int) size;
+                }
+            }
+        }
+
+        private void readAhead() {
+            final ByteBuffer buf = next;
+            buf.clear();
+            pending = getReadAheadPool().submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    int total = 0;
+                    while (buf.hasRemaining()) {
+                        int n = channel.read(buf);
+                        if (n < 0) {
+                            break;
+                        }
+                        total += n;
+                    }
+                    buf.flip();
+                    return total;
+                }
+            });
+        }
+
+        /**
+         * @return false at the end of the file
+         */
+        private boolean fill() throws IOException {
+            if (current.hasRemaining()) {
+                return true;
+            }
+            if (pending == null) {
+                return false;
+            }
+            int n = waitForPending();
+            ByteBuffer tmp = current;
+            current = next;
+            next = tmp;
+            // a short read means the end of the file was reached
+            if (n == bufferSize) {
+                readAhead();
+            }
+            return current.hasRemaining();
+        }
+
+        private int waitForPending() throws IOException {
+            try {
+                return pending.get();
+            } catch (InterruptedException e) {
+                InterruptedIOException iioe = new InterruptedIOException();
+                iioe.initCause(e);
+                throw iioe;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            } finally {
+                pending = null;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return current.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int read = 0;
+            while (read < len && fill()) {
+                int n = Math.min(len - read, current.remaining());
+                current.get(b, off + read, n);
+                read += n;
+            }
+            return read == 0 ? -1 : read;
+        }
+
+        @Override
+        public int available() {
+            return current.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            readAheadMemory.addAndGet(-2L * bufferSize);
+            if (pending != null) {
+                try {
+                    waitForPending();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+            channel.close();
+        }
+    }
+}
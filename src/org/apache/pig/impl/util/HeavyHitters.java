@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Finds the most frequent items of a stream in a fixed amount of memory,
+ * with the Misra-Gries algorithm. At most <code>capacity</code> items are
+ * counted. When a new item comes and all the counters are taken, every
+ * counter is decremented, and those reaching zero are dropped.
+ * <p>
+ * Every item which is more than <code>1 / (capacity + 1)</code> of the
+ * stream is still counted at the end, and its count is at most
+ * <code>size / (capacity + 1)</code> lower than its real frequency. Adding
+ * an item takes constant time, amortized.
+ */
+public class HeavyHitters<T> {
+
+    private final int capacity;
+
+    private final Map<T, long[]> counters;
+
+    private long size = 0;
+
+    private long decrements = 0;
+
+    public HeavyHitters(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        counters = new HashMap<T, long[]>(capacity * 2);
+    }
+
+    public void add(T item) {
+        size++;
+        long[] counter = counters.get(item);
+        if (counter != null) {
+            counter[0]++;
+        } else if (counters.size() < capacity) {
+            counters.put(item, new long[] { 1 });
+        } else {
+            // the new item and one occurrence of every counted item are
+            // dropped
+            decrements++;
+            for (Iterator<long[]> it = counters.values().iterator(); it.hasNext();) {
+                if (--it.next()[0] == 0) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of items added
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the maximum number of occurrences of an item which are not
+     * counted
+     */
+    public long getMaxError() {
+        return decrements;
+    }
+
+    /**
+     * @param fraction of the items added
+     * @return the items whose count is at least the given fraction of the
+     * items added, with their count, from the most frequent one
+     */
+    public Map<T, Long> getHeavyHitters(double fraction) {
+        long min = (long) Math.ceil(fraction * size);
+        Map<T, Long> result = new LinkedHashMap<T, Long>();
+        while (true) {
+            T top = null;
+            long topCount = 0;
+            for (Map.Entry<T, long[]> e : counters.entrySet()) {
+                long count = e.getValue()[0];
+                if (count >= min && count > topCount && !result.containsKey(e.getKey())) {
+                    top = e.getKey();
+                    topCount = count;
+                }
+            }
+            if (top == null) {
+                return result;
+            }
+            result.put(top, topCount);
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.pig.impl.util;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectOutputStream;
@@ -33,6 +34,7 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
@@ -42,6 +44,7 @@ import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
 
 import org.antlr.runtime.CommonTokenStream;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -130,40 +133,73 @@ public class JarManager {
     }
 
     /**
-     * Create a jarfile in a temporary path, that is a merge of all the jarfiles containing the
-     * functions and the core pig classes.
-     * 
-     * @param funcs
-     *            the functions that will be used in a job and whose jar files need to be included
-     *            in the final merged jar file.
-     * @throws ClassNotFoundException
-     * @throws IOException
+     * The jar files and resources a job jar is made of.
      */
-    @SuppressWarnings("deprecation")
-    public static void createJar(OutputStream os, Set<String> funcs, PigContext pigContext) throws ClassNotFoundException, IOException {
-        JarOutputStream jarFile = new JarOutputStream(os);
-        HashMap<String, String> contents = new HashMap<String, String>();
+    private static class JarInputs {
         Vector<JarListEntry> jarList = new Vector<JarListEntry>();
+        Set<String> resources = new LinkedHashSet<String>();
+    }
+
+    /**
+     * Job jars already built by this process, by the key of their contents.
+     */
+    private static final Map<String, File> jobJars = new HashMap<String, File>();
+
+    /**
+     * Digests of the jar files merged into job jars, by path, length and
+     * modification time of the jar file.
+     */
+    private static final Map<String, String> jarDigests = new HashMap<String, String>();
+
+    private static JarInputs getInputs(Set<String> funcs, PigContext pigContext) throws IOException {
+        JarInputs inputs = new JarInputs();
 
         for (DefaultPigPackages pkgToSend : DefaultPigPackages.values()) {
-            addContainingJar(jarList, pkgToSend.getPkgClass(), pkgToSend.getPkgPrefix(), pigContext);
+            addContainingJar(inputs.jarList, pkgToSend.getPkgClass(), pkgToSend.getPkgPrefix(), pigContext);
         }
 
         for (String func: funcs) {
             Class clazz = pigContext.getClassForAlias(func);
             if (clazz != null) {
-                addContainingJar(jarList, clazz, null, pigContext);
-                
+                addContainingJar(inputs.jarList, clazz, null, pigContext);
+
                 if (clazz.getSimpleName().equals("StreamingUDF")) {
                     for (String fileName : StreamingUDF.getResourcesForJar()) {
-                        InputStream in = Launcher.class.getResourceAsStream(fileName);
-                        addStream(jarFile, fileName, in, contents);
+                        inputs.resources.add(fileName);
                     }
                 }
             }
         }
+        return inputs;
+    }
 
-        Iterator<JarListEntry> it = jarList.iterator();
+    /**
+     * Create a jarfile in a temporary path, that is a merge of all the jarfiles containing the
+     * functions and the core pig classes.
+     * 
+     * @param funcs
+     *            the functions that will be used in a job and whose jar files need to be included
+     *            in the final merged jar file.
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    public static void createJar(OutputStream os, Set<String> funcs, PigContext pigContext) throws ClassNotFoundException, IOException {
+        createJar(os, funcs, pigContext, true);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void createJar(OutputStream os, Set<String> funcs, PigContext pigContext,
+            boolean addPigContext) throws ClassNotFoundException, IOException {
+        JarOutputStream jarFile = new JarOutputStream(os);
+        HashMap<String, String> contents = new HashMap<String, String>();
+        JarInputs inputs = getInputs(funcs, pigContext);
+
+        for (String fileName : inputs.resources) {
+            InputStream in = Launcher.class.getResourceAsStream(fileName);
+            addStream(jarFile, fileName, in, contents);
+        }
+
+        Iterator<JarListEntry> it = inputs.jarList.iterator();
         while (it.hasNext()) {
             JarListEntry jarEntry = it.next();
             // log.error("Adding " + jarEntry.jar + ":" + jarEntry.prefix);
@@ -171,35 +207,171 @@ public class JarManager {
         }
         for (String path: pigContext.scriptFiles) {
             log.debug("Adding entry " + path + " to job jar" );
-            InputStream stream = null;
-            if (new File(path).exists()) {
-                stream = new FileInputStream(new File(path));
-            } else {
-                stream = PigContext.getClassLoader().getResourceAsStream(path);
-            }
-            if (stream==null) {
-                throw new IOException("Cannot find " + path);
-            }
-        	addStream(jarFile, path, stream, contents);
+            InputStream stream = openScriptFile(new File(path));
+            addStream(jarFile, path, stream, contents);
         }
         for (Map.Entry<String, File> entry : pigContext.getScriptFiles().entrySet()) {
             log.debug("Adding entry " + entry.getKey() + " to job jar" );
-            InputStream stream = null;
-            if (entry.getValue().exists()) {
-                stream = new FileInputStream(entry.getValue());
-            } else {
-                stream = PigContext.getClassLoader().getResourceAsStream(entry.getValue().getPath());
+            InputStream stream = openScriptFile(entry.getValue());
+            addStream(jarFile, entry.getKey(), stream, contents);
+        }
+
+        if (addPigContext) {
+            log.debug("Adding entry pigContext to job jar" );
+            jarFile.putNextEntry(new ZipEntry("pigContext"));
+            new ObjectOutputStream(jarFile).writeObject(pigContext);
+        }
+        jarFile.close();
+    }
+
+    private static InputStream openScriptFile(File file) throws IOException {
+        InputStream stream = null;
+        if (file.exists()) {
+            stream = new FileInputStream(file);
+        } else {
+            stream = PigContext.getClassLoader().getResourceAsStream(file.getPath());
+        }
+        if (stream==null) {
+            throw new IOException("Cannot find " + file.getPath());
+        }
+        return stream;
+    }
+
+    /**
+     * Compute a key for the contents of the job jar of the given functions:
+     * a SHA-1 digest over the jar files, resources and script files which
+     * would be merged into it. Jobs with the same key can share their job jar.
+     *
+     * @param funcs
+     *            the functions that will be used in a job.
+     * @return the hex digest of the job jar inputs.
+     * @throws IOException
+     */
+    @SuppressWarnings("deprecation")
+    public static String getJobJarKey(Set<String> funcs, PigContext pigContext) throws IOException {
+        JarInputs inputs = getInputs(funcs, pigContext);
+        StringBuilder sb = new StringBuilder();
+
+        for (String fileName : inputs.resources) {
+            addKeyPart(sb, fileName);
+            addKeyPart(sb, digestResource(fileName));
+        }
+        for (JarListEntry jarEntry : inputs.jarList) {
+            addKeyPart(sb, jarEntry.prefix == null ? "" : jarEntry.prefix);
+            addKeyPart(sb, getJarDigest(jarEntry.jar));
+        }
+        for (String path: pigContext.scriptFiles) {
+            addKeyPart(sb, path);
+            addKeyPart(sb, digestScriptFile(new File(path)));
+        }
+        for (Map.Entry<String, File> entry : pigContext.getScriptFiles().entrySet()) {
+            addKeyPart(sb, entry.getKey());
+            addKeyPart(sb, digestScriptFile(entry.getValue()));
+        }
+        return DigestUtils.shaHex(sb.toString());
+    }
+
+    /**
+     * Get a job jar for the given functions, whose contents match the given
+     * key. The jar is built the first time a key is asked for, and the same
+     * file is returned for that key afterwards. Unlike
+     * {@link #createJar(OutputStream, Set, PigContext)}, the jar does not hold
+     * the serialized PigContext, which tasks get from the job configuration.
+     *
+     * @param key
+     *            the key of the job jar, from {@link #getJobJarKey(Set, PigContext)}.
+     * @param funcs
+     *            the functions that will be used in a job.
+     * @return the job jar, which is deleted when the JVM exits.
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    public static synchronized File getJobJar(String key, Set<String> funcs, PigContext pigContext)
+            throws ClassNotFoundException, IOException {
+        File jobJar = jobJars.get(key);
+        if (jobJar != null && jobJar.exists()) {
+            log.info("Reusing jar file " + jobJar.getName());
+            return jobJar;
+        }
+        jobJar = File.createTempFile("Job", ".jar");
+        log.info("creating jar file " + jobJar.getName());
+        // ensure the job jar is deleted on exit
+        jobJar.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(jobJar);
+        try {
+            createJar(fos, funcs, pigContext, false);
+        } catch (IOException e) {
+            jobJar.delete();
+            throw e;
+        } finally {
+            fos.close();
+        }
+        log.info("jar file " + jobJar.getName() + " created");
+        jobJars.put(key, jobJar);
+        return jobJar;
+    }
+
+    /**
+     * Whether one of the given functions needs files which sit next to the
+     * job jar on the task nodes, so that the job jar has to be shipped as
+     * the job's own jar.
+     *
+     * @param funcs
+     *            the functions that will be used in a job.
+     * @throws IOException
+     */
+    public static boolean usesJobDirectory(Set<String> funcs, PigContext pigContext)
+            throws IOException {
+        for (String func : funcs) {
+            Class<?> clazz = pigContext.getClassForAlias(func);
+            if (clazz != null && clazz.getSimpleName().equals("StreamingUDF")) {
+                return true;
             }
-            if (stream==null) {
-                throw new IOException("Cannot find " + entry.getValue().getPath());
+        }
+        return false;
+    }
+
+    private static String getJarDigest(String jar) throws IOException {
+        File file = new File(jar);
+        String id = jar + ":" + file.length() + ":" + file.lastModified();
+        synchronized (jarDigests) {
+            String digest = jarDigests.get(id);
+            if (digest == null) {
+                InputStream in = new FileInputStream(file);
+                try {
+                    digest = DigestUtils.shaHex(in);
+                } finally {
+                    in.close();
+                }
+                jarDigests.put(id, digest);
             }
-        	addStream(jarFile, entry.getKey(), stream, contents);
+            return digest;
         }
+    }
 
-        log.debug("Adding entry pigContext to job jar" );
-        jarFile.putNextEntry(new ZipEntry("pigContext"));
-        new ObjectOutputStream(jarFile).writeObject(pigContext);
-        jarFile.close();
+    private static String digestResource(String fileName) throws IOException {
+        InputStream in = Launcher.class.getResourceAsStream(fileName);
+        if (in == null) {
+            throw new IOException("Cannot find " + fileName);
+        }
+        try {
+            return DigestUtils.shaHex(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String digestScriptFile(File file) throws IOException {
+        InputStream in = openScriptFile(file);
+        try {
+            return DigestUtils.shaHex(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void addKeyPart(StringBuilder sb, String part) {
+        sb.append(part).append('\u0000');
     }
 
     /**
@@ -22,12 +22,16 @@ import java.lang.management.MemoryNotificationInfo;
 import java.lang.management.MemoryPoolMXBean;
 import java.lang.management.MemoryType;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.Notification;
 import javax.management.NotificationEmitter;
@@ -36,6 +40,8 @@ import javax.management.openmbean.CompositeData;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.tools.pigstats.PigStatusReporter;
 
 /**
  * This class Tracks the tenured pool and a list of Spillable objects. When memory gets low, this
@@ -44,14 +50,34 @@ import org.apache.commons.logging.LogFactory;
  * Low memory is defined as more than 50% of the tenured pool being allocated. Spillable objects are
  * tracked using WeakReferences so that the objects can be GCed even though this class has a reference
  * to them. 
+ * <p>
+ * The number of spills, the bytes freed and the time spent spilling are kept per type of Spillable
+ * and reported as counters of the {@link #SPILL_COUNTER_GROUP} group. The time spills take, together
+ * with the rate at which the task allocates, is used to free enough memory for what the task will
+ * allocate while the spill is running.
  *
  */
 public class SpillableMemoryManager implements NotificationListener {
     
     private final Log log = LogFactory.getLog(getClass());
     
+    /**
+     * Counter group of the per Spillable type spill counters.
+     */
+    public static final String SPILL_COUNTER_GROUP = "SpillableMemoryManager";
+
+    public static final String SPILL_COUNT_SUFFIX = "_SPILL_COUNT";
+
+    public static final String SPILLED_BYTES_SUFFIX = "_SPILLED_BYTES";
+
+    public static final String SPILL_TIME_SUFFIX = "_SPILL_TIME_MS";
+
     LinkedList<WeakReference<Spillable>> spillables = new LinkedList<WeakReference<Spillable>>();
     
+    // held while spilling, so that registering new spillables, which only
+    // needs the spillables lock, does not wait for the spill to finish
+    private final Object spillLock = new Object();
+
     // if we freed at least this much, invoke GC 
     // (default 40 MB - this can be overridden by user supplied property)
     private static long gcActivationSize = 40000000L ;
@@ -83,6 +109,25 @@ public class SpillableMemoryManager implements NotificationListener {
     private static double extraGCThresholdFraction = 0.05;
     private static long extraGCSpillSizeThreshold  = 0L;
     
+    // whether to also free what is predicted to be allocated during the spill
+    private static boolean predictAllocation = true;
+
+    // minimum interval between two samples of the tenured pool usage
+    private static final long SAMPLE_INTERVAL_MS = 100L;
+
+    // weight of the newest sample in the allocation rate average
+    private static final double ALLOCATION_RATE_WEIGHT = 0.3;
+
+    private final MemoryPoolMXBean tenuredHeap;
+
+    private volatile long nextSampleTime = 0L;
+    private long lastSampleTime = -1L;
+    private long lastSampleUsed = 0L;
+    // bytes per millisecond
+    private double allocationRate = 0d;
+
+    private final Map<String, SpillMetrics> spillMetrics = new ConcurrentHashMap<String, SpillMetrics>();
+
     private static volatile SpillableMemoryManager manager;
 
     private SpillableMemoryManager() {
@@ -112,6 +157,7 @@ public class SpillableMemoryManager implements NotificationListener {
         }
         log.debug("Selected heap to monitor (" +
             biggestHeap.getName() + ")");
+        tenuredHeap = biggestHeap;
         
         // we want to set both collection and usage threshold alerts to be 
         // safe. In some local tests after a point only collection threshold
@@ -151,6 +197,8 @@ public class SpillableMemoryManager implements NotificationListener {
             throw new RuntimeException("Error while converting system configurations" +
             		"spill.size.threshold, spill.gc.activation.size", nfe) ;
         }
+        predictAllocation = Boolean.parseBoolean(properties.getProperty(
+                PigConfiguration.PIG_SPILL_PREDICT_ALLOCATION, "true"));
     }
     
     @Override
@@ -161,8 +209,9 @@ public class SpillableMemoryManager implements NotificationListener {
         // so if threshold = heapmax/2, we will be trying to free
         // used - heapmax/2 + heapmax/4
         long toFree = 0L;
+        long threshold;
         if(n.getType().equals(MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED)) {
-            long threshold = (long)(info.getUsage().getMax() * memoryThresholdFraction);
+            threshold = (long)(info.getUsage().getMax() * memoryThresholdFraction);
             toFree = info.getUsage().getUsed() - threshold + (long)(threshold * 0.5);
 
             //log
@@ -175,7 +224,7 @@ public class SpillableMemoryManager implements NotificationListener {
                 log.debug(msg);
             }
         } else { // MEMORY_COLLECTION_THRESHOLD_EXCEEDED CASE
-            long threshold = (long)(info.getUsage().getMax() * collectionMemoryThresholdFraction);
+            threshold = (long)(info.getUsage().getMax() * collectionMemoryThresholdFraction);
             toFree = info.getUsage().getUsed() - threshold + (long)(threshold * 0.5);
             
             //log
@@ -189,66 +238,56 @@ public class SpillableMemoryManager implements NotificationListener {
             }
 
         }
-        clearSpillables();
+        sampleUsage(System.currentTimeMillis(), info.getUsage().getUsed());
         if (toFree < 0) {
+            clearSpillables();
             log.debug("low memory handler returning " + 
                 "because there is nothing to free");
             return;
         }
-        synchronized(spillables) {
-            Collections.sort(spillables, new Comparator<WeakReference<Spillable>>() {
-
-                /**
-                 * We don't lock anything, so this sort may not be stable if a WeakReference suddenly
-                 * becomes null, but it will be close enough.
-                 * Also between the time we sort and we use these spillables, they
-                 * may actually change in size - so this is just best effort
-                 */    
-                @Override
-                public int compare(WeakReference<Spillable> o1Ref, WeakReference<Spillable> o2Ref) {
-                    Spillable o1 = o1Ref.get();
-                    Spillable o2 = o2Ref.get();
-                    if (o1 == null && o2 == null) {
-                        return 0;
-                    }
-                    if (o1 == null) {
-                        return 1;
-                    }
-                    if (o2 == null) {
-                        return -1;
-                    }
-                    long o1Size = o1.getMemorySize();
-                    long o2Size = o2.getMemorySize();
-                
-                    if (o1Size == o2Size) {
-                        return 0;
-                    }
-                    if (o1Size < o2Size) {
-                        return 1;
-                    }
-                    return -1;
-                }
-            });
+        if (predictAllocation) {
+            // never free more than another half of the threshold for it
+            long predicted = Math.min(predictAllocatedDuringSpill(toFree),
+                    (long) (threshold * 0.5));
+            if (predicted > 0) {
+                log.debug("Freeing another " + predicted + " bytes predicted to be "
+                        + "allocated during the spill");
+                toFree += predicted;
+            }
+        }
+        spill(toFree);
+    }
+
+    /**
+     * Spill the tracked Spillables, biggest first, until an estimated
+     * toFree bytes have been freed or only Spillables smaller than
+     * pig.spill.size.threshold are left.
+     * @param toFree number of bytes to free
+     * @return estimated number of bytes freed
+     */
+    public long spill(long toFree) {
+        synchronized (spillLock) {
+            PriorityQueue<SpillCandidate> candidates = getSpillCandidates();
             long estimatedFreed = 0;
             int numObjSpilled = 0;
+            long spillNanos = 0;
             boolean invokeGC = false;
             boolean extraGCCalled = false;
-            for (Iterator<WeakReference<Spillable>> i = spillables.iterator(); i.hasNext();) {
-                WeakReference<Spillable> weakRef = i.next();
+            SpillCandidate candidate;
+            while ((candidate = candidates.poll()) != null) {
+                WeakReference<Spillable> weakRef = candidate.ref;
                 Spillable s = weakRef.get();
-                // Still need to check for null here, even after we removed
-                // above, because the reference may have gone bad on us
-                // since the last check.
+                // The reference may have gone bad on us since the
+                // candidates were collected.
                 if (s == null) {
-                    i.remove();
                     continue;
                 }
+                // The size may also have changed, so this ordering is only
+                // best effort
                 long toBeFreed = s.getMemorySize();
                 log.debug("Memorysize = "+toBeFreed+", spillFilesizethreshold = "+spillFileSizeThreshold+", gcactivationsize = "+gcActivationSize);
-                // Don't keep trying if the rest of files are too small
                 if (toBeFreed < spillFileSizeThreshold) {
-                    log.debug("spilling small files - getting out of memory handler");
-                    break ;
+                    continue;
                 }
                 // If single Spillable is bigger than the threshold,
                 // we force GC to make sure we really need to keep this
@@ -265,13 +304,16 @@ public class SpillableMemoryManager implements NotificationListener {
                     // checking again to see if this reference is still valid
                     s = weakRef.get();
                     if (s == null) {
-                        i.remove();
                         accumulatedFreeSize = 0;
                         invokeGC = false;
                         continue;
                     }
                 }
-                s.spill();               
+                long start = System.nanoTime();
+                s.spill();
+                long nanos = System.nanoTime() - start;
+                recordSpill(s, toBeFreed, nanos);
+                spillNanos += nanos;
                 numObjSpilled++;
                 estimatedFreed += toBeFreed;
                 accumulatedFreeSize += toBeFreed;
@@ -295,13 +337,115 @@ public class SpillableMemoryManager implements NotificationListener {
             }
             if(estimatedFreed > 0){
                 String msg = "Spilled an estimate of " + estimatedFreed +
-                " bytes from " + numObjSpilled + " objects. " + info.getUsage();;
+                " bytes from " + numObjSpilled + " objects in " + (spillNanos / 1000000L)
+                + " ms. " + tenuredHeap.getUsage();
                 log.info(msg);
             }
+            return estimatedFreed;
+        }
+    }
+
+    /**
+     * Collects the live spillables at least pig.spill.size.threshold big,
+     * ordered by size, biggest first. The sizes are computed once, outside
+     * of the lock on the registered spillables.
+     */
+    private PriorityQueue<SpillCandidate> getSpillCandidates() {
+        List<WeakReference<Spillable>> refs;
+        synchronized (spillables) {
+            refs = new ArrayList<WeakReference<Spillable>>(spillables.size());
+            for (Iterator<WeakReference<Spillable>> i = spillables.iterator(); i.hasNext();) {
+                WeakReference<Spillable> ref = i.next();
+                if (ref.get() == null) {
+                    i.remove();
+                } else {
+                    refs.add(ref);
+                }
+            }
+        }
+        PriorityQueue<SpillCandidate> candidates =
+                new PriorityQueue<SpillCandidate>(Math.max(1, refs.size()));
+        for (WeakReference<Spillable> ref : refs) {
+            Spillable s = ref.get();
+            if (s == null) {
+                continue;
+            }
+            long size = s.getMemorySize();
+            if (size >= spillFileSizeThreshold) {
+                candidates.add(new SpillCandidate(ref, size));
+            }
+        }
+        return candidates;
+    }
 
+    private void recordSpill(Spillable s, long bytes, long nanos) {
+        String type = s.getClass().getSimpleName();
+        if (type.length() == 0) {
+            type = s.getClass().getName();
+        }
+        SpillMetrics metrics = spillMetrics.get(type);
+        if (metrics == null) {
+            metrics = new SpillMetrics();
+            spillMetrics.put(type, metrics);
+        }
+        metrics.count.incrementAndGet();
+        metrics.bytes.addAndGet(bytes);
+        long totalNanos = metrics.nanos.addAndGet(nanos);
+        // report whole milliseconds, carrying the remainders over
+        long millis = totalNanos / 1000000L - (totalNanos - nanos) / 1000000L;
+
+        PigStatusReporter reporter = PigStatusReporter.getInstance();
+        reporter.incrCounter(SPILL_COUNTER_GROUP, type + SPILL_COUNT_SUFFIX, 1);
+        reporter.incrCounter(SPILL_COUNTER_GROUP, type + SPILLED_BYTES_SUFFIX, bytes);
+        if (millis > 0) {
+            reporter.incrCounter(SPILL_COUNTER_GROUP, type + SPILL_TIME_SUFFIX, millis);
         }
     }
-    
+
+    /**
+     * Estimates how much the task allocates while toFree bytes are spilled,
+     * from the allocation rate and the throughput of the spills so far.
+     */
+    private long predictAllocatedDuringSpill(long toFree) {
+        long bytes = 0;
+        long nanos = 0;
+        for (SpillMetrics metrics : spillMetrics.values()) {
+            bytes += metrics.getSpilledBytes();
+            nanos += metrics.nanos.get();
+        }
+        double rate;
+        synchronized (this) {
+            rate = allocationRate;
+        }
+        if (bytes == 0 || rate <= 0) {
+            return 0;
+        }
+        double spillMillis = (double) toFree * nanos / bytes / 1000000d;
+        return (long) (rate * spillMillis);
+    }
+
+    private synchronized void sampleUsage(long now, long used) {
+        if (lastSampleTime >= 0 && now > lastSampleTime) {
+            long allocated = used - lastSampleUsed;
+            // usage drops when the pool is collected, which says nothing
+            // about how fast the task allocates
+            if (allocated > 0) {
+                double rate = (double) allocated / (now - lastSampleTime);
+                allocationRate = allocationRate == 0 ? rate
+                        : ALLOCATION_RATE_WEIGHT * rate + (1 - ALLOCATION_RATE_WEIGHT) * allocationRate;
+            }
+        }
+        lastSampleTime = now;
+        lastSampleUsed = used;
+    }
+
+    /**
+     * @return spill metrics by simple class name of the spilled objects
+     */
+    public Map<String, SpillMetrics> getSpillMetrics() {
+        return Collections.unmodifiableMap(spillMetrics);
+    }
+
     public void clearSpillables() {
         synchronized (spillables) {
             // Walk the list first and remove nulls, otherwise the sort
@@ -331,5 +475,53 @@ public class SpillableMemoryManager implements NotificationListener {
             }
             spillables.add(new WeakReference<Spillable>(s));
         }
+        if (predictAllocation) {
+            long now = System.currentTimeMillis();
+            if (now >= nextSampleTime) {
+                nextSampleTime = now + SAMPLE_INTERVAL_MS;
+                sampleUsage(now, tenuredHeap.getUsage().getUsed());
+            }
+        }
+    }
+
+    /**
+     * Number of spills, bytes freed and time spent spilling for a type of
+     * Spillable.
+     */
+    public static class SpillMetrics {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+
+        public long getSpillCount() {
+            return count.get();
+        }
+
+        /**
+         * @return estimated number of bytes freed by the spills
+         */
+        public long getSpilledBytes() {
+            return bytes.get();
+        }
+
+        public long getSpillTimeMillis() {
+            return nanos.get() / 1000000L;
+        }
+    }
+
+    private static class SpillCandidate implements Comparable<SpillCandidate> {
+        private final WeakReference<Spillable> ref;
+        private final long size;
+
+        SpillCandidate(WeakReference<Spillable> ref, long size) {
+            this.ref = ref;
+            this.size = size;
+        }
+
+        @Override
+        public int compareTo(SpillCandidate o) {
+            // biggest first
+            return size < o.size ? 1 : (size == o.size ? 0 : -1);
+        }
     }
 }
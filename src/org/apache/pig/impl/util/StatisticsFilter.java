@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.util;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.apache.pig.Expression;
+import org.apache.pig.Expression.BinaryExpression;
+import org.apache.pig.Expression.Column;
+import org.apache.pig.Expression.Const;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.ResourceStatistics;
+import org.apache.pig.ResourceStatistics.ResourceFieldStatistics;
+import org.apache.pig.data.DataType;
+
+/**
+ * A filter condition reduced to the comparisons between columns and
+ * constants, which can be checked against the minimum and maximum values
+ * of the columns in {@link ResourceStatistics}. It is used to skip the input
+ * splits that cannot contain a record satisfying the condition. Parts of
+ * the condition that can't be checked are assumed to match.
+ */
+public class StatisticsFilter implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Node root;
+
+    private StatisticsFilter(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @param condition filter condition
+     * @param fieldNames names of the fields, in the order of the field
+     * statistics
+     * @return the filter, or null if no part of the condition can be checked
+     * against statistics
+     */
+    public static StatisticsFilter create(Expression condition, List<String> fieldNames) {
+        Node root = toNode(condition, fieldNames);
+        return root == null ? null : new StatisticsFilter(root);
+    }
+
+    /**
+     * @param stats statistics of the data in a split
+     * @return false if no record in the split can satisfy the condition
+     */
+    public boolean canMatch(ResourceStatistics stats) {
+        if (stats == null) {
+            return true;
+        }
+        return root.canMatch(stats.getFields());
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+
+    private static Node toNode(Expression expr, List<String> fieldNames) {
+        if (!(expr instanceof BinaryExpression)) {
+            return null;
+        }
+        BinaryExpression bin = (BinaryExpression) expr;
+        OpType op = expr.getOpType();
+        if (op == OpType.OP_AND) {
+            Node lhs = toNode(bin.getLhs(), fieldNames);
+            Node rhs = toNode(bin.getRhs(), fieldNames);
+            if (lhs == null) {
+                return rhs;
+            }
+            return rhs == null ? lhs : new And(lhs, rhs);
+        } else if (op == OpType.OP_OR) {
+            Node lhs = toNode(bin.getLhs(), fieldNames);
+            Node rhs = toNode(bin.getRhs(), fieldNames);
+            return lhs == null || rhs == null ? null : new Or(lhs, rhs);
+        }
+        Expression col = bin.getLhs();
+        Expression val = bin.getRhs();
+        if (col instanceof Const && val instanceof Column) {
+            col = bin.getRhs();
+            val = bin.getLhs();
+            op = flip(op);
+            if (op == null) {
+                return null;
+            }
+        }
+        if (flip(op) == null || !(col instanceof Column) || !(val instanceof Const)) {
+            return null;
+        }
+        int index = fieldNames.indexOf(((Column) col).getName());
+        Object value = ((Const) val).getValue();
+        if (index < 0 || value == null || !(value instanceof Serializable)
+                || !DataType.isAtomic(DataType.findType(value))) {
+            return null;
+        }
+        return new Compare(index, op, value);
+    }
+
+    /**
+     * @return the operator with the operands swapped, null if the operator
+     * isn't a comparison
+     */
+    private static OpType flip(OpType op) {
+        switch (op) {
+        case OP_EQ:
+        case OP_NE:
+            return op;
+        case OP_GT:
+            return OpType.OP_LT;
+        case OP_GE:
+            return OpType.OP_LE;
+        case OP_LT:
+            return OpType.OP_GT;
+        case OP_LE:
+            return OpType.OP_GE;
+        default:
+            return null;
+        }
+    }
+
+    private static interface Node extends Serializable {
+        boolean canMatch(ResourceFieldStatistics[] fields);
+    }
+
+    private static class And implements Node {
+        private static final long serialVersionUID = 1L;
+        private final Node lhs;
+        private final Node rhs;
+
+        And(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        public boolean canMatch(ResourceFieldStatistics[] fields) {
+            return lhs.canMatch(fields) && rhs.canMatch(fields);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + lhs + OpType.OP_AND + rhs + ")";
+        }
+    }
+
+    private static class Or implements Node {
+        private static final long serialVersionUID = 1L;
+        private final Node lhs;
+        private final Node rhs;
+
+        Or(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        public boolean canMatch(ResourceFieldStatistics[] fields) {
+            return lhs.canMatch(fields) || rhs.canMatch(fields);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + lhs + OpType.OP_OR + rhs + ")";
+        }
+    }
+
+    /**
+     * field op value
+     */
+    private static class Compare implements Node {
+        private static final long serialVersionUID = 1L;
+        private final int index;
+        private final OpType op;
+        private final Object value;
+
+        Compare(int index, OpType op, Object value) {
+            this.index = index;
+            this.op = op;
+            this.value = value;
+        }
+
+        @Override
+        public boolean canMatch(ResourceFieldStatistics[] fields) {
+            if (fields == null || index >= fields.length || fields[index] == null) {
+                return true;
+            }
+            Object min = fields[index].getMinValue();
+            Object max = fields[index].getMaxValue();
+            byte type = DataType.findType(value);
+            // a comparison with null is never true, so only the non null
+            // values bound the field; values of another type can't be
+            // compared
+            if (min == null || max == null || DataType.findType(min) != type
+                    || DataType.findType(max) != type) {
+                return true;
+            }
+            switch (op) {
+            case OP_EQ:
+                return DataType.compare(min, value, type, type) <= 0
+                        && DataType.compare(max, value, type, type) >= 0;
+            case OP_NE:
+                return DataType.compare(min, value, type, type) != 0
+                        || DataType.compare(max, value, type, type) != 0;
+            case OP_GT:
+                return DataType.compare(max, value, type, type) > 0;
+            case OP_GE:
+                return DataType.compare(max, value, type, type) >= 0;
+            case OP_LT:
+                return DataType.compare(min, value, type, type) < 0;
+            case OP_LE:
+                return DataType.compare(min, value, type, type) <= 0;
+            default:
+                return true;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "($" + index + op + value + ")";
+        }
+    }
+}
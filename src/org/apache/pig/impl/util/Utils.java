@@ -56,6 +56,7 @@ import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.PigImplConstants;
+import org.apache.pig.impl.io.ColumnarInterStorage;
 import org.apache.pig.impl.io.InterStorage;
 import org.apache.pig.impl.io.ReadToEndLoader;
 import org.apache.pig.impl.io.SequenceFileInterStorage;
@@ -272,6 +273,12 @@ public class Utils {
                         TEMPFILE_CODEC.GZIP,
                         TEMPFILE_CODEC.LZO)),
         SEQFILE(SequenceFileInterStorage.class,
+                Arrays.asList(TEMPFILE_CODEC.GZ,
+                        TEMPFILE_CODEC.GZIP,
+                        TEMPFILE_CODEC.LZO,
+                        TEMPFILE_CODEC.SNAPPY,
+                        TEMPFILE_CODEC.BZIP2)),
+        COLUMNAR(ColumnarInterStorage.class,
                 Arrays.asList(TEMPFILE_CODEC.GZ,
                         TEMPFILE_CODEC.GZIP,
                         TEMPFILE_CODEC.LZO,
@@ -359,6 +366,8 @@ public class Utils {
             return TEMPFILE_STORAGE.SEQFILE;
         } else if (TEMPFILE_STORAGE.TFILE.lowerName().equals(tmpFileCompressionStorage)) {
             return TEMPFILE_STORAGE.TFILE;
+        } else if (TEMPFILE_STORAGE.COLUMNAR.lowerName().equals(tmpFileCompressionStorage)) {
+            return TEMPFILE_STORAGE.COLUMNAR;
         } else {
             throw new IllegalArgumentException("Unsupported storage format " + tmpFileCompressionStorage + 
                     ". Should be one of " + Arrays.toString(TEMPFILE_STORAGE.values()));
@@ -411,6 +420,32 @@ public class Utils {
                         "Expected compression codecs for " + storage.getStorageClass().getName() + " are " + storage.supportedCodecsToString() + ".");
             }
             break;
+        case COLUMNAR:
+            conf.set(PigConfiguration.PIG_TEMP_FILE_COMPRESSION_STORAGE, "columnar");
+            // codec is optional, column chunks are stored uncompressed without one
+            if ("".equals(codec) || storage.ensureCodecSupported(codec)) {
+                conf.set(PigConfiguration.PIG_TEMP_FILE_COMPRESSION_CODEC, codec.toLowerCase());
+            } else {
+                throw new IOException("Invalid temporary file compression codec [" + codec + "]. " +
+                        "Expected compression codecs for " + storage.getStorageClass().getName() + " are " + storage.supportedCodecsToString() + ".");
+            }
+            break;
+        }
+    }
+
+    /**
+     * @param codec name of a temporary file compression codec, as in
+     * {@link PigConfiguration#PIG_TEMP_FILE_COMPRESSION_CODEC}
+     * @return the class name of the Hadoop codec, or null if codec is empty
+     */
+    public static String getTmpFileCompressionCodecClassName(String codec) {
+        if (codec == null || "".equals(codec)) {
+            return null;
+        }
+        try {
+            return TEMPFILE_CODEC.valueOf(codec.toUpperCase()).getHadoopCodecClassName();
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid temporary file compression codec [" + codec + "]");
         }
     }
 
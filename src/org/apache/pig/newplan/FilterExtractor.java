@@ -219,6 +219,14 @@ public class FilterExtractor {
         KeyState rightState = checkPushDown(binExpr.getRhs());
 
         if (binExpr instanceof AndExpression) {
+            if (!isSupported(binExpr) && leftState.pushdownExpr != null
+                    && rightState.pushdownExpr != null) {
+                // Only one side of the conjunction can be pushed down, the
+                // other one has to be evaluated by pig
+                rightState.filterExpr = andLogicalExpressions(filteredPlan,
+                        rightState.filterExpr, addToFilterPlan(rightState.pushdownExpr));
+                rightState.pushdownExpr = null;
+            }
             // AND is commutative
             // Expression =
             // (leftState.pushdownExpr AND leftState.filterExpr)
@@ -245,7 +253,9 @@ public class FilterExtractor {
             // filterExpr = (leftState.pushdownExpr OR rightState.filterExpr)
             //              AND (leftState.filterExpr OR rightState.pushdownExpr)
             //              AND (leftState.filterExpr OR rightState.filterExpr)
-            state.pushdownExpr = orLogicalExpressions(pushdownExprPlan, leftState.pushdownExpr, rightState.pushdownExpr);
+            if (isSupported(binExpr)) {
+                state.pushdownExpr = orLogicalExpressions(pushdownExprPlan, leftState.pushdownExpr, rightState.pushdownExpr);
+            }
             if (state.pushdownExpr == null) {
                 // Whatever we did so far on the right tree is all wasted :(
                 // Undo all the mutation (AND OR distributions) until now
@@ -260,7 +270,8 @@ public class FilterExtractor {
             }
         } else {
             // leftState OP rightState
-            if (leftState.filterExpr == null && rightState.filterExpr == null) {
+            if (leftState.filterExpr == null && rightState.filterExpr == null
+                    && isSupported(binExpr)) {
                 state.pushdownExpr = binExpr;
                 state.filterExpr = null;
             } else {
@@ -273,6 +284,16 @@ public class FilterExtractor {
         return state;
     }
 
+    /**
+     * Whether the operator can be evaluated by the loader once its operands
+     * can. All operators can be by default.
+     * @param binExpr binary operator in the filter condition
+     * @return true if the operator can be pushed down
+     */
+    protected boolean isSupported(BinaryExpression binExpr) {
+        return true;
+    }
+
     private KeyState checkPushDown(ProjectExpression project) throws FrontendException {
         String fieldName = project.getFieldSchema().alias;
         KeyState state = new KeyState();
@@ -329,39 +350,50 @@ public class FilterExtractor {
                 throw new FrontendException("Unsupported conversion of LogicalExpression to Expression: " + op.getName());
             }
             BinaryExpression binOp = (BinaryExpression)op;
-            if(binOp instanceof AddExpression) {
-                return getExpression( binOp, OpType.OP_PLUS );
-            } else if(binOp instanceof SubtractExpression) {
-                return getExpression(binOp, OpType.OP_MINUS);
-            } else if(binOp instanceof MultiplyExpression) {
-                return getExpression(binOp, OpType.OP_TIMES);
-            } else if(binOp instanceof DivideExpression) {
-                return getExpression(binOp, OpType.OP_DIV);
-            } else if(binOp instanceof ModExpression) {
-                return getExpression(binOp, OpType.OP_MOD);
-            } else if(binOp instanceof AndExpression) {
-                return getExpression(binOp, OpType.OP_AND);
-            } else if(binOp instanceof OrExpression) {
-                return getExpression(binOp, OpType.OP_OR);
-            } else if(binOp instanceof EqualExpression) {
-                return getExpression(binOp, OpType.OP_EQ);
-            } else if(binOp instanceof NotEqualExpression) {
-                return getExpression(binOp, OpType.OP_NE);
-            } else if(binOp instanceof GreaterThanExpression) {
-                return getExpression(binOp, OpType.OP_GT);
-            } else if(binOp instanceof GreaterThanEqualExpression) {
-                return getExpression(binOp, OpType.OP_GE);
-            } else if(binOp instanceof LessThanExpression) {
-                return getExpression(binOp, OpType.OP_LT);
-            } else if(binOp instanceof LessThanEqualExpression) {
-                return getExpression(binOp, OpType.OP_LE);
-            } else if(binOp instanceof RegexExpression) {
-                return getExpression(binOp, OpType.OP_MATCH);
-            } else {
+            OpType opType = getOpType(binOp);
+            if (opType == null) {
                 LOG.error("Unsupported conversion of LogicalExpression to Expression: " + op.getName());
                 throw new FrontendException("Unsupported conversion of LogicalExpression to Expression: " + op.getName());
             }
+            return getExpression(binOp, opType);
+        }
+    }
+
+    /**
+     * @param binOp binary operator in a logical expression plan
+     * @return the corresponding {@link OpType}, or null if there is none
+     */
+    public static OpType getOpType(BinaryExpression binOp) {
+        if(binOp instanceof AddExpression) {
+            return OpType.OP_PLUS;
+        } else if(binOp instanceof SubtractExpression) {
+            return OpType.OP_MINUS;
+        } else if(binOp instanceof MultiplyExpression) {
+            return OpType.OP_TIMES;
+        } else if(binOp instanceof DivideExpression) {
+            return OpType.OP_DIV;
+        } else if(binOp instanceof ModExpression) {
+            return OpType.OP_MOD;
+        } else if(binOp instanceof AndExpression) {
+            return OpType.OP_AND;
+        } else if(binOp instanceof OrExpression) {
+            return OpType.OP_OR;
+        } else if(binOp instanceof EqualExpression) {
+            return OpType.OP_EQ;
+        } else if(binOp instanceof NotEqualExpression) {
+            return OpType.OP_NE;
+        } else if(binOp instanceof GreaterThanExpression) {
+            return OpType.OP_GT;
+        } else if(binOp instanceof GreaterThanEqualExpression) {
+            return OpType.OP_GE;
+        } else if(binOp instanceof LessThanExpression) {
+            return OpType.OP_LT;
+        } else if(binOp instanceof LessThanEqualExpression) {
+            return OpType.OP_LE;
+        } else if(binOp instanceof RegexExpression) {
+            return OpType.OP_MATCH;
         }
+        return null;
     }
 
     private static Expression getExpression(BinaryExpression binOp, OpType
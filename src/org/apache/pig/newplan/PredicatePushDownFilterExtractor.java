@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pig.newplan;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.newplan.logical.expression.BinaryExpression;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionPlan;
+
+/**
+ * Extracts the part of a filter condition that can be handed to a
+ * {@link org.apache.pig.LoadPredicatePushdown} loader. Only the columns
+ * and the operators the loader supports are pushed down.
+ */
+public class PredicatePushDownFilterExtractor extends FilterExtractor {
+
+    private final Set<OpType> supportedOpTypes;
+
+    /**
+     * @param plan logical plan corresponding the filter's comparison condition
+     * @param predicateCols columns the loader can evaluate predicates on
+     * @param supportedOpTypes operators the loader can evaluate
+     */
+    public PredicatePushDownFilterExtractor(LogicalExpressionPlan plan,
+            List<String> predicateCols, Collection<OpType> supportedOpTypes) {
+        super(plan, predicateCols);
+        this.supportedOpTypes = EnumSet.noneOf(OpType.class);
+        if (supportedOpTypes != null) {
+            this.supportedOpTypes.addAll(supportedOpTypes);
+        }
+    }
+
+    @Override
+    protected boolean isSupported(BinaryExpression binExpr) {
+        OpType opType = getOpType(binExpr);
+        return opType != null && supportedOpTypes.contains(opType);
+    }
+}
@@ -33,14 +33,17 @@ import org.apache.pig.newplan.logical.rules.AddForEach;
 import org.apache.pig.newplan.logical.rules.ColumnMapKeyPrune;
 import org.apache.pig.newplan.logical.rules.FilterAboveForeach;
 import org.apache.pig.newplan.logical.rules.GroupByConstParallelSetter;
+import org.apache.pig.newplan.logical.rules.JoinStrategyOptimizer;
 import org.apache.pig.newplan.logical.rules.LimitOptimizer;
 import org.apache.pig.newplan.logical.rules.LoadTypeCastInserter;
 import org.apache.pig.newplan.logical.rules.LogicalExpressionSimplifier;
 import org.apache.pig.newplan.logical.rules.MergeFilter;
 import org.apache.pig.newplan.logical.rules.MergeForEach;
 import org.apache.pig.newplan.logical.rules.PartitionFilterOptimizer;
+import org.apache.pig.newplan.logical.rules.PredicatePushdownOptimizer;
 import org.apache.pig.newplan.logical.rules.PushDownForEachFlatten;
 import org.apache.pig.newplan.logical.rules.PushUpFilter;
+import org.apache.pig.newplan.logical.rules.SortedGroupOptimizer;
 import org.apache.pig.newplan.logical.rules.SplitFilter;
 import org.apache.pig.newplan.logical.rules.StreamTypeCastInserter;
 import org.apache.pig.newplan.optimizer.PlanOptimizer;
@@ -82,6 +85,15 @@ public class LogicalPlanOptimizer extends PlanOptimizer {
         checkAndAddRule(s, r);
         ls.add(s);
 
+        // Sorted group set
+        // This set of rules looks at the load right before a group, so it
+        // runs before casts are inserted after loads
+        s = new HashSet<Rule>();
+        r = new SortedGroupOptimizer("SortedGroupOptimizer");
+        checkAndAddRule(s, r);
+        if (!s.isEmpty())
+            ls.add(s);
+
         // TypeCastInserter set
         // This set of rules Insert Foreach dedicated for casting after load
         s = new HashSet<Rule>();
@@ -132,6 +144,14 @@ public class LogicalPlanOptimizer extends PlanOptimizer {
         if (!s.isEmpty())
             ls.add(s);
 
+        // Predicate pushdown set
+        // This set of rules push the remaining filter conditions to LoadFunc
+        s = new HashSet<Rule>();
+        r = new PredicatePushdownOptimizer("PredicatePushdownOptimizer");
+        checkAndAddRule(s, r);
+        if (!s.isEmpty())
+            ls.add(s);
+
         // PushDownForEachFlatten set
         s = new HashSet<Rule>();
         // Add the PushDownForEachFlatten
@@ -140,6 +160,15 @@ public class LogicalPlanOptimizer extends PlanOptimizer {
         if (!s.isEmpty())
             ls.add(s);
 
+        // Join strategy set
+        // This set of rules chooses how joins are done from the sizes of their
+        // inputs, once filters have been pushed up to the loads
+        s = new HashSet<Rule>();
+        r = new JoinStrategyOptimizer("JoinStrategyOptimizer");
+        checkAndAddRule(s, r);
+        if (!s.isEmpty())
+            ls.add(s);
+
         // Prune Set
         // This set is used for pruning columns and maps
         s = new HashSet<Rule>();
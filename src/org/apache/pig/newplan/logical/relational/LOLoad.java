@@ -33,6 +33,7 @@ import org.apache.pig.impl.io.FileSpec;
 import org.apache.pig.impl.logicalLayer.FrontendException;
 import org.apache.pig.impl.logicalLayer.schema.Schema;
 import org.apache.pig.impl.util.ObjectSerializer;
+import org.apache.pig.impl.util.StatisticsFilter;
 import org.apache.pig.impl.util.Utils;
 import org.apache.pig.newplan.Operator;
 import org.apache.pig.newplan.PlanVisitor;
@@ -52,6 +53,7 @@ public class LOLoad extends LogicalRelationalOperator {
     private final String signature;
     private long limit = -1;
     private boolean isTmpLoad;
+    private StatisticsFilter statisticsFilter;
 
     /**
      * used for pattern matching
@@ -305,4 +307,16 @@ public class LOLoad extends LogicalRelationalOperator {
         this.limit = limit;
     }
 
+    public StatisticsFilter getStatisticsFilter() {
+        return statisticsFilter;
+    }
+
+    /**
+     * @param statisticsFilter condition used to skip the splits that can't
+     * contain a matching record
+     */
+    public void setStatisticsFilter(StatisticsFilter statisticsFilter) {
+        this.statisticsFilter = statisticsFilter;
+    }
+
 }
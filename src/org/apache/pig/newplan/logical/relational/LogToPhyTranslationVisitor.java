@@ -141,6 +141,7 @@ public class LogToPhyTranslationVisitor extends LogicalRelationalNodesVisitor {
         load.setResultType(DataType.BAG);
         load.setSignature(loLoad.getSignature());
         load.setLimit(loLoad.getLimit());
+        load.setStatisticsFilter(loLoad.getStatisticsFilter());
         load.setIsTmpLoad(loLoad.isTmpLoad());
 
         currentPlan.add(load);
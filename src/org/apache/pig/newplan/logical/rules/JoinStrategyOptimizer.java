@@ -0,0 +1,470 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.newplan.logical.rules;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadMetadata;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.ResourceStatistics;
+import org.apache.pig.backend.hadoop.executionengine.util.MapRedUtil;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.MultiMap;
+import org.apache.pig.impl.util.Pair;
+import org.apache.pig.impl.util.UriUtil;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.OperatorSubPlan;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionPlan;
+import org.apache.pig.newplan.logical.expression.ProjectExpression;
+import org.apache.pig.newplan.logical.relational.LODistinct;
+import org.apache.pig.newplan.logical.relational.LOFilter;
+import org.apache.pig.newplan.logical.relational.LOForEach;
+import org.apache.pig.newplan.logical.relational.LOGenerate;
+import org.apache.pig.newplan.logical.relational.LOInnerLoad;
+import org.apache.pig.newplan.logical.relational.LOJoin;
+import org.apache.pig.newplan.logical.relational.LOJoin.JOINTYPE;
+import org.apache.pig.newplan.logical.relational.LOLimit;
+import org.apache.pig.newplan.logical.relational.LOLoad;
+import org.apache.pig.newplan.logical.relational.LOSort;
+import org.apache.pig.newplan.logical.relational.LOSplit;
+import org.apache.pig.newplan.logical.relational.LOSplitOutput;
+import org.apache.pig.newplan.logical.relational.LOUnion;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.apache.pig.newplan.logical.relational.LogicalRelationalOperator;
+import org.apache.pig.newplan.logical.relational.LogicalSchema;
+import org.apache.pig.newplan.optimizer.Rule;
+import org.apache.pig.newplan.optimizer.Transformer;
+
+/**
+ * Rule: Choose how a join the user didn't give a strategy for is done, from
+ * the sizes of its inputs. The size of an input is the size of the files
+ * it is loaded from, or what its {@link LoadMetadata} statistics say,
+ * through filters, foreachs without flatten, limits, distincts, sorts,
+ * splits and unions. Nothing is changed if the size of an input is unknown.
+ * <ul>
+ * <li>If all inputs but the largest are together smaller than
+ * {@link PigConfiguration#PIG_JOIN_AUTO_REPLICATED_MAX_BYTES}, and none of
+ * them is loaded from compressed files, the join is made replicated, with
+ * the largest input as the fragment.</li>
+ * <li>Otherwise the largest input is moved last, as the hash join streams
+ * the last input and holds the others in memory for each key.</li>
+ * </ul>
+ * When the inputs are reordered, a foreach after the join puts the columns
+ * back in the order the script expects.
+ */
+public class JoinStrategyOptimizer extends Rule {
+
+    private static final Log log = LogFactory.getLog(JoinStrategyOptimizer.class);
+
+    private static final String DEFAULT_REPLICATED_MAX_BYTES = "25000000";
+
+    public JoinStrategyOptimizer(String name) {
+        super(name, false);
+    }
+
+    @Override
+    protected OperatorPlan buildPattern() {
+        LogicalPlan plan = new LogicalPlan();
+        LogicalRelationalOperator op = new LOJoin(plan);
+        plan.add(op);
+        return plan;
+    }
+
+    @Override
+    public Transformer getNewTransformer() {
+        return new JoinStrategyTransformer();
+    }
+
+    public class JoinStrategyTransformer extends Transformer {
+
+        private LOJoin join;
+
+        private LOForEach foreach;
+
+        private boolean replicated;
+
+        // the new position of each input
+        private int[] order;
+
+        @Override
+        public boolean check(OperatorPlan matched) throws FrontendException {
+            join = (LOJoin) matched.getSources().get(0);
+            foreach = null;
+            if (join.getJoinType() != JOINTYPE.HASH
+                    || join.isPinnedOption(LOJoin.OPTION_JOIN)
+                    || join.getCustomPartitioner() != null) {
+                return false;
+            }
+            List<Operator> inputs = currentPlan.getPredecessors(join);
+            List<Operator> succs = currentPlan.getSuccessors(join);
+            if (inputs == null || inputs.size() < 2 || succs == null || succs.size() != 1
+                    || currentPlan.getSoftLinkSuccessors(join) != null) {
+                return false;
+            }
+
+            long[] sizes = new long[inputs.size()];
+            int largest = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = getSize((LogicalRelationalOperator) inputs.get(i));
+                if (sizes[i] < 0) {
+                    return false;
+                }
+                if (sizes[i] > sizes[largest]) {
+                    largest = i;
+                }
+            }
+
+            order = null;
+            replicated = false;
+            long maxBytes = Long.parseLong(getConfiguration().get(
+                    PigConfiguration.PIG_JOIN_AUTO_REPLICATED_MAX_BYTES,
+                    DEFAULT_REPLICATED_MAX_BYTES));
+            long replicatedBytes = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                if (i != largest) {
+                    replicatedBytes += sizes[i];
+                }
+            }
+            // the fragment is the first input, and a replicated join can't
+            // keep the records of the other inputs which have no match
+            if (maxBytes > 0 && replicatedBytes <= maxBytes && join.isInner(largest)
+                    && (largest == 0 || allInner()) && !hasCompressedInput(inputs, largest)) {
+                replicated = true;
+                if (largest != 0) {
+                    order = moveInput(sizes.length, largest, 0);
+                }
+            } else if (largest != sizes.length - 1
+                    && sizes[largest] > sizes[sizes.length - 1]) {
+                order = moveInput(sizes.length, largest, sizes.length - 1);
+            }
+            if (order != null && join.getSchema() == null) {
+                // the columns can't be put back in order
+                return false;
+            }
+            return replicated || order != null;
+        }
+
+        /**
+         * The records of compressed files take many times their size on
+         * disk in the memory of the replicated join.
+         */
+        private boolean hasCompressedInput(List<Operator> inputs, int largest)
+                throws FrontendException {
+            for (int i = 0; i < inputs.size(); i++) {
+                if (i != largest && isCompressed((LogicalRelationalOperator) inputs.get(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean allInner() {
+            for (boolean inner : join.getInnerFlags()) {
+                if (!inner) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Configuration getConfiguration() throws FrontendException {
+            Iterator<Operator> it = currentPlan.getOperators();
+            while (it.hasNext()) {
+                Operator op = it.next();
+                if (op instanceof LOLoad && ((LOLoad) op).getConfiguration() != null) {
+                    return ((LOLoad) op).getConfiguration();
+                }
+            }
+            return new Configuration(false);
+        }
+
+        /**
+         * @return the new position of each of the n inputs, when the input
+         * at from is moved to position to
+         */
+        private int[] moveInput(int n, int from, int to) {
+            List<Integer> inputs = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                if (i != from) {
+                    inputs.add(i);
+                }
+            }
+            inputs.add(to, from);
+            int[] positions = new int[n];
+            for (int i = 0; i < n; i++) {
+                positions[inputs.get(i)] = i;
+            }
+            return positions;
+        }
+
+        /**
+         * @return an upper bound of the number of bytes of the input, or -1 if
+         * it isn't known
+         */
+        private long getSize(LogicalRelationalOperator op) throws FrontendException {
+            if (op instanceof LOLoad) {
+                return getLoadSize((LOLoad) op);
+            }
+            if (op instanceof LOForEach) {
+                if (OptimizerUtils.hasFlatten((LOForEach) op)) {
+                    return -1;
+                }
+            } else if (!(op instanceof LOFilter || op instanceof LOLimit
+                    || op instanceof LODistinct || op instanceof LOSort
+                    || op instanceof LOSplit || op instanceof LOSplitOutput
+                    || op instanceof LOUnion)) {
+                return -1;
+            }
+            List<Operator> preds = currentPlan.getPredecessors(op);
+            if (preds == null) {
+                return -1;
+            }
+            long size = 0;
+            for (Operator pred : preds) {
+                long predSize = getSize((LogicalRelationalOperator) pred);
+                if (predSize < 0) {
+                    return -1;
+                }
+                size += predSize;
+            }
+            return size;
+        }
+
+        private long getLoadSize(LOLoad load) throws FrontendException {
+            if (load.getFileSpec() == null || load.getFileSpec().getFileName() == null) {
+                return -1;
+            }
+            String location = load.getFileSpec().getFileName();
+            Configuration conf = load.getConfiguration() == null
+                    ? new Configuration() : load.getConfiguration();
+            try {
+                LoadFunc loadFunc = load.getLoadFunc();
+                if (loadFunc instanceof LoadMetadata) {
+                    ResourceStatistics statistics = ((LoadMetadata) loadFunc).getStatistics(
+                            location, new Job(conf));
+                    if (statistics != null && statistics.getSizeInBytes() != null) {
+                        return statistics.getSizeInBytes();
+                    }
+                }
+                long size = 0;
+                for (String path : LoadFunc.getPathStrings(location)) {
+                    if (!UriUtil.isHDFSFileOrLocalOrS3N(path, conf)) {
+                        return -1;
+                    }
+                    Path p = new Path(path);
+                    FileSystem fs = p.getFileSystem(conf);
+                    // the file may be written by an earlier job of the script
+                    FileStatus[] status = fs.globStatus(p);
+                    if (status == null || status.length == 0) {
+                        return -1;
+                    }
+                    for (FileStatus s : status) {
+                        size += MapRedUtil.getPathLength(fs, s);
+                    }
+                }
+                return size;
+            } catch (IOException e) {
+                log.debug("Unable to get the size of " + location, e);
+                return -1;
+            }
+        }
+
+        /**
+         * @return whether one of the loads of the input, whose size is
+         * known, reads files of a compression codec
+         */
+        private boolean isCompressed(LogicalRelationalOperator op) throws FrontendException {
+            if (op instanceof LOLoad) {
+                return isCompressedLoad((LOLoad) op);
+            }
+            for (Operator pred : currentPlan.getPredecessors(op)) {
+                if (isCompressed((LogicalRelationalOperator) pred)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isCompressedLoad(LOLoad load) throws FrontendException {
+            String location = load.getFileSpec().getFileName();
+            Configuration conf = load.getConfiguration() == null
+                    ? new Configuration() : load.getConfiguration();
+            CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+            try {
+                for (String path : LoadFunc.getPathStrings(location)) {
+                    Path p = new Path(path);
+                    if (codecs.getCodec(p) != null) {
+                        return true;
+                    }
+                    if (!UriUtil.isHDFSFileOrLocalOrS3N(path, conf)) {
+                        continue;
+                    }
+                    FileSystem fs = p.getFileSystem(conf);
+                    FileStatus[] status = fs.globStatus(p);
+                    if (status == null) {
+                        continue;
+                    }
+                    for (FileStatus s : status) {
+                        if (hasCompressedFile(fs, s, codecs)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            } catch (IOException e) {
+                log.debug("Unable to list the files of " + location, e);
+                return true;
+            }
+        }
+
+        private boolean hasCompressedFile(FileSystem fs, FileStatus status,
+                CompressionCodecFactory codecs) throws IOException {
+            if (!status.isDir()) {
+                return codecs.getCodec(status.getPath()) != null;
+            }
+            for (FileStatus child : fs.listStatus(status.getPath())) {
+                if (hasCompressedFile(fs, child, codecs)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void transform(OperatorPlan matched) throws FrontendException {
+            if (order != null) {
+                reorderInputs();
+            }
+            if (replicated) {
+                log.info("Inputs of " + join.getAlias() + " other than the largest are small,"
+                        + " using a replicated join");
+                join.setJoinType(JOINTYPE.REPLICATED);
+            } else {
+                log.info("Moving the largest input of " + join.getAlias()
+                        + " last, so that it is streamed by the join");
+            }
+        }
+
+        private void reorderInputs() throws FrontendException {
+            List<Operator> inputs = new ArrayList<Operator>(currentPlan.getPredecessors(join));
+            LogicalSchema schema = join.getSchema();
+
+            // the position of each column of the current schema in the new one
+            int[] inputStart = new int[inputs.size()];
+            int[] inputSize = new int[inputs.size()];
+            for (int i = 0, start = 0; i < inputs.size(); i++) {
+                inputStart[i] = start;
+                inputSize[i] = ((LogicalRelationalOperator) inputs.get(i)).getSchema().size();
+                start += inputSize[i];
+            }
+            int[] newStart = new int[inputs.size()];
+            for (int i = 0; i < inputs.size(); i++) {
+                for (int j = 0; j < inputs.size(); j++) {
+                    if (order[j] < order[i]) {
+                        newStart[i] += inputSize[j];
+                    }
+                }
+            }
+            int[] columns = new int[schema.size()];
+            for (int i = 0; i < inputs.size(); i++) {
+                for (int c = 0; c < inputSize[i]; c++) {
+                    columns[inputStart[i] + c] = newStart[i] + c;
+                }
+            }
+
+            // reconnect the inputs in their new order
+            int[] fromPositions = new int[inputs.size()];
+            for (int i = 0; i < inputs.size(); i++) {
+                Pair<Integer, Integer> positions = currentPlan.disconnect(inputs.get(i), join);
+                fromPositions[i] = positions.first;
+            }
+            for (int pos = 0; pos < inputs.size(); pos++) {
+                for (int i = 0; i < inputs.size(); i++) {
+                    if (order[i] == pos) {
+                        currentPlan.connect(inputs.get(i), fromPositions[i], join, pos);
+                    }
+                }
+            }
+
+            MultiMap<Integer, LogicalExpressionPlan> joinPlans =
+                new MultiMap<Integer, LogicalExpressionPlan>();
+            boolean[] innerFlags = new boolean[inputs.size()];
+            for (int i = 0; i < inputs.size(); i++) {
+                for (LogicalExpressionPlan plan : join.getJoinPlan(i)) {
+                    Iterator<Operator> it = plan.getOperators();
+                    while (it.hasNext()) {
+                        Operator op = it.next();
+                        if (op instanceof ProjectExpression) {
+                            ((ProjectExpression) op).setInputNum(order[i]);
+                        }
+                    }
+                    joinPlans.put(order[i], plan);
+                }
+                innerFlags[order[i]] = join.isInner(i);
+            }
+            join.setJoinPlans(joinPlans);
+            join.setInnerFlags(innerFlags);
+            join.resetSchema();
+
+            // put the columns back in the order the script expects
+            foreach = new LOForEach(currentPlan);
+            foreach.setAlias(join.getAlias());
+            currentPlan.add(foreach);
+            currentPlan.insertBetween(join, foreach, currentPlan.getSuccessors(join).get(0));
+            LogicalPlan innerPlan = new LogicalPlan();
+            foreach.setInnerPlan(innerPlan);
+            List<LogicalExpressionPlan> exps = new ArrayList<LogicalExpressionPlan>();
+            LOGenerate gen = new LOGenerate(innerPlan, exps, new boolean[columns.length]);
+            innerPlan.add(gen);
+            for (int i = 0; i < columns.length; i++) {
+                LOInnerLoad innerLoad = new LOInnerLoad(innerPlan, foreach, columns[i]);
+                innerPlan.add(innerLoad);
+                innerPlan.connect(innerLoad, gen);
+                LogicalExpressionPlan exp = new LogicalExpressionPlan();
+                exp.add(new ProjectExpression(exp, i, -1, gen));
+                exps.add(exp);
+            }
+        }
+
+        @Override
+        public OperatorPlan reportChanges() {
+            OperatorSubPlan subPlan = new OperatorSubPlan(currentPlan);
+            subPlan.add(join);
+            if (foreach != null) {
+                subPlan.add(foreach);
+                for (Operator succ : currentPlan.getSuccessors(foreach)) {
+                    subPlan.add(succ);
+                }
+            }
+            return subPlan;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pig.newplan.logical.rules;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.Expression;
+import org.apache.pig.Expression.BinaryExpression;
+import org.apache.pig.Expression.Column;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadPredicatePushdown;
+import org.apache.pig.SplitStatisticsLoadFunc;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.StatisticsFilter;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.OperatorSubPlan;
+import org.apache.pig.newplan.PredicatePushDownFilterExtractor;
+import org.apache.pig.newplan.logical.relational.LOFilter;
+import org.apache.pig.newplan.logical.relational.LOLoad;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.apache.pig.newplan.logical.relational.LogicalRelationalOperator;
+import org.apache.pig.newplan.logical.relational.LogicalSchema;
+import org.apache.pig.newplan.optimizer.Rule;
+import org.apache.pig.newplan.optimizer.Transformer;
+
+/**
+ * Pushes the part of a filter that directly follows a load into the loader,
+ * if the loader implements {@link LoadPredicatePushdown}. This runs after
+ * {@link PartitionFilterOptimizer}, so conditions on partition keys are
+ * handed to the loader as partition filters first.
+ * <p>
+ * If the loader implements {@link SplitStatisticsLoadFunc}, the comparisons
+ * in the filter are also kept on the load as a {@link StatisticsFilter}, so
+ * that splits which can't contain a matching record are not read.
+ */
+public class PredicatePushdownOptimizer extends Rule {
+    private static final Log LOG = LogFactory.getLog(PredicatePushdownOptimizer.class);
+
+    /**
+     * loads a predicate has been pushed into. A loader may keep the whole
+     * filter in the plan, so this keeps the rule from matching it again.
+     */
+    private Set<LOLoad> pushedLoads = new HashSet<LOLoad>();
+
+    public PredicatePushdownOptimizer(String name) {
+        super( name, false );
+    }
+
+    @Override
+    protected OperatorPlan buildPattern() {
+        LogicalPlan plan = new LogicalPlan();
+        LogicalRelationalOperator load = new LOLoad (null, plan);
+        plan.add( load );
+        return plan;
+    }
+
+    @Override
+    public Transformer getNewTransformer() {
+        return new PredicatePushDownTransformer();
+    }
+
+    private static final List<OpType> STATISTICS_OP_TYPES = Arrays.asList(
+            OpType.OP_EQ, OpType.OP_NE, OpType.OP_GT, OpType.OP_GE,
+            OpType.OP_LT, OpType.OP_LE, OpType.OP_AND, OpType.OP_OR);
+
+    public class PredicatePushDownTransformer extends Transformer {
+        private OperatorSubPlan subPlan;
+
+        private LOLoad loLoad;
+        private LOFilter loFilter;
+        private LoadPredicatePushdown loadPredicatePushdown;
+        private List<String> predicateFields;
+        private boolean splitStatistics;
+
+        /**
+         * a map between column names as reported by the loader and as
+         * present in {@link LOLoad#getSchema()}, and the reverse one. The
+         * two differ when the user has provided a schema in the load
+         * statement
+         */
+        private Map<String, String> colNameMap = new HashMap<String, String>();
+        private Map<String, String> reverseColNameMap = new HashMap<String, String>();
+
+        @Override
+        public boolean check(OperatorPlan matched) throws FrontendException {
+            loLoad = (LOLoad)matched.getSources().get(0);
+            if (pushedLoads.contains(loLoad)) {
+                return false;
+            }
+            // the filter has to be the only consumer of the load
+            List<Operator> succeds = currentPlan.getSuccessors( loLoad );
+            if( succeds == null || succeds.size() != 1 || !( succeds.get(0) instanceof LOFilter ) )
+                return false;
+            loFilter =  (LOFilter)succeds.get(0);
+
+            // Filter has dependency other than load, skip optimization
+            if (currentPlan.getSoftLinkPredecessors(loFilter)!=null)
+                return false;
+
+            LoadFunc loadFunc = loLoad.getLoadFunc();
+            splitStatistics = loadFunc instanceof SplitStatisticsLoadFunc;
+            if (loadFunc instanceof LoadPredicatePushdown) {
+                loadPredicatePushdown = (LoadPredicatePushdown)loadFunc;
+                try {
+                    predicateFields = loadPredicatePushdown.getPredicateFields(
+                            loLoad.getFileSpec().getFileName(), new Job( loLoad.getConfiguration() ));
+                } catch (IOException e) {
+                    throw new FrontendException( e );
+                }
+                if (predicateFields == null || predicateFields.isEmpty()) {
+                    loadPredicatePushdown = null;
+                }
+            }
+            return loadPredicatePushdown != null || splitStatistics;
+        }
+
+        @Override
+        public OperatorPlan reportChanges() {
+            return subPlan;
+        }
+
+        @Override
+        public void transform(OperatorPlan matched) throws FrontendException {
+            subPlan = new OperatorSubPlan( currentPlan );
+            pushedLoads.add(loLoad);
+
+            List<String> loaderFields = setupColNameMaps();
+
+            if (splitStatistics) {
+                setStatisticsFilter(loaderFields);
+            }
+            if (loadPredicatePushdown == null) {
+                return;
+            }
+
+            List<String> mappedFields = new ArrayList<String>(predicateFields.size());
+            for (String field : predicateFields) {
+                String mapped = colNameMap.get(field);
+                if (mapped != null) {
+                    mappedFields.add(mapped);
+                }
+            }
+            PredicatePushDownFilterExtractor filterFinder = new PredicatePushDownFilterExtractor(
+                    loFilter.getFilterPlan(), mappedFields,
+                    loadPredicatePushdown.getSupportedExpressionTypes());
+            filterFinder.visit();
+            Expression predicate = filterFinder.getPColCondition();
+            if (predicate == null) {
+                return;
+            }
+
+            updateMappedColNames(predicate);
+            boolean exact;
+            try {
+                exact = loadPredicatePushdown.setPushdownPredicate(predicate);
+            } catch (IOException e) {
+                throw new FrontendException( e );
+            }
+            LOG.info("Pushed predicate " + predicate + " into " + loLoad.getLoadFunc().getClass().getName()
+                    + (exact ? "" : ", filter is still evaluated"));
+            if (!exact) {
+                return;
+            }
+            if (filterFinder.isFilterRemovable()) {
+                currentPlan.removeAndReconnect( loFilter );
+            } else {
+                loFilter.setFilterPlan(filterFinder.getFilteredPlan());
+            }
+        }
+
+        private void setStatisticsFilter(List<String> loaderFields) throws FrontendException {
+            PredicatePushDownFilterExtractor filterFinder = new PredicatePushDownFilterExtractor(
+                    loFilter.getFilterPlan(), new ArrayList<String>(colNameMap.values()),
+                    STATISTICS_OP_TYPES);
+            filterFinder.visit();
+            Expression condition = filterFinder.getPColCondition();
+            if (condition == null) {
+                return;
+            }
+            updateMappedColNames(condition);
+            StatisticsFilter filter = StatisticsFilter.create(condition, loaderFields);
+            if (filter != null) {
+                LOG.info("Splits of " + loLoad.getFileSpec().getFileName()
+                        + " whose statistics can't match " + condition + " will be skipped");
+                loLoad.setStatisticsFilter(filter);
+            }
+        }
+
+        private void updateMappedColNames(Expression expr) {
+            if (expr instanceof BinaryExpression) {
+                updateMappedColNames(((BinaryExpression) expr).getLhs());
+                updateMappedColNames(((BinaryExpression) expr).getRhs());
+            } else if (expr instanceof Column) {
+                Column col = (Column) expr;
+                col.setName(reverseColNameMap.get(col.getName()));
+            }
+        }
+
+        /**
+         * @return the names of the fields as reported by the loader
+         */
+        private List<String> setupColNameMaps() throws FrontendException {
+            List<String> loaderFields = new ArrayList<String>();
+            LogicalSchema loLoadSchema = loLoad.getSchema();
+            LogicalSchema loadFuncSchema = loLoad.getDeterminedSchema();
+            if (loadFuncSchema == null) {
+                loadFuncSchema = loLoadSchema;
+            }
+            if (loadFuncSchema == null) {
+                return loaderFields;
+            }
+            for (int i = 0; i < loadFuncSchema.size(); i++) {
+                String loaderName = loadFuncSchema.getField(i).alias;
+                String planName = loLoadSchema != null && i < loLoadSchema.size() ?
+                        loLoadSchema.getField(i).alias : loaderName;
+                loaderFields.add(loaderName);
+                colNameMap.put(loaderName, planName);
+                reverseColNameMap.put(planName, loaderName);
+            }
+            return loaderFields;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pig.newplan.logical.rules;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.CollectableLoadFunc;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadMetadata;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.OperatorSubPlan;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionPlan;
+import org.apache.pig.newplan.logical.expression.ProjectExpression;
+import org.apache.pig.newplan.logical.relational.LOCogroup;
+import org.apache.pig.newplan.logical.relational.LOCogroup.GROUPTYPE;
+import org.apache.pig.newplan.logical.relational.LOFilter;
+import org.apache.pig.newplan.logical.relational.LOLoad;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.apache.pig.newplan.logical.relational.LogicalRelationalOperator;
+import org.apache.pig.newplan.logical.relational.LogicalSchema;
+import org.apache.pig.newplan.logical.relational.LogicalSchema.LogicalFieldSchema;
+import org.apache.pig.newplan.optimizer.Rule;
+import org.apache.pig.newplan.optimizer.Transformer;
+
+/**
+ * Rule: If a group has a single input, which is loaded, and possibly
+ * filtered, by a {@link CollectableLoadFunc} whose {@link LoadMetadata}
+ * schema says the data is sorted on the group columns, make it a collected
+ * group, as if the user had written <code>using 'collected'</code>. The
+ * group is then done in the map, without a shuffle.
+ * <p>
+ * The data only has to be sorted on the group columns in some order, as all
+ * instances of a key are then next to each other.
+ */
+public class SortedGroupOptimizer extends Rule {
+
+    private static final Log log = LogFactory.getLog(SortedGroupOptimizer.class);
+
+    public SortedGroupOptimizer(String name) {
+        super(name, false);
+    }
+
+    @Override
+    protected OperatorPlan buildPattern() {
+        LogicalPlan plan = new LogicalPlan();
+        LogicalRelationalOperator op = new LOCogroup(plan);
+        plan.add(op);
+        return plan;
+    }
+
+    @Override
+    public Transformer getNewTransformer() {
+        return new SortedGroupTransformer();
+    }
+
+    public class SortedGroupTransformer extends Transformer {
+
+        private LOCogroup group;
+
+        @Override
+        public boolean check(OperatorPlan matched) throws FrontendException {
+            group = (LOCogroup) matched.getSources().get(0);
+            if (group.getGroupType() != GROUPTYPE.REGULAR
+                    || group.getCustomPartitioner() != null) {
+                return false;
+            }
+            List<Operator> preds = currentPlan.getPredecessors(group);
+            if (preds == null || preds.size() != 1) {
+                return false;
+            }
+
+            // only filters, which keep the order, may be between the load
+            // and the group, and nothing else may read the data
+            Operator op = preds.get(0);
+            while (op instanceof LOFilter) {
+                if (!hasSingleSuccessor(op)) {
+                    return false;
+                }
+                op = currentPlan.getPredecessors(op).get(0);
+            }
+            if (!(op instanceof LOLoad) || !hasSingleSuccessor(op)) {
+                return false;
+            }
+            LOLoad load = (LOLoad) op;
+            LoadFunc loadFunc = load.getLoadFunc();
+            if (!(loadFunc instanceof CollectableLoadFunc) || !(loadFunc instanceof LoadMetadata)) {
+                return false;
+            }
+
+            Set<Integer> groupColumns = getGroupColumns(load);
+            if (groupColumns == null) {
+                return false;
+            }
+            ResourceSchema schema;
+            try {
+                schema = ((LoadMetadata) loadFunc).getSchema(load.getFileSpec().getFileName(),
+                        new Job(load.getConfiguration()));
+            } catch (IOException e) {
+                log.warn("Unable to get the sort keys of " + load.getFileSpec().getFileName()
+                        + ", " + e.getMessage());
+                return false;
+            }
+            if (schema == null || schema.getSortKeys() == null
+                    || schema.getSortKeys().length < groupColumns.size()) {
+                return false;
+            }
+            Set<Integer> leadingSortKeys = new HashSet<Integer>();
+            for (int i = 0; i < groupColumns.size(); i++) {
+                leadingSortKeys.add(schema.getSortKeys()[i]);
+            }
+            return leadingSortKeys.equals(groupColumns);
+        }
+
+        private boolean hasSingleSuccessor(Operator op) {
+            List<Operator> succs = currentPlan.getSuccessors(op);
+            return succs != null && succs.size() == 1
+                    && currentPlan.getSoftLinkSuccessors(op) == null;
+        }
+
+        /**
+         * @return the columns the group is on, or null if it isn't on
+         * columns the load gives as they are
+         */
+        private Set<Integer> getGroupColumns(LOLoad load) throws FrontendException {
+            Set<Integer> columns = new HashSet<Integer>();
+            for (LogicalExpressionPlan plan : group.getExpressionPlans().get(0)) {
+                if (plan.size() != 1 || !(plan.getSources().get(0) instanceof ProjectExpression)) {
+                    return null;
+                }
+                ProjectExpression project = (ProjectExpression) plan.getSources().get(0);
+                if (project.isRangeOrStarProject() || project.getColNum() < 0) {
+                    return null;
+                }
+                int column = project.getColNum();
+                // a column cast after the load may no longer be sorted
+                LogicalSchema scriptSchema = load.getScriptSchema();
+                LogicalSchema determinedSchema = load.getDeterminedSchema();
+                if (scriptSchema != null && determinedSchema != null) {
+                    LogicalFieldSchema scriptField = column < scriptSchema.size()
+                            ? scriptSchema.getField(column) : null;
+                    LogicalFieldSchema determinedField = column < determinedSchema.size()
+                            ? determinedSchema.getField(column) : null;
+                    if (scriptField == null || determinedField == null
+                            || scriptField.type != determinedField.type) {
+                        return null;
+                    }
+                }
+                columns.add(column);
+            }
+            return columns.isEmpty() ? null : columns;
+        }
+
+        @Override
+        public void transform(OperatorPlan matched) throws FrontendException {
+            log.info("Input of " + group.getAlias()
+                    + " is sorted on the group key, using a collected group");
+            group.setGroupType(GROUPTYPE.COLLECTED);
+        }
+
+        @Override
+        public OperatorPlan reportChanges() {
+            OperatorSubPlan subPlan = new OperatorSubPlan(currentPlan);
+            subPlan.add(group);
+            return subPlan;
+        }
+    }
+}
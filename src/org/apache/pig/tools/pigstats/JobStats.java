@@ -71,6 +71,12 @@ public abstract class JobStats extends Operator {
     protected long hdfsBytesRead = 0;
     protected long hdfsBytesWritten = 0;
 
+    protected long submitTime = -1;
+    protected long launchTime = -1;
+    protected long runStartTime = -1;
+    protected long runFinishTime = -1;
+    protected long finishTime = -1;
+
     private String errorMsg;
 
     private Exception exception = null;
@@ -130,6 +136,79 @@ public abstract class JobStats extends Operator {
         return hdfsBytesWritten;
     }
 
+    /**
+     * Returns the time the job was handed to Hadoop for submission,
+     * or -1 if unknown.
+     */
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    /**
+     * Returns the time the job was accepted by the cluster and got its id,
+     * or -1 if unknown.
+     */
+    public long getLaunchTime() {
+        return launchTime;
+    }
+
+    /**
+     * Returns the time the first task of the job started, or -1 if unknown.
+     */
+    public long getRunStartTime() {
+        return runStartTime;
+    }
+
+    /**
+     * Returns the time the last task of the job finished, or -1 if unknown.
+     */
+    public long getRunFinishTime() {
+        return runFinishTime;
+    }
+
+    /**
+     * Returns the time the job was seen complete, or -1 if unknown.
+     */
+    public long getFinishTime() {
+        return finishTime;
+    }
+
+    /**
+     * Returns the time spent submitting the job, in ms, or -1 if unknown.
+     */
+    public long getSubmitDuration() {
+        return duration(submitTime, launchTime);
+    }
+
+    /**
+     * Returns the time the job waited for its first task to start once
+     * submitted, in ms, or -1 if unknown.
+     */
+    public long getQueueDuration() {
+        return duration(launchTime, runStartTime);
+    }
+
+    /**
+     * Returns the time between the start of the first task of the job and
+     * the end of the last one, in ms, or -1 if unknown.
+     */
+    public long getRunDuration() {
+        return duration(runStartTime, runFinishTime);
+    }
+
+    /**
+     * Returns the time between the end of the last task of the job and the
+     * job being seen complete, which covers the commit of its output,
+     * in ms, or -1 if unknown.
+     */
+    public long getCommitDuration() {
+        return duration(runFinishTime, finishTime);
+    }
+
+    private static long duration(long from, long to) {
+        return (from < 0 || to < from) ? -1 : to - from;
+    }
+
     /**
      * Returns the total bytes written to user specified HDFS
      * locations of this job.
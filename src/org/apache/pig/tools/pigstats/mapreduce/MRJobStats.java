@@ -216,11 +216,20 @@ public final class MRJobStats extends JobStats {
             this.loads = (ArrayList<FileSpec>) ObjectSerializer.deserialize(conf
                     .get("pig.inputs"));
             this.disableCounter = conf.getBoolean("pig.disable.counter", false);
+            this.submitTime = conf.getLong("pig.job.submitted.timestamp", -1);
         } catch (IOException e) {
             LOG.warn("Failed to deserialize the store list", e);
         }
     }
 
+    void setLaunchTime(long launchTime) {
+        this.launchTime = launchTime;
+    }
+
+    void setFinishTime(long finishTime) {
+        this.finishTime = finishTime;
+    }
+
     void setMapStat(int size, long max, long min, long avg, long median) {
         numberMaps = size;
         maxMapTime = max;
@@ -338,6 +347,7 @@ public final class MRJobStats extends JobStats {
         } catch (IOException e) {
             LOG.warn("Failed to get map task report", e);
         }
+        updateRunTimes(maps);
         if (maps != null && maps.length > 0) {
             int size = maps.length;
             long max = 0;
@@ -371,6 +381,7 @@ public final class MRJobStats extends JobStats {
         } catch (IOException e) {
             LOG.warn("Failed to get reduce task report", e);
         }
+        updateRunTimes(reduces);
         if (reduces != null && reduces.length > 0) {
             int size = reduces.length;
             long max = 0;
@@ -398,6 +409,21 @@ public final class MRJobStats extends JobStats {
         }
     }
 
+    private void updateRunTimes(TaskReport[] reports) {
+        if (reports == null) {
+            return;
+        }
+        for (TaskReport rpt : reports) {
+            if (rpt.getStartTime() > 0 && (runStartTime < 0
+                    || rpt.getStartTime() < runStartTime)) {
+                runStartTime = rpt.getStartTime();
+            }
+            if (rpt.getFinishTime() > runFinishTime) {
+                runFinishTime = rpt.getFinishTime();
+            }
+        }
+    }
+
     void setAlias(MapReduceOper mro) {
         MRScriptState ss = MRScriptState.get();
         annotate(ALIAS, ss.getAlias(mro));
@@ -126,7 +126,11 @@ public class MRPigStatsUtil extends PigStatsUtil {
      */
     public static JobStats addJobStats(Job job) {
         SimplePigStats ps = (SimplePigStats)PigStats.get();
-        return ps.addMRJobStats(job);
+        MRJobStats js = ps.addMRJobStats(job);
+        if (js != null) {
+            js.setLaunchTime(System.currentTimeMillis());
+        }
+        return js;
     }
 
     /**
@@ -193,6 +197,7 @@ public class MRPigStatsUtil extends PigStatsUtil {
         if (js == null) {
             LOG.warn("unable to add failed job stats");
         } else {
+            js.setFinishTime(System.currentTimeMillis());
             js.setSuccessful(false);
             js.addOutputStatistics();
             js.addInputStatistics();
@@ -228,6 +233,7 @@ public class MRPigStatsUtil extends PigStatsUtil {
         if (js == null) {
             LOG.warn("unable to add job stats");
         } else {
+            js.setFinishTime(System.currentTimeMillis());
             js.setSuccessful(true);
 
             js.addMapReduceStatistics(ps.getJobClient(), job.getJobConf());
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.log4j.Logger;
+import org.apache.log4j.SimpleLayout;
+import org.apache.log4j.WriterAppender;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator.OriginalLocation;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.test.utils.GenPhyOp;
+import org.junit.Test;
+
+public class TestSkewedKeyDetector {
+
+    /**
+     * Every map task reports its own frequent key besides the skewed one,
+     * which is more keys than Hadoop allows counters for.
+     */
+    @Test
+    public void testManyReportedKeys() throws Exception {
+        File dir = File.createTempFile("skew", "");
+        dir.delete();
+        Configuration conf = new Configuration();
+        conf.set(SkewedKeyDetector.REPORT_DIR, dir.getAbsolutePath());
+        for (int task = 0; task < 200; task++) {
+            conf.set("mapred.task.id", String.format("attempt_201401011200_0001_m_%06d_0", task));
+            SkewedKeyDetector.report(getMapPlan(task), conf);
+        }
+
+        StringWriter log = new StringWriter();
+        WriterAppender appender = new WriterAppender(new SimpleLayout(), log);
+        Logger logger = Logger.getLogger(SkewedKeyDetector.class);
+        logger.addAppender(appender);
+        try {
+            SkewedKeyDetector.warn(conf, 4);
+        } finally {
+            logger.removeAppender(appender);
+        }
+        assertTrue(log.toString().contains("Key hot of a has 10000 of its 20000 records"));
+        assertFalse(log.toString().contains("Key task"));
+        assertFalse(dir.exists());
+    }
+
+    /**
+     * @return a map plan whose local rearrange has seen 100 records, half
+     * of them with the key hot and a fifth with a key of the task
+     */
+    private PhysicalPlan getMapPlan(int task) throws Exception {
+        DataBag db = BagFactory.getInstance().newDefaultBag();
+        for (int i = 0; i < 100; i++) {
+            String key = i % 2 == 0 ? "hot" : (i % 5 == 1 || i % 5 == 3 ? "task" + task : "k" + i);
+            db.add(TupleFactory.getInstance().newTuple(Arrays.<Object>asList(key, i)));
+        }
+        POLocalRearrange lr = GenPhyOp.topLocalRearrangeOPWithPlanPlain(0, 0, db.iterator().next());
+        lr.addOriginalLocation("a", new ArrayList<OriginalLocation>());
+        POProject proj = GenPhyOp.exprProject();
+        proj.setColumn(0);
+        proj.setResultType(DataType.TUPLE);
+        proj.setOverloaded(true);
+        proj.attachInput(TupleFactory.getInstance().newTuple(db));
+        List<PhysicalOperator> inputs = new ArrayList<PhysicalOperator>();
+        inputs.add(proj);
+        lr.setInputs(inputs);
+        lr.setKeySketchCapacity(SkewedKeyDetector.SKETCH_CAPACITY);
+        for (Result res = lr.getNextTuple(); res.returnStatus != POStatus.STATUS_EOP; res = lr.getNextTuple()) {
+        }
+        PhysicalPlan plan = new PhysicalPlan();
+        plan.add(lr);
+        return plan;
+    }
+}
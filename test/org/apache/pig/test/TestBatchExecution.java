@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.TupleBatch;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Add;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GreaterThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Multiply;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.NotEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POAnd;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.test.utils.GenPhyOp;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBatchExecution {
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    private DataBag input;
+
+    @Before
+    public void setUp() throws Exception {
+        Random r = new Random(42L);
+        input = BagFactory.getInstance().newDefaultBag();
+        for (int i = 0; i < 5000; i++) {
+            Tuple t = tf.newTuple(2);
+            t.set(0, r.nextInt(10) == 0 ? null : Integer.valueOf(r.nextInt(20)));
+            t.set(1, r.nextInt(10) == 0 ? null : Integer.valueOf(r.nextInt(20)));
+            input.add(t);
+        }
+    }
+
+    private static POProject project(int col) {
+        POProject p = GenPhyOp.exprProject(col);
+        p.setResultType(DataType.INTEGER);
+        return p;
+    }
+
+    /**
+     * Builds the plan for ($0 + $1 > 10) and ($0 != $1)
+     */
+    private static PhysicalPlan predicatePlan() throws Exception {
+        POProject p0 = project(0);
+        POProject p1 = project(1);
+        Add add = new Add(GenPhyOp.getOK());
+        add.setLhs(p0);
+        add.setRhs(p1);
+        add.setResultType(DataType.INTEGER);
+        ConstantExpression ten = GenPhyOp.exprConst();
+        ten.setValue(10);
+        ten.setResultType(DataType.INTEGER);
+        GreaterThanExpr gt = GenPhyOp.compGreaterThanExpr(add, ten, DataType.INTEGER);
+
+        POProject q0 = project(0);
+        POProject q1 = project(1);
+        NotEqualToExpr ne = new NotEqualToExpr(GenPhyOp.getOK());
+        ne.setLhs(q0);
+        ne.setRhs(q1);
+        ne.setOperandType(DataType.INTEGER);
+        POAnd and = GenPhyOp.compAndExpr(gt, ne);
+
+        PhysicalPlan plan = new PhysicalPlan();
+        plan.add(p0);
+        plan.add(p1);
+        plan.add(add);
+        plan.add(ten);
+        plan.add(gt);
+        plan.add(q0);
+        plan.add(q1);
+        plan.add(ne);
+        plan.add(and);
+        plan.connect(p0, add);
+        plan.connect(p1, add);
+        plan.connect(add, gt);
+        plan.connect(ten, gt);
+        plan.connect(q0, ne);
+        plan.connect(q1, ne);
+        plan.connect(gt, and);
+        plan.connect(ne, and);
+        return plan;
+    }
+
+    private POFilter filter(PhysicalPlan plan) {
+        POFilter filter = GenPhyOp.connectedFilterOp(GenPhyOp.topReadOp(input));
+        filter.setPlan(plan);
+        return filter;
+    }
+
+    private POForEach multiplyForEach(PhysicalOperator in) throws Exception {
+        POProject p0 = project(0);
+        POProject p1 = project(1);
+        Multiply mul = new Multiply(GenPhyOp.getOK());
+        mul.setLhs(p0);
+        mul.setRhs(p1);
+        mul.setResultType(DataType.INTEGER);
+        PhysicalPlan mulPlan = new PhysicalPlan();
+        mulPlan.add(p0);
+        mulPlan.add(p1);
+        mulPlan.add(mul);
+        mulPlan.connect(p0, mul);
+        mulPlan.connect(p1, mul);
+
+        POProject q1 = project(1);
+        PhysicalPlan projPlan = new PhysicalPlan();
+        projPlan.add(q1);
+
+        List<PhysicalPlan> plans = new ArrayList<PhysicalPlan>();
+        plans.add(mulPlan);
+        plans.add(projPlan);
+        List<Boolean> flattens = new ArrayList<Boolean>();
+        flattens.add(false);
+        flattens.add(false);
+        POForEach fe = new POForEach(GenPhyOp.getOK(), -1, plans, flattens);
+        List<PhysicalOperator> inputs = new ArrayList<PhysicalOperator>();
+        inputs.add(in);
+        fe.setInputs(inputs);
+        return fe;
+    }
+
+    private static List<Tuple> drainRows(PhysicalOperator op) throws Exception {
+        List<Tuple> out = new ArrayList<Tuple>();
+        while (true) {
+            Result res = op.getNextTuple();
+            if (res.returnStatus == POStatus.STATUS_EOP) {
+                return out;
+            }
+            assertEquals(POStatus.STATUS_OK, res.returnStatus);
+            out.add((Tuple) res.result);
+        }
+    }
+
+    private static List<Tuple> drainBatches(PhysicalOperator op, int batchSize) throws Exception {
+        List<Tuple> out = new ArrayList<Tuple>();
+        while (true) {
+            TupleBatch batch = op.getNextBatch(batchSize);
+            assertTrue(batch.size() <= batchSize);
+            for (int i = 0; i < batch.size(); i++) {
+                out.add(batch.get(i));
+            }
+            if (batch.isLast()) {
+                assertEquals(POStatus.STATUS_EOP, batch.returnStatus);
+                return out;
+            }
+        }
+    }
+
+    @Test
+    public void testVectorizedFilter() throws Exception {
+        POFilter filter = filter(predicatePlan());
+        assertTrue(filter.getPlan().supportsBatch());
+        List<Tuple> expected = drainRows(filter);
+        assertFalse(expected.isEmpty());
+
+        assertEquals(expected, drainBatches(filter(predicatePlan()), 100));
+    }
+
+    @Test
+    public void testFilterFallsBackToRowEvaluation() throws Exception {
+        POProject p0 = project(0);
+        POIsNull isNull = new POIsNull(GenPhyOp.getOK());
+        isNull.setExpr(p0);
+        isNull.setOperandType(DataType.INTEGER);
+        PhysicalPlan plan = new PhysicalPlan();
+        plan.add(p0);
+        plan.add(isNull);
+        plan.connect(p0, isNull);
+        assertFalse(plan.supportsBatch());
+
+        List<Tuple> actual = drainBatches(filter(plan), 64);
+        assertFalse(actual.isEmpty());
+        for (Tuple t : actual) {
+            assertEquals(null, t.get(0));
+        }
+    }
+
+    @Test
+    public void testForEachOverBatchFilter() throws Exception {
+        POForEach rowFe = multiplyForEach(filter(predicatePlan()));
+        List<Tuple> expected = drainRows(rowFe);
+
+        POForEach batchFe = multiplyForEach(filter(predicatePlan()));
+        assertTrue(batchFe.supportsBatch());
+        assertEquals(expected, drainBatches(batchFe, 333));
+    }
+
+    @Test
+    public void testRowConsumerOfBatchInput() throws Exception {
+        POForEach rowFe = multiplyForEach(filter(predicatePlan()));
+        List<Tuple> expected = drainRows(rowFe);
+
+        // the foreach itself runs in row mode, but pulls its input in batches
+        POForEach fe = multiplyForEach(filter(predicatePlan()));
+        fe.setBatchSize(50);
+        assertEquals(expected, drainRows(fe));
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.builtin.Bloom;
+import org.apache.pig.builtin.BuildBloom;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestBloomJoin {
+    private static String big;
+    private static String small;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        String[] bigInput = new String[500];
+        for (int i = 0; i < bigInput.length; i++) {
+            bigInput[i] = (i % 50) + "\t" + (i % 3) + "\tclick" + i;
+        }
+        String[] smallInput = new String[] { "1\t0\t10", "7\t1\t20", "7\t2\t30", "12\t0\t5",
+                "49\t1\t40", "80\t2\t50", "\t0\t60" };
+        big = load(Util.createInputFile("tmp", "bloombig", bigInput));
+        small = load(Util.createInputFile("tmp", "bloomsmall", smallInput));
+    }
+
+    private static String load(File f) {
+        return "'" + Util.encodeEscape(f.getAbsolutePath()) + "'";
+    }
+
+    private static MROperPlan compile(String query, Properties props) throws Exception {
+        PigContext pc = new PigContext(ExecType.LOCAL, props);
+        pc.connect();
+        return Util.buildMRPlan(query, pc);
+    }
+
+    private static MROperPlan compile(String query) throws Exception {
+        return compile(query, newProperties());
+    }
+
+    private static Properties newProperties() {
+        // the inputs are small enough for a replicated join
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_JOIN_AUTO_REPLICATED_MAX_BYTES, "0");
+        return props;
+    }
+
+    @Test
+    public void testFilteredInput() throws Exception {
+        MROperPlan plan = compile("a = load " + big + " as (x:int, y:int, z);"
+                + "b = load " + small + " as (x:int, y:int, w:int);"
+                + "c = filter b by w > 15;"
+                + "d = join a by x, c by x;"
+                + "store d into 'out';");
+        assertEquals(2, plan.size());
+        MapReduceOper bloomJob = plan.getRoots().get(0);
+        MapReduceOper joinJob = plan.getLeaves().get(0);
+        assertTrue(bloomJob.reducePlan.toString().contains(BuildBloom.class.getName()));
+        assertTrue(joinJob.mapPlan.toString().contains(Bloom.class.getName()));
+        assertEquals(joinJob, plan.getSuccessors(bloomJob).get(0));
+    }
+
+    @Test
+    public void testNotApplicable() throws Exception {
+        // the small input isn't filtered
+        assertEquals(1, compile("a = load " + big + " as (x:int, y:int, z);"
+                + "b = load " + small + " as (x:int, y:int, w:int);"
+                + "d = join a by x, b by x;"
+                + "store d into 'out';").size());
+        // the records without a match are kept
+        assertEquals(1, compile("a = load " + big + " as (x:int, y:int, z);"
+                + "b = load " + small + " as (x:int, y:int, w:int);"
+                + "c = filter b by w > 15;"
+                + "d = join a by x left, c by x;"
+                + "store d into 'out';").size());
+        // the inputs are about the same size
+        assertEquals(1, compile("a = load " + big + " as (x:int, y:int, z);"
+                + "b = filter a by y == 1;"
+                + "d = join a by x, b by x;"
+                + "store d into 'out';").size());
+        Properties props = newProperties();
+        props.setProperty(PigConfiguration.PIG_BLOOM_JOIN, "false");
+        assertEquals(1, compile("a = load " + big + " as (x:int, y:int, z);"
+                + "b = load " + small + " as (x:int, y:int, w:int);"
+                + "c = filter b by w > 15;"
+                + "d = join a by x, c by x;"
+                + "store d into 'out';", props).size());
+    }
+
+    @Test
+    public void testNondeterministicFilter() throws Exception {
+        // the bloom job would sample other records than the join
+        assertEquals(1, compile("a = load " + big + " as (x:int, y:int, z);"
+                + "b = load " + small + " as (x:int, y:int, w:int);"
+                + "c = filter b by RANDOM() < 0.5;"
+                + "d = join a by x, c by x;"
+                + "store d into 'out';").size());
+        assertEquals(1, compile("a = load " + big + " as (x:int, y:int, z);"
+                + "b = load " + small + " as (x:int, y:int, w:int);"
+                + "c = filter b by w > 15;"
+                + "e = foreach c generate x, RANDOM() as r;"
+                + "d = join a by x, e by x;"
+                + "store d into 'out';").size());
+    }
+
+    @Test
+    public void testResults() throws Exception {
+        String query = "a = load " + big + " as (x:int, y:int, z);"
+                + "b = load " + small + " as (x:int, y:int, w:int);"
+                + "c = filter b by w > 15;"
+                + "d = join c by x, a by x;";
+        List<String> expected = run(query, false);
+        assertEquals(3 * 10, expected.size());
+        assertEquals(expected, run(query, true));
+    }
+
+    @Test
+    public void testMultipleKeys() throws Exception {
+        String query = "a = load " + big + " as (x:int, y:int, z);"
+                + "b = load " + small + " as (x:int, y:int, w:int);"
+                + "c = filter b by w > 5;"
+                + "d = join a by (x, y), c by (x, y);";
+        List<String> expected = run(query, false);
+        assertEquals(14, expected.size());
+        assertEquals(expected, run(query, true));
+        // BuildBloom builds the whole filter in the reducer
+        assertEquals(expected, run(query, true, false));
+    }
+
+    @Test
+    public void testDateTimeKeys() throws Exception {
+        // the same instants in another time zone
+        String[] bigInput = new String[100];
+        for (int i = 0; i < bigInput.length; i++) {
+            bigInput[i] = String.format("2014-01-01T%02d:00:00.000+05:00\t%d", 5 + i % 10, i);
+        }
+        String[] smallInput = new String[] { "2014-01-01T01:00:00.000Z\t10",
+                "2014-01-01T03:00:00.000Z\t20", "2014-01-01T08:00:00.000Z\t5" };
+        String bigDates = load(Util.createInputFile("tmp", "bloombigdates", bigInput));
+        String smallDates = load(Util.createInputFile("tmp", "bloomsmalldates", smallInput));
+        String query = "a = load " + bigDates + " as (t:datetime, i:int);"
+                + "b = load " + smallDates + " as (t:datetime, w:int);"
+                + "c = filter b by w > 8;"
+                + "d = join c by t, a by t;";
+        assertEquals(1, compile(query + "store d into 'out';").size());
+        List<String> expected = run(query, false);
+        assertEquals(2 * 10, expected.size());
+        assertEquals(expected, run(query, true));
+    }
+
+    @Test
+    public void testEmptyFilteredInput() throws Exception {
+        String query = "a = load " + big + " as (x:int, y:int, z);"
+                + "b = load " + small + " as (x:int, y:int, w:int);"
+                + "c = filter b by w > 100;"
+                + "d = join a by x, c by x;";
+        assertEquals(0, run(query, true).size());
+    }
+
+    private List<String> run(String query, boolean bloomJoin) throws Exception {
+        return run(query, bloomJoin, true);
+    }
+
+    private List<String> run(String query, boolean bloomJoin, boolean combiner)
+            throws Exception {
+        Properties props = newProperties();
+        props.setProperty(PigConfiguration.OPT_FETCH, "false");
+        props.setProperty(PigConfiguration.PROP_NO_COMBINER, String.valueOf(!combiner));
+        props.setProperty(PigConfiguration.PIG_BLOOM_JOIN, String.valueOf(bloomJoin));
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        Util.registerMultiLineQuery(pigServer, query);
+        List<String> result = new ArrayList<String>();
+        for (Iterator<Tuple> it = pigServer.openIterator("d"); it.hasNext();) {
+            result.add(it.next().toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
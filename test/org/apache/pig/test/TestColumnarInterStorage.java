@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.ColumnarInterStorage;
+import org.apache.pig.impl.io.ColumnarRecordReader;
+import org.apache.pig.impl.io.ColumnarRecordWriter;
+import org.junit.Test;
+
+public class TestColumnarInterStorage {
+    private static TupleFactory tf = TupleFactory.getInstance();
+
+    private static List<Tuple> rows() throws Exception {
+        List<Tuple> rows = new ArrayList<Tuple>();
+        for (int i = 0; i < 2000; i++) {
+            // runs of equal values, a varying arity, nulls and complex types
+            int size = i % 7 == 0 ? 3 : 5;
+            Tuple t = tf.newTuple(size);
+            t.set(0, i);
+            t.set(1, "group" + (i / 100));
+            t.set(2, i % 3 == 0 ? null : Long.valueOf(i / 10));
+            if (size > 3) {
+                DataBag bag = BagFactory.getInstance().newDefaultBag();
+                bag.add(tf.newTuple((Object) ("b" + (i / 50))));
+                t.set(3, bag);
+                Map<String, Object> map = new HashMap<String, Object>();
+                map.put("k", i % 2);
+                t.set(4, map);
+            }
+            rows.add(t);
+        }
+        return rows;
+    }
+
+    private static List<Tuple> read(Path path, long length, long splitSize,
+            int[] requiredColumns, Configuration conf) throws Exception {
+        List<Tuple> result = new ArrayList<Tuple>();
+        for (long start = 0; start < length; start += splitSize) {
+            FileSplit split = new FileSplit(path, start, Math.min(splitSize, length - start), null);
+            ColumnarRecordReader reader = new ColumnarRecordReader();
+            reader.initialize(split, HadoopShims.createTaskAttemptContext(conf,
+                    HadoopShims.createTaskAttemptID("jt", 1, true, 1, 1)));
+            reader.setRequiredColumns(requiredColumns);
+            float lastProgress = 0;
+            while (reader.nextKeyValue()) {
+                result.add(reader.getCurrentValue());
+                assertTrue(reader.getProgress() >= lastProgress);
+                lastProgress = reader.getProgress();
+            }
+            reader.close();
+        }
+        return result;
+    }
+
+    @Test
+    public void testRecordWriterReader() throws Exception {
+        File file = File.createTempFile("test", "columnar");
+        Path path = new Path(file.getAbsolutePath());
+        Configuration conf = new Configuration();
+        conf.set("fs.default.name", "file:///");
+        List<Tuple> rows = rows();
+
+        for (String codec : new String[] { null, GzipCodec.class.getName() }) {
+            try {
+                file.delete();
+                // small row groups, so that the file has many of them
+                ColumnarRecordWriter writer = new ColumnarRecordWriter(path, codec, 1024, conf);
+                for (Tuple row : rows) {
+                    writer.write(null, row);
+                }
+                writer.close(null);
+
+                // the rows of each row group are read once, whatever the splits
+                for (long splitSize : new long[] { file.length(), 1000, 317 }) {
+                    assertEquals(rows, read(path, file.length(), splitSize, null, conf));
+                }
+
+                List<Tuple> expected = new ArrayList<Tuple>();
+                for (Tuple row : rows) {
+                    expected.add(tf.newTuple(new ArrayList<Object>(
+                            row.size() > 3 ? Arrays.asList(row.get(1), row.get(4))
+                                    : Arrays.asList(row.get(1), null))));
+                }
+                assertEquals(expected, read(path, file.length(), 500, new int[] { 1, 4 }, conf));
+                List<Tuple> empty = read(path, file.length(), 500, new int[0], conf);
+                assertEquals(rows.size(), empty.size());
+                assertEquals(0, empty.get(0).size());
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    // the split of b is stored in a temporary file, and the job reading it
+    // back only needs three of its columns
+    private static final String QUERY = "b = distinct a;"
+            + "c = foreach b generate $0, $3;"
+            + "d = group c by $0;"
+            + "e = foreach d generate group, SUM(c.$1);"
+            + "g = foreach b generate $1, $0;"
+            + "h = filter g by $1 > 0;"
+            + "i = group h by $1;"
+            + "j = foreach i generate group, COUNT(h);"
+            + "f = join e by $0, j by $0;";
+
+    private static Properties properties(boolean columnar) {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.OPT_FETCH, "false");
+        props.setProperty(PigConfiguration.PROP_NO_COMBINER, "true");
+        if (columnar) {
+            props.setProperty(PigConfiguration.PIG_ENABLE_TEMP_FILE_COMPRESSION, "true");
+            props.setProperty(PigConfiguration.PIG_TEMP_FILE_COMPRESSION_STORAGE, "columnar");
+            props.setProperty(PigConfiguration.PIG_TEMP_FILE_COMPRESSION_CODEC, "gz");
+        }
+        return props;
+    }
+
+    @Test
+    public void testTmpFileProjection() throws Exception {
+        PigContext pc = new PigContext(ExecType.LOCAL, properties(true));
+        pc.connect();
+        MROperPlan mrPlan = Util.buildMRPlan("a = load 'foo' as (a0, a1, a2, a3, a4);"
+                + QUERY + "store f into 'out';", pc);
+        List<String> tmpLoads = new ArrayList<String>();
+        for (MapReduceOper mr : mrPlan) {
+            for (PhysicalOperator root : mr.mapPlan.getRoots()) {
+                if (((POLoad) root).isTmpLoad()) {
+                    tmpLoads.add(((POLoad) root).getLFile().getFuncSpec().toString());
+                }
+            }
+        }
+        Collections.sort(tmpLoads);
+        // the join reads all the columns of its inputs
+        String storage = ColumnarInterStorage.class.getName();
+        assertEquals(Arrays.asList(storage, storage, storage + "('0,1,3')"), tmpLoads);
+    }
+
+    @Test
+    public void testMultiJobResults() throws Exception {
+        String[] input = new String[40];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (i % 4) + "\tx" + (i % 5) + "\t" + (i % 2) + "\t" + (i % 6) + "\ty";
+        }
+        File inputFile = Util.createInputFile("tmp", "columnar", input);
+        String query = "a = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (a0:int, a1, a2, a3:int, a4);" + QUERY;
+        List<String> expected = run(query, false);
+        assertEquals(3, expected.size());
+        assertEquals(expected, run(query, true));
+    }
+
+    private List<String> run(String query, boolean columnar) throws Exception {
+        PigServer pigServer = new PigServer(ExecType.LOCAL, properties(columnar));
+        Util.registerMultiLineQuery(pigServer, query);
+        List<String> result = new ArrayList<String>();
+        for (Iterator<Tuple> it = pigServer.openIterator("f"); it.hasNext();) {
+            result.add(it.next().toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.impl.io.SpillFiles;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Runs the bag tests with compressed spill files.
+ */
+public class TestCompressedSpillDataBag extends TestDataBag {
+
+    @BeforeClass
+    public static void setUpCodec() {
+        configure("gzip", true);
+    }
+
+    @AfterClass
+    public static void resetCodec() {
+        SpillFiles.configure(new Properties());
+    }
+
+    private static void configure(String codec, boolean readAhead) {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_SPILL_COMPRESSION_CODEC, codec);
+        props.setProperty(PigConfiguration.PIG_SPILL_READAHEAD, String.valueOf(readAhead));
+        SpillFiles.configure(props);
+    }
+
+    @Test
+    public void testCodecsRoundTrip() throws Exception {
+        String[] codecs = { "", "gzip", "snappy", DefaultCodec.class.getName() };
+        try {
+            for (String codec : codecs) {
+                configure(codec, true);
+                checkRoundTrip();
+                configure(codec, false);
+                checkRoundTrip();
+            }
+        } finally {
+            setUpCodec();
+        }
+    }
+
+    @Test
+    public void testManyOpenFiles() throws Exception {
+        configure("", true);
+        try {
+            File f = File.createTempFile("spill", null);
+            f.deleteOnExit();
+            DataOutputStream out = SpillFiles.create(f);
+            for (int i = 0; i < 100000; i++) {
+                out.writeInt(i);
+            }
+            out.close();
+
+            // more streams than get full size read ahead buffers
+            DataInputStream[] ins = new DataInputStream[200];
+            for (int j = 0; j < ins.length; j++) {
+                ins[j] = SpillFiles.open(f);
+            }
+            for (int i = 0; i < 100000; i++) {
+                for (DataInputStream in : ins) {
+                    assertEquals(i, in.readInt());
+                }
+            }
+            for (DataInputStream in : ins) {
+                assertEquals(-1, in.read());
+                in.close();
+            }
+            f.delete();
+        } finally {
+            setUpCodec();
+        }
+    }
+
+    private void checkRoundTrip() throws Exception {
+        File f = File.createTempFile("spill", null);
+        f.deleteOnExit();
+        // several read ahead buffers, and writes bigger than a buffer
+        byte[] big = new byte[100 * 1024];
+        new Random(3L).nextBytes(big);
+        DataOutputStream out = SpillFiles.create(f);
+        for (int i = 0; i < 100000; i++) {
+            out.writeInt(i);
+            out.writeUTF("value" + (i % 10));
+        }
+        out.write(big);
+        out.writeLong(-1L);
+        out.close();
+
+        DataInputStream in = SpillFiles.open(f);
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(i, in.readInt());
+            assertEquals("value" + (i % 10), in.readUTF());
+        }
+        byte[] read = new byte[big.length];
+        in.readFully(read);
+        assertEquals(new String(big, "ISO-8859-1"), new String(read, "ISO-8859-1"));
+        assertEquals(-1L, in.readLong());
+        try {
+            in.readByte();
+            throw new AssertionError("expected end of file");
+        } catch (EOFException e) {
+            // expected
+        }
+        in.close();
+        f.delete();
+    }
+}
@@ -29,6 +29,7 @@ import java.util.Random;
 import org.apache.pig.ResourceSchema;
 import org.apache.pig.ResourceSchema.ResourceFieldSchema;
 import org.apache.pig.builtin.PigStorage;
+import org.apache.pig.builtin.ToDate;
 import org.apache.pig.builtin.Utf8StorageConverter;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataByteArray;
@@ -474,4 +475,109 @@ public class TestConversions {
         convertedTuple = ps.getLoadCaster().bytesToTuple(tuple.toString().getBytes(), rfs);
         assertNull("Invalid cast to long: " + tuple.get(0) + " -> " + convertedTuple.get(0), convertedTuple.get(0));
     }
+
+    @Test
+    public void testBytesToNumbersMatchStringParsing() throws IOException {
+        Utf8StorageConverter caster = new Utf8StorageConverter();
+        String[] values = { "0", "-0", "7", "-7", " 42 ", "2147483647", "-2147483648", "2147483648",
+                "-2147483649", "9223372036854775807", "123456789012345678", "1234567890123456789",
+                "12L", "12l", "1.5", "-1.5", ".5", "5.", "1e3", "1E-3", "-2.5e+10", "1.0f", "3F",
+                "123456.789", "0.1", "0.30000000000000004", "1e22", "1e23", "1e-22", "1e-23",
+                "9007199254740993", "16777217", "3.4028235e38", "1e400", "NaN", "-Infinity", "0x10",
+                "1d", "+5", "1 2", "", " ", "-", "abc", "1e", "1.2.3" };
+        Random r = new Random(11L);
+        String[] random = new String[200];
+        for (int i = 0; i < random.length; i++) {
+            random[i] = (r.nextBoolean() ? "-" : "") + r.nextInt(100000) + "." + r.nextInt(100000)
+                    + (r.nextInt(4) == 0 ? "e" + (r.nextInt(40) - 20) : "");
+        }
+        for (String[] set : new String[][] { values, random }) {
+            for (String v : set) {
+                byte[] b = v.getBytes();
+                assertEquals(v, referenceDouble(v), caster.bytesToDouble(b));
+                assertEquals(v, referenceFloat(v), caster.bytesToFloat(b));
+                assertEquals(v, referenceInteger(v), caster.bytesToInteger(b));
+                assertEquals(v, referenceLong(v), caster.bytesToLong(b));
+
+                // the same value in the middle of a line
+                byte[] line = ("ab\t" + v + "\tcd").getBytes();
+                assertEquals(v, caster.bytesToDouble(b), caster.bytesToDouble(line, 3, b.length));
+                assertEquals(v, caster.bytesToInteger(b), caster.bytesToInteger(line, 3, b.length));
+                assertEquals(v, caster.bytesToLong(b), caster.bytesToLong(line, 3, b.length));
+            }
+        }
+        assertEquals(Boolean.TRUE, caster.bytesToBoolean("TrUe".getBytes()));
+        assertEquals(Boolean.FALSE, caster.bytesToBoolean("xfalsex".getBytes(), 1, 5));
+        assertNull(caster.bytesToBoolean("true ".getBytes()));
+    }
+
+    private static Double referenceDouble(String s) {
+        try {
+            return s.length() == 0 ? null : Double.valueOf(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Float referenceFloat(String s) {
+        if (s.endsWith("f") || s.endsWith("F")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            return s.length() == 0 ? null : Float.valueOf(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Integer referenceInteger(String s) {
+        try {
+            return Integer.valueOf(s.trim());
+        } catch (NumberFormatException e) {
+            Double d = referenceDouble(s.trim());
+            if (d == null || Double.compare(d, Integer.MAX_VALUE + 1.0) >= 0
+                    || Double.compare(d, Integer.MIN_VALUE - 1.0) <= 0) {
+                return null;
+            }
+            return d.intValue();
+        }
+    }
+
+    private static Long referenceLong(String s) {
+        s = s.trim();
+        if (s.endsWith("l") || s.endsWith("L")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            return Long.valueOf(s);
+        } catch (NumberFormatException e) {
+            Double d = referenceDouble(s);
+            if (d == null || Double.compare(d, Long.MAX_VALUE + 1.0) > 0
+                    || Double.compare(d, Long.MIN_VALUE - 1.0) < 0) {
+                return null;
+            }
+            return d.longValue();
+        }
+    }
+
+    @Test
+    public void testBytesToDateTimeMatchesIsoParser() throws IOException {
+        Utf8StorageConverter caster = new Utf8StorageConverter();
+        String[] values = { "2013-01-02", "2013-01-02T03:04", "2013-01-02T03:04:05",
+                "2013-01-02T03:04:05.6", "2013-01-02T03:04:05.678", "2013-01-02T03:04:05.678Z",
+                "2013-01-02T03:04:05.678+05:30", "2013-01-02T03:04:05-08:00", "2013-01-02T03:04Z",
+                "2013-01-02T03:04:05.678912", "2013-01-02T03", "2013-W01-1", "2013-02-30",
+                "2013-13-01", "2013-01-02T25:00", "2013-01-02 03:04", "20130102", "2013-01-02Z" };
+        for (String v : values) {
+            DateTime expected;
+            try {
+                expected = ToDate.extractDateTime(v);
+            } catch (IllegalArgumentException e) {
+                expected = null;
+            }
+            assertEquals(v, expected, caster.bytesToDateTime(v.getBytes()));
+            byte[] line = ("x" + v + "y").getBytes();
+            assertEquals(v, expected, caster.bytesToDateTime(line, 1, v.length()));
+        }
+    }
 }
@@ -27,7 +27,15 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 
 
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSort;
 import org.apache.pig.data.*;
+import org.apache.pig.impl.io.NullableBag;
+import org.apache.pig.impl.io.PigNullableWritable;
+import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.util.Spillable;
 import org.junit.After;
 import org.junit.Test;
@@ -516,6 +524,161 @@ public class TestDataBag  {
             bIter.hasNext());
     }
 
+    // Test merging spill files with and without background threads, with
+    // duplicates and a comparator of the bag.
+    @Test
+    public void testSortedMergeThreads() throws Exception {
+        Comparator<Tuple> desc = new Comparator<Tuple>() {
+            @Override
+            public int compare(Tuple t1, Tuple t2) {
+                return t2.compareTo(t1);
+            }
+        };
+        try {
+            for (String threads : new String[] { "0", "1", "4" }) {
+                Properties props = new Properties();
+                props.setProperty("pig.spill.merge.threads", threads);
+                SpillMerger.configure(props);
+
+                List<Tuple> rightAnswer = new ArrayList<Tuple>();
+                DataBag internal = new InternalSortedBag(desc);
+                TestMemoryManager mgr = new TestMemoryManager();
+                DataBag sorted = new LocalBagFactory(mgr).newSortedBag(desc);
+                for (int j = 0; j < 257; j++) {
+                    for (int i = 0; i < 100; i++) {
+                        Tuple t = TupleFactory.getInstance().newTuple(
+                                Arrays.<Object>asList(rand.nextInt(50), "v" + i));
+                        internal.add(t);
+                        sorted.add(t);
+                        rightAnswer.add(t);
+                    }
+                    // leave the last tuples in memory
+                    if (j != 256) {
+                        internal.spill();
+                        mgr.forceSpill();
+                    }
+                }
+                Collections.sort(rightAnswer, desc);
+
+                for (DataBag b : new DataBag[] { internal, sorted }) {
+                    assertEquals(rightAnswer.size(), b.size());
+                    Iterator<Tuple> it = b.iterator();
+                    for (Tuple t : rightAnswer) {
+                        assertTrue("bag ran out of tuples before answer", it.hasNext());
+                        assertEquals(0, desc.compare(t, it.next()));
+                    }
+                    assertFalse("right answer ran out of tuples before the bag",
+                            it.hasNext());
+                    // read it again, from the merged spill files
+                    it = b.iterator();
+                    for (Tuple t : rightAnswer) {
+                        assertEquals(0, desc.compare(t, it.next()));
+                    }
+                    assertFalse(it.hasNext());
+                }
+            }
+        } finally {
+            SpillMerger.configure(new Properties());
+        }
+    }
+
+    // Test merging more spill files than fit in one merge with the default
+    // comparator, which merges the groups of each level on several threads.
+    @Test
+    public void testSortedMergeLevelThreads() throws Exception {
+        try {
+            for (String threads : new String[] { "2", "4" }) {
+                Properties props = new Properties();
+                props.setProperty("pig.spill.merge.threads", threads);
+                SpillMerger.configure(props);
+
+                List<Tuple> rightAnswer = new ArrayList<Tuple>();
+                DataBag internal = new InternalSortedBag();
+                TestMemoryManager mgr = new TestMemoryManager();
+                DataBag sorted = new LocalBagFactory(mgr).newSortedBag(null);
+                for (int j = 0; j < 257; j++) {
+                    for (int i = 0; i < 100; i++) {
+                        Tuple t = TupleFactory.getInstance().newTuple(
+                                Arrays.<Object>asList(rand.nextInt(1000), "v" + i));
+                        internal.add(t);
+                        sorted.add(t);
+                        rightAnswer.add(t);
+                    }
+                    internal.spill();
+                    mgr.forceSpill();
+                }
+                Collections.sort(rightAnswer);
+
+                for (DataBag b : new DataBag[] { internal, sorted }) {
+                    assertEquals(rightAnswer.size(), b.size());
+                    Iterator<Tuple> it = b.iterator();
+                    for (Tuple t : rightAnswer) {
+                        assertTrue("bag ran out of tuples before answer", it.hasNext());
+                        assertEquals(t, it.next());
+                    }
+                    assertFalse("right answer ran out of tuples before the bag",
+                            it.hasNext());
+                    // read it again, from the merged spill files
+                    it = b.iterator();
+                    for (Tuple t : rightAnswer) {
+                        assertEquals(t, it.next());
+                    }
+                    assertFalse(it.hasNext());
+                }
+            }
+        } finally {
+            SpillMerger.configure(new Properties());
+        }
+    }
+
+    // Test merging more spill files than fit in one merge with the comparator
+    // of a nested ORDER BY, which evaluates one physical plan for all calls.
+    @Test
+    public void testSortedMergePlanComparator() throws Exception {
+        PhysicalPlan keyPlan = new PhysicalPlan();
+        POProject project = new POProject(new OperatorKey("", 1), -1, 0);
+        project.setResultType(DataType.INTEGER);
+        keyPlan.add(project);
+        POSort sort = new POSort(new OperatorKey("", 2), -1, null,
+                Arrays.asList(keyPlan), Arrays.asList(true), null);
+        Comparator<Tuple> comp = sort.new SortComparator();
+        try {
+            Properties props = new Properties();
+            props.setProperty("pig.spill.merge.threads", "4");
+            SpillMerger.configure(props);
+
+            List<Tuple> rightAnswer = new ArrayList<Tuple>();
+            DataBag internal = new InternalSortedBag(comp);
+            TestMemoryManager mgr = new TestMemoryManager();
+            DataBag sorted = new LocalBagFactory(mgr).newSortedBag(comp);
+            for (int j = 0; j < 257; j++) {
+                for (int i = 0; i < 100; i++) {
+                    Tuple t = TupleFactory.getInstance().newTuple(
+                            Arrays.<Object>asList(rand.nextInt(1000), "v" + i));
+                    internal.add(t);
+                    sorted.add(t);
+                    rightAnswer.add(t);
+                }
+                internal.spill();
+                mgr.forceSpill();
+            }
+            Collections.sort(rightAnswer);
+
+            for (DataBag b : new DataBag[] { internal, sorted }) {
+                assertEquals(rightAnswer.size(), b.size());
+                Iterator<Tuple> it = b.iterator();
+                for (Tuple t : rightAnswer) {
+                    assertTrue("bag ran out of tuples before answer", it.hasNext());
+                    assertEquals(t.get(0), it.next().get(0));
+                }
+                assertFalse("right answer ran out of tuples before the bag",
+                        it.hasNext());
+            }
+        } finally {
+            SpillMerger.configure(new Properties());
+        }
+    }
+
     // Test reading and writing distinct from memory, no spills.
     @Test
     public void testDistinctInMemory() throws Exception {
@@ -900,6 +1063,57 @@ public class TestDataBag  {
         assertEquals(bg4.size(), 0);        
     }
     
+    @Test
+    public void testInternalSerializedBag() throws Exception {
+        DataBag expected = new DefaultDataBag();
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("k", 1L);
+        for (int i = 0; i < 2000; i++) {
+            Tuple t = TupleFactory.getInstance().newTuple(4);
+            t.set(0, i);
+            t.set(1, "value" + i);
+            t.set(2, map);
+            DataBag inner = new DefaultDataBag();
+            inner.add(Util.createTuple(new String[] { "x" + i }));
+            t.set(3, inner);
+            expected.add(t);
+        }
+        // a tuple larger than the chunks the bag stores tuples in
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            large.append((char) ('a' + i % 26));
+        }
+        expected.add(TupleFactory.getInstance().newTuple(large.toString()));
+        expected.add(TupleFactory.getInstance().newTuple());
+
+        // all in memory, all on disk, and in memory then on disk
+        float[] percents = new float[] { 0.5f, 0.0f,
+                (float) (100000.0 / Runtime.getRuntime().maxMemory()) };
+        for (float percent : percents) {
+            DataBag bag = new InternalSerializedBag(1, percent);
+            for (Tuple t : expected) {
+                bag.add(t);
+            }
+            assertEquals(expected.size(), bag.size());
+            assertFalse(bag.isSorted());
+            assertFalse(bag.isDistinct());
+            // the bag can be read many times
+            for (int i = 0; i < 2; i++) {
+                Iterator<Tuple> expectedIter = expected.iterator();
+                Iterator<Tuple> iter = bag.iterator();
+                while (expectedIter.hasNext()) {
+                    assertTrue(iter.hasNext());
+                    assertEquals(expectedIter.next(), iter.next());
+                }
+                assertFalse(iter.hasNext());
+                assertFalse(iter.hasNext());
+            }
+            bag.clear();
+            assertEquals(0, bag.size());
+            assertFalse(bag.iterator().hasNext());
+        }
+    }
+
     public void testInternalSortedBag() throws Exception {    
     	
     	// check adding empty tuple
@@ -1123,6 +1337,87 @@ public class TestDataBag  {
         assertEquals(bg6, bg7);
     }
     
+    @Test
+    public void testInternalDistinctBagPartitions() throws Exception {
+        // all tuples go to disk, and the partitions have too many distinct
+        // tuples to be read whole
+        DataBag bag = new InternalDistinctBag(1, 0.0f);
+        DataBag sorted = new DistinctDataBag();
+        Set<Tuple> rightAnswer = new HashSet<Tuple>();
+        for (int j = 0; j < 2; j++) {
+            for (int i = 0; i < 40000; i++) {
+                Tuple t = TupleFactory.getInstance().newTuple(
+                        Arrays.<Object>asList(i % 20000, "v" + (i % 3)));
+                bag.add(t);
+                sorted.add(t);
+                rightAnswer.add(t);
+            }
+        }
+        assertEquals(rightAnswer.size(), bag.size());
+        for (int j = 0; j < 2; j++) {
+            Set<Tuple> read = new HashSet<Tuple>();
+            for (Tuple t : bag) {
+                assertTrue("tuple read twice: " + t, read.add(t));
+            }
+            assertEquals(rightAnswer, read);
+        }
+        assertEquals(sorted, bag);
+        assertEquals(bag, sorted);
+
+        // some tuples in memory, some on disk
+        bag = new InternalDistinctBag();
+        for (int j = 0; j < 3; j++) {
+            for (int i = 0; i < 100; i++) {
+                bag.add(TupleFactory.getInstance().newTuple(i % 50));
+            }
+            if (j != 2) {
+                bag.spill();
+            }
+        }
+        bag.add(TupleFactory.getInstance().newTuple(1000));
+        assertEquals(51, bag.size());
+        Set<Tuple> read = new HashSet<Tuple>();
+        for (Tuple t : bag) {
+            assertTrue("tuple read twice: " + t, read.add(t));
+        }
+        assertEquals(51, read.size());
+
+        bag.clear();
+        assertEquals(0, bag.size());
+        assertFalse(bag.iterator().hasNext());
+    }
+
+    @Test
+    public void testGroupByInternalDistinctBag() throws Exception {
+        // the nested distinct of one map task spills, the other doesn't,
+        // and they add the tuples in different orders
+        DataBag spilled = new InternalDistinctBag();
+        for (int i = 0; i < 200; i++) {
+            spilled.add(TupleFactory.getInstance().newTuple(i % 100));
+            if (i == 50) {
+                spilled.spill();
+            }
+        }
+        DataBag inMemory = new InternalDistinctBag();
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 99; i >= 0; i--) {
+            Tuple t = TupleFactory.getInstance().newTuple(i);
+            inMemory.add(t);
+            tuples.add(t);
+        }
+        assertEquals(spilled, inMemory);
+        assertEquals(spilled.hashCode(), inMemory.hashCode());
+        assertEquals(spilled.hashCode(), new NonSpillableDataBag(tuples).hashCode());
+
+        // so both groups go to the same reducer
+        HashPartitioner<PigNullableWritable, Writable> partitioner =
+                new HashPartitioner<PigNullableWritable, Writable>();
+        for (int reducers = 2; reducers <= 16; reducers++) {
+            assertEquals(partitioner.getPartition(new NullableBag(spilled), null, reducers),
+                    partitioner.getPartition(new NullableBag(inMemory), null, reducers));
+        }
+    }
+
     // See PIG-1231
     @Test
     public void testDataBagIterIdempotent() throws Exception {
@@ -1143,6 +1438,9 @@ public class TestDataBag  {
         
         DataBag bg5 = new InternalCachedBag(0, 0);
         processDataBag(bg5, false);
+
+        DataBag bg6 = new InternalSerializedBag(0, 0);
+        processDataBag(bg6, false);
     }
     
     // See PIG-1285
@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Divide;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GreaterThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Mod;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POAnd;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POBinCond;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONegative;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONot;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Subtract;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.CompiledExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.ExpressionCompiler;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.test.utils.GenPhyOp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestExpressionCompiler {
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    private DataBag input;
+
+    @Before
+    public void setUp() throws Exception {
+        Random r = new Random(17L);
+        input = BagFactory.getInstance().newDefaultBag();
+        for (int i = 0; i < 2000; i++) {
+            Tuple t = tf.newTuple(2);
+            t.set(0, r.nextInt(8) == 0 ? null : Double.valueOf(r.nextInt(10)));
+            t.set(1, r.nextInt(8) == 0 ? null : Double.valueOf(r.nextInt(5)));
+            input.add(t);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        PigMapReduce.sJobConfInternal.set(null);
+    }
+
+    private static void setCompileExpressions(boolean compile) {
+        Configuration conf = new Configuration(false);
+        conf.setBoolean(PigConfiguration.PIG_EXEC_COMPILE_EXPRESSIONS, compile);
+        PigMapReduce.sJobConfInternal.set(conf);
+    }
+
+    private static POProject project(int col) {
+        return project(col, DataType.DOUBLE);
+    }
+
+    private static POProject project(int col, byte type) {
+        POProject p = GenPhyOp.exprProject(col);
+        p.setResultType(type);
+        return p;
+    }
+
+    private static ConstantExpression constant(Object value, byte type) {
+        ConstantExpression c = GenPhyOp.exprConst();
+        c.setValue(value);
+        c.setResultType(type);
+        return c;
+    }
+
+    private static PhysicalPlan plan(ExpressionOperator leaf) throws Exception {
+        PhysicalPlan plan = new PhysicalPlan();
+        addWithInputs(plan, leaf);
+        return plan;
+    }
+
+    private static void addWithInputs(PhysicalPlan plan, PhysicalOperator op) throws Exception {
+        plan.add(op);
+        if (op.getInputs() != null) {
+            for (PhysicalOperator in : op.getInputs()) {
+                addWithInputs(plan, in);
+                plan.connect(in, op);
+            }
+        }
+    }
+
+    /**
+     * not ($0 / $1 > 1.5 and $0 is not null)
+     */
+    private static PhysicalPlan predicatePlan() throws Exception {
+        Divide div = new Divide(GenPhyOp.getOK());
+        div.setLhs(project(0));
+        div.setRhs(project(1));
+        div.setResultType(DataType.DOUBLE);
+        div.setInputs(list(div.getLhs(), div.getRhs()));
+        GreaterThanExpr gt = GenPhyOp.compGreaterThanExpr(div,
+                constant(1.5d, DataType.DOUBLE), DataType.DOUBLE);
+        gt.setInputs(list(gt.getLhs(), gt.getRhs()));
+
+        POIsNull isNull = new POIsNull(GenPhyOp.getOK());
+        isNull.setExpr(project(0));
+        isNull.setOperandType(DataType.DOUBLE);
+        isNull.setResultType(DataType.BOOLEAN);
+        isNull.setInputs(list(isNull.getExpr()));
+        PONot notNull = new PONot(GenPhyOp.getOK());
+        notNull.setExpr(isNull);
+        notNull.setResultType(DataType.BOOLEAN);
+        notNull.setInputs(list(isNull));
+
+        POAnd and = GenPhyOp.compAndExpr(gt, notNull);
+        and.setInputs(list(gt, notNull));
+        PONot not = new PONot(GenPhyOp.getOK());
+        not.setExpr(and);
+        not.setResultType(DataType.BOOLEAN);
+        not.setInputs(list(and));
+        return plan(not);
+    }
+
+    /**
+     * $0 is null ? -1.0 : $0 - $1
+     */
+    private static PhysicalPlan binCondPlan() throws Exception {
+        POIsNull isNull = new POIsNull(GenPhyOp.getOK());
+        isNull.setExpr(project(0));
+        isNull.setOperandType(DataType.DOUBLE);
+        isNull.setResultType(DataType.BOOLEAN);
+        isNull.setInputs(list(isNull.getExpr()));
+        Subtract sub = new Subtract(GenPhyOp.getOK());
+        sub.setLhs(project(0));
+        sub.setRhs(project(1));
+        sub.setResultType(DataType.DOUBLE);
+        sub.setInputs(list(sub.getLhs(), sub.getRhs()));
+        ConstantExpression minusOne = constant(-1.0d, DataType.DOUBLE);
+        POBinCond bc = new POBinCond(GenPhyOp.getOK(), -1, isNull, minusOne, sub);
+        bc.setResultType(DataType.DOUBLE);
+        bc.setInputs(list(isNull, minusOne, sub));
+        return plan(bc);
+    }
+
+    /**
+     * -$0 / $1 > 1 ? $0 % $1 : $0 - $1
+     */
+    private static PhysicalPlan integralPlan(byte type, Object one) throws Exception {
+        PONegative neg = new PONegative(GenPhyOp.getOK());
+        neg.setExpr(project(0, type));
+        neg.setResultType(type);
+        neg.setInputs(list(neg.getExpr()));
+        Divide div = new Divide(GenPhyOp.getOK());
+        div.setLhs(neg);
+        div.setRhs(project(1, type));
+        div.setResultType(type);
+        div.setInputs(list(div.getLhs(), div.getRhs()));
+        GreaterThanExpr gt = GenPhyOp.compGreaterThanExpr(div, constant(one, type), type);
+        gt.setInputs(list(gt.getLhs(), gt.getRhs()));
+        Mod mod = new Mod(GenPhyOp.getOK());
+        mod.setLhs(project(0, type));
+        mod.setRhs(project(1, type));
+        mod.setResultType(type);
+        mod.setInputs(list(mod.getLhs(), mod.getRhs()));
+        Subtract sub = new Subtract(GenPhyOp.getOK());
+        sub.setLhs(project(0, type));
+        sub.setRhs(project(1, type));
+        sub.setResultType(type);
+        sub.setInputs(list(sub.getLhs(), sub.getRhs()));
+        POBinCond bc = new POBinCond(GenPhyOp.getOK(), -1, gt, mod, sub);
+        bc.setResultType(type);
+        bc.setInputs(list(gt, mod, sub));
+        return plan(bc);
+    }
+
+    private static List<PhysicalOperator> list(PhysicalOperator... ops) {
+        List<PhysicalOperator> l = new ArrayList<PhysicalOperator>();
+        Collections.addAll(l, ops);
+        return l;
+    }
+
+    private POForEach forEach(PhysicalOperator in) throws Exception {
+        List<PhysicalPlan> plans = new ArrayList<PhysicalPlan>();
+        plans.add(binCondPlan());
+        plans.add(plan(project(1)));
+        List<Boolean> flattens = new ArrayList<Boolean>();
+        flattens.add(false);
+        flattens.add(false);
+        POForEach fe = new POForEach(GenPhyOp.getOK(), -1, plans, flattens);
+        fe.setInputs(list(in));
+        return fe;
+    }
+
+    private List<Tuple> run(boolean compile) throws Exception {
+        setCompileExpressions(compile);
+        POFilter filter = GenPhyOp.connectedFilterOp(GenPhyOp.topReadOp(input));
+        filter.setPlan(predicatePlan());
+        POForEach fe = forEach(filter);
+        List<Tuple> out = new ArrayList<Tuple>();
+        while (true) {
+            Result res = fe.getNextTuple();
+            if (res.returnStatus == POStatus.STATUS_EOP) {
+                return out;
+            }
+            assertEquals(POStatus.STATUS_OK, res.returnStatus);
+            out.add((Tuple) res.result);
+        }
+    }
+
+    @Test
+    public void testCompileAndEvaluate() throws Exception {
+        List<PhysicalPlan> plans = new ArrayList<PhysicalPlan>();
+        plans.add(predicatePlan());
+        plans.add(binCondPlan());
+        CompiledExpression[] compiled = ExpressionCompiler.compile(plans);
+        assertNotNull(compiled);
+
+        Tuple t = tf.newTuple(2);
+        t.set(0, 4.0d);
+        t.set(1, 2.0d);
+        assertEquals(Boolean.FALSE, compiled[0].evaluate(t));
+        assertEquals(2.0d, compiled[1].evaluate(t));
+        t.set(1, 0.0d);
+        // division by zero gives null, and so does the predicate
+        assertNull(compiled[0].evaluate(t));
+        t.set(0, null);
+        assertEquals(Boolean.TRUE, compiled[0].evaluate(t));
+        assertEquals(-1.0d, compiled[1].evaluate(t));
+    }
+
+    @Test
+    public void testCompileIntegers() throws Exception {
+        CompiledExpression[] compiled = ExpressionCompiler.compile(
+                Collections.singletonList(integralPlan(DataType.INTEGER, 1)));
+        assertNotNull(compiled);
+        assertEquals(-1, compiled[0].evaluate(tf.newTuple(Arrays.<Object>asList(-9, 2))));
+        assertEquals(7, compiled[0].evaluate(tf.newTuple(Arrays.<Object>asList(9, 2))));
+        assertNull(compiled[0].evaluate(tf.newTuple(Arrays.<Object>asList(9, 0))));
+    }
+
+    @Test
+    public void testCompileLongs() throws Exception {
+        CompiledExpression[] compiled = ExpressionCompiler.compile(
+                Collections.singletonList(integralPlan(DataType.LONG, 1L)));
+        assertNotNull(compiled);
+        assertEquals(-1L, compiled[0].evaluate(tf.newTuple(Arrays.<Object>asList(-9L, 2L))));
+        assertEquals(7L, compiled[0].evaluate(tf.newTuple(Arrays.<Object>asList(9L, 2L))));
+        assertNull(compiled[0].evaluate(tf.newTuple(Arrays.<Object>asList(9L, 0L))));
+    }
+
+    @Test
+    public void testCompiledMatchesInterpreted() throws Exception {
+        List<Tuple> expected = run(false);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, run(true));
+    }
+
+    @Test
+    public void testUnsupportedPlanIsInterpreted() throws Exception {
+        POProject star = GenPhyOp.exprProject(-1);
+        star.setStar(true);
+        star.setResultType(DataType.TUPLE);
+        assertFalse(ExpressionCompiler.isCompilable(plan(star)));
+        assertNull(ExpressionCompiler.compile(Collections.singletonList(plan(star))));
+    }
+}
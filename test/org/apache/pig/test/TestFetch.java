@@ -309,6 +309,26 @@ public class TestFetch {
         assertNotNull(received);
     }
 
+    @Test
+    public void test8() throws Exception {
+        // run the fetch pipeline in batch mode
+        pigServer.getPigContext().getProperties().setProperty(
+                PigConfiguration.PIG_EXEC_BATCH_SIZE, "2");
+
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(inputFile2.getAbsolutePath())
+                + "' using PigStorage(' ') as (a:int, b:int, c:chararray);");
+        pigServer.registerQuery("B = filter A by a + b > 4 and c != 'p';");
+        pigServer.registerQuery("C = foreach B generate a * 10, c;");
+        Iterator<Tuple> it = pigServer.openIterator("C");
+
+        String[] expected = { "(20,k)", "(30,n)", "(50,c)" };
+        for (String e : expected) {
+            assertTrue(it.hasNext());
+            assertEquals(e, it.next().toString());
+        }
+        assertFalse(it.hasNext());
+    }
+
     @AfterClass
     public static void tearDownOnce() throws Exception {
         inputFile1.delete();
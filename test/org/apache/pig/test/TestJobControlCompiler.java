@@ -63,6 +63,7 @@ import org.apache.pig.builtin.PigStorage;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.io.FileSpec;
 import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.util.JarManager;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -141,6 +142,41 @@ public class TestJobControlCompiler {
 
   }
 
+  /**
+   * tests that jobs whose job jars would have the same contents share one jar
+   * @throws Exception
+   */
+  @Test
+  public void testJobJarReused() throws Exception {
+    PigServer pigServer = new PigServer(ExecType.MAPREDUCE);
+    PigContext pigContext = pigServer.getPigContext();
+    pigContext.connect();
+    JobControlCompiler jobControlCompiler = new JobControlCompiler(pigContext, CONF);
+
+    MROperPlan plan = new MROperPlan();
+    MapReduceOper mro1 = new MapReduceOper(new OperatorKey("test", 1));
+    mro1.UDFs = new HashSet<String>();
+    mro1.UDFs.add(PigStorage.class.getName());
+    plan.add(mro1);
+    MapReduceOper mro2 = new MapReduceOper(new OperatorKey("test", 2));
+    mro2.UDFs = new HashSet<String>();
+    mro2.UDFs.add(PigStorage.class.getName() + "(',')");
+    plan.add(mro2);
+
+    Assert.assertEquals(JarManager.getJobJarKey(mro1.UDFs, pigContext),
+        JarManager.getJobJarKey(mro2.UDFs, pigContext));
+
+    JobControl jobControl = jobControlCompiler.compile(plan, "test");
+    Assert.assertEquals(2, jobControl.getWaitingJobs().size());
+    String jar1 = jobControl.getWaitingJobs().get(0).getJobConf().get("mapred.jar");
+    String jar2 = jobControl.getWaitingJobs().get(1).getJobConf().get("mapred.jar");
+    Assert.assertNotNull(jar1);
+    Assert.assertEquals(jar1, jar2);
+    Assert.assertTrue(new File(jar1).exists());
+    Assert.assertFalse("the shared job jar should not hold the pigContext",
+        jarContainsFileNamed(new File(jar1), "pigContext"));
+  }
+
     private static List<File> createFiles(String... extensions)
             throws IOException {
         List<File> files = new ArrayList<File>();
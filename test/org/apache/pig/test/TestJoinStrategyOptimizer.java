@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigConstants;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.logical.optimizer.LogicalPlanOptimizer;
+import org.apache.pig.newplan.logical.relational.LOForEach;
+import org.apache.pig.newplan.logical.relational.LOJoin;
+import org.apache.pig.newplan.logical.relational.LOJoin.JOINTYPE;
+import org.apache.pig.newplan.logical.relational.LOLoad;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestJoinStrategyOptimizer {
+    private static String big;
+    private static String small;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        String[] bigInput = new String[200];
+        for (int i = 0; i < bigInput.length; i++) {
+            bigInput[i] = (i % 20) + "\tclick" + i;
+        }
+        String[] smallInput = new String[] { "1\tx", "3\ty", "3\tz", "25\tw" };
+        big = load(Util.createInputFile("tmp", "strategybig", bigInput));
+        small = load(Util.createInputFile("tmp", "strategysmall", smallInput));
+    }
+
+    private static String load(File f) {
+        return "'" + Util.encodeEscape(f.getAbsolutePath()) + "'";
+    }
+
+    private static LOJoin optimize(String query, Properties props) throws Exception {
+        LogicalPlan plan = Util.buildLp(new PigServer(new PigContext(ExecType.LOCAL, props)),
+                query);
+        new LogicalPlanOptimizer(plan, 100, new HashSet<String>()).optimize();
+        Iterator<Operator> it = plan.getOperators();
+        while (it.hasNext()) {
+            Operator op = it.next();
+            if (op instanceof LOJoin) {
+                return (LOJoin) op;
+            }
+        }
+        throw new AssertionError("no join in " + query);
+    }
+
+    private static Properties hashOnly() {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_JOIN_AUTO_REPLICATED_MAX_BYTES, "0");
+        return props;
+    }
+
+    private static String loadOf(LOJoin join, int input) {
+        Operator op = join.getPlan().getPredecessors(join).get(input);
+        while (!(op instanceof LOLoad)) {
+            op = join.getPlan().getPredecessors(op).get(0);
+        }
+        return ((LOLoad) op).getFileSpec().getFileName();
+    }
+
+    @Test
+    public void testReplicated() throws Exception {
+        LOJoin join = optimize("a = load " + big + " as (x:int, z);"
+                + "b = load " + small + " as (x:int, w);"
+                + "c = join a by x, b by x; store c into 'out';", new Properties());
+        assertEquals(JOINTYPE.REPLICATED, join.getJoinType());
+        assertTrue(big.contains(loadOf(join, 0)));
+
+        // the largest input becomes the fragment
+        join = optimize("a = load " + big + " as (x:int, z);"
+                + "b = load " + small + " as (x:int, w);"
+                + "c = join b by x, a by x; store c into 'out';", new Properties());
+        assertEquals(JOINTYPE.REPLICATED, join.getJoinType());
+        assertTrue(big.contains(loadOf(join, 0)));
+        assertTrue(join.getPlan().getSuccessors(join).get(0) instanceof LOForEach);
+    }
+
+    @Test
+    public void testLargestInputLast() throws Exception {
+        LOJoin join = optimize("a = load " + big + " as (x:int, z);"
+                + "b = load " + small + " as (x:int, w);"
+                + "c = join a by x, b by x; store c into 'out';", hashOnly());
+        assertEquals(JOINTYPE.HASH, join.getJoinType());
+        assertTrue(big.contains(loadOf(join, 1)));
+        assertTrue(join.getPlan().getSuccessors(join).get(0) instanceof LOForEach);
+
+        join = optimize("a = load " + big + " as (x:int, z);"
+                + "b = load " + small + " as (x:int, w);"
+                + "c = join b by x, a by x; store c into 'out';", hashOnly());
+        assertEquals(JOINTYPE.HASH, join.getJoinType());
+        assertTrue(big.contains(loadOf(join, 1)));
+        assertTrue(!(join.getPlan().getSuccessors(join).get(0) instanceof LOForEach));
+    }
+
+    @Test
+    public void testNotApplicable() throws Exception {
+        // the user chose the strategy
+        LOJoin join = optimize("a = load " + big + " as (x:int, z);"
+                + "b = load " + small + " as (x:int, w);"
+                + "c = join a by x, b by x using 'hash'; store c into 'out';", new Properties());
+        assertEquals(JOINTYPE.HASH, join.getJoinType());
+        assertTrue(big.contains(loadOf(join, 0)));
+        // the size of an input is unknown
+        join = optimize("a = load 'doesnotexist' as (x:int, z);"
+                + "b = load " + small + " as (x:int, w);"
+                + "c = join a by x, b by x; store c into 'out';", new Properties());
+        assertEquals(JOINTYPE.HASH, join.getJoinType());
+        // the records of the small input without a match are kept
+        join = optimize("a = load " + big + " as (x:int, z);"
+                + "b = load " + small + " as (x:int, w);"
+                + "c = join b by x left, a by x; store c into 'out';", new Properties());
+        assertEquals(JOINTYPE.HASH, join.getJoinType());
+        assertTrue(big.contains(loadOf(join, 1)));
+    }
+
+    @Test
+    public void testCompressedInput() throws Exception {
+        String[] smallInput = new String[] { "1\tx", "3\ty", "3\tz", "25\tw" };
+        File gz = File.createTempFile("strategysmall", ".gz");
+        gz.deleteOnExit();
+        writeGzip(gz, smallInput);
+        LOJoin join = optimize("a = load " + big + " as (x:int, z);"
+                + "b = load " + load(gz) + " as (x:int, w);"
+                + "c = join a by x, b by x; store c into 'out';", new Properties());
+        assertEquals(JOINTYPE.HASH, join.getJoinType());
+        assertTrue(big.contains(loadOf(join, 1)));
+
+        // a directory of compressed part files
+        File dir = File.createTempFile("strategysmall", "");
+        dir.delete();
+        dir.mkdir();
+        File part = new File(dir, "part-m-00000.gz");
+        writeGzip(part, smallInput);
+        part.deleteOnExit();
+        dir.deleteOnExit();
+        join = optimize("a = load " + big + " as (x:int, z);"
+                + "b = load " + load(dir) + " as (x:int, w);"
+                + "c = join a by x, b by x; store c into 'out';", new Properties());
+        assertEquals(JOINTYPE.HASH, join.getJoinType());
+    }
+
+    private static void writeGzip(File f, String[] lines) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(f)), "UTF-8"));
+        try {
+            for (String line : lines) {
+                out.println(line);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testResults() throws Exception {
+        String query = "a = load " + big + " as (x:int, z);"
+                + "b = load " + small + " as (x:int, w);"
+                + "c = join a by x, b by x;"
+                + "d = foreach c generate a::z, b::w, b::x;";
+        List<String> expected = run(query, null);
+        assertEquals(30, expected.size());
+        assertEquals(expected, run(query, new Properties()));
+        assertEquals(expected, run(query, hashOnly()));
+
+        query = "a = load " + big + " as (x:int, z);"
+                + "b = load " + small + " as (x:int, w);"
+                + "c = join a by x right, b by x;"
+                + "d = foreach c generate a::z, b::w, b::x;";
+        expected = run(query, null);
+        assertEquals(31, expected.size());
+        assertEquals(expected, run(query, new Properties()));
+        assertEquals(expected, run(query, hashOnly()));
+    }
+
+    private List<String> run(String query, Properties props) throws Exception {
+        if (props == null) {
+            props = new Properties();
+            props.setProperty(PigConstants.PIG_OPTIMIZER_RULES_DISABLED_KEY,
+                    "JoinStrategyOptimizer");
+        }
+        props.setProperty(PigConfiguration.OPT_FETCH, "false");
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        Util.registerMultiLineQuery(pigServer, query);
+        List<String> result = new ArrayList<String>();
+        for (Iterator<Tuple> it = pigServer.openIterator("d"); it.hasNext();) {
+            result.add(it.next().toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.ResourceSchema.ResourceFieldSchema;
+import org.apache.pig.builtin.Utf8StorageConverter;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.LazyTextTuple;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.schema.Schema.FieldSchema;
+import org.junit.Test;
+
+public class TestLazyTextTuple {
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    private static class CountingCaster extends Utf8StorageConverter {
+        int casts = 0;
+
+        @Override
+        public Integer bytesToInteger(byte[] b) throws IOException {
+            casts++;
+            return super.bytesToInteger(b);
+        }
+    }
+
+    private static LazyTextTuple parse(String line, CountingCaster caster) throws Exception {
+        byte[] buf = line.getBytes("UTF-8");
+        LazyTextTuple t = new LazyTextTuple(buf, caster);
+        int start = 0;
+        for (int i = 0; i <= buf.length; i++) {
+            if (i == buf.length || buf[i] == ',') {
+                t.appendField(start, i);
+                start = i + 1;
+            }
+        }
+        return t;
+    }
+
+    private static ResourceFieldSchema intField() {
+        return new ResourceFieldSchema(new FieldSchema("i", DataType.INTEGER));
+    }
+
+    @Test
+    public void testFieldsReadOnAccess() throws Exception {
+        CountingCaster caster = new CountingCaster();
+        LazyTextTuple t = parse("1,abc,,42", caster);
+        t.setFieldSchema(0, intField());
+        t.setFieldSchema(3, intField());
+        assertEquals(4, t.size());
+        assertTrue(t.isUnread(0));
+
+        assertEquals(42, t.get(3));
+        assertEquals(1, caster.casts);
+        assertTrue(t.isUnread(0));
+        assertEquals(new DataByteArray("abc"), t.get(1));
+        assertNull(t.get(2));
+        assertEquals(42, t.get(3));
+        assertEquals(1, caster.casts);
+
+        t.set(0, 7);
+        assertFalse(t.isUnread(0));
+        assertEquals(7, t.get(0));
+        assertEquals(1, caster.casts);
+        t.append("x");
+        assertEquals(5, t.size());
+    }
+
+    @Test
+    public void testEqualsAndSerialization() throws Exception {
+        LazyTextTuple t = parse("1,abc,,42", new CountingCaster());
+        t.setFieldSchema(0, intField());
+        Tuple expected = tf.newTuple(4);
+        expected.set(0, 1);
+        expected.set(1, new DataByteArray("abc"));
+        expected.set(3, new DataByteArray("42"));
+        assertTrue(t.getMemorySize() > 0);
+        assertEquals(expected.hashCode(), t.hashCode());
+        assertEquals(expected, t);
+
+        LazyTextTuple unread = parse("1,abc,,42", new CountingCaster());
+        unread.setFieldSchema(0, intField());
+        InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        sedes.writeDatum(new DataOutputStream(baos), unread);
+        Object read = sedes.readDatum(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+        assertEquals(expected, read);
+    }
+
+    @Test
+    public void testPigStorage() throws Exception {
+        File input = Util.createInputFile("lazy", ".txt", new String[] {
+                "1\ta\t10\tx", "2\tb\t\ty", "3\tc\t30\tz", "4\t\t40" });
+        String path = Util.encodeEscape(input.getAbsolutePath());
+        List<Tuple> eager = run(path, false);
+        List<Tuple> lazy = run(path, true);
+        assertEquals(3, eager.size());
+        assertEquals(eager, lazy);
+    }
+
+    private List<Tuple> run(String path, boolean lazy) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_LOAD_LAZY_TUPLES, Boolean.toString(lazy));
+        props.setProperty(PigConfiguration.OPT_FETCH, "false");
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        pigServer.registerQuery("A = load '" + path + "' as (k:int, s:chararray, v:int, c);");
+        pigServer.registerQuery("B = filter A by k > 1;");
+        pigServer.registerQuery("C = foreach B generate k, s, v + 1, c;");
+        List<Tuple> out = new ArrayList<Tuple>();
+        for (Iterator<Tuple> it = pigServer.openIterator("C"); it.hasNext();) {
+            out.add(it.next());
+        }
+        return out;
+    }
+}
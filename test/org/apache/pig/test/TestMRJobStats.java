@@ -135,6 +135,49 @@ public class TestMRJobStats {
         assertTrue(msg.startsWith(ASSERT_STRING));
     }
 
+    @Test
+    public void testJobTimings() throws Exception {
+        TaskReport[] mapTaskReports = new TaskReport[2];
+        mapTaskReports[0] = Mockito.mock(TaskReport.class);
+        Mockito.when(mapTaskReports[0].getStartTime()).thenReturn(300L * ONE_THOUSAND);
+        Mockito.when(mapTaskReports[0].getFinishTime()).thenReturn(400L * ONE_THOUSAND);
+        // a task which never ran
+        mapTaskReports[1] = Mockito.mock(TaskReport.class);
+        Mockito.when(mapTaskReports[1].getStartTime()).thenReturn(0L);
+        Mockito.when(mapTaskReports[1].getFinishTime()).thenReturn(0L);
+
+        TaskReport[] reduceTaskReports = new TaskReport[1];
+        reduceTaskReports[0] = Mockito.mock(TaskReport.class);
+        Mockito.when(reduceTaskReports[0].getStartTime()).thenReturn(500L * ONE_THOUSAND);
+        Mockito.when(reduceTaskReports[0].getFinishTime()).thenReturn(700L * ONE_THOUSAND);
+
+        JobConf jobConf = new JobConf();
+        jobConf.setLong("pig.job.submitted.timestamp", 240L * ONE_THOUSAND);
+        JobClient jobClient = Mockito.mock(JobClient.class);
+
+        Mockito.when(jobClient.getMapTaskReports(jobID)).thenReturn(mapTaskReports);
+        Mockito.when(jobClient.getReduceTaskReports(jobID)).thenReturn(reduceTaskReports);
+
+        PigStats.JobGraph jobGraph = new PigStats.JobGraph();
+        MRJobStats jobStats = createJobStats("JobStatsTest", jobGraph);
+        assertEquals(-1, jobStats.getSubmitDuration());
+        assertEquals(-1, jobStats.getCommitDuration());
+
+        getJobStatsMethod("setId", JobID.class).invoke(jobStats, jobID);
+        jobStats.setConf(jobConf);
+        getJobStatsMethod("setLaunchTime", long.class).invoke(jobStats, 250L * ONE_THOUSAND);
+        getJobStatsMethod("addMapReduceStatistics", JobClient.class, Configuration.class)
+            .invoke(jobStats, jobClient, jobConf);
+        getJobStatsMethod("setFinishTime", long.class).invoke(jobStats, 710L * ONE_THOUSAND);
+
+        assertEquals(300L * ONE_THOUSAND, jobStats.getRunStartTime());
+        assertEquals(700L * ONE_THOUSAND, jobStats.getRunFinishTime());
+        assertEquals(10L * ONE_THOUSAND, jobStats.getSubmitDuration());
+        assertEquals(50L * ONE_THOUSAND, jobStats.getQueueDuration());
+        assertEquals(400L * ONE_THOUSAND, jobStats.getRunDuration());
+        assertEquals(10L * ONE_THOUSAND, jobStats.getCommitDuration());
+    }
+
     @Test
     public void testOneTaskReport() throws Exception {
         // setting up one map task report
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.OffHeapTupleMap;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.junit.Test;
+
+public class TestOffHeapTupleMap {
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    private static Tuple tuple(Object... fields) {
+        Tuple t = tf.newTuple(fields.length);
+        for (int i = 0; i < fields.length; i++) {
+            try {
+                t.set(i, fields[i]);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return t;
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        OffHeapTupleMap map = new OffHeapTupleMap();
+        // enough keys to rehash the index, and enough data for several chunks
+        for (int i = 0; i < 20000; i++) {
+            map.put(tuple(i % 5000), tuple(i, "value" + i, new DataByteArray("b" + i)));
+        }
+        assertEquals(5000, map.size());
+        assertEquals(20000, map.getNumValues());
+        assertTrue(map.getMemorySize() > 0);
+
+        for (int k = 0; k < 5000; k++) {
+            List<Tuple> values = map.get(tuple(k));
+            assertEquals(4, values.size());
+            for (int j = 0; j < 4; j++) {
+                int i = k + j * 5000;
+                assertEquals(tuple(i, "value" + i, new DataByteArray("b" + i)), values.get(j));
+            }
+        }
+        assertNull(map.get(tuple(5000)));
+        // same value, different type
+        assertNull(map.get(tuple(1L)));
+    }
+
+    @Test
+    public void testTupleKeys() throws Exception {
+        OffHeapTupleMap map = new OffHeapTupleMap();
+        map.put(tuple(tuple("a", 1)), tuple("x"));
+        map.put(tuple(tuple("a", 2)), tuple("y"));
+        map.put(tuple(tuple("a", 1)), tuple("z"));
+
+        List<Tuple> values = map.get(tuple(tuple("a", 1)));
+        assertEquals(2, values.size());
+        assertEquals(tuple("x"), values.get(0));
+        assertEquals(tuple("z"), values.get(1));
+        assertEquals(1, map.get(tuple(tuple("a", 2))).size());
+    }
+
+    @Test
+    public void testWriteAndMap() throws Exception {
+        OffHeapTupleMap map = new OffHeapTupleMap();
+        for (int i = 0; i < 20000; i++) {
+            map.put(tuple("k" + (i % 3000)), tuple(i, "value" + i));
+        }
+        File file = File.createTempFile("offheap", ".tbl");
+        file.deleteOnExit();
+        map.writeTo(file);
+
+        OffHeapTupleMap mapped = OffHeapTupleMap.map(file);
+        assertEquals(map.size(), mapped.size());
+        assertEquals(map.getNumValues(), mapped.getNumValues());
+        for (int k = 0; k < 3000; k++) {
+            assertEquals(map.get(tuple("k" + k)), mapped.get(tuple("k" + k)));
+        }
+        assertNull(mapped.get(tuple("k3000")));
+    }
+
+    @Test
+    public void testReplicatedJoinOffHeap() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_JOIN_REPLICATED_OFFHEAP, "true");
+        checkReplicatedJoin(props);
+    }
+
+    @Test
+    public void testReplicatedJoinMapped() throws Exception {
+        File dir = File.createTempFile("mmap", "");
+        dir.delete();
+        dir.mkdir();
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_JOIN_REPLICATED_MMAP, "true");
+        props.setProperty(PigConfiguration.PIG_JOIN_REPLICATED_MMAP_DIR, dir.getAbsolutePath());
+        checkReplicatedJoin(props);
+        boolean sawTable = false;
+        for (File f : dir.listFiles()) {
+            sawTable |= f.getName().endsWith(".tbl");
+            f.delete();
+        }
+        dir.delete();
+        assertTrue(sawTable);
+    }
+
+    @Test
+    public void testReplicatedJoinMappedWithoutDirectory() throws Exception {
+        File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        int tables = countTables(tmpDir);
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_JOIN_REPLICATED_MMAP, "true");
+        checkReplicatedJoin(props);
+        // no file is left where nothing would remove it
+        assertEquals(tables, countTables(tmpDir));
+    }
+
+    private int countTables(File dir) {
+        int tables = 0;
+        for (String name : dir.list()) {
+            if (name.startsWith("pigrepl-")) {
+                tables++;
+            }
+        }
+        return tables;
+    }
+
+    private void checkReplicatedJoin(Properties props) throws Exception {
+        File left = Util.createInputFile("left", ".txt",
+                new String[] { "1\ta", "2\tb", "3\tc", "1\td" });
+        File right = Util.createInputFile("right", ".txt",
+                new String[] { "1\tx", "1\ty", "3\tz", "4\tw" });
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(left.getAbsolutePath())
+                + "' as (k:int, v:chararray);");
+        pigServer.registerQuery("B = load '" + Util.encodeEscape(right.getAbsolutePath())
+                + "' as (k:int, w:chararray);");
+        pigServer.registerQuery("C = join A by k, B by k using 'replicated';");
+
+        List<Tuple> actual = new ArrayList<Tuple>();
+        for (Iterator<Tuple> it = pigServer.openIterator("C"); it.hasNext();) {
+            actual.add(it.next());
+        }
+        List<Tuple> expected = Util.getTuplesFromConstantTupleStrings(new String[] {
+                "(1,'a',1,'x')", "(1,'a',1,'y')", "(3,'c',3,'z')",
+                "(1,'d',1,'x')", "(1,'d',1,'y')" });
+        Util.checkQueryOutputsAfterSort(actual.iterator(), expected);
+    }
+}
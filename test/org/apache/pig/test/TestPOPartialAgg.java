@@ -19,8 +19,12 @@ package org.apache.pig.test;
 
 import static org.junit.Assert.*;
 
+import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.pig.FuncSpec;
@@ -34,9 +38,14 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartialAgg;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PartialAggHashTable;
+import org.apache.pig.builtin.COUNT;
+import org.apache.pig.builtin.DoubleMax;
+import org.apache.pig.builtin.IntAvg;
 import org.apache.pig.builtin.IntSum;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.plan.PlanException;
 import org.apache.pig.parser.ParserException;
 import org.apache.pig.test.utils.GenPhyOp;
@@ -60,6 +69,12 @@ public class TestPOPartialAgg {
     }
 
     private void createPOPartialPlan(int valueCount) throws PlanException {
+        String[] intermediates = new String[valueCount];
+        Arrays.fill(intermediates, IntSum.Intermediate.class.getName());
+        createPOPartialPlan(DataType.INTEGER, intermediates);
+    }
+
+    private void createPOPartialPlan(byte keyType, String... intermediates) throws PlanException {
         parentPlan = new PhysicalPlan();
         partAggOp = GenPhyOp.topPOPartialAgg();
         partAggOp.setParentPlan(parentPlan);
@@ -67,14 +82,14 @@ public class TestPOPartialAgg {
         // setup key plan
         PhysicalPlan keyPlan = new PhysicalPlan();
         POProject keyProj = new POProject(GenPhyOp.getOK(), -1, 0);
-        keyProj.setResultType(DataType.INTEGER);
+        keyProj.setResultType(keyType);
         keyPlan.add(keyProj);
         partAggOp.setKeyPlan(keyPlan);
 
         // setup value plans
         List<PhysicalPlan> valuePlans = new ArrayList<PhysicalPlan>();
         
-        for (int i = 0; i < valueCount; i++) {
+        for (int i = 0; i < intermediates.length; i++) {
             // project arg for udf
             PhysicalPlan valPlan = new PhysicalPlan();
             POProject projVal1 = new POProject(GenPhyOp.getOK(), -1, i + 1);
@@ -84,7 +99,7 @@ public class TestPOPartialAgg {
             // setup udf
             List<PhysicalOperator> udfInps = new ArrayList<PhysicalOperator>();
             udfInps.add(projVal1);
-            FuncSpec sumSpec = new FuncSpec(IntSum.Intermediate.class.getName());
+            FuncSpec sumSpec = new FuncSpec(intermediates[i]);
             POUserFunc sumUdf = new POUserFunc(GenPhyOp.getOK(), -1, udfInps,
                     sumSpec);
             valPlan.add(sumUdf);
@@ -272,6 +287,107 @@ public class TestPOPartialAgg {
     }
     
     
+    @Test
+    public void testPrimitiveTableMatchesMaps() throws Exception {
+        // chararray keys, with COUNT, MAX of doubles and AVG of ints
+        Random r = new Random(7L);
+        List<Tuple> inputs = new ArrayList<Tuple>();
+        TupleFactory tf = TupleFactory.getInstance();
+        for (int i = 0; i < 5000; i++) {
+            Tuple t = tf.newTuple(4);
+            t.set(0, r.nextInt(20) == 0 ? null : "k" + r.nextInt(50));
+            t.set(1, tf.newTuple(Long.valueOf(r.nextInt(2))));
+            t.set(2, tf.newTuple(r.nextInt(5) == 0 ? null : Double.valueOf(r.nextDouble())));
+            Tuple avg = tf.newTuple(2);
+            boolean isNull = r.nextInt(5) == 0;
+            avg.set(0, isNull ? null : Long.valueOf(r.nextInt(100)));
+            avg.set(1, isNull ? 0L : 1L);
+            t.set(3, avg);
+            inputs.add(t);
+        }
+
+        List<Tuple> expected = runPartialAgg(inputs, false);
+        List<Tuple> actual = runPartialAgg(inputs, true);
+        assertEquals(51, actual.size());
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testPrimitiveTableMemorySize() throws Exception {
+        PartialAggHashTable table = new PartialAggHashTable(DataType.LONG,
+                new PartialAggHashTable.Aggregate[] { PartialAggHashTable.Aggregate.LONG_SUM },
+                new int[] { 1 });
+        long emptySize = table.getMemorySize();
+        assertTrue(emptySize > 0);
+        TupleFactory tf = TupleFactory.getInstance();
+        for (long i = 0; i < 100000; i++) {
+            table.add(i, tf.newTuple(Arrays.<Object>asList(i, tf.newTuple(1L))));
+        }
+        assertEquals(100000, table.size());
+        // 8 bytes for the key, 8 for the sum, 1 for the null flag, 8 for the index
+        assertTrue(table.getMemorySize() >= 100000L * 25);
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(emptySize, table.getMemorySize());
+    }
+
+    @Test
+    public void testPrimitiveTableAggregatesAfterFlush() throws Exception {
+        createPOPartialPlan(DataType.INTEGER, IntSum.Intermediate.class.getName());
+        Configuration conf = new Configuration();
+        conf.setBoolean(PigConfiguration.PARTAGG_PRIMITIVE_TABLE, true);
+        PigMapReduce.sJobConfInternal.set(conf);
+
+        TupleFactory tf = TupleFactory.getInstance();
+        List<Tuple> outputs = new ArrayList<Tuple>();
+        long total = 0;
+        // 10000 distinct keys fill the table past its limit once, then
+        // 100000 rows of 100 keys fit in it
+        for (int i = 0; i < 110000; i++) {
+            int key = i < 10000 ? i : i % 100;
+            partAggOp.attachInput(tf.newTuple(Arrays.<Object>asList(key, tf.newTuple(1L))));
+            while (addResults(partAggOp.getNextTuple(), outputs)) {
+            }
+            if (i == 0) {
+                Field limit = POPartialAgg.class.getDeclaredField("aggTableMemLimit");
+                limit.setAccessible(true);
+                limit.setLong(partAggOp, 200000L);
+            }
+            total++;
+        }
+        parentPlan.endOfAllInput = true;
+        while (addResults(partAggOp.getNextTuple(), outputs)) {
+        }
+
+        long sum = 0;
+        for (Tuple t : outputs) {
+            sum += (Long) ((Tuple) t.get(1)).get(0);
+        }
+        assertEquals(total, sum);
+        assertTrue("rows were not aggregated after the first flush: " + outputs.size(),
+                outputs.size() < 11000);
+    }
+
+    private List<Tuple> runPartialAgg(List<Tuple> inputs, boolean primitive) throws Exception {
+        createPOPartialPlan(DataType.CHARARRAY, COUNT.Intermediate.class.getName(),
+                DoubleMax.Intermediate.class.getName(), IntAvg.Intermediate.class.getName());
+        Configuration conf = new Configuration();
+        conf.setBoolean(PigConfiguration.PARTAGG_PRIMITIVE_TABLE, primitive);
+        PigMapReduce.sJobConfInternal.set(conf);
+
+        List<Tuple> outputs = new ArrayList<Tuple>();
+        for (Tuple t : inputs) {
+            partAggOp.attachInput(t);
+            addResults(partAggOp.getNextTuple(), outputs);
+        }
+        parentPlan.endOfAllInput = true;
+        while (addResults(partAggOp.getNextTuple(), outputs)) {
+        }
+        return outputs;
+    }
+
     /**
      * run the plan on inputTups and check if output matches outputTups if
      * isMapMemEmpty is set to true, set memory available for the hash-map to
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestParallelMapPipeline {
+    private static final int ROWS = 5000;
+
+    private static File input;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        String[] lines = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            lines[i] = i + "\tvalue" + (i % 7);
+        }
+        input = Util.createInputFile("parallel", ".txt", lines);
+    }
+
+    private static List<Tuple> run(int threads, String... queries) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_EXEC_MAP_THREADS, String.valueOf(threads));
+        props.setProperty(PigConfiguration.PIG_EXEC_MAP_THREADS_BATCH_SIZE, "64");
+        // run map only plans as map reduce jobs too
+        props.setProperty(PigConfiguration.OPT_FETCH, "false");
+        props.setProperty("pig.exec.nocombiner", "true");
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(input.getAbsolutePath())
+                + "' as (k:int, v:chararray);");
+        for (String query : queries) {
+            pigServer.registerQuery(query);
+        }
+        List<Tuple> out = new ArrayList<Tuple>();
+        for (Iterator<Tuple> it = pigServer.openIterator("R"); it.hasNext();) {
+            out.add(it.next());
+        }
+        return out;
+    }
+
+    private static void check(String... queries) throws Exception {
+        List<Tuple> expected = run(1, queries);
+        List<Tuple> actual = run(4, queries);
+        Util.checkQueryOutputsAfterSort(actual.iterator(), expected);
+    }
+
+    @Test
+    public void testMapOnly() throws Exception {
+        check("B = foreach A generate k, UPPER(v) as v;",
+                "R = filter B by k % 3 == 0 and SIZE(v) > 0;");
+    }
+
+    @Test
+    public void testMapReduce() throws Exception {
+        check("B = filter A by INDEXOF(v, '3', 0) < 0;",
+                "C = foreach B generate UPPER(v) as v, k;",
+                "D = group C by v;",
+                "R = foreach D generate group, COUNT(C), SUM(C.k);");
+        assertEquals(6, run(4, "B = filter A by INDEXOF(v, '3', 0) < 0;",
+                "C = foreach B generate UPPER(v) as v, k;",
+                "D = group C by v;",
+                "R = foreach D generate group, COUNT(C);").size());
+    }
+}
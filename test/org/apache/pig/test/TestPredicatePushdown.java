@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.pig.ExecType;
+import org.apache.pig.Expression;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadMetadata;
+import org.apache.pig.LoadPredicatePushdown;
+import org.apache.pig.PigServer;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.ResourceStatistics;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+import org.apache.pig.impl.util.Utils;
+import org.apache.pig.newplan.FilterExtractor;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.logical.expression.LogicalExpression;
+import org.apache.pig.newplan.logical.optimizer.LogicalPlanOptimizer;
+import org.apache.pig.newplan.logical.relational.LOFilter;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.apache.pig.parser.ParserException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPredicatePushdown {
+    static PigContext pc = new PigContext(ExecType.LOCAL, new Properties());
+
+    private static final String SCHEMA = "id:int, name:chararray, age:int, dt:chararray";
+
+    @Before
+    public void setUp() {
+        TestLoader.predicate = null;
+        TestLoader.partitionFilter = null;
+    }
+
+    private static String load(String predicateFields, boolean exact, String ops) {
+        return "a = load 'foo' using " + TestLoader.class.getName() + "('" + SCHEMA
+                + "', '" + predicateFields + "', '" + exact + "', '" + ops + "');";
+    }
+
+    private LogicalPlan optimize(String query) throws Exception {
+        LogicalPlan plan = Util.buildLp(new PigServer(pc), query);
+        new LogicalPlanOptimizer(plan, 100, null).optimize();
+        return plan;
+    }
+
+    private static String filterCondition(LogicalPlan plan) throws Exception {
+        Operator store = plan.getSinks().get(0);
+        Operator pred = plan.getPredecessors(store).get(0);
+        if (!(pred instanceof LOFilter)) {
+            return null;
+        }
+        return FilterExtractor.getExpression((LogicalExpression)
+                ((LOFilter) pred).getFilterPlan().getSources().get(0)).toString();
+    }
+
+    @Test
+    public void testExactPushdownRemovesFilter() throws Exception {
+        LogicalPlan plan = optimize(load("id,age", true, "OP_GT,OP_EQ,OP_AND")
+                + "b = filter a by id > 10 and age == 30;" + "store b into 'out';");
+        assertEquals("((id > 10) and (age == 30))", TestLoader.predicate.toString());
+        assertNull(filterCondition(plan));
+    }
+
+    @Test
+    public void testResidualFilter() throws Exception {
+        LogicalPlan plan = optimize(load("id,age", true, "OP_GT,OP_EQ,OP_AND")
+                + "b = filter a by id > 10 and name == 'bob' and age >= 30;"
+                + "store b into 'out';");
+        // name is not a predicate field and >= is not supported
+        assertEquals("(id > 10)", TestLoader.predicate.toString());
+        assertEquals("((name == 'bob') and (age >= 30))", filterCondition(plan));
+    }
+
+    @Test
+    public void testInexactPushdownKeepsFilter() throws Exception {
+        LogicalPlan plan = optimize(load("id,age", false, "OP_GT,OP_EQ,OP_AND")
+                + "b = filter a by id > 10 and age == 30;" + "store b into 'out';");
+        assertEquals("((id > 10) and (age == 30))", TestLoader.predicate.toString());
+        assertEquals("((id > 10) and (age == 30))", filterCondition(plan));
+    }
+
+    @Test
+    public void testUnsupportedOperators() throws Exception {
+        // without AND only one conjunct can be pushed
+        LogicalPlan plan = optimize(load("id,age", true, "OP_GT,OP_EQ")
+                + "b = filter a by id > 10 and age == 30;" + "store b into 'out';");
+        assertEquals("(id > 10)", TestLoader.predicate.toString());
+        assertEquals("(age == 30)", filterCondition(plan));
+
+        // without OR the disjunction stays in the filter
+        TestLoader.predicate = null;
+        plan = optimize(load("id,age", true, "OP_GT,OP_EQ,OP_AND")
+                + "b = filter a by id > 10 or age == 30;" + "store b into 'out';");
+        assertNull(TestLoader.predicate);
+        assertEquals("((id > 10) or (age == 30))", filterCondition(plan));
+    }
+
+    @Test
+    public void testAfterPartitionFilter() throws Exception {
+        LogicalPlan plan = optimize(load("id", true, "OP_GT")
+                + "b = filter a by dt == '2014' and id > 10 and name == 'bob';"
+                + "store b into 'out';");
+        assertEquals("(dt == '2014')", TestLoader.partitionFilter.toString());
+        assertEquals("(id > 10)", TestLoader.predicate.toString());
+        assertEquals("(name == 'bob')", filterCondition(plan));
+    }
+
+    @Test
+    public void testColumnNameMapping() throws Exception {
+        String q = "a = load 'foo' using " + TestLoader.class.getName() + "('" + SCHEMA
+                + "', 'id', 'true', 'OP_LT') as (x, y, z, w);"
+                + "b = filter a by x < 5;" + "store b into 'out';";
+        LogicalPlan plan = optimize(q);
+        assertEquals("(id < 5)", TestLoader.predicate.toString());
+        for (Iterator<Operator> it = plan.getOperators(); it.hasNext();) {
+            assertFalse(it.next() instanceof LOFilter);
+        }
+    }
+
+    /**
+     * Loader that only records what is pushed into it. The last column is a
+     * partition key.
+     */
+    public static class TestLoader extends LoadFunc implements LoadMetadata, LoadPredicatePushdown {
+        static Expression predicate;
+        static Expression partitionFilter;
+
+        private Schema schema;
+        private List<String> predicateFields;
+        private boolean exact;
+        private List<OpType> opTypes = new ArrayList<OpType>();
+
+        public TestLoader(String schemaString, String predicateFields, String exact,
+                String opTypes) throws ParserException {
+            schema = Utils.getSchemaFromString(schemaString);
+            this.predicateFields = Arrays.asList(predicateFields.split(","));
+            this.exact = Boolean.valueOf(exact);
+            for (String op : opTypes.split(",")) {
+                this.opTypes.add(OpType.valueOf(op));
+            }
+        }
+
+        @Override
+        public InputFormat getInputFormat() throws IOException {
+            return null;
+        }
+
+        @Override
+        public Tuple getNext() throws IOException {
+            return null;
+        }
+
+        @Override
+        public void prepareToRead(RecordReader reader, PigSplit split) throws IOException {
+        }
+
+        @Override
+        public void setLocation(String location, Job job) throws IOException {
+        }
+
+        @Override
+        public ResourceSchema getSchema(String location, Job job) throws IOException {
+            return new ResourceSchema(schema);
+        }
+
+        @Override
+        public ResourceStatistics getStatistics(String location, Job job) throws IOException {
+            return null;
+        }
+
+        @Override
+        public String[] getPartitionKeys(String location, Job job) throws IOException {
+            return new String[] { "dt" };
+        }
+
+        @Override
+        public void setPartitionFilter(Expression partitionFilter) throws IOException {
+            TestLoader.partitionFilter = partitionFilter;
+        }
+
+        @Override
+        public List<String> getPredicateFields(String location, Job job) throws IOException {
+            return predicateFields;
+        }
+
+        @Override
+        public List<OpType> getSupportedExpressionTypes() {
+            return opTypes;
+        }
+
+        @Override
+        public boolean setPushdownPredicate(Expression predicate) throws IOException {
+            TestLoader.predicate = predicate;
+            return exact;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.util.HeavyHitters;
+import org.apache.pig.test.utils.GenPhyOp;
+import org.junit.Test;
+
+public class TestSkewedKeyDetection {
+
+    @Test
+    public void testHeavyHitters() {
+        HeavyHitters<Integer> sketch = new HeavyHitters<Integer>(20);
+        Random r = new Random(42);
+        int[] counts = new int[1000];
+        for (int i = 0; i < 100000; i++) {
+            // a third of the items are 7, 2 in 15 are 3
+            int item = i % 3 == 0 ? 7 : (i % 5 == 1 ? 3 : r.nextInt(counts.length));
+            counts[item]++;
+            sketch.add(item);
+        }
+        assertEquals(100000, sketch.size());
+        Map<Integer, Long> top = sketch.getHeavyHitters(0.05);
+        assertEquals(2, top.size());
+        Iterator<Map.Entry<Integer, Long>> it = top.entrySet().iterator();
+        Map.Entry<Integer, Long> first = it.next();
+        Map.Entry<Integer, Long> second = it.next();
+        assertEquals(Integer.valueOf(7), first.getKey());
+        assertEquals(Integer.valueOf(3), second.getKey());
+        // the counts are under the real ones by at most the max error
+        assertTrue(first.getValue() <= counts[7]);
+        assertTrue(first.getValue() >= counts[7] - sketch.getMaxError());
+        assertTrue(second.getValue() <= counts[3]);
+        assertTrue(second.getValue() >= counts[3] - sketch.getMaxError());
+        assertTrue(sketch.getMaxError() <= sketch.size() / 21);
+    }
+
+    @Test
+    public void testHeavyHittersUniform() {
+        HeavyHitters<String> sketch = new HeavyHitters<String>(5);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("k" + (i % 100));
+        }
+        assertTrue(sketch.getHeavyHitters(0.1).isEmpty());
+    }
+
+    @Test
+    public void testLocalRearrangeCountsKeys() throws Exception {
+        DataBag db = BagFactory.getInstance().newDefaultBag();
+        for (int i = 0; i < 200; i++) {
+            db.add(TupleFactory.getInstance().newTuple(
+                    Arrays.<Object>asList(i % 2 == 0 ? "hot" : "k" + i, i)));
+        }
+        POLocalRearrange lr = GenPhyOp.topLocalRearrangeOPWithPlanPlain(0, 0, db.iterator().next());
+        POProject proj = GenPhyOp.exprProject();
+        proj.setColumn(0);
+        proj.setResultType(DataType.TUPLE);
+        proj.setOverloaded(true);
+        proj.attachInput(TupleFactory.getInstance().newTuple(db));
+        List<PhysicalOperator> inputs = new ArrayList<PhysicalOperator>();
+        inputs.add(proj);
+        lr.setInputs(inputs);
+
+        lr.setKeySketchCapacity(10);
+        // the capacity is kept when the operator is copied
+        assertEquals(10, lr.clone().getKeySketchCapacity());
+        assertNull(lr.getKeySketch());
+        int size = 0;
+        for (Result res = lr.getNextTuple(); res.returnStatus != POStatus.STATUS_EOP; res = lr.getNextTuple()) {
+            size++;
+        }
+        assertEquals(200, size);
+        HeavyHitters<Object> sketch = lr.getKeySketch();
+        assertEquals(200, sketch.size());
+        Map<Object, Long> top = sketch.getHeavyHitters(0.1);
+        assertEquals(1, top.size());
+        assertTrue(top.get("hot") >= 100 - sketch.getMaxError());
+    }
+}
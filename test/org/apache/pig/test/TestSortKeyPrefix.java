@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigTupleSortComparator;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.io.NullableSortKeyTuple;
+import org.apache.pig.impl.io.NullableTuple;
+import org.apache.pig.impl.util.ObjectSerializer;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+public class TestSortKeyPrefix {
+    private static TupleFactory tf = TupleFactory.getInstance();
+
+    private static final Object[] VALUES = new Object[] { null, true, false,
+            (byte) -3, (byte) 7, -5, 0, 1, 1 << 20, -1L, 3L, Long.MAX_VALUE,
+            -2.5f, -0.0f, 0.0f, 1.5f, Float.NaN, -1e300, 0.5, Double.POSITIVE_INFINITY,
+            "", "a", "ab", "abcdefgh", "abcdefghijkl", "b", "été",
+            new DataByteArray(new byte[] { 1, (byte) 0x90 }), new DataByteArray(new byte[] { 1 }),
+            new DateTime(-1000L), new DateTime(5000L),
+            tf.newTuple(1) };
+
+    private static PigTupleSortComparator comparator(boolean[] asc, boolean prefix)
+            throws IOException {
+        JobConf conf = new JobConf();
+        conf.set("pig.sortOrder", ObjectSerializer.serialize(asc));
+        if (prefix) {
+            conf.setMapOutputKeyClass(NullableSortKeyTuple.class);
+        }
+        PigTupleSortComparator comparator = new PigTupleSortComparator();
+        comparator.setConf(conf);
+        return comparator;
+    }
+
+    private static byte[] serialize(NullableTuple key) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        key.write(new DataOutputStream(baos));
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testPrefixOrderMatchesTupleOrder() throws Exception {
+        Random r = new Random(42);
+        boolean[][] orders = new boolean[][] { { true, true, true }, { false, true, false },
+                { true, false, true }, { false, false, false } };
+        for (boolean[] asc : orders) {
+            PigTupleSortComparator plain = comparator(asc, false);
+            PigTupleSortComparator prefixed = comparator(asc, true);
+            List<Tuple> keys = new ArrayList<Tuple>();
+            for (int i = 0; i < 300; i++) {
+                // mostly three fields, sometimes fewer or more
+                int size = i % 25 == 0 ? 2 : (i % 31 == 0 ? 4 : 3);
+                Tuple t = tf.newTuple(size);
+                for (int j = 0; j < size; j++) {
+                    t.set(j, VALUES[r.nextInt(VALUES.length)]);
+                }
+                keys.add(t);
+            }
+            keys.add(null);
+            for (Tuple t1 : keys) {
+                byte[] p1 = serialize(key(t1, asc, false));
+                byte[] s1 = serialize(key(t1, asc, true));
+                for (Tuple t2 : keys) {
+                    byte[] p2 = serialize(key(t2, asc, false));
+                    byte[] s2 = serialize(key(t2, asc, true));
+                    int expected = Integer.signum(plain.compare(p1, 0, p1.length, p2, 0, p2.length));
+                    int actual = Integer.signum(prefixed.compare(s1, 0, s1.length, s2, 0, s2.length));
+                    assertEquals(t1 + " vs " + t2, expected, actual);
+                }
+            }
+        }
+    }
+
+    private static NullableTuple key(Tuple t, boolean[] asc, boolean prefix) {
+        NullableTuple key;
+        if (t == null) {
+            key = prefix ? new NullableSortKeyTuple() : new NullableTuple();
+            key.setNull(true);
+        } else {
+            key = prefix ? new NullableSortKeyTuple(t, asc) : new NullableTuple(t);
+        }
+        key.setIndex((byte) 0);
+        return key;
+    }
+
+    @Test
+    public void testReadBack() throws Exception {
+        Tuple t = tf.newTuple(3);
+        t.set(0, "abcdefghijklmnopqrstuvwxyz");
+        t.set(1, 7L);
+        t.set(2, null);
+        NullableSortKeyTuple key = new NullableSortKeyTuple(t, new boolean[] { true, false, true });
+        key.setIndex((byte) 2);
+        byte[] bytes = serialize(key);
+        NullableSortKeyTuple read = new NullableSortKeyTuple();
+        read.readFields(new DataInputStream(new ByteArrayInputStream(bytes)));
+        assertEquals(t, read.getValueAsPigType());
+        assertEquals(2, read.getIndex());
+    }
+
+    @Test
+    public void testOrderBy() throws Exception {
+        String[] input = new String[200];
+        Random r = new Random(7);
+        for (int i = 0; i < input.length; i++) {
+            input[i] = "k" + r.nextInt(5) + "\t" + (r.nextInt(20) - 10) + "\t"
+                    + (i % 9 == 0 ? "" : String.valueOf(r.nextDouble())) + "\t" + i;
+        }
+        File inputFile = Util.createInputFile("tmp", "sortkey", input);
+        String query = "a = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (a0:chararray, a1:int, a2:double, a3:int);"
+                + "b = order a by a0 desc, a1, a2 desc, a3;";
+        List<Tuple> expected = run(query, false);
+        List<Tuple> actual = run(query, true);
+        assertEquals(input.length, actual.size());
+        assertEquals(expected, actual);
+        for (int i = 1; i < actual.size(); i++) {
+            Tuple prev = actual.get(i - 1);
+            Tuple cur = actual.get(i);
+            int c = -((String) prev.get(0)).compareTo((String) cur.get(0));
+            if (c == 0) {
+                c = ((Integer) prev.get(1)).compareTo((Integer) cur.get(1));
+            }
+            assertTrue(c <= 0);
+        }
+    }
+
+    private List<Tuple> run(String query, boolean prefix) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.OPT_FETCH, "false");
+        props.setProperty(PigConfiguration.PROP_NO_COMBINER, "true");
+        props.setProperty(PigConfiguration.PIG_SORT_KEY_PREFIX, String.valueOf(prefix));
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        Util.registerMultiLineQuery(pigServer, query);
+        List<Tuple> result = new ArrayList<Tuple>();
+        for (Iterator<Tuple> it = pigServer.openIterator("b"); it.hasNext();) {
+            result.add(it.next());
+        }
+        return result;
+    }
+}
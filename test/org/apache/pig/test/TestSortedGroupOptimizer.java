@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.CollectableLoadFunc;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigConstants;
+import org.apache.pig.PigServer;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.builtin.PigStorage;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.util.UDFContext;
+import org.apache.pig.impl.util.Utils;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.logical.optimizer.LogicalPlanOptimizer;
+import org.apache.pig.newplan.logical.relational.LOCogroup;
+import org.apache.pig.newplan.logical.relational.LOCogroup.GROUPTYPE;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.junit.Test;
+
+public class TestSortedGroupOptimizer {
+    static PigContext pc = new PigContext(ExecType.LOCAL, new Properties());
+
+    private static String load(String sortKeys) {
+        return "a = load 'foo' using " + SortedLoader.class.getName()
+                + "('id:int, name:chararray, grade:int', '" + sortKeys + "');";
+    }
+
+    private GROUPTYPE groupType(String query, String... rulesOff) throws Exception {
+        LogicalPlan plan = Util.buildLp(new PigServer(pc), query);
+        HashSet<String> off = new HashSet<String>();
+        Collections.addAll(off, rulesOff);
+        new LogicalPlanOptimizer(plan, 100, off).optimize();
+        Iterator<Operator> it = plan.getOperators();
+        while (it.hasNext()) {
+            Operator op = it.next();
+            if (op instanceof LOCogroup) {
+                return ((LOCogroup) op).getGroupType();
+            }
+        }
+        throw new AssertionError("no group in " + query);
+    }
+
+    @Test
+    public void testSortedInput() throws Exception {
+        assertEquals(GROUPTYPE.COLLECTED, groupType(load("0")
+                + "b = group a by id; store b into 'out';"));
+        assertEquals(GROUPTYPE.COLLECTED, groupType(load("0")
+                + "b = filter a by grade > 50; c = group b by id; store c into 'out';"));
+        // the order of the group columns doesn't matter
+        assertEquals(GROUPTYPE.COLLECTED, groupType(load("0,1")
+                + "b = group a by (name, id); store b into 'out';"));
+        // a prefix of the sort keys is enough
+        assertEquals(GROUPTYPE.COLLECTED, groupType(load("0,1")
+                + "b = group a by id; store b into 'out';"));
+    }
+
+    @Test
+    public void testUnsortedInput() throws Exception {
+        assertEquals(GROUPTYPE.REGULAR, groupType(load("")
+                + "b = group a by id; store b into 'out';"));
+        assertEquals(GROUPTYPE.REGULAR, groupType(load("0,1")
+                + "b = group a by name; store b into 'out';"));
+        assertEquals(GROUPTYPE.REGULAR, groupType(load("0")
+                + "b = group a by (id, name); store b into 'out';"));
+        assertEquals(GROUPTYPE.REGULAR, groupType(load("0")
+                + "b = group a by id + 1; store b into 'out';"));
+        assertEquals(GROUPTYPE.REGULAR, groupType(load("0")
+                + "b = group a all; store b into 'out';"));
+        // the loader must be able to keep all instances of a key in a split
+        assertEquals(GROUPTYPE.REGULAR, groupType("a = load 'foo' as (id:int, name);"
+                + "b = group a by id; store b into 'out';"));
+    }
+
+    @Test
+    public void testNotApplicable() throws Exception {
+        // the load is read by another operator too
+        assertEquals(GROUPTYPE.REGULAR, groupType(load("0")
+                + "b = group a by id; c = filter a by id > 3;"
+                + "store b into 'out'; store c into 'out2';"));
+        // the foreach may change the order
+        assertEquals(GROUPTYPE.REGULAR, groupType(load("0")
+                + "b = foreach a generate grade, id; c = group b by id; store c into 'out';"));
+        assertEquals(GROUPTYPE.REGULAR, groupType(load("0")
+                + "b = group a by id; store b into 'out';", "SortedGroupOptimizer"));
+    }
+
+    @Test
+    public void testResults() throws Exception {
+        String[] input = new String[] { "1\ta\t10", "1\tb\t20", "2\tc\t30", "4\td\t40",
+                "4\te\t50", "4\tf\t60", "7\tg\t70" };
+        File inputFile = Util.createInputFile("tmp", "sortedgroup", input);
+        String query = "a = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' using " + SortedLoader.class.getName().replace("$", "\\$")
+                + "('id:int, name:chararray, grade:int', '0');"
+                + "b = filter a by grade > 10;"
+                + "c = group b by id;"
+                + "d = foreach c generate group, COUNT(b), SUM(b.grade);";
+        List<String> expected = run(query, false);
+        assertEquals("[(1,1,20), (2,1,30), (4,3,150), (7,1,70)]", expected.toString());
+        assertEquals(expected, run(query, true));
+    }
+
+    private List<String> run(String query, boolean sortedGroup) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.OPT_FETCH, "false");
+        props.setProperty(PigConfiguration.PROP_NO_COMBINER, "true");
+        if (!sortedGroup) {
+            props.setProperty(PigConstants.PIG_OPTIMIZER_RULES_DISABLED_KEY, "SortedGroupOptimizer");
+        }
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        Util.registerMultiLineQuery(pigServer, query);
+        List<String> result = new ArrayList<String>();
+        for (Iterator<Tuple> it = pigServer.openIterator("d"); it.hasNext();) {
+            result.add(it.next().toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Loads tab separated data with the given schema, and says it is sorted
+     * on the given comma separated columns.
+     */
+    public static class SortedLoader extends PigStorage implements CollectableLoadFunc {
+        private String schema;
+        private String sortKeys;
+
+        public SortedLoader(String schema, String sortKeys) {
+            this.schema = schema;
+            this.sortKeys = sortKeys;
+        }
+
+        @Override
+        public ResourceSchema getSchema(String location, Job job) throws IOException {
+            ResourceSchema s = new ResourceSchema(Utils.getSchemaFromString(schema));
+            String[] columns = sortKeys.length() == 0 ? new String[0] : sortKeys.split(",");
+            int[] keys = new int[columns.length];
+            ResourceSchema.Order[] orders = new ResourceSchema.Order[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                keys[i] = Integer.parseInt(columns[i]);
+                orders[i] = ResourceSchema.Order.ASCENDING;
+            }
+            s.setSortKeys(keys);
+            s.setSortKeyOrders(orders);
+            if (signature != null) {
+                // PigStorage casts the fields to the schema it finds here
+                UDFContext.getUDFContext().getUDFProperties(getClass(), new String[] { signature })
+                        .setProperty(signature + ".schema", s.toString());
+            }
+            return s;
+        }
+
+        @Override
+        public void ensureAllKeyInstancesInSameSplit() throws IOException {
+        }
+    }
+}
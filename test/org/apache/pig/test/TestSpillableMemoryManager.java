@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.pig.impl.util.Spillable;
+import org.apache.pig.impl.util.SpillableMemoryManager;
+import org.apache.pig.impl.util.SpillableMemoryManager.SpillMetrics;
+import org.junit.Test;
+
+public class TestSpillableMemoryManager {
+    private static final long MB = 1024L * 1024L;
+
+    private static class SizedSpillable implements Spillable {
+        private long size;
+        private int spills = 0;
+
+        SizedSpillable(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public long spill() {
+            spills++;
+            size = 0;
+            return 1;
+        }
+
+        @Override
+        public long getMemorySize() {
+            return size;
+        }
+    }
+
+    @Test
+    public void testSpillBiggestFirstAndMetrics() throws Exception {
+        SpillableMemoryManager smm = SpillableMemoryManager.getInstance();
+        SizedSpillable small = new SizedSpillable(1024L);
+        SizedSpillable medium = new SizedSpillable(10 * MB);
+        SizedSpillable big = new SizedSpillable(30 * MB);
+        smm.registerSpillable(small);
+        smm.registerSpillable(medium);
+        smm.registerSpillable(big);
+
+        // the biggest alone frees enough
+        assertEquals(30 * MB, smm.spill(15 * MB));
+        assertEquals(1, big.spills);
+        assertEquals(0, medium.spills);
+
+        // spillables under pig.spill.size.threshold are left alone
+        assertEquals(10 * MB, smm.spill(Long.MAX_VALUE));
+        assertEquals(1, big.spills);
+        assertEquals(1, medium.spills);
+        assertEquals(0, small.spills);
+
+        SpillMetrics metrics = smm.getSpillMetrics().get(SizedSpillable.class.getSimpleName());
+        assertEquals(2, metrics.getSpillCount());
+        assertEquals(40 * MB, metrics.getSpilledBytes());
+        assertTrue(metrics.getSpillTimeMillis() >= 0);
+        assertFalse(smm.getSpillMetrics().containsKey("InternalCachedBag"));
+    }
+}
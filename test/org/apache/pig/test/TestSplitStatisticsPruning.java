@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.pig.ExecType;
+import org.apache.pig.Expression;
+import org.apache.pig.Expression.BinaryExpression;
+import org.apache.pig.Expression.Column;
+import org.apache.pig.Expression.Const;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.ResourceStatistics;
+import org.apache.pig.ResourceStatistics.ResourceFieldStatistics;
+import org.apache.pig.SplitStatisticsLoadFunc;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.builtin.PigStorage;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.util.StatisticsFilter;
+import org.apache.pig.impl.util.UDFContext;
+import org.apache.pig.impl.util.Utils;
+import org.junit.Test;
+
+public class TestSplitStatisticsPruning {
+
+    private static ResourceStatistics stats(Object min, Object max) {
+        ResourceFieldStatistics field = new ResourceFieldStatistics();
+        field.setMinValue(min).setMaxValue(max);
+        return new ResourceStatistics().setFields(
+                new ResourceFieldStatistics[] { field, new ResourceFieldStatistics() });
+    }
+
+    private static Expression cmp(Expression lhs, OpType op, Expression rhs) {
+        return new BinaryExpression(lhs, rhs, op);
+    }
+
+    @Test
+    public void testCanMatch() throws Exception {
+        List<String> fields = Arrays.asList("k", "v");
+        Column k = new Column("k");
+        Column v = new Column("v");
+
+        StatisticsFilter f = StatisticsFilter.create(cmp(k, OpType.OP_GE, new Const(12)), fields);
+        assertTrue(f.canMatch(stats(10, 19)));
+        assertTrue(f.canMatch(stats(10, 12)));
+        assertFalse(f.canMatch(stats(1, 11)));
+        // no statistics, or of another type
+        assertTrue(f.canMatch(null));
+        assertTrue(f.canMatch(stats(null, null)));
+        assertTrue(f.canMatch(stats(1L, 11L)));
+
+        // constant on the left
+        f = StatisticsFilter.create(cmp(new Const(12), OpType.OP_GT, k), fields);
+        assertTrue(f.canMatch(stats(1, 11)));
+        assertFalse(f.canMatch(stats(12, 19)));
+
+        f = StatisticsFilter.create(cmp(k, OpType.OP_EQ, new Const("2014-01-02")), fields);
+        assertTrue(f.canMatch(stats("2014-01-01", "2014-01-31")));
+        assertFalse(f.canMatch(stats("2014-02-01", "2014-02-28")));
+
+        // the condition on v can't be checked, so only k is used
+        f = StatisticsFilter.create(cmp(cmp(k, OpType.OP_LT, new Const(5)), OpType.OP_AND,
+                cmp(v, OpType.OP_MATCH, new Const("a.*"))), fields);
+        assertFalse(f.canMatch(stats(5, 9)));
+        assertTrue(f.canMatch(stats(4, 9)));
+
+        // a disjunction is only as selective as its least selective side
+        f = StatisticsFilter.create(cmp(cmp(k, OpType.OP_LT, new Const(5)), OpType.OP_OR,
+                cmp(k, OpType.OP_GT, new Const(20))), fields);
+        assertFalse(f.canMatch(stats(5, 20)));
+        assertTrue(f.canMatch(stats(5, 21)));
+        assertNull(StatisticsFilter.create(cmp(cmp(k, OpType.OP_LT, new Const(5)), OpType.OP_OR,
+                cmp(v, OpType.OP_MATCH, new Const("a.*"))), fields));
+        assertNull(StatisticsFilter.create(cmp(k, OpType.OP_LT, v), fields));
+    }
+
+    @Test
+    public void testPruneSplits() throws Exception {
+        File dir = File.createTempFile("pruning", "");
+        dir.delete();
+        dir.mkdir();
+        List<String> expected = new ArrayList<String>();
+        for (int start = 0; start < 30; start += 10) {
+            List<String> lines = new ArrayList<String>();
+            for (int k = start; k < start + 10; k++) {
+                lines.add(k + "\tv" + k);
+                if (k >= 12 && k < 15) {
+                    expected.add("(" + k + ",v" + k + ")");
+                }
+            }
+            Util.createLocalInputFile(new File(dir, "d_" + start + "_" + (start + 9)).getAbsolutePath(),
+                    lines.toArray(new String[lines.size()]));
+        }
+        dir.deleteOnExit();
+
+        assertEquals(expected, run(dir, true));
+        assertEquals(new HashSet<String>(Arrays.asList("d_10_19")), RangeStorage.readFiles);
+        // statistics are ignored when pruning is turned off
+        assertEquals(expected, run(dir, false));
+        assertEquals(3, RangeStorage.readFiles.size());
+    }
+
+    private List<String> run(File dir, boolean pruning) throws Exception {
+        RangeStorage.readFiles.clear();
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.OPT_FETCH, "false");
+        props.setProperty(PigConfiguration.PIG_SPLIT_STATISTICS_PRUNING, String.valueOf(pruning));
+        props.setProperty("pig.noSplitCombination", "true");
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        pigServer.registerQuery("a = load '" + Util.encodeEscape(dir.getAbsolutePath())
+                + "' using " + RangeStorage.class.getName() + "();");
+        pigServer.registerQuery("b = filter a by k >= 12 and k < 15;");
+        List<String> actual = new ArrayList<String>();
+        for (Iterator<Tuple> it = pigServer.openIterator("b"); it.hasNext();) {
+            actual.add(it.next().toString());
+        }
+        Collections.sort(actual);
+        return actual;
+    }
+
+    /**
+     * Loads (k:int, v:chararray) from files named d_min_max, where min and
+     * max bound k.
+     */
+    public static class RangeStorage extends PigStorage implements SplitStatisticsLoadFunc {
+        static Set<String> readFiles = new HashSet<String>();
+
+        @Override
+        public ResourceSchema getSchema(String location, Job job) throws IOException {
+            ResourceSchema schema = new ResourceSchema(Utils.getSchemaFromString("k:int, v:chararray"));
+            UDFContext.getUDFContext().getUDFProperties(getClass(), new String[] { signature })
+                    .setProperty(signature + ".schema", schema.toString());
+            return schema;
+        }
+
+        @Override
+        public ResourceStatistics getSplitStatistics(InputSplit split) throws IOException {
+            String[] range = ((FileSplit) split).getPath().getName().split("_");
+            return stats(Integer.valueOf(range[1]), Integer.valueOf(range[2]));
+        }
+
+        @Override
+        public void prepareToRead(RecordReader reader, PigSplit split) {
+            super.prepareToRead(reader, split);
+            for (int i = 0; i < split.getNumPaths(); i++) {
+                readFiles.add(((FileSplit) split.getWrappedSplit(i)).getPath().getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Properties;
+
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.builtin.Utf8StorageConverter;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.StringDictionary;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStringDictionary {
+    private static final TupleFactory tf = TupleFactory.getInstance();
+    private static final InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+    private static final String[] COUNTRIES = { "fr", "de", "us", "jp", "br" };
+
+    private static void configure(boolean enabled, int size) {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_CHARARRAY_DICTIONARY, Boolean.toString(enabled));
+        props.setProperty(PigConfiguration.PIG_CHARARRAY_DICTIONARY_SIZE, Integer.toString(size));
+        StringDictionary.configure(props);
+    }
+
+    @Before
+    public void setUp() {
+        configure(true, 3);
+    }
+
+    @After
+    public void tearDown() {
+        configure(false, 4096);
+    }
+
+    @Test
+    public void testIntern() throws Exception {
+        StringDictionary dict = StringDictionary.get();
+        String us = dict.intern("us".getBytes("UTF-8"), 0, 2);
+        assertEquals("us", us);
+        assertSame(us, dict.intern(new String("us")));
+        byte[] b = "xxdexx".getBytes("UTF-8");
+        assertSame(dict.intern(b, 2, 2), dict.intern("de"));
+        dict.intern("fr");
+        assertEquals(3, dict.size());
+        // full, values are still decoded but not pooled
+        assertEquals("jp", dict.intern("jp"));
+        assertNotSame(dict.intern("jp".getBytes("UTF-8"), 0, 2),
+                dict.intern("jp".getBytes("UTF-8"), 0, 2));
+        assertEquals(3, dict.size());
+    }
+
+    @Test
+    public void testLoadCaster() throws Exception {
+        Utf8StorageConverter caster = new Utf8StorageConverter();
+        assertSame(caster.bytesToCharArray("us".getBytes("UTF-8")),
+                caster.bytesToCharArray("us".getBytes("UTF-8")));
+        configure(false, 3);
+        assertNull(StringDictionary.get());
+        assertNotSame(caster.bytesToCharArray("us".getBytes("UTF-8")),
+                caster.bytesToCharArray("us".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testEncodedStream() throws Exception {
+        ByteArrayOutputStream plainBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream encodedBytes = new ByteArrayOutputStream();
+        DataOutputStream plain = new DataOutputStream(plainBytes);
+        DataOutputStream encoded = new StringDictionary.EncodingOutputStream(encodedBytes);
+        Tuple[] tuples = new Tuple[1000];
+        for (int i = 0; i < tuples.length; i++) {
+            tuples[i] = tf.newTuple(3);
+            tuples[i].set(0, COUNTRIES[i % COUNTRIES.length]);
+            tuples[i].set(1, i);
+            tuples[i].set(2, "value" + i);
+            sedes.writeDatum(plain, tuples[i]);
+            sedes.writeDatum(encoded, tuples[i]);
+        }
+        encoded.flush();
+        assertTrue(encodedBytes.size() < plainBytes.size());
+
+        DataInputStream in = new StringDictionary.DecodingInputStream(
+                new ByteArrayInputStream(encodedBytes.toByteArray()));
+        Object[] defined = new Object[COUNTRIES.length];
+        for (int i = 0; i < tuples.length; i++) {
+            Tuple t = (Tuple) sedes.readDatum(in);
+            assertEquals(tuples[i], t);
+            if (i < COUNTRIES.length) {
+                defined[i] = t.get(0);
+            } else {
+                // references resolve to the instance read with the definition
+                assertSame(defined[i % COUNTRIES.length], t.get(0));
+            }
+        }
+        assertEquals(-1, in.read());
+
+        try {
+            sedes.readDatum(new DataInputStream(
+                    new ByteArrayInputStream(encodedBytes.toByteArray())));
+            fail("dictionary codes read without a dictionary");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSpilledBag() throws Exception {
+        DataBag bag = BagFactory.getInstance().newSortedBag(null);
+        for (int i = 0; i < 3000; i++) {
+            Tuple t = tf.newTuple(2);
+            t.set(0, COUNTRIES[i % COUNTRIES.length]);
+            t.set(1, i % 10);
+            bag.add(t);
+            if (i % 1000 == 999) {
+                bag.spill();
+            }
+        }
+        assertEquals(3000, bag.size());
+        Tuple last = null;
+        int count = 0;
+        for (Iterator<Tuple> it = bag.iterator(); it.hasNext();) {
+            Tuple t = it.next();
+            if (last != null) {
+                assertTrue(last.compareTo(t) <= 0);
+            }
+            last = t;
+            count++;
+        }
+        assertEquals(3000, count);
+        bag.clear();
+    }
+}
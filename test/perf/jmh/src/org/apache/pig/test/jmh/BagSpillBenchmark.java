@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DistinctDataBag;
+import org.apache.pig.data.InternalSortedBag;
+import org.apache.pig.data.SortedDataBag;
+import org.apache.pig.data.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Filling a sorted or distinct bag, spilling it to disk in a number of
+ * runs and merging the runs back while iterating.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BagSpillBenchmark {
+    @Param({ "100000" })
+    public int tupleCount;
+
+    @Param({ "10" })
+    public int spills;
+
+    @Param({ "sorted", "internalSorted", "distinct" })
+    public String bagType;
+
+    private List<Tuple> tuples;
+
+    @Setup
+    public void setUp() throws Exception {
+        tuples = BenchmarkData.tuples(tupleCount, tupleCount / 4, 11L);
+    }
+
+    private DataBag newBag() {
+        if ("sorted".equals(bagType)) {
+            return new SortedDataBag(null);
+        } else if ("internalSorted".equals(bagType)) {
+            return new InternalSortedBag();
+        }
+        return new DistinctDataBag();
+    }
+
+    @Benchmark
+    public void spillAndMerge(Blackhole bh) {
+        DataBag bag = newBag();
+        int spillEvery = Math.max(1, tupleCount / spills);
+        for (int i = 0; i < tupleCount; i++) {
+            bag.add(tuples.get(i));
+            if ((i + 1) % spillEvery == 0) {
+                bag.spill();
+            }
+        }
+        for (Iterator<Tuple> it = bag.iterator(); it.hasNext();) {
+            bh.consume(it.next());
+        }
+        bag.clear();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * Generates the deterministic input shared by the benchmarks: tuples of
+ * (int, long, chararray, double, bytearray) with a bounded number of
+ * distinct values in the first column so that grouping and join benchmarks
+ * see repeated keys.
+ */
+final class BenchmarkData {
+    static final TupleFactory TF = TupleFactory.getInstance();
+
+    private static final String WORDS = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    private BenchmarkData() {
+    }
+
+    static List<Tuple> tuples(int count, int distinctKeys, long seed) throws ExecException {
+        Random r = new Random(seed);
+        List<Tuple> tuples = new ArrayList<Tuple>(count);
+        for (int i = 0; i < count; i++) {
+            Tuple t = TF.newTuple(5);
+            t.set(0, r.nextInt(distinctKeys));
+            t.set(1, r.nextLong());
+            t.set(2, string(r, 4 + r.nextInt(16)));
+            t.set(3, r.nextDouble());
+            t.set(4, new DataByteArray(string(r, 8)));
+            tuples.add(t);
+        }
+        return tuples;
+    }
+
+    static String string(Random r, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(WORDS.charAt(r.nextInt(WORDS.length())));
+        }
+        return sb.toString();
+    }
+
+    static Tuple tuple(Object... fields) throws ExecException {
+        Tuple t = TF.newTuple(fields.length);
+        for (int i = 0; i < fields.length; i++) {
+            t.set(i, fields[i]);
+        }
+        return t;
+    }
+}
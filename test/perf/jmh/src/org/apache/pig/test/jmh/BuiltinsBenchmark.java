@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pig.builtin.COUNT;
+import org.apache.pig.builtin.REGEX_EXTRACT;
+import org.apache.pig.builtin.SUM;
+import org.apache.pig.builtin.TOKENIZE;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-call cost of frequently used builtin functions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BuiltinsBenchmark {
+    @Param({ "1000" })
+    public int bagSize;
+
+    private final COUNT count = new COUNT();
+    private final SUM sum = new SUM();
+    private final TOKENIZE tokenize = new TOKENIZE();
+    private final REGEX_EXTRACT regexExtract = new REGEX_EXTRACT();
+
+    private Tuple bagInput;
+    private Tuple[] lines;
+    private Tuple[] regexInputs;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<Tuple> tuples = BenchmarkData.tuples(bagSize, 100, 13L);
+        DataBag bag = BagFactory.getInstance().newDefaultBag();
+        for (Tuple t : tuples) {
+            // SUM takes its input as bytearray and casts it to double
+            bag.add(BenchmarkData.tuple(new DataByteArray(t.get(0).toString())));
+        }
+        bagInput = BenchmarkData.tuple(bag);
+
+        Random r = new Random(17L);
+        lines = new Tuple[100];
+        regexInputs = new Tuple[100];
+        for (int i = 0; i < lines.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int w = 0; w < 12; w++) {
+                sb.append(BenchmarkData.string(r, 1 + r.nextInt(10))).append(w % 3 == 0 ? ", " : " ");
+            }
+            lines[i] = BenchmarkData.tuple(sb.toString());
+            String url = "http://" + BenchmarkData.string(r, 8) + ".example.com:"
+                    + (1024 + r.nextInt(60000)) + "/" + BenchmarkData.string(r, 6);
+            regexInputs[i] = BenchmarkData.tuple(url, "^http://([^:/]+):(\\d+)/", 2);
+        }
+    }
+
+    @Benchmark
+    public Long count() throws Exception {
+        return count.exec(bagInput);
+    }
+
+    @Benchmark
+    public Double sum() throws Exception {
+        return sum.exec(bagInput);
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole bh) throws Exception {
+        for (Tuple line : lines) {
+            bh.consume(tokenize.exec(line));
+        }
+    }
+
+    @Benchmark
+    public void regexExtract(Blackhole bh) throws Exception {
+        for (Tuple input : regexInputs) {
+            bh.consume(regexExtract.exec(input));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigTupleSortComparator;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.io.NullableTuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Sort key comparison as done by the shuffle: the raw byte comparison of
+ * PigTupleSortComparator against deserialized NullableTuple.compareTo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ComparatorBenchmark {
+    @Param({ "1000" })
+    public int tupleCount;
+
+    private PigTupleSortComparator comparator;
+    private NullableTuple[] keys;
+    private byte[][] serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        comparator = new PigTupleSortComparator();
+        comparator.setConf(new JobConf());
+        List<Tuple> tuples = BenchmarkData.tuples(tupleCount, 100, 7L);
+        keys = new NullableTuple[tupleCount];
+        serialized = new byte[tupleCount][];
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        for (int i = 0; i < tupleCount; i++) {
+            // sort on (int, chararray, double) as ORDER BY would
+            Tuple t = tuples.get(i);
+            keys[i] = new NullableTuple(BenchmarkData.tuple(t.get(0), t.get(2), t.get(3)));
+            baos.reset();
+            keys[i].write(out);
+            out.flush();
+            serialized[i] = baos.toByteArray();
+        }
+    }
+
+    @Benchmark
+    public int rawCompare() {
+        int sum = 0;
+        for (int i = 1; i < tupleCount; i++) {
+            byte[] b1 = serialized[i - 1];
+            byte[] b2 = serialized[i];
+            sum += comparator.compare(b1, 0, b1.length, b2, 0, b2.length);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int objectCompare() {
+        int sum = 0;
+        for (int i = 1; i < tupleCount; i++) {
+            sum += keys[i - 1].compareTo(keys[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.OffHeapTupleMap;
+import org.apache.pig.data.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Probing the replicated input of a fragment-replicate join, held either in
+ * the on-heap map POFRJoin builds by default or in an OffHeapTupleMap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FRJoinProbeBenchmark {
+    @Param({ "100000" })
+    public int replicatedCount;
+
+    @Param({ "10000" })
+    public int probeCount;
+
+    @Param({ "heap", "offheap" })
+    public String tableType;
+
+    private Map<Tuple, List<Tuple>> heapTable;
+    private OffHeapTupleMap offHeapTable;
+    private Tuple[] probes;
+
+    @Setup
+    public void setUp() throws Exception {
+        // a quarter of the keys have no match on the replicated side
+        int distinctKeys = replicatedCount / 4;
+        List<Tuple> replicated = BenchmarkData.tuples(replicatedCount, distinctKeys, 5L);
+        if ("offheap".equals(tableType)) {
+            offHeapTable = new OffHeapTupleMap();
+        } else {
+            heapTable = new HashMap<Tuple, List<Tuple>>();
+        }
+        for (Tuple t : replicated) {
+            Tuple key = BenchmarkData.tuple(t.get(0));
+            if (offHeapTable != null) {
+                offHeapTable.put(key, t);
+            } else {
+                List<Tuple> values = heapTable.get(key);
+                if (values == null) {
+                    values = new ArrayList<Tuple>(1);
+                    heapTable.put(key, values);
+                }
+                values.add(t);
+            }
+        }
+        List<Tuple> fragment = BenchmarkData.tuples(probeCount, distinctKeys * 4 / 3, 6L);
+        probes = new Tuple[probeCount];
+        for (int i = 0; i < probeCount; i++) {
+            probes[i] = BenchmarkData.tuple(fragment.get(i).get(0));
+        }
+    }
+
+    @Benchmark
+    public void probe(Blackhole bh) throws Exception {
+        if (offHeapTable != null) {
+            for (Tuple key : probes) {
+                bh.consume(offHeapTable.get(key));
+            }
+        } else {
+            for (Tuple key : probes) {
+                bh.consume(heapTable.get(key));
+            }
+        }
+    }
+}
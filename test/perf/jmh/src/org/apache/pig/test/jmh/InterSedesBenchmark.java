@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Serialization and deserialization of tuples through BinInterSedes, the
+ * format used for map output, spill files and intermediate job output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InterSedesBenchmark {
+    private static final InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+
+    @Param({ "1000" })
+    public int tupleCount;
+
+    private List<Tuple> tuples;
+    private byte[] serialized;
+    private ByteArrayOutputStream baos;
+
+    @Setup
+    public void setUp() throws IOException {
+        tuples = BenchmarkData.tuples(tupleCount, 100, 42L);
+        baos = new ByteArrayOutputStream(tupleCount * 64);
+        serialized = write();
+    }
+
+    private byte[] write() throws IOException {
+        baos.reset();
+        DataOutputStream out = new DataOutputStream(baos);
+        for (Tuple t : tuples) {
+            sedes.writeDatum(out, t);
+        }
+        out.flush();
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writeTuples() throws IOException {
+        return write();
+    }
+
+    @Benchmark
+    public void readTuples(Blackhole bh) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(serialized));
+        for (int i = 0; i < tupleCount; i++) {
+            bh.consume(sedes.readDatum(in));
+        }
+    }
+}
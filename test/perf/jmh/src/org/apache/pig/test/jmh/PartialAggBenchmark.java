@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartialAgg;
+import org.apache.pig.builtin.IntSum;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.plan.NodeIdGenerator;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.PlanException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * In-map partial aggregation of SUM over an int group key, the plan the
+ * combiner optimizer generates for a GROUP BY followed by SUM.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PartialAggBenchmark {
+    private static final String SCOPE = "jmh";
+
+    @Param({ "100000" })
+    public int tupleCount;
+
+    @Param({ "1000", "50000" })
+    public int distinctKeys;
+
+    @Param({ "true", "false" })
+    public boolean primitiveTable;
+
+    private List<Tuple> tuples;
+
+    @Setup
+    public void setUp() throws Exception {
+        Configuration conf = new Configuration();
+        conf.setBoolean(PigConfiguration.PARTAGG_PRIMITIVE_TABLE, primitiveTable);
+        PigMapReduce.sJobConfInternal.set(conf);
+
+        Random r = new Random(3L);
+        tuples = new ArrayList<Tuple>(tupleCount);
+        for (int i = 0; i < tupleCount; i++) {
+            // the key, and the output of SUM.Initial
+            tuples.add(BenchmarkData.tuple(r.nextInt(distinctKeys),
+                    BenchmarkData.tuple((long) r.nextInt(100))));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        PigMapReduce.sJobConfInternal.set(null);
+    }
+
+    private static OperatorKey newKey() {
+        return new OperatorKey(SCOPE, NodeIdGenerator.getGenerator().getNextNodeId(SCOPE));
+    }
+
+    private static POPartialAgg newPartialAgg(PhysicalPlan parentPlan) throws PlanException {
+        POPartialAgg partAgg = new POPartialAgg(newKey());
+        partAgg.setParentPlan(parentPlan);
+
+        PhysicalPlan keyPlan = new PhysicalPlan();
+        POProject keyProj = new POProject(newKey(), -1, 0);
+        keyProj.setResultType(DataType.INTEGER);
+        keyPlan.add(keyProj);
+        partAgg.setKeyPlan(keyPlan);
+
+        PhysicalPlan valPlan = new PhysicalPlan();
+        POProject valProj = new POProject(newKey(), -1, 1);
+        valProj.setResultType(DataType.BAG);
+        valPlan.add(valProj);
+        List<PhysicalOperator> udfInputs = new ArrayList<PhysicalOperator>();
+        udfInputs.add(valProj);
+        POUserFunc sum = new POUserFunc(newKey(), -1, udfInputs,
+                new FuncSpec(IntSum.Intermediate.class.getName()));
+        valPlan.add(sum);
+        valPlan.connect(valProj, sum);
+        List<PhysicalPlan> valuePlans = new ArrayList<PhysicalPlan>();
+        valuePlans.add(valPlan);
+        partAgg.setValuePlans(valuePlans);
+        return partAgg;
+    }
+
+    @Benchmark
+    public void aggregate(Blackhole bh) throws Exception {
+        PhysicalPlan parentPlan = new PhysicalPlan();
+        POPartialAgg partAgg = newPartialAgg(parentPlan);
+        for (Tuple t : tuples) {
+            partAgg.attachInput(t);
+            Result res = partAgg.getNextTuple();
+            while (res.returnStatus == POStatus.STATUS_OK) {
+                bh.consume(res.result);
+                res = partAgg.getNextTuple();
+            }
+        }
+        parentPlan.endOfAllInput = true;
+        Result res = partAgg.getNextTuple();
+        while (res.returnStatus == POStatus.STATUS_OK) {
+            bh.consume(res.result);
+            res = partAgg.getNextTuple();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.data.SchemaTupleBackend;
+import org.apache.pig.data.SchemaTupleClassGenerator.GenContext;
+import org.apache.pig.data.SchemaTupleFactory;
+import org.apache.pig.data.SchemaTupleFrontend;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.data.TupleMaker;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+import org.apache.pig.impl.util.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Creation and field access of a DefaultTuple compared with a generated
+ * SchemaTuple of the same schema.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TupleAccessBenchmark {
+    private static final String SCHEMA = "a:int, b:long, c:chararray, d:double, e:int";
+
+    @Param({ "default", "schema" })
+    public String tupleType;
+
+    private TupleMaker<? extends Tuple> factory;
+    private Tuple tuple;
+
+    @Setup
+    public void setUp() throws Exception {
+        Schema schema = Utils.getSchemaFromString(SCHEMA);
+        if ("schema".equals(tupleType)) {
+            Properties props = new Properties();
+            props.setProperty(PigConfiguration.SHOULD_USE_SCHEMA_TUPLE, "true");
+            Configuration conf = ConfigurationUtil.toConfiguration(props);
+            PigContext pigContext = new PigContext(ExecType.LOCAL, props);
+            SchemaTupleFrontend.registerToGenerateIfPossible(schema, false, GenContext.UDF);
+            SchemaTupleFrontend.copyAllGeneratedToDistributedCache(pigContext, conf);
+            SchemaTupleBackend.initialize(conf, pigContext);
+            factory = SchemaTupleFactory.getInstance(schema, false, GenContext.UDF);
+            if (factory == null) {
+                throw new IllegalStateException("Unable to generate a SchemaTuple for " + SCHEMA);
+            }
+        } else {
+            factory = TupleFactory.getInstance();
+        }
+        tuple = fill(factory.newTuple(schema.size()));
+    }
+
+    private static Tuple fill(Tuple t) throws Exception {
+        t.set(0, 17);
+        t.set(1, 42L);
+        t.set(2, "chararray");
+        t.set(3, 3.5d);
+        t.set(4, -1);
+        return t;
+    }
+
+    @Benchmark
+    public Tuple create() throws Exception {
+        return fill(factory.newTuple(5));
+    }
+
+    @Benchmark
+    public long get() throws Exception {
+        return (Integer) tuple.get(0) + (Long) tuple.get(1)
+                + ((String) tuple.get(2)).length() + (Integer) tuple.get(4);
+    }
+
+    @Benchmark
+    public int hashAndCompare() {
+        return tuple.hashCode() + tuple.compareTo(tuple);
+    }
+}